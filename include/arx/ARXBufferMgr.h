@@ -18,6 +18,7 @@
 #define _ARXBUFFERMGR_
 
 #include <arx/ARXStatus.h>
+#include <arx/ARXBufferTypes.h>
 #include <dvp/dvp_types.h>
 
 namespace android {
@@ -52,6 +53,30 @@ public:
      */
     virtual uint32_t getCount() = 0;
 
+    /*!
+     * Sets how many buffers of this stream this client may hold at once. When other clients
+     * share the stream, buffers made ready while this client holds that many are dropped for
+     * this client only, so that it cannot stall the others.
+     * @param count the number of buffers, 0 for an even share of count - 1 among the clients
+     * @returns INVALID_STATE if no listener is registered
+     */
+    virtual arxstatus_t setMaxHeld(uint32_t count) = 0;
+
+    /*!
+     * Sets how the stream behaves when its consumers fall behind. The policy applies to the
+     * stream, for every client sharing it.
+     * @param policy one of BufferPolicy_e
+     * @returns INVALID_ARGUMENT for an unknown policy
+     */
+    virtual arxstatus_t setPolicy(uint32_t policy) = 0;
+
+    /*!
+     * Gets the delivery counters of the stream
+     * @param stats filled with the counters
+     * @returns NULL_POINTER if stats is NULL
+     */
+    virtual arxstatus_t getStats(ARXBufferStats *stats) = 0;
+
 protected:
     /*!
      * Non-public constructor.
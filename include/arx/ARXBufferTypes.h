@@ -254,6 +254,74 @@ struct ARXFacialPartsInfo {
 struct ARXCameraPoseMatrix {
     float matrix[12];
     int32_t status;
+    /*!
+     * CLOCK_MONOTONIC times in nanoseconds at which the engine received the
+     * camera frame, started and finished computing the pose. They measure the
+     * latency of each stage and can be compared with System.nanoTime().
+     */
+    uint64_t frameReceivedTime;
+    uint64_t processStartTime;
+    uint64_t processEndTime;
+};
+
+/*!
+ * \brief How a stream behaves when its consumers fall behind
+ * @see ARXBufferMgr::setPolicy
+ */
+enum BufferPolicy_e {
+    /*!
+     * The engine waits for a free buffer, a slow consumer slows the whole
+     * pipeline down. This is the default for image streams and the pose streams.
+     */
+    BUFF_POLICY_BLOCK = 0,
+    /*!
+     * When no buffer is free, the oldest buffer still waiting for the engine
+     * is reused. If the consumers hold all the buffers, the new frame is
+     * dropped for this stream only. This is the default for face detect.
+     */
+    BUFF_POLICY_DROP_OLDEST,
+    /*!
+     * As BUFF_POLICY_DROP_OLDEST, and a consumer reading the stream in the
+     * engine only ever gets the newest buffer, the older ones are dropped.
+     */
+    BUFF_POLICY_LATEST_ONLY,
+    BUFF_POLICY_MAX
+};
+
+/*!
+ * \brief Delivery counters of a stream since its buffers were allocated
+ * @see ARXBufferMgr::getStats
+ */
+struct ARXBufferStats {
+    /*!
+     * The policy in use, one of BufferPolicy_e
+     */
+    uint32_t policy;
+    /*!
+     * Buffers handed to the producer and to the consumer in the engine
+     */
+    uint32_t produced;
+    uint32_t consumed;
+    /*!
+     * Frames not produced because no buffer was free
+     */
+    uint32_t dropped;
+    /*!
+     * Buffers reused or skipped before the consumer in the engine read them
+     */
+    uint32_t recycled;
+    /*!
+     * Number of times the producer had to wait for a free buffer, and the
+     * time waited in microseconds
+     */
+    uint32_t waits;
+    uint32_t waitUs;
+    uint32_t maxWaitUs;
+    /*!
+     * Buffers waiting for the consumer in the engine, now and at most
+     */
+    uint32_t depth;
+    uint32_t maxDepth;
 };
 
 struct ARXProjectorPose {
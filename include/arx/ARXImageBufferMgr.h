@@ -53,6 +53,9 @@ public:
     /*!
      * Renders the buffer associated with timestamp. For this to work the client has to
      * call hold first, to inform ARX to not use the buffers until they are rendered via this call.
+     * The older buffers still held are dropped without being displayed. Only the hold is ended: a
+     * buffer also delivered to listeners, of this or other instances, is displayed and reused once
+     * they all released it.
      * @param timestamp The timestamp of the buffer to render
      * @see bindSurface()
      * @see hold()
@@ -47,7 +47,90 @@ enum Properties_e {
      * @see CamMirrorType_e
      */
     PROP_CAM_SEC_MIRROR,
-
+    /*!
+     * Property to enable/query buffer count tuning (0 or 1, disabled by default)
+     * While enabled, the engine measures how many buffers each stream needs during the first
+     * PROP_BUFFER_AUTOTUNE_FRAMES frames, then stores the smallest count meeting
+     * PROP_BUFFER_STALL_TARGET for this device and resolution. Each ENGINE_STATE_START allocates
+     * the stored count, unless the client set one with ARXBufferMgr::setCount.
+     */
+    PROP_BUFFER_AUTOTUNE,
+    /*!
+     * Property to configure/query the number of frames measured for buffer count tuning.
+     * The default is 300.
+     */
+    PROP_BUFFER_AUTOTUNE_FRAMES,
+    /*!
+     * Property to configure/query the stall rate buffer count tuning aims for, in frames per
+     * thousand which would have needed more buffers than the count chosen. The default is 10.
+     */
+    PROP_BUFFER_STALL_TARGET,
+    /*!
+     * Property to configure/query the number of frames queued between the capture and the
+     * compute stages (0 to 8, 2 by default). While the engine computes a frame, the following
+     * ones are queued, and the oldest is dropped when the queue is full, so the camera and the
+     * preview never wait for computations. 0 runs the computations on the capture thread.
+     * This property only takes effect during a PROP_ENGINE_STATE change to ENGINE_STATE_START.
+     */
+    PROP_PIPELINE_DEPTH,
+    /*!
+     * Property to query the frames per second captured, over the last second.
+     */
+    PROP_PIPELINE_CAPTURE_FPS,
+    /*!
+     * Property to query the frames per second computed, over the last second.
+     */
+    PROP_PIPELINE_COMPUTE_FPS,
+    /*!
+     * Property to query the share of the last second the compute stage was busy, in percent.
+     */
+    PROP_PIPELINE_COMPUTE_BUSY,
+    /*!
+     * Property to query the average number of frames waiting for the compute stage over the
+     * last second, in hundredths.
+     */
+    PROP_PIPELINE_COMPUTE_QUEUE,
+    /*!
+     * Property to query the frames dropped since the start because the compute stage fell behind.
+     */
+    PROP_PIPELINE_DROPPED,
+    /*!
+     * Property to query the average time from capture to the end of the computations over the
+     * last second, in microseconds.
+     */
+    PROP_PIPELINE_LATENCY,
+    /*!
+     * Property to configure/query whether the compute stage skips the queued frames older than
+     * the newest one (0 or 1). It is enabled by default for the pose engines, whose poses are
+     * stale once a newer frame arrived. It cannot be enabled with PROP_SCHED_DEADLINE set.
+     */
+    PROP_SCHED_LATEST_ONLY,
+    /*!
+     * Property to configure/query the frames computed: only frames whose number is a multiple
+     * of the value are, 1 (the default) computes them all.
+     */
+    PROP_SCHED_EVERY_NTH,
+    /*!
+     * Property to configure/query the time allowed from capture to the end of the computations
+     * of a frame, in milliseconds (0 to 10000, 0 by default for no deadline). A frame which would
+     * finish after the deadline, according to the average time the computations take, is skipped
+     * when a newer frame is already queued, to compute that one instead. The newest frame is
+     * computed even when late. When the computations alone take longer than the deadline, no
+     * frame is skipped. As PROP_SCHED_LATEST_ONLY leaves only the newest frame, it must be
+     * disabled first, which the pose engines enable by default. The deadline applies to the
+     * compute stage of PROP_PIPELINE_DEPTH, a single thread never has a newer frame queued.
+     */
+    PROP_SCHED_DEADLINE,
+    /*!
+     * Property to query the moving average of the time the computations of a frame take, in
+     * microseconds.
+     */
+    PROP_SCHED_COST,
+    /*!
+     * Property to query the frames skipped by the compute stage since the start, because of
+     * PROP_SCHED_LATEST_ONLY, PROP_SCHED_EVERY_NTH or PROP_SCHED_DEADLINE.
+     */
+    PROP_SCHED_SKIPPED,
 
     PROP_CUSTOM_ENGINE_START = 0x10000,
     /*!
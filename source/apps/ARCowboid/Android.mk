@@ -4,6 +4,7 @@ LOCAL_PATH:= $(call my-dir)
 include $(CLEAR_VARS)
 LOCAL_MODULE_TAGS := optional
 LOCAL_SRC_FILES := $(call all-java-files-under, src)
+LOCAL_STATIC_JAVA_LIBRARIES := arxposetrace arxmath
 LOCAL_PACKAGE_NAME := ARCowboid
 LOCAL_JNI_SHARED_LIBRARIES := libarcamera_jni
 LOCAL_REQUIRED_MODULES := libarcamera_jni
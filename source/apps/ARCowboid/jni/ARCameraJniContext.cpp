@@ -23,18 +23,27 @@
 #include <arx/ARXJniUtil.h>
 #include <arx_debug.h>
 
+#include <stdio.h>
+#include <string.h>
+
 using namespace tiarx;
 using namespace android;
 
 ARCameraJniContext::ARCameraJniContext(JNIEnv *env, jobject obj)
 {
-    mutex_init(&mLock);
+    mArx = NULL;
+    mDrawSeq = 0;
+    mDrawReadTime = 0;
+    mRecordedSeq = 0;
+    mPosesNotDrawn = 0;
+    mPredictionLeadNs = 0;
+    mutex_init(&mStatsLock);
+    mutex_init(&mTraceLock);
     mObj = env->NewGlobalRef(obj);
     env->GetJavaVM(&mVm);
     jclass cls = env->GetObjectClass(obj);
     mOnARXDeath = env->GetMethodID(cls, "onARXDeath", "()V");
     mOnBufferChanged = env->GetMethodID(cls, "onCamPoseUpdate", "(JI)V");
-    mFloatArray = NULL;
 }
 
 ARCameraJniContext::~ARCameraJniContext()
@@ -42,19 +51,13 @@ ARCameraJniContext::~ARCameraJniContext()
     if (mArx) {
         mArx->destroy();
     }
-    //A callback may be currently running, acquire mutex
-    //before releasing reference to the float array ref
-    mutex_lock(&mLock);
+    mutex_deinit(&mStatsLock);
+    mutex_deinit(&mTraceLock);
     JNIEnv *env = getJNIEnv();
-    if (mFloatArray) {
-        env->DeleteGlobalRef(mFloatArray);
-    }
-    mutex_unlock(&mLock);
-    mutex_deinit(&mLock);
     env->DeleteGlobalRef(mObj);
 }
 
-bool ARCameraJniContext::setup(jfloatArray array, jobject surface)
+bool ARCameraJniContext::setup(jobject surface)
 {
     JNIEnv *env = getJNIEnv();
 
@@ -101,7 +104,6 @@ bool ARCameraJniContext::setup(jfloatArray array, jobject surface)
 
     mgr->registerClient(this);
 
-    mFloatArray = (jfloatArray)env->NewGlobalRef(array);
     mArx->setProperty(PROP_ENGINE_STATE, ENGINE_STATE_START);
 
     return true;
@@ -125,12 +127,93 @@ void ARCameraJniContext::onBufferChanged(ARXFlatBuffer *pBuffer)
                 m->matrix[2], m->matrix[6], m->matrix[10],
                 m->matrix[3], m->matrix[7], m->matrix[11]);
     JNIEnv *env = getJNIEnv();
-    mutex_lock(&mLock);
-    //copy data
-    env->SetFloatArrayRegion(mFloatArray, 0, 12, (jfloat *)m->matrix);
-    mutex_unlock(&mLock);
+    CameraPose pose;
+    memcpy(pose.matrix, m->matrix, sizeof(pose.matrix));
+    pose.timestamp = pBuffer->timestamp();
+    pose.status = m->status;
+    pose.reserved = 0;
+    pose.frameReceivedTime = m->frameReceivedTime;
+    pose.processStartTime = m->processStartTime;
+    pose.processEndTime = m->processEndTime;
+    pose.deliveredTime = arx_monotonic_ns();
+    mutex_lock(&mTraceLock);
+    if (mTrace.isOpen()) {
+        mTrace.write(pose.timestamp, m);
+    }
+    mutex_unlock(&mTraceLock);
     pBuffer->release();
-    env->CallVoidMethod(mObj, mOnBufferChanged, (jlong)pBuffer->timestamp(), m->status);
+    mPose.write(pose);
+
+    if (pose.status != 0) {
+        mPredictor.addPose(pose.matrix, pose.frameReceivedTime ? pose.frameReceivedTime : pose.deliveredTime);
+    } else {
+        mPredictor.reset();
+    }
+
+    mutex_lock(&mStatsLock);
+    if (pose.frameReceivedTime != 0) {
+        mLatency[STAGE_ENGINE_QUEUE].record(pose.processStartTime - pose.frameReceivedTime);
+    }
+    mLatency[STAGE_POSE].record(pose.processEndTime - pose.processStartTime);
+    mLatency[STAGE_DELIVERY].record(pose.deliveredTime - pose.processEndTime);
+    mutex_unlock(&mStatsLock);
+    env->CallVoidMethod(mObj, mOnBufferChanged, (jlong)pose.timestamp, pose.status);
+}
+
+bool ARCameraJniContext::readPose(jfloat viewMatrix[16], jlong *pTimestamp, jint *pStatus)
+{
+    uint32_t seq = mPose.read(&mDrawPose);
+    if (seq == 0) {
+        return false;
+    }
+    if (seq != mDrawSeq) {
+        mDrawSeq = seq;
+        mDrawReadTime = arx_monotonic_ns();
+    }
+    const CameraPose& pose = mDrawPose;
+    const float *matrix = pose.matrix;
+    float predicted[12];
+    int64_t lead = mPredictionLeadNs;
+    if (lead > 0 && pose.status != 0 &&
+        mPredictor.predict(arx_monotonic_ns() + lead, predicted)) {
+        matrix = predicted;
+    }
+    //row major 3x4 pose to column major 4x4 view matrix
+    for (uint32_t r = 0; r < 3; r++) {
+        for (uint32_t c = 0; c < 4; c++) {
+            viewMatrix[c*4 + r] = matrix[r*4 + c];
+        }
+    }
+    viewMatrix[3] = 0;
+    viewMatrix[7] = 0;
+    viewMatrix[11] = 0;
+    viewMatrix[15] = 1;
+    *pTimestamp = (jlong)pose.timestamp;
+    *pStatus = pose.status;
+    return true;
+}
+
+void ARCameraJniContext::setPredictionLead(int64_t leadNs)
+{
+    mPredictionLeadNs = leadNs;
+}
+
+bool ARCameraJniContext::setRecordFile(const char *fileName)
+{
+    bool ret = true;
+    mutex_lock(&mTraceLock);
+    if (mTrace.isOpen()) {
+        ARX_PRINT(ARX_ZONE_CLIENT, "Recorded %u poses", mTrace.count());
+        mTrace.close();
+    }
+    if (fileName != NULL) {
+        ret = mTrace.open(fileName);
+        if (!ret) {
+            ARX_PRINT(ARX_ZONE_ERROR, "Could not open pose trace %s!", fileName);
+        }
+    }
+    mutex_unlock(&mTraceLock);
+    return ret;
 }
 
 void ARCameraJniContext::reset()
@@ -142,6 +225,72 @@ void ARCameraJniContext::render(jlong ts)
 {
     ARXImageBufferMgr *mgr = mArx->getImageBufferMgr(BUFF_CAMOUT);
     mgr->render((uint64_t)ts);
+
+    //Only the first frame drawn with a given pose counts
+    if (mDrawSeq == mRecordedSeq || (uint64_t)ts != mDrawPose.timestamp) {
+        return;
+    }
+    uint64_t now = arx_monotonic_ns();
+    mutex_lock(&mStatsLock);
+    if (mRecordedSeq != 0 && mDrawSeq > mRecordedSeq + 1) {
+        mPosesNotDrawn += mDrawSeq - mRecordedSeq - 1;
+    }
+    mLatency[STAGE_RENDER_WAIT].record(mDrawReadTime - mDrawPose.deliveredTime);
+    mLatency[STAGE_DRAW].record(now - mDrawReadTime);
+    if (mDrawPose.frameReceivedTime != 0) {
+        mLatency[STAGE_TOTAL].record(now - mDrawPose.frameReceivedTime);
+    }
+    mutex_unlock(&mStatsLock);
+    mRecordedSeq = mDrawSeq;
+}
+
+void ARCameraJniContext::getLatency(int64_t values[NUM_STAGES*NUM_FIELDS])
+{
+    mutex_lock(&mStatsLock);
+    for (uint32_t i = 0; i < NUM_STAGES; i++) {
+        int64_t *v = &values[i*NUM_FIELDS];
+        v[FIELD_P50] = mLatency[i].percentileNs(50.0);
+        v[FIELD_P90] = mLatency[i].percentileNs(90.0);
+        v[FIELD_P99] = mLatency[i].percentileNs(99.0);
+        v[FIELD_MAX] = mLatency[i].maxNs();
+        v[FIELD_COUNT] = mLatency[i].count();
+    }
+    mutex_unlock(&mStatsLock);
+}
+
+void ARCameraJniContext::dumpLatency(char *buf, size_t size)
+{
+    static const char *names[NUM_STAGES] = {
+        "engine queue", "pose", "delivery", "render wait", "draw", "total"
+    };
+    size_t len = 0;
+    mutex_lock(&mStatsLock);
+    len += snprintf(buf + len, size - len,
+                    "%-12s %7s %8s %8s %8s %8s %8s %8s %8s (ms)\n",
+                    "stage", "count", "mean", "p50", "p90", "p99", "p99.9", "min", "max");
+    for (uint32_t i = 0; i < NUM_STAGES && len < size; i++) {
+        const ARXLatencyHistogram& h = mLatency[i];
+        len += snprintf(buf + len, size - len,
+                        "%-12s %7u %8.2f %8.2f %8.2f %8.2f %8.2f %8.2f %8.2f\n",
+                        names[i], h.count(), h.meanNs()/1e6,
+                        h.percentileNs(50.0)/1e6, h.percentileNs(90.0)/1e6,
+                        h.percentileNs(99.0)/1e6, h.percentileNs(99.9)/1e6,
+                        h.minNs()/1e6, h.maxNs()/1e6);
+    }
+    if (len < size) {
+        snprintf(buf + len, size - len, "poses not drawn: %u\n", mPosesNotDrawn);
+    }
+    mutex_unlock(&mStatsLock);
+}
+
+void ARCameraJniContext::resetLatency()
+{
+    mutex_lock(&mStatsLock);
+    for (uint32_t i = 0; i < NUM_STAGES; i++) {
+        mLatency[i].reset();
+    }
+    mPosesNotDrawn = 0;
+    mutex_unlock(&mStatsLock);
 }
 
 JNIEnv *ARCameraJniContext::getJNIEnv()
@@ -24,6 +24,11 @@
 #include <arx/ARXBufferListener.h>
 #include <arx/ARXProperties.h>
 
+#include <utils/ARXSeqLock.h>
+#include <utils/ARXLatency.h>
+#include <utils/ARXPosePredictor.h>
+#include <utils/ARXPoseTrace.h>
+
 #include <sosal/mutex.h>
 
 namespace tiarx {
@@ -36,9 +41,67 @@ public:
     ARCameraJniContext(JNIEnv *env, jobject obj);
     ~ARCameraJniContext();
 
-    bool setup(jfloatArray array, jobject surface);
+    bool setup(jobject surface);
     void reset();
+    /*!
+     * Copies the latest camera pose without locking, as a column major
+     * 4x4 view matrix. Called from the render thread.
+     * @return false if no pose was received yet.
+     */
+    bool readPose(jfloat viewMatrix[16], jlong *pTimestamp, jint *pStatus);
     void render(jlong ts);
+
+    /*!
+     * When leadNs > 0, readPose extrapolates the pose to the time it is read
+     * plus leadNs, i.e. the expected display time, instead of returning the
+     * last pose computed. 0 turns prediction off.
+     */
+    void setPredictionLead(int64_t leadNs);
+
+    /*!
+     * Starts recording the poses received into a pose trace, replacing any
+     * recording in progress. NULL stops recording.
+     */
+    bool setRecordFile(const char *fileName);
+
+    /*!
+     * Latency stages of a pose, from the camera frame reaching the engine to
+     * the matching preview frame being queued for display.
+     */
+    enum LatencyStage_e {
+        STAGE_ENGINE_QUEUE,     //!< frame received by the engine -> pose computation starts
+        STAGE_POSE,             //!< pose computation
+        STAGE_DELIVERY,         //!< pose ready in the daemon -> JNI callback
+        STAGE_RENDER_WAIT,      //!< JNI callback -> read by onDrawFrame
+        STAGE_DRAW,             //!< read by onDrawFrame -> preview frame rendered
+        STAGE_TOTAL,            //!< frame received by the engine -> preview frame rendered
+        NUM_STAGES
+    };
+
+    /*!
+     * Values reported per stage by getLatency, in this order.
+     */
+    enum LatencyField_e {
+        FIELD_P50,
+        FIELD_P90,
+        FIELD_P99,
+        FIELD_MAX,
+        FIELD_COUNT,
+        NUM_FIELDS
+    };
+
+    /*!
+     * Fills values with NUM_FIELDS entries per stage, times in nanoseconds.
+     */
+    void getLatency(int64_t values[NUM_STAGES*NUM_FIELDS]);
+
+    /*!
+     * Formats all the latency histograms as text into buf.
+     */
+    void dumpLatency(char *buf, size_t size);
+
+    void resetLatency();
+
     void onPropertyChanged(uint32_t property, int32_t value);
     void onBufferChanged(ARXFlatBuffer *pBuffer);
 
@@ -51,10 +114,41 @@ private:
     jmethodID mOnARXDeath;
     jmethodID mOnBufferChanged;
 
-    jfloatArray mFloatArray;
+    struct CameraPose {
+        float matrix[12];
+        uint64_t timestamp;
+        int32_t status;
+        int32_t reserved;
+        //Monotonic times in ns, see ARXCameraPoseMatrix
+        uint64_t frameReceivedTime;
+        uint64_t processStartTime;
+        uint64_t processEndTime;
+        uint64_t deliveredTime;
+    };
+
     ARAccelerator *mArx;
 
-    mutex_t mLock;
+    //Written by the ARX callback thread, read by the render thread
+    ARXSeqLock<CameraPose> mPose;
+
+    //Pose last read by the render thread, render thread only
+    CameraPose mDrawPose;
+    uint32_t mDrawSeq;
+    uint64_t mDrawReadTime;
+    uint32_t mRecordedSeq;
+
+    //Poses added by the callback thread, predicted by the render thread
+    ARXPosePredictor mPredictor;
+    volatile int64_t mPredictionLeadNs;
+
+    //Protects the trace writer, used by the callback thread
+    mutex_t mTraceLock;
+    ARXPoseTraceWriter mTrace;
+
+    //Protects the histograms, written by the callback and render threads
+    mutex_t mStatsLock;
+    ARXLatencyHistogram mLatency[NUM_STAGES];
+    uint32_t mPosesNotDrawn;
 };
 
 }
@@ -44,15 +44,13 @@ static ARCameraJniContext *getContext(JNIEnv *env, jobject thiz)
 
 /*!
  * Open and start ARX after configuring the buffer streams we are interested in.
- * @param jSurface a reference to the Surface where we will render the main camera stream.
- * @param jSurfaceTex a reference to the SurfaceTexture where we will render the secondary camera stream.
- * @param bitmap Bitmap object where the sobel output will be drawn
+ * @param surface a reference to the Surface where we will render the main camera stream.
  */
-static jboolean create(JNIEnv* env, jobject thiz, jfloatArray array, jobject surface)
+static jboolean create(JNIEnv* env, jobject thiz, jobject surface)
 {
     ARCameraJniContext *context = new ARCameraJniContext(env, thiz);
     if (context != NULL) {
-        if (context->setup(array, surface)) {
+        if (context->setup(surface)) {
             setContext(env, thiz, context);
             return (jboolean)true;
         }
@@ -91,11 +89,103 @@ static void render(JNIEnv* env, jobject thiz, jlong ts)
     }
 }
 
+/*!
+ * Sets how far ahead (ns) of the read time readPose extrapolates the pose, 0 to disable.
+ */
+static void setPredictionLead(JNIEnv* env, jobject thiz, jlong leadNs)
+{
+    ARCameraJniContext *context = getContext(env, thiz);
+    if (context != NULL) {
+        context->setPredictionLead(leadNs);
+    }
+}
+
+/*!
+ * Records the poses received into the given file, or stops recording if null.
+ */
+static jboolean setRecordFile(JNIEnv* env, jobject thiz, jstring fileName)
+{
+    ARCameraJniContext *context = getContext(env, thiz);
+    if (context == NULL) {
+        return (jboolean)false;
+    }
+    if (fileName == NULL) {
+        return (jboolean)context->setRecordFile(NULL);
+    }
+    const char *name = env->GetStringUTFChars(fileName, NULL);
+    bool ret = context->setRecordFile(name);
+    env->ReleaseStringUTFChars(fileName, name);
+    return (jboolean)ret;
+}
+
+/*!
+ * Copies the latest camera pose into viewMatrix (column major 4x4) and its
+ * timestamp into timestamp[0]. Never blocks on the ARX callback thread.
+ * @return the pose status, 0 if there is no pose yet.
+ */
+static jint readPose(JNIEnv* env, jobject thiz, jfloatArray viewMatrix, jlongArray timestamp)
+{
+    ARCameraJniContext *context = getContext(env, thiz);
+    if (context != NULL) {
+        jfloat m[16];
+        jlong ts;
+        jint status;
+        if (context->readPose(m, &ts, &status)) {
+            env->SetFloatArrayRegion(viewMatrix, 0, 16, m);
+            env->SetLongArrayRegion(timestamp, 0, 1, &ts);
+            return status;
+        }
+    }
+    return 0;
+}
+
+/*!
+ * Fills values with the p50, p90, p99, max (ns) and count of each latency stage.
+ */
+static void getLatency(JNIEnv* env, jobject thiz, jlongArray values)
+{
+    ARCameraJniContext *context = getContext(env, thiz);
+    const jsize size = ARCameraJniContext::NUM_STAGES*ARCameraJniContext::NUM_FIELDS;
+    if (context != NULL && env->GetArrayLength(values) >= size) {
+        int64_t v[size];
+        context->getLatency(v);
+        env->SetLongArrayRegion(values, 0, size, (jlong *)v);
+    }
+}
+
+/*!
+ * Returns a text table of all latency histograms.
+ */
+static jstring dumpLatency(JNIEnv* env, jobject thiz)
+{
+    ARCameraJniContext *context = getContext(env, thiz);
+    if (context == NULL) {
+        return NULL;
+    }
+    char buf[1024];
+    context->dumpLatency(buf, sizeof(buf));
+    return env->NewStringUTF(buf);
+}
+
+static void resetLatency(JNIEnv* env, jobject thiz)
+{
+    ARCameraJniContext *context = getContext(env, thiz);
+    if (context != NULL) {
+        context->resetLatency();
+    }
+}
+
 static const JNINativeMethod g_methods[] = {
-    { "create",          "([FLandroid/view/Surface;)Z", (void*)create },
+    { "create",          "(Landroid/view/Surface;)Z",   (void*)create },
     { "destroy",         "()V",                         (void*)destroy },
     { "reset",           "()V",                         (void*)reset },
-    { "renderPreview",   "(J)V",                        (void*)render }
+    { "renderPreview",   "(J)V",                        (void*)render },
+    { "readPose",        "([F[J)I",                     (void*)readPose },
+    { "setPredictionLead", "(J)V",                      (void*)setPredictionLead },
+    { "setRecordFile",   "(Ljava/lang/String;)Z",       (void*)setRecordFile },
+    { "getLatency",      "([J)V",                       (void*)getLatency },
+    { "dumpLatency",     "()Ljava/lang/String;",        (void*)dumpLatency },
+    { "resetLatency",    "()V",                         (void*)resetLatency }
 };
 
 /////////////////////////////////////////////////////////////////////////////////////////////////
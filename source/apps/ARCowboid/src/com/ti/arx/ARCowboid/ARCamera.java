@@ -16,31 +16,44 @@
 
 package com.ti.arx.ARCowboid;
 
+import java.io.File;
+import java.io.IOException;
+
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
 import android.content.Context;
 import android.opengl.GLSurfaceView;
+import android.util.Log;
 import android.view.Surface;
 
+import com.ti.arx.math.Mat4;
+import com.ti.arx.posetrace.PoseReplayer;
+import com.ti.arx.posetrace.PoseTrace;
+
 public class ARCamera implements GLSurfaceView.Renderer {
 
     public interface Callback {
         public void onARCameraDeath();
         public void onFPSChange(double fps);
+        /**
+         * Called from the render thread every LATENCY_REPORT_FRAMES frames
+         * with the pose latency percentiles measured so far.
+         */
+        public void onLatencyChange(PoseLatency latency);
     }
     
     public ARCamera(Context context, int width, int height) {
-        mCamPoseMatrix = new float[12];
         mProjMatrix = new float[16];
         mCamViewMatrix = new float[16];
+        mModelViewMatrix = new float[16];
+        mPoseTimestamp = new long[1];
+        mReplayPose = new float[12];
+        mLatencyValues = new long[PoseLatency.NUM_STAGES*PoseLatency.NUM_FIELDS];
         mCube = new TexturedCube(context.getResources(), R.drawable.cowboid);
         
         mCamWidth = width;
         mCamHeight = height;
-        
-        mDraw = false;
-        mTimestamp = 0;
     }
     
     public void setGLView(GLSurfaceView view) {
@@ -48,13 +61,76 @@ public class ARCamera implements GLSurfaceView.Renderer {
     }
 
     public boolean start(Surface surf) {
-        return create(mCamPoseMatrix, surf);
+        if (!create(surf)) {
+            return false;
+        }
+        setPredictionLead(mPredictionLeadNs);
+        return true;
+    }
+
+    /**
+     * Draws the cube with the pose extrapolated leadNs after it is read,
+     * i.e. to the expected display time, hiding part of the tracking
+     * latency. The preview frame stays the one the pose was computed on,
+     * so this is meant for see-through displays. 0 (the default) draws the
+     * last pose computed.
+     */
+    public void setPredictionLeadNs(long leadNs) {
+        mPredictionLeadNs = leadNs;
+        setPredictionLead(leadNs);
     }
 
     public void stop() {
+        if (mReplayer != null) {
+            stopReplay();
+            return;
+        }
         destroy();
     }    
 
+    /**
+     * Records the poses computed from now on into a pose trace file, until
+     * stopRecording or stop. Must be called after start.
+     */
+    public boolean startRecording(String fileName) {
+        return setRecordFile(fileName);
+    }
+
+    public void stopRecording() {
+        setRecordFile(null);
+    }
+
+    /**
+     * Drives the renderer from a recorded pose trace instead of ARX, which
+     * must not be started. No camera preview is shown and the native
+     * library is not used.
+     * @param speed 1 for the recorded rate, 2 for twice as fast, etc.
+     * 0 delivers the poses back to back, stopReplay then logs the throughput.
+     */
+    public boolean startReplay(File trace, float speed) {
+        stopReplay();
+        try {
+            PoseReplayer replayer = new PoseReplayer(new PoseTrace(trace), new ReplayListener());
+            replayer.setSpeed(speed);
+            replayer.setLoop(true);
+            mReplayer = replayer;
+            replayer.start();
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Could not replay " + trace + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    public void stopReplay() {
+        PoseReplayer replayer = mReplayer;
+        if (replayer != null) {
+            replayer.stop();
+            Log.i(TAG, "Pose replay: " + replayer);
+            mReplayer = null;
+        }
+    }
+
     public void setCallback(Callback cb) {
         mListener = cb;        
     }
@@ -63,28 +139,36 @@ public class ARCamera implements GLSurfaceView.Renderer {
     public void onDrawFrame(GL10 gl) {
         gl.glClear(GL10.GL_COLOR_BUFFER_BIT | GL10.GL_DEPTH_BUFFER_BIT);
 
-        if (mDraw) {        
+        // The matrix and timestamp always come from the same pose
+        boolean replay = mReplayer != null;
+        int status = replay ? readReplayPose(mCamViewMatrix, mPoseTimestamp)
+                            : readPose(mCamViewMatrix, mPoseTimestamp);
+        if (status != 0) {
             gl.glMatrixMode(GL10.GL_PROJECTION);
             gl.glLoadIdentity();
             gl.glLoadMatrixf(mProjMatrix, 0);
     
+            // flip * view * cube placement
+            float[] mv = mModelViewMatrix;
+            System.arraycopy(mCamViewMatrix, 0, mv, 0, 16);
+            Mat4.preScale(mv, 0, 1f, -1f, -1f);
+            Mat4.scale(mv, 0, 0.5f, 0.5f, 0.5f);
+            Mat4.translate(mv, 0, 0.0f, 0.0f, 1.0f);
+
             gl.glMatrixMode(GL10.GL_MODELVIEW);
-            gl.glLoadIdentity();
-            gl.glScalef(1f, -1f, -1f);
-    
-            gl.glMultMatrixf(mCamViewMatrix, 0);
-            
-            gl.glPushMatrix();
-            gl.glScalef(0.5f, 0.5f, 0.5f);
-            gl.glTranslatef(0.0f, 0.0f, 1.0f);
+            gl.glLoadMatrixf(mv, 0);
             mCube.draw(gl);
-            gl.glPopMatrix(); 
         }
             
-        renderPreview(mTimestamp);
+        if (!replay) {
+            renderPreview(mPoseTimestamp[0]);
+        }
         
         stopPerf();
         startPerf();
+        if (!replay) {
+            reportLatency();
+        }
     }
 
     @Override
@@ -99,22 +183,8 @@ public class ARCamera implements GLSurfaceView.Renderer {
 
         //original k matrix is for 320x240 images.
         float k_scale = (float)width/320.0f;
-        mProjMatrix[0] = k_scale*2*K[0]/width;
-        mProjMatrix[4] = k_scale*K[1];
-        mProjMatrix[8] = k_scale*2*(K[2]/width) - 1;
-        mProjMatrix[12] = 0;
-        mProjMatrix[1] = k_scale*K[3];
-        mProjMatrix[5] = k_scale*2*K[4]/height;
-        mProjMatrix[9] = k_scale*2*(K[5]/height) - 1;
-        mProjMatrix[13] = 0;
-        mProjMatrix[2] = k_scale*K[6];
-        mProjMatrix[6] = k_scale*K[7];
-        mProjMatrix[10] = -(FRUSTUM_NEAR_Z + FRUSTUM_FAR_Z)/(FRUSTUM_FAR_Z - FRUSTUM_NEAR_Z);
-        mProjMatrix[14] = -(2*FRUSTUM_NEAR_Z*FRUSTUM_FAR_Z)/(FRUSTUM_FAR_Z - FRUSTUM_NEAR_Z);
-        mProjMatrix[3] = 0;
-        mProjMatrix[7] = 0;
-        mProjMatrix[11] = -1;
-        mProjMatrix[15] = 0;     
+        Mat4.frustumFromIntrinsics(mProjMatrix, 0, K, 0, k_scale, width, height,
+                                   FRUSTUM_NEAR_Z, FRUSTUM_FAR_Z);
         
         resetPerf();
         startPerf();
@@ -124,28 +194,45 @@ public class ARCamera implements GLSurfaceView.Renderer {
     public void onSurfaceCreated(GL10 gl, EGLConfig config) {        
     }    
     
+    /*!
+     * Called from the ARX callback thread when a new pose is available.
+     * The pose itself is read by the render thread through readPose.
+     */
     private void onCamPoseUpdate(long timestamp, int status) {
-        mCamViewMatrix[0] = mCamPoseMatrix[0];
-        mCamViewMatrix[4] = mCamPoseMatrix[1];
-        mCamViewMatrix[8] = mCamPoseMatrix[2];
-        mCamViewMatrix[12] = mCamPoseMatrix[3];
-        mCamViewMatrix[1] = mCamPoseMatrix[4];
-        mCamViewMatrix[5] = mCamPoseMatrix[5];
-        mCamViewMatrix[9] = mCamPoseMatrix[6];
-        mCamViewMatrix[13] = mCamPoseMatrix[7];
-        mCamViewMatrix[2] = mCamPoseMatrix[8];
-        mCamViewMatrix[6] = mCamPoseMatrix[9];
-        mCamViewMatrix[10] = mCamPoseMatrix[10];
-        mCamViewMatrix[14] = mCamPoseMatrix[11];
-        mCamViewMatrix[3] = 0;
-        mCamViewMatrix[7] = 0;
-        mCamViewMatrix[11] = 0;
-        mCamViewMatrix[15] = 1;
-        mTimestamp = timestamp;
-        mDraw = status != 0; 
         mView.requestRender();
     }
 
+    /**
+     * Same as readPose, for the pose last delivered by the replayer.
+     */
+    private int readReplayPose(float[] viewMatrix, long[] timestamp) {
+        synchronized (mReplayPose) {
+            if (mReplayStatus == 0) return 0;
+            Mat4.fromPose(viewMatrix, 0, mReplayPose, 0);
+            timestamp[0] = mReplayTimestamp;
+            return mReplayStatus;
+        }
+    }
+
+    private class ReplayListener implements PoseReplayer.Listener {
+
+        @Override
+        public void onCameraPose(long timestamp, int status, float[] matrix) {
+            synchronized (mReplayPose) {
+                System.arraycopy(matrix, 0, mReplayPose, 0, 12);
+                mReplayTimestamp = timestamp;
+                mReplayStatus = status;
+            }
+            onCamPoseUpdate(timestamp, status);
+        }
+
+        @Override
+        public void onProjectorPose(int status, float[] viewMatrix, float x, float y) {}
+
+        @Override
+        public void onReplayDone(PoseReplayer replayer) {}
+    }
+
     private void onARXDeath() {
         if (mListener != null) {
             mListener.onARCameraDeath();
@@ -175,30 +262,70 @@ public class ARCamera implements GLSurfaceView.Renderer {
         mDurationSum = 0;
         mFramesRendered = 0;
     }
+
+    private void reportLatency() {
+        if (++mLatencyFrames < LATENCY_REPORT_FRAMES) return;
+        mLatencyFrames = 0;
+        if (mListener != null) {
+            getLatency(mLatencyValues);
+            mListener.onLatencyChange(new PoseLatency(mLatencyValues));
+        }
+    }
     
     public native void reset();
-    private native boolean create(float[] viewMatrix, Surface surface);
+    private native boolean create(Surface surface);
     private native void destroy();
     private native void renderPreview(long timestamp);
+    /*!
+     * Copies the latest pose as a column major view matrix and its timestamp
+     * into timestamp[0], without locking.
+     * @return the pose status, 0 if there is no pose yet.
+     */
+    private native int readPose(float[] viewMatrix, long[] timestamp);
+    private native void getLatency(long[] values);
+    private native void setPredictionLead(long leadNs);
+    private native boolean setRecordFile(String fileName);
+
+    /**
+     * Returns a text table of the latency of each pipeline stage (count,
+     * mean, percentiles, min, max), or null if the camera is not started.
+     */
+    public native String dumpLatency();
+
+    /**
+     * Clears the latency histograms.
+     */
+    public native void resetLatency();
     
     private int mCamWidth;
     private int mCamHeight;
-    private boolean mDraw;
-    private long mTimestamp;
     
-    private float[] mCamPoseMatrix;
+    // Render thread only
     private float[] mProjMatrix;
     private float[] mCamViewMatrix;
+    private float[] mModelViewMatrix;
+    private long[] mPoseTimestamp;
     
     private GLSurfaceView mView;
     private TexturedCube mCube;
     private Callback mListener;
+    private long mPredictionLeadNs;
+
+    // Set while replaying a pose trace, the pose is guarded by mReplayPose
+    private volatile PoseReplayer mReplayer;
+    private float[] mReplayPose;
+    private long mReplayTimestamp;
+    private int mReplayStatus;
     
     private long mStartTime;
     private int mFramesRendered;
     private long mDurationSum;
     private static final int MAXFRAMES = 10; 
 
+    private long[] mLatencyValues;
+    private int mLatencyFrames;
+    private static final int LATENCY_REPORT_FRAMES = 300;
+
     //Camera Intrinsic parameter matrix (12MP SONY)
     private static final float[] K = { 267.27434f,        0.00f,   158.823f,
                                             0.00f, 269.2575423f, 122.68925f,
@@ -211,6 +338,11 @@ public class ARCamera implements GLSurfaceView.Renderer {
     private int context;
     
     static {
-        System.loadLibrary("arcamera_jni");
+        try {
+            System.loadLibrary("arcamera_jni");
+        } catch (UnsatisfiedLinkError e) {
+            // Pose trace replay still works without it
+            Log.w(TAG, "Could not load arcamera_jni: " + e.getMessage());
+        }
     }
 }
@@ -16,6 +16,8 @@
 
 package com.ti.arx.ARCowboid;
 
+import java.io.File;
+
 import android.app.Activity;
 import android.graphics.PixelFormat;
 import android.opengl.GLSurfaceView;
@@ -40,6 +42,10 @@ public class ARCowboidActivity extends Activity implements SurfaceHolder.Callbac
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
+        mReplayFile = getIntent().getStringExtra(EXTRA_REPLAY_TRACE);
+        mReplaySpeed = getIntent().getFloatExtra(EXTRA_REPLAY_SPEED, 1.0f);
+        mRecordFile = getIntent().getStringExtra(EXTRA_RECORD_TRACE);
+
         int w = 1280;
         int h = 960;
         mARCam = new ARCamera(this, w, h);
@@ -81,24 +87,44 @@ public class ARCowboidActivity extends Activity implements SurfaceHolder.Callbac
     protected void onResume() {
         super.onResume();
         if (mSurface != null) {
-            boolean started = mARCam.start(mSurface);
-            if (!started) {
-                finish();
-            }
+            startCamera();
         }
     }
 
     @Override
     protected void onPause() {
         super.onPause();
+        if (mReplayFile == null) {
+            String latency = mARCam.dumpLatency();
+            if (latency != null) {
+                Log.i(TAG, "Pose latency:\n" + latency);
+            }
+        }
         mARCam.stop();
     }
 
     public void surfaceCreated(SurfaceHolder holder) {
         mSurface = holder.getSurface();
-        boolean started = mARCam.start(mSurface);
-        if (!started) {
+        startCamera();
+    }
+
+    /**
+     * Starts ARX, or the pose trace replay when launched with
+     * EXTRA_REPLAY_TRACE.
+     */
+    private void startCamera() {
+        if (mReplayFile != null) {
+            if (!mARCam.startReplay(new File(mReplayFile), mReplaySpeed)) {
+                finish();
+            }
+            return;
+        }
+        if (!mARCam.start(mSurface)) {
             finish();
+            return;
+        }
+        if (mRecordFile != null && !mARCam.startRecording(mRecordFile)) {
+            Log.e(TAG, "Could not record poses to " + mRecordFile);
         }
     }
 
@@ -134,6 +160,10 @@ public class ARCowboidActivity extends Activity implements SurfaceHolder.Callbac
         runOnUiThread(r);
     }
 
+    public void onLatencyChange(PoseLatency latency) {
+        Log.d(TAG, "Pose latency: " + latency);
+    }
+
     private class TrackerResetOnClick implements OnClickListener {
 
         @Override
@@ -147,6 +177,17 @@ public class ARCowboidActivity extends Activity implements SurfaceHolder.Callbac
 
     private static final String TAG = "ARCowboid";
     private static final String FPSLABEL = "FPS: ";
+
+    /** Path of a pose trace to record while running */
+    public static final String EXTRA_RECORD_TRACE = "com.ti.arx.ARCowboid.RECORD_TRACE";
+    /** Path of a pose trace to replay instead of running ARX */
+    public static final String EXTRA_REPLAY_TRACE = "com.ti.arx.ARCowboid.REPLAY_TRACE";
+    /** Replay rate relative to the recorded one, float */
+    public static final String EXTRA_REPLAY_SPEED = "com.ti.arx.ARCowboid.REPLAY_SPEED";
+
+    private String mRecordFile;
+    private String mReplayFile;
+    private float mReplaySpeed;
     private ARLayout mArLayout;
     private SurfaceView mCamView;
     private Surface mSurface;
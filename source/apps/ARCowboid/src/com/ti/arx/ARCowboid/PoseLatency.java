@@ -0,0 +1,87 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ti.arx.ARCowboid;
+
+/**
+ * Snapshot of the pose latency histograms, per pipeline stage. Times are in
+ * nanoseconds and cover all poses since the camera started or since
+ * ARCamera.resetLatency was called.
+ */
+public class PoseLatency {
+
+    /** Camera frame received by the engine until pose computation starts */
+    public static final int STAGE_ENGINE_QUEUE = 0;
+    /** Pose computation in the engine */
+    public static final int STAGE_POSE = 1;
+    /** Pose ready in the daemon until the JNI callback */
+    public static final int STAGE_DELIVERY = 2;
+    /** JNI callback until the pose is read by onDrawFrame */
+    public static final int STAGE_RENDER_WAIT = 3;
+    /** Pose read by onDrawFrame until the preview frame is rendered */
+    public static final int STAGE_DRAW = 4;
+    /** Camera frame received by the engine until the preview frame is rendered */
+    public static final int STAGE_TOTAL = 5;
+    public static final int NUM_STAGES = 6;
+
+    public static final String[] STAGE_NAMES = {
+        "engine queue", "pose", "delivery", "render wait", "draw", "total"
+    };
+
+    PoseLatency(long[] values) {
+        mValues = values.clone();
+    }
+
+    public long getP50Ns(int stage) {
+        return mValues[stage*NUM_FIELDS + FIELD_P50];
+    }
+
+    public long getP90Ns(int stage) {
+        return mValues[stage*NUM_FIELDS + FIELD_P90];
+    }
+
+    public long getP99Ns(int stage) {
+        return mValues[stage*NUM_FIELDS + FIELD_P99];
+    }
+
+    public long getMaxNs(int stage) {
+        return mValues[stage*NUM_FIELDS + FIELD_MAX];
+    }
+
+    public long getCount(int stage) {
+        return mValues[stage*NUM_FIELDS + FIELD_COUNT];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < NUM_STAGES; i++) {
+            sb.append(String.format("%s p50 %.1f p99 %.1f max %.1f ms; ", STAGE_NAMES[i],
+                      getP50Ns(i)/1e6, getP99Ns(i)/1e6, getMaxNs(i)/1e6));
+        }
+        return sb.toString();
+    }
+
+    private long[] mValues;
+
+    // Layout of the values filled by the native code, per stage
+    static final int FIELD_P50 = 0;
+    static final int FIELD_P90 = 1;
+    static final int FIELD_P99 = 2;
+    static final int FIELD_MAX = 3;
+    static final int FIELD_COUNT = 4;
+    static final int NUM_FIELDS = 5;
+}
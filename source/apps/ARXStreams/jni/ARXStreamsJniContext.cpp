@@ -16,8 +16,11 @@
 
 #include "ARXStreamsJniContext.h"
 
+#include <string.h>
+
 #include <arx/ARXJniUtil.h>
 #include <arx/ARXBufferTypes.h>
+#include <utils/ARXConvert.h>
 
 using namespace tiarx;
 
@@ -26,34 +29,65 @@ using namespace tiarx;
 ARXStreamsJniContext::ARXStreamsJniContext(JavaVM *vm, JNIEnv *env, jobject callerInstance)
 {
     pthread_mutex_init(&mBmpLock, NULL);
+    pthread_mutex_init(&mFrameLock, NULL);
     mVm = vm;
     mCallerInstance = env->NewGlobalRef(callerInstance);
     jclass cls = env->GetObjectClass(callerInstance);
     mOnARXDeath = env->GetMethodID(cls, "onARXDeath", "()V");
     mOnBufferChanged = env->GetMethodID(cls, "onBufferChanged", "()V");
-    mBitmap = NULL;
+    mOnSobelFrame = env->GetMethodID(cls, "onSobelFrame", "(Ljava/nio/ByteBuffer;IIIJI)V");
+    memset(mBitmaps, 0, sizeof(mBitmaps));
+    mBackIndex = 1;
+    mFramePending = false;
+    mFramesConsumed = 0;
+    mFramesCoalesced = 0;
+    mFramesDropped = 0;
+    mArx = NULL;
+    mDirect = false;
+    mNumDirectBuffers = 0;
+    memset(mDirectBuffers, 0, sizeof(mDirectBuffers));
+    memset(mHeldFrames, 0, sizeof(mHeldFrames));
+    mConverter = new ARXConverter(CONVERTER_THREADS);
 }
 
 ARXStreamsJniContext::~ARXStreamsJniContext()
 {
+    //Return any frames Java did not release yet
+    pthread_mutex_lock(&mFrameLock);
+    for (uint32_t i = 0; i < MAX_DIRECT_BUFFERS; i++) {
+        if (mHeldFrames[i]) {
+            mHeldFrames[i]->release();
+            mHeldFrames[i] = NULL;
+        }
+    }
+    pthread_mutex_unlock(&mFrameLock);
+
     if (mArx) {
         mArx->destroy();
     }
     //A callback may be currently running, acquire mutex
-    //before releasing reference to the bitmap
+    //before releasing reference to the bitmaps
     pthread_mutex_lock(&mBmpLock);
-    if (mBitmap) {
-        JNIEnv *env = getJNIEnv();
-        env->DeleteGlobalRef(mBitmap);
+    for (uint32_t i = 0; i < NUM_BITMAPS; i++) {
+        if (mBitmaps[i]) {
+            JNIEnv *env = getJNIEnv();
+            env->DeleteGlobalRef(mBitmaps[i]);
+        }
     }
     pthread_mutex_unlock(&mBmpLock);
 
     pthread_mutex_destroy(&mBmpLock);
+    delete mConverter;
     JNIEnv *env = getJNIEnv();
+    for (uint32_t i = 0; i < mNumDirectBuffers; i++) {
+        env->DeleteGlobalRef(mDirectBuffers[i].buffer);
+    }
+    pthread_mutex_destroy(&mFrameLock);
     env->DeleteGlobalRef(mCallerInstance);
 }
 
-bool ARXStreamsJniContext::setup(ARAccelerator *arx, jobject jSurface, jobject jSurfaceTex, jobject bitmap)
+bool ARXStreamsJniContext::setup(ARAccelerator *arx, jobject jSurface, jobject jSurfaceTex,
+                                 jobject bitmap0, jobject bitmap1)
 {
     JNIEnv *env = getJNIEnv();
     /*********************************************************************
@@ -114,11 +148,29 @@ bool ARXStreamsJniContext::setup(ARAccelerator *arx, jobject jSurface, jobject j
         // Register for "buffer changed" notifications so that we can copy the
         // Sobel image to our Java bitmap (our context will handle this).
         sobelMgr->registerClient(this);
-        int ret = AndroidBitmap_getInfo(env, bitmap, &mBmpInfo);
-        if (ret < 0 || mBmpInfo.format != ANDROID_BITMAP_FORMAT_RGBA_8888) {
-            return false;
+        if (bitmap0 == NULL || bitmap1 == NULL) {
+            // Hand the Sobel buffers to Java directly instead.
+            if (mOnSobelFrame == NULL) {
+                LOGE("onSobelFrame is not implemented!");
+                return false;
+            }
+            mDirect = true;
+        } else {
+            // Both bitmaps must have the same geometry
+            AndroidBitmapInfo info;
+            int ret = AndroidBitmap_getInfo(env, bitmap0, &mBmpInfo);
+            if (ret < 0 || mBmpInfo.format != ANDROID_BITMAP_FORMAT_RGBA_8888) {
+                return false;
+            }
+            ret = AndroidBitmap_getInfo(env, bitmap1, &info);
+            if (ret < 0 || info.format != mBmpInfo.format || info.width != mBmpInfo.width ||
+                info.height != mBmpInfo.height || info.stride != mBmpInfo.stride) {
+                LOGE("Sobel bitmaps do not match!");
+                return false;
+            }
+            mBitmaps[0] = env->NewGlobalRef(bitmap0);
+            mBitmaps[1] = env->NewGlobalRef(bitmap1);
         }
-        mBitmap = env->NewGlobalRef(bitmap);
     } else {
         LOGE("Could not obtain sobel buffer manager!");
         return false;
@@ -143,41 +195,170 @@ void ARXStreamsJniContext::onPropertyChanged(uint32_t property, int32_t value) {
  * Called by ARX when a buffer's contents change.
  *
  * In this application, we use this to listen for changes to the Sobel buffer.
- * When a buffer's contents are updated, we copy them to our Java bitmap.
+ * When a buffer's contents are updated, we copy them to the Java bitmap that
+ * is not displayed and notify Java if it has consumed the previous frame.
  * @param pImage the buffer object that has changed.
  * @see tiarx::ARXImageBufferListener
  */
 void ARXStreamsJniContext::onBufferChanged(ARXImageBuffer *pImage) {
     JNIEnv *env = getJNIEnv();
-    if (pImage->id() == BUFF_SOBEL_3X3) {
+    if (mDirect && pImage->id() == BUFF_SOBEL_3X3) {
+        deliverDirect(env, pImage);
+        return;
+    }
+    bool notify = false;
+    // Harris scores are signed, the other 16-bit streams are not
+    bool isSigned = (pImage->id() == BUFF_HARRIS_SCORE);
+    if (pImage->id() == BUFF_SOBEL_3X3 || isSigned) {
 
-        pthread_mutex_lock(&mBmpLock);
+        // Never wait for Java swapping the bitmaps, skip the frame instead
+        if (pthread_mutex_trylock(&mBmpLock) != 0) {
+            // Counted without the lock, which is what we failed to get
+            __sync_fetch_and_add(&mFramesDropped, 1);
+            pImage->release();
+            return;
+        }
         uint32_t w = mBmpInfo.width;
         uint32_t h = mBmpInfo.height;
         uint32_t srcStride = pImage->stride(); // stride for the Sobel image from ARX
         uint32_t dstStride = mBmpInfo.stride; // stride for our Java bitmap
         uint8_t *pSrc = (uint8_t *)pImage->data(0); // Sobel image data from ARX
         uint8_t *pDst = NULL;
+        jobject bitmap = mBitmaps[mBackIndex];
 
-        int ret = AndroidBitmap_lockPixels(env, mBitmap, (void **)&pDst);
+        int ret = AndroidBitmap_lockPixels(env, bitmap, (void **)&pDst);
         if (ret == 0 && pDst != NULL) {
-            for (uint32_t i = 0; i < h; i++) {
-                for (uint32_t j = 0, k = 0; j < w; j++, k += 4) {
-                    pDst[k] = pSrc[j]; //R
-                    pDst[k+1] = pSrc[j]; //G
-                    pDst[k+2] = pSrc[j]; //B
-                    pDst[k+3] = 255; //A
-                }
-                pSrc += srcStride;
-                pDst += dstStride;
+            if (pImage->bpp() == 2) {
+                // 16-bit streams are stretched over their own range
+                ARXNormalization norm;
+                norm.mode = NORM_AUTO;
+                norm.shift = 0;
+                norm.min = 0;
+                norm.max = 0;
+                norm.isSigned = isSigned;
+                mConverter->gray16ToRGBA((uint16_t *)pSrc, srcStride, pDst, dstStride, w, h, norm);
+            } else {
+                mConverter->gray8ToRGBA(pSrc, srcStride, pDst, dstStride, w, h);
             }
-        }
+            AndroidBitmap_unlockPixels(env, bitmap);
 
-        AndroidBitmap_unlockPixels(env, mBitmap);
+            // Latest frame wins: Java is only notified once per frame it consumes
+            if (mFramePending) {
+                mFramesCoalesced++;
+            } else {
+                mFramePending = true;
+                notify = true;
+            }
+        }
         pthread_mutex_unlock(&mBmpLock);
     }
     pImage->release();
-    env->CallVoidMethod(mCallerInstance, mOnBufferChanged);
+    if (notify) {
+        env->CallVoidMethod(mCallerInstance, mOnBufferChanged);
+    }
+}
+
+jint ARXStreamsJniContext::consumeFrame()
+{
+    jint index = -1;
+    pthread_mutex_lock(&mBmpLock);
+    if (mFramePending) {
+        index = mBackIndex;
+        mBackIndex = (mBackIndex + 1) % NUM_BITMAPS;
+        mFramePending = false;
+        mFramesConsumed++;
+    }
+    pthread_mutex_unlock(&mBmpLock);
+    return index;
+}
+
+void ARXStreamsJniContext::getFrameCounts(uint32_t *pConsumed, uint32_t *pCoalesced, uint32_t *pDropped)
+{
+    pthread_mutex_lock(&mBmpLock);
+    *pConsumed = mFramesConsumed;
+    *pCoalesced = mFramesCoalesced;
+    *pDropped = __sync_fetch_and_add(&mFramesDropped, 0);
+    pthread_mutex_unlock(&mBmpLock);
+}
+
+jobject ARXStreamsJniContext::getDirectBuffer(JNIEnv *env, ARXImageBuffer *pImage)
+{
+    void *data = pImage->data(0);
+    for (uint32_t i = 0; i < mNumDirectBuffers; i++) {
+        if (mDirectBuffers[i].data == data) {
+            return mDirectBuffers[i].buffer;
+        }
+    }
+    if (mNumDirectBuffers == MAX_DIRECT_BUFFERS) {
+        LOGE("Too many Sobel buffers to wrap!");
+        return NULL;
+    }
+
+    // Covers the first plane up to the last pixel of the last line
+    jlong capacity = (jlong)pImage->stride()*(pImage->h() - 1) + pImage->w()*pImage->bpp();
+    jobject buf = env->NewDirectByteBuffer(data, capacity);
+    if (buf == NULL) {
+        LOGE("Could not create direct ByteBuffer!");
+        return NULL;
+    }
+    jclass cls = env->GetObjectClass(buf);
+    jmethodID asReadOnly = env->GetMethodID(cls, "asReadOnlyBuffer", "()Ljava/nio/ByteBuffer;");
+    jobject roBuf = env->CallObjectMethod(buf, asReadOnly);
+    env->DeleteLocalRef(buf);
+    env->DeleteLocalRef(cls);
+    if (roBuf == NULL) {
+        return NULL;
+    }
+
+    mDirectBuffers[mNumDirectBuffers].data = data;
+    mDirectBuffers[mNumDirectBuffers].buffer = env->NewGlobalRef(roBuf);
+    env->DeleteLocalRef(roBuf);
+    return mDirectBuffers[mNumDirectBuffers++].buffer;
+}
+
+void ARXStreamsJniContext::deliverDirect(JNIEnv *env, ARXImageBuffer *pImage)
+{
+    pthread_mutex_lock(&mFrameLock);
+    jobject buf = getDirectBuffer(env, pImage);
+    uint32_t slot = MAX_DIRECT_BUFFERS;
+    for (uint32_t i = 0; buf != NULL && i < MAX_DIRECT_BUFFERS; i++) {
+        if (mHeldFrames[i] == NULL) {
+            mHeldFrames[i] = pImage;
+            slot = i;
+            break;
+        }
+    }
+    pthread_mutex_unlock(&mFrameLock);
+
+    if (slot == MAX_DIRECT_BUFFERS) {
+        pImage->release();
+        return;
+    }
+    // The handle is the buffer pointer, validated against mHeldFrames on release
+    env->CallVoidMethod(mCallerInstance, mOnSobelFrame, buf,
+                        (jint)pImage->w(), (jint)pImage->h(), (jint)pImage->stride(),
+                        (jlong)pImage->timestamp(), (jint)pImage);
+}
+
+void ARXStreamsJniContext::releaseFrame(jint handle)
+{
+    ARXImageBuffer *pImage = reinterpret_cast<ARXImageBuffer *>(handle);
+    bool held = false;
+    pthread_mutex_lock(&mFrameLock);
+    for (uint32_t i = 0; i < MAX_DIRECT_BUFFERS; i++) {
+        if (mHeldFrames[i] != NULL && mHeldFrames[i] == pImage) {
+            mHeldFrames[i] = NULL;
+            held = true;
+            break;
+        }
+    }
+    if (held) {
+        pImage->release();
+    }
+    pthread_mutex_unlock(&mFrameLock);
+    if (!held) {
+        LOGE("Released a frame that is not held: 0x%08x", handle);
+    }
 }
 
 JNIEnv *ARXStreamsJniContext::getJNIEnv()
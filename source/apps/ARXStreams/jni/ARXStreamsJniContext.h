@@ -26,6 +26,10 @@
 #include <arx/ARXBufferListener.h>
 #include <arx/ARXProperties.h>
 
+namespace tiarx {
+class ARXConverter;
+}
+
 /*!
  * This class provides a context through which the ARXSample Java
  * application can control the TI Augmented Reality Accelerator
@@ -49,9 +53,35 @@ public:
 
     /*!
      * Sets up the ARX buffer managers.
+     * Sobel frames are copied to the two bitmaps in turn, see consumeFrame.
+     * If the bitmaps are NULL, Sobel frames are delivered to Java as read-only direct
+     * ByteBuffers wrapping the ARX buffer instead of being copied.
      * @return true if succesful
      */
-    bool setup(tiarx::ARAccelerator *arx, jobject jSurface, jobject jSurfaceTex, jobject bitmap);
+    bool setup(tiarx::ARAccelerator *arx, jobject jSurface, jobject jSurfaceTex,
+               jobject bitmap0, jobject bitmap1);
+
+    /*!
+     * Takes the latest Sobel frame copied since the last call. The bitmap
+     * returned must be displayed until the next call, it will not be written
+     * to in the meantime.
+     * @return the index of the bitmap holding the frame, or -1 if no new frame
+     * is available.
+     */
+    jint consumeFrame();
+
+    /*!
+     * Reports the number of bitmap frames consumed by Java, overwritten by a newer
+     * frame before Java consumed them, and dropped because the bitmaps were
+     * being swapped.
+     */
+    void getFrameCounts(uint32_t *pConsumed, uint32_t *pCoalesced, uint32_t *pDropped);
+
+    /*!
+     * Returns a Sobel frame delivered through a direct ByteBuffer to ARX.
+     * @param handle the handle passed to Java along with the frame.
+     */
+    void releaseFrame(jint handle);
 
     /*!
      * Called by ARX when a property changes values (part of the
@@ -64,7 +94,8 @@ public:
      * Called by ARX when a buffer's contents change.
      *
      * In this application, we use this to listen for changes to the Sobel buffer.
-     * When a buffer's contents are updated, we copy them to our Java bitmap.
+     * When a buffer's contents are updated, we copy them to the Java bitmap that
+     * is not displayed and notify Java if it has consumed the previous frame.
      * @param pImage the buffer object that has changed.
      * @see tiarx::ARXImageBufferListener
      */
@@ -76,6 +107,18 @@ private:
      */
     JNIEnv *getJNIEnv();
 
+    /*!
+     * Returns the read-only direct ByteBuffer wrapping the first plane of the
+     * image, creating it the first time a given ARX buffer is seen.
+     */
+    jobject getDirectBuffer(JNIEnv *env, tiarx::ARXImageBuffer *pImage);
+
+    /*!
+     * Delivers the image to Java without copying it. The image is held until
+     * Java calls releaseFrame.
+     */
+    void deliverDirect(JNIEnv *env, tiarx::ARXImageBuffer *pImage);
+
     JavaVM *mVm;
     //Instance of the java class calling this jni code
     jobject mCallerInstance;
@@ -86,9 +129,35 @@ private:
 
     tiarx::ARAccelerator *mArx;
 
-    //Protects bitmap access between callback and teardown
+    //Protects bitmap access and the frame mailbox between callback, Java and teardown
     pthread_mutex_t mBmpLock;
-    jobject mBitmap;
+    enum { NUM_BITMAPS = 2 };
+    jobject mBitmaps[NUM_BITMAPS];
     AndroidBitmapInfo mBmpInfo;
+    //Bitmap written by the callback, the other one is displayed
+    uint32_t mBackIndex;
+    //The back bitmap holds a frame Java has been notified of but not consumed
+    bool mFramePending;
+    uint32_t mFramesConsumed;
+    uint32_t mFramesCoalesced;
+    //Incremented atomically, when mBmpLock could not be taken
+    volatile uint32_t mFramesDropped;
+    //Expands ARX images into the bitmap, splitting large ones across threads
+    enum { CONVERTER_THREADS = 1 };
+    tiarx::ARXConverter *mConverter;
+
+    //Direct ByteBuffer delivery
+    enum { MAX_DIRECT_BUFFERS = 16 };
+    struct DirectBuffer {
+        void *data;
+        jobject buffer;
+    };
+    bool mDirect;
+    jmethodID mOnSobelFrame;
+    //Protects the buffer cache and frames held by Java
+    pthread_mutex_t mFrameLock;
+    DirectBuffer mDirectBuffers[MAX_DIRECT_BUFFERS];
+    uint32_t mNumDirectBuffers;
+    tiarx::ARXImageBuffer *mHeldFrames[MAX_DIRECT_BUFFERS];
 };
 
@@ -18,12 +18,17 @@ include $(CLEAR_VARS)
 ifdef NDK_ROOT
 LOCAL_C_INCLUDES := $(TIARXSDK_PATH)/include
 LOCAL_LDLIBS := -L$(TIARXSDK_PATH)/lib -larx -llog -ljnigraphics
+# The conversion library is not part of the SDK, build it in
+LOCAL_C_INCLUDES += $(LOCAL_PATH)/../../../include
+LOCAL_SRC_FILES := ../../../utils/convert/ARXConvert.cpp
+LOCAL_ARM_NEON := true
 else
 LOCAL_MODULE_TAGS := optional
 LOCAL_C_INCLUDES := $(ARX_INC) $(JNI_H_INCLUDE) $(DVP_INC)
 LOCAL_CPPFLAGS := $(ARX_DEBUGGING) $(ARX_CPPFLAGS)
 LOCAL_SHARED_LIBRARIES := libarx liblog libjnigraphics
+LOCAL_STATIC_LIBRARIES := libarxconvert
 endif
-LOCAL_SRC_FILES := arxstreams_jni.cpp ARXStreamsJniContext.cpp 
+LOCAL_SRC_FILES += arxstreams_jni.cpp ARXStreamsJniContext.cpp
 LOCAL_MODULE    := libarxstreams_jni
 include $(BUILD_SHARED_LIBRARY)
@@ -48,9 +48,12 @@ static ARXStreamsJniContext *getContext(JNIEnv *env, jobject thiz)
  * Open and start ARX after configuring the buffer streams we are interested in.
  * @param jSurface a reference to the Surface where we will render the main camera stream.
  * @param jSurfaceTex a reference to the SurfaceTexture where we will render the secondary camera stream.
- * @param bitmap Bitmap object where the sobel output will be drawn
+ * @param bitmap0 first of the two Bitmap objects where the sobel output will be drawn
+ * in turn, or NULL to receive the sobel output through onSobelFrame as direct ByteBuffers
+ * @param bitmap1 second Bitmap object for the sobel output
  */
-static jboolean createARX(JNIEnv* env, jobject thiz, jobject jSurface, jobject jSurfaceTex, jobject bitmap)
+static jboolean createARX(JNIEnv* env, jobject thiz, jobject jSurface, jobject jSurfaceTex,
+                          jobject bitmap0, jobject bitmap1)
 {
     ARXStreamsJniContext *context = new ARXStreamsJniContext(g_jvm, env, thiz);
 
@@ -58,7 +61,7 @@ static jboolean createARX(JNIEnv* env, jobject thiz, jobject jSurface, jobject j
     // is also our ARX property listener.
     ARAccelerator *arx = ARAccelerator::create(context);
     if (arx != NULL) {
-        if (context->setup(arx, jSurface, jSurfaceTex, bitmap)) {
+        if (context->setup(arx, jSurface, jSurfaceTex, bitmap0, bitmap1)) {
             // Store the native context in a int field of the ARXSample Java class
             setContext(env, thiz, context);
             // Start the ARX engine (which will cause it to begin generating
@@ -86,9 +89,51 @@ static void destroyARX(JNIEnv* env, jobject thiz)
     }
 }
 
+/*!
+ * Returns a Sobel frame received through onSobelFrame to ARX. Does nothing
+ * once ARX is destroyed, the destructor already returned every held frame.
+ */
+static void releaseSobelFrame(JNIEnv* env, jobject thiz, jint handle)
+{
+    ARXStreamsJniContext *context = getContext(env, thiz);
+    if (context != NULL) {
+        context->releaseFrame(handle);
+    }
+}
+
+/*!
+ * Takes the latest Sobel frame copied to the bitmaps.
+ * @return the index of the bitmap to display, or -1 if there is no new frame.
+ */
+static jint consumeSobelFrame(JNIEnv* env, jobject thiz)
+{
+    ARXStreamsJniContext *context = getContext(env, thiz);
+    if (context != NULL) {
+        return context->consumeFrame();
+    }
+    return -1;
+}
+
+/*!
+ * Fills counts with the number of Sobel frames consumed, coalesced and dropped.
+ */
+static void getSobelFrameCounts(JNIEnv* env, jobject thiz, jintArray counts)
+{
+    ARXStreamsJniContext *context = getContext(env, thiz);
+    if (context != NULL && env->GetArrayLength(counts) >= 3) {
+        uint32_t consumed, coalesced, dropped;
+        context->getFrameCounts(&consumed, &coalesced, &dropped);
+        jint values[3] = { (jint)consumed, (jint)coalesced, (jint)dropped };
+        env->SetIntArrayRegion(counts, 0, 3, values);
+    }
+}
+
 static const JNINativeMethod g_methods[] = {
-    { "createARX",          "(Landroid/view/Surface;Landroid/graphics/SurfaceTexture;Landroid/graphics/Bitmap;)Z", (void*)createARX },
-    { "destroyARX",         "()V", (void*)destroyARX }
+    { "createARX",          "(Landroid/view/Surface;Landroid/graphics/SurfaceTexture;Landroid/graphics/Bitmap;Landroid/graphics/Bitmap;)Z", (void*)createARX },
+    { "destroyARX",         "()V", (void*)destroyARX },
+    { "releaseSobelFrame",  "(I)V", (void*)releaseSobelFrame },
+    { "consumeSobelFrame",  "()I", (void*)consumeSobelFrame },
+    { "getSobelFrameCounts", "([I)V", (void*)getSobelFrameCounts }
 };
 
 /////////////////////////////////////////////////////////////////////////////////////////////////
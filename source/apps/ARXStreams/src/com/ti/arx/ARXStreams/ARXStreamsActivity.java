@@ -19,7 +19,10 @@ package com.ti.arx.ARXStreams;
 import android.app.Activity;
 import android.graphics.Bitmap;
 import android.graphics.SurfaceTexture;
+import android.graphics.drawable.BitmapDrawable;
+import android.opengl.GLSurfaceView;
 import android.os.Bundle;
+import android.util.Log;
 import android.view.Surface;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
@@ -27,6 +30,8 @@ import android.view.TextureView;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
 
+import java.nio.ByteBuffer;
+
 /*!
  * Renders three buffer streams from the TI Augmented Reality Accelerator
  * to an Android window.
@@ -42,13 +47,18 @@ public class ARXStreamsActivity
      * 2. We use a TextureView to show how an ARX buffer stream can be bound to
      * an Android SurfaceTexture.
      * 3. We use an ImageView to show how an ARX buffer stream can be manually
-     * rendered, for example, to a Bitmap. 
+     * rendered, for example, to a Bitmap. Two bitmaps are used so that ARX
+     * fills one while the other is displayed. When started with the boolean extra
+     * EXTRA_DIRECT_BUFFER set, a GLSurfaceView is used instead, which uploads
+     * the ARX buffer as a texture straight from a direct ByteBuffer.
      */
     @Override
     public void onCreate(Bundle savedInstanceState) 
     {
         super.onCreate(savedInstanceState);
 
+        mDirect = getIntent().getBooleanExtra(EXTRA_DIRECT_BUFFER, false);
+
         setContentView(R.layout.main);        
         createLayout();
     }
@@ -71,16 +81,33 @@ public class ARXStreamsActivity
                         
             // 3. This view will display the Sobel image stream
             // from ARX.
-            sobelView = new ImageView(this);            
-            sobelBmp = Bitmap.createBitmap(320, 240, Bitmap.Config.ARGB_8888);
-            sobelView.setImageBitmap(sobelBmp);
-            ll.addView(sobelView, 320, 240);
+            if (mDirect) {
+                sobelGLView = new GLSurfaceView(this);
+                sobelRenderer = new SobelRenderer(new SobelFrameReleaser());
+                sobelRenderer.setGLView(sobelGLView);
+                sobelGLView.setRenderer(sobelRenderer);
+                sobelGLView.setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
+                ll.addView(sobelGLView, 320, 240);
+            } else {
+                sobelView = new ImageView(this);
+                for (int i = 0; i < sobelBmps.length; i++) {
+                    sobelBmps[i] = Bitmap.createBitmap(320, 240, Bitmap.Config.ARGB_8888);
+                    sobelDrawables[i] = new BitmapDrawable(getResources(), sobelBmps[i]);
+                }
+                // ARX writes to the second bitmap first
+                sobelView.setImageDrawable(sobelDrawables[0]);
+                ll.addView(sobelView, 320, 240);
+            }
         }
     }
 
     @Override
     protected void onResume() {
         super.onResume();
+        if (sobelGLView != null) {
+            sobelRenderer.attach();
+            sobelGLView.onResume();
+        }
         startARX();
     }
 
@@ -91,7 +118,16 @@ public class ARXStreamsActivity
     @Override
     protected void onPause() {
         super.onPause();
-        destroyARX(); // Stop ARX and release resources.
+        if (sobelGLView != null) {
+            sobelGLView.onPause();
+        }
+        if (sobelView != null) {
+            int[] counts = new int[3];
+            getSobelFrameCounts(counts);
+            Log.i(TAG, "Sobel frames: " + counts[0] + " shown, " + counts[1] +
+                  " coalesced, " + counts[2] + " dropped");
+        }
+        stopARX(); // Stop ARX and release resources.
     }
 
     /*************************************************************
@@ -144,9 +180,30 @@ public class ARXStreamsActivity
      * Open and start ARX after configuring the buffer streams we are interested in.
      * @param s a reference to the Surface where we will render the main camera stream.
      * @param st a reference to the SurfaceTexture where we will render the secondary camera stream.
-     * @param bitmap a reference to a Bitmap where the sobel data will be copied to.
+     * @param bitmap0 a reference to the first of the two Bitmaps where the sobel
+     * data will be copied to in turn, or null to receive the sobel data through onSobelFrame.
+     * @param bitmap1 a reference to the second Bitmap.
+     */
+    public native boolean createARX(Surface s, SurfaceTexture st, Bitmap bitmap0, Bitmap bitmap1);
+
+    /*!
+     * Returns a frame received through onSobelFrame to ARX. Must be called
+     * exactly once per frame.
      */
-    public native boolean createARX(Surface s, SurfaceTexture st, Bitmap bitmap);
+    private native void releaseSobelFrame(int handle);
+
+    /*!
+     * Takes the latest Sobel frame copied since the last call.
+     * @return the index of the bitmap holding it, which ARX leaves untouched
+     * until the next call, or -1 if there is no new frame.
+     */
+    private native int consumeSobelFrame();
+
+    /*!
+     * Fills counts with the number of Sobel frames shown, overwritten by a
+     * newer frame before being shown, and dropped while bitmaps were swapped.
+     */
+    private native void getSobelFrameCounts(int[] counts);
     
     /*!
      * Stop ARX and release the resources it is using.
@@ -157,14 +214,25 @@ public class ARXStreamsActivity
      * Start ARX (only if all of our surfaces have been created). 
      */
     private void startARX() {
-        if (mSurface != null && mSurfaceTex != null && sobelBmp != null) {
-            createARX(mSurface, mSurfaceTex, sobelBmp);
+        if (mSurface != null && mSurfaceTex != null && (sobelBmps[0] != null || mDirect)) {
+            createARX(mSurface, mSurfaceTex, sobelBmps[0], sobelBmps[1]);
         }
     }
     
+    /*!
+     * Destroy ARX once the GL thread no longer reads its buffers, as the
+     * direct ByteBuffers point to memory freed by destroyARX.
+     */
+    private void stopARX() {
+        if (sobelRenderer != null) {
+            sobelRenderer.detach();
+        }
+        destroyARX();
+    }
+
     private void onARXDeath() {
         //Restart ARX
-        destroyARX();
+        stopARX();
         Runnable r = new Runnable() {
             public void run() {
                 LinearLayout ll = (LinearLayout)findViewById(R.id.topLayout);
@@ -177,17 +245,60 @@ public class ARXStreamsActivity
         runOnUiThread(r);       
     }
 
+    /*!
+     * Called from the ARX callback thread when a new Sobel frame is ready.
+     * ARX does not call it again before the frame is consumed, newer frames
+     * replace the pending one in the meantime.
+     */
     private void onBufferChanged() {
-        sobelView.postInvalidate();
+        sobelView.post(mShowSobelFrame);
+    }
+
+    private final Runnable mShowSobelFrame = new Runnable() {
+        public void run() {
+            int index = consumeSobelFrame();
+            if (index >= 0 && sobelView != null) {
+                // Invalidates the view
+                sobelView.setImageDrawable(sobelDrawables[index]);
+            }
+        }
+    };
+
+    /*!
+     * Called from the ARX callback thread with a Sobel frame when no bitmap
+     * was given to createARX. buf is a read-only view of the ARX buffer itself
+     * and is only valid until releaseSobelFrame(handle) is called.
+     */
+    private void onSobelFrame(ByteBuffer buf, int width, int height, int stride, long timestamp, int handle) {
+        SobelRenderer r = sobelRenderer;
+        if (r != null) {
+            r.onFrame(buf, width, height, stride, handle);
+        } else {
+            releaseSobelFrame(handle);
+        }
+    }
+
+    private class SobelFrameReleaser implements SobelRenderer.FrameReleaser {
+        public void releaseFrame(int handle) {
+            releaseSobelFrame(handle);
+        }
     }
 
     private SurfaceView camMainView; // displays main camera stream
     private TextureView camSecView; // displays secondary camera stream
     private ImageView sobelView; // displays Sobel stream
-    private Bitmap sobelBmp;
+    private Bitmap[] sobelBmps = new Bitmap[2]; // displayed and written in turn
+    private BitmapDrawable[] sobelDrawables = new BitmapDrawable[2];
+    private GLSurfaceView sobelGLView; // displays Sobel stream in direct buffer mode
+    private SobelRenderer sobelRenderer;
+    private boolean mDirect;
     private Surface mSurface;
     private SurfaceTexture mSurfaceTex;
     
+    private static final String TAG = "ARXStreams";
+
+    public static final String EXTRA_DIRECT_BUFFER = "com.ti.arx.ARXStreams.DIRECT_BUFFER";
+
     /* Holds the native context; for JNI use only */
     private int context;
 
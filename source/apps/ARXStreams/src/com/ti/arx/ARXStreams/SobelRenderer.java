@@ -0,0 +1,256 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ti.arx.ARXStreams;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.opengles.GL10;
+
+import android.opengl.GLSurfaceView;
+
+/*!
+ * Draws Sobel frames received as direct ByteBuffers into a GL_LUMINANCE
+ * texture. The frame is uploaded straight from the ARX buffer and handed
+ * back to ARX right after the upload, without any copy on the Java side.
+ */
+public class SobelRenderer implements GLSurfaceView.Renderer {
+
+    /*!
+     * Returns frames to ARX once they have been uploaded.
+     */
+    public interface FrameReleaser {
+        public void releaseFrame(int handle);
+    }
+
+    public SobelRenderer(FrameReleaser releaser) {
+        mReleaser = releaser;
+        mVertices = createBuffer(QUAD_VERTICES);
+        mTexCoords = createBuffer(QUAD_VERTICES);
+        mHandle = NO_FRAME;
+        mDrawLock = new Object();
+    }
+
+    public void setGLView(GLSurfaceView view) {
+        mView = view;
+    }
+
+    /*!
+     * Called from the ARX callback thread with a new frame. A frame that
+     * has not been drawn yet is released right away; only the latest one
+     * is drawn. Frames received while detached are released at once.
+     */
+    public void onFrame(ByteBuffer buf, int width, int height, int stride, int handle) {
+        int dropped = NO_FRAME;
+        boolean detached;
+        synchronized (this) {
+            detached = mDetached;
+            if (detached) {
+                dropped = handle;
+            } else {
+                dropped = mHandle;
+                mFrame = buf;
+                mWidth = width;
+                mHeight = height;
+                mStride = stride;
+                mHandle = handle;
+            }
+        }
+        if (dropped != NO_FRAME) {
+            mReleaser.releaseFrame(dropped);
+        }
+        GLSurfaceView view = mView;
+        if (view != null && !detached) {
+            view.requestRender();
+        }
+    }
+
+    /*!
+     * Stops drawing frames and releases the frame waiting to be drawn, if
+     * any. Waits for the GL thread to finish with the frame it may be
+     * uploading, so once this returns no ARX buffer is read anymore and
+     * ARX can be destroyed.
+     */
+    public void detach() {
+        int handle;
+        synchronized (mDrawLock) {
+            synchronized (this) {
+                mDetached = true;
+                handle = mHandle;
+                mHandle = NO_FRAME;
+                mFrame = null;
+            }
+        }
+        if (handle != NO_FRAME) {
+            mReleaser.releaseFrame(handle);
+        }
+    }
+
+    /*!
+     * Draws the frames received from now on.
+     */
+    public synchronized void attach() {
+        mDetached = false;
+    }
+
+    @Override
+    public void onDrawFrame(GL10 gl) {
+        gl.glClear(GL10.GL_COLOR_BUFFER_BIT);
+        // Held while the ARX buffer is read, see detach()
+        synchronized (mDrawLock) {
+            ByteBuffer frame;
+            int w, h, stride, handle;
+            synchronized (this) {
+                frame = mFrame;
+                w = mWidth;
+                h = mHeight;
+                stride = mStride;
+                handle = mHandle;
+                mFrame = null;
+                mHandle = NO_FRAME;
+            }
+            if (frame != null) {
+                upload(gl, frame, w, h, stride);
+                mReleaser.releaseFrame(handle);
+            }
+        }
+        if (mTexWidth == 0) return;
+
+        gl.glEnable(GL10.GL_TEXTURE_2D);
+        gl.glBindTexture(GL10.GL_TEXTURE_2D, mTextureID);
+        gl.glEnableClientState(GL10.GL_VERTEX_ARRAY);
+        gl.glEnableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
+        gl.glVertexPointer(2, GL10.GL_FLOAT, 0, mVertices);
+        gl.glTexCoordPointer(2, GL10.GL_FLOAT, 0, mTexCoords);
+        gl.glDrawArrays(GL10.GL_TRIANGLE_STRIP, 0, 4);
+        gl.glDisableClientState(GL10.GL_TEXTURE_COORD_ARRAY);
+        gl.glDisableClientState(GL10.GL_VERTEX_ARRAY);
+        gl.glBindTexture(GL10.GL_TEXTURE_2D, 0);
+        gl.glDisable(GL10.GL_TEXTURE_2D);
+    }
+
+    @Override
+    public void onSurfaceChanged(GL10 gl, int width, int height) {
+        gl.glViewport(0, 0, width, height);
+        gl.glMatrixMode(GL10.GL_PROJECTION);
+        gl.glLoadIdentity();
+        gl.glOrthof(-1.0f, 1.0f, -1.0f, 1.0f, -1.0f, 1.0f);
+        gl.glMatrixMode(GL10.GL_MODELVIEW);
+        gl.glLoadIdentity();
+    }
+
+    @Override
+    public void onSurfaceCreated(GL10 gl, EGLConfig config) {
+        int[] ids = new int[1];
+        gl.glGenTextures(1, ids, 0);
+        mTextureID = ids[0];
+        mTexWidth = 0;
+        mTexHeight = 0;
+        gl.glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
+        gl.glPixelStorei(GL10.GL_UNPACK_ALIGNMENT, 1);
+        gl.glGetIntegerv(GL10.GL_MAX_TEXTURE_SIZE, ids, 0);
+        mMaxTextureSize = ids[0];
+    }
+
+    private void upload(GL10 gl, ByteBuffer frame, int w, int h, int stride) {
+        // Upload whole lines including padding when the stride fits in a
+        // texture, so one call covers the frame. Otherwise go line by line.
+        int rowWidth = (stride <= mMaxTextureSize) ? stride : w;
+        gl.glBindTexture(GL10.GL_TEXTURE_2D, mTextureID);
+        if (mTexWidth < rowWidth || mTexHeight < h || mFrameWidth != w || mFrameHeight != h) {
+            mTexWidth = potSize(rowWidth);
+            mTexHeight = potSize(h);
+            mFrameWidth = w;
+            mFrameHeight = h;
+            gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MIN_FILTER, GL10.GL_LINEAR);
+            gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MAG_FILTER, GL10.GL_LINEAR);
+            gl.glTexImage2D(GL10.GL_TEXTURE_2D, 0, GL10.GL_LUMINANCE, mTexWidth, mTexHeight, 0,
+                            GL10.GL_LUMINANCE, GL10.GL_UNSIGNED_BYTE, null);
+            setTexCoords((float)w/mTexWidth, (float)h/mTexHeight);
+        }
+
+        if (rowWidth == stride) {
+            frame.position(0);
+            gl.glTexSubImage2D(GL10.GL_TEXTURE_2D, 0, 0, 0, stride, h,
+                               GL10.GL_LUMINANCE, GL10.GL_UNSIGNED_BYTE, frame);
+        } else {
+            for (int y = 0; y < h; y++) {
+                frame.position(y*stride);
+                gl.glTexSubImage2D(GL10.GL_TEXTURE_2D, 0, 0, y, w, 1,
+                                   GL10.GL_LUMINANCE, GL10.GL_UNSIGNED_BYTE, frame);
+            }
+        }
+        frame.position(0);
+        gl.glBindTexture(GL10.GL_TEXTURE_2D, 0);
+    }
+
+    private void setTexCoords(float u, float v) {
+        mTexCoords.put(0, 0.0f); mTexCoords.put(1, v);
+        mTexCoords.put(2, u);    mTexCoords.put(3, v);
+        mTexCoords.put(4, 0.0f); mTexCoords.put(5, 0.0f);
+        mTexCoords.put(6, u);    mTexCoords.put(7, 0.0f);
+    }
+
+    private static int potSize(int size) {
+        int potSize = 1;
+        while (potSize < size) {
+            potSize <<= 1;
+        }
+        return potSize;
+    }
+
+    private static FloatBuffer createBuffer(float[] values) {
+        ByteBuffer byteBuf = ByteBuffer.allocateDirect(values.length * Float.SIZE/8);
+        byteBuf.order(ByteOrder.nativeOrder());
+        FloatBuffer buf = byteBuf.asFloatBuffer();
+        buf.put(values);
+        buf.position(0);
+        return buf;
+    }
+
+    private FrameReleaser mReleaser;
+    private GLSurfaceView mView;
+
+    // Latest frame not drawn yet, protected by this
+    private ByteBuffer mFrame;
+    private int mWidth;
+    private int mHeight;
+    private int mStride;
+    private int mHandle;
+    private boolean mDetached;
+    private Object mDrawLock;
+
+    // GL thread only
+    private int mTextureID;
+    private int mTexWidth;
+    private int mTexHeight;
+    private int mFrameWidth;
+    private int mFrameHeight;
+    private int mMaxTextureSize;
+    private FloatBuffer mVertices;
+    private FloatBuffer mTexCoords;
+
+    private static final int NO_FRAME = 0;
+    private static final float[] QUAD_VERTICES = {
+        -1.0f, -1.0f,
+         1.0f, -1.0f,
+        -1.0f,  1.0f,
+         1.0f,  1.0f,
+    };
+}
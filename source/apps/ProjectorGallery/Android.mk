@@ -4,6 +4,7 @@ LOCAL_PATH:= $(call my-dir)
 include $(CLEAR_VARS)
 LOCAL_MODULE_TAGS := optional
 LOCAL_SRC_FILES := $(call all-java-files-under, src)
+LOCAL_STATIC_JAVA_LIBRARIES := arxposetrace arxmath arxgesture
 LOCAL_PACKAGE_NAME := ProjectorGallery
 LOCAL_JNI_SHARED_LIBRARIES := libarprojector_jni
 LOCAL_REQUIRED_MODULES := libarprojector_jni
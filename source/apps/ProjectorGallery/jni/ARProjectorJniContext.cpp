@@ -100,11 +100,32 @@ void ARProjectorJniContext::onBufferChanged(ARXFlatBuffer *pBuffer)
     mutex_lock(&mLock);
 
     env->SetFloatArrayRegion(mViewMatrix, 0, 16, (jfloat *)p->view_matrix);
+    if (mTrace.isOpen()) {
+        mTrace.write(pBuffer->timestamp(), p);
+    }
     mutex_unlock(&mLock);
     pBuffer->release();
     env->CallVoidMethod(mObj, mOnBufferChanged, p->status, p->pointerX, p->pointerY);
 }
 
+bool ARProjectorJniContext::setRecordFile(const char *fileName)
+{
+    bool ret = true;
+    mutex_lock(&mLock);
+    if (mTrace.isOpen()) {
+        ARX_PRINT(ARX_ZONE_CLIENT, "Recorded %u poses", mTrace.count());
+        mTrace.close();
+    }
+    if (fileName != NULL) {
+        ret = mTrace.open(fileName);
+        if (!ret) {
+            ARX_PRINT(ARX_ZONE_ERROR, "Could not open pose trace %s!", fileName);
+        }
+    }
+    mutex_unlock(&mLock);
+    return ret;
+}
+
 void ARProjectorJniContext::reset()
 {
     mArx->setProperty(PROP_ENGINE_PROJPOSE_RESET, true);
@@ -24,6 +24,8 @@
 #include <arx/ARXBufferListener.h>
 #include <arx/ARXProperties.h>
 
+#include <utils/ARXPoseTrace.h>
+
 #include <sosal/mutex.h>
 
 namespace tiarx {
@@ -39,6 +41,11 @@ public:
     bool setup(jfloatArray viewMatrix);
     void zoomChanged(jfloat zoom);
     void reset();
+    /*!
+     * Starts recording the poses received into a pose trace, replacing any
+     * recording in progress. NULL stops recording.
+     */
+    bool setRecordFile(const char *fileName);
     void onPropertyChanged(uint32_t property, int32_t value);
     void onBufferChanged(ARXFlatBuffer *pBuffer);
 
@@ -53,7 +60,9 @@ private:
     jfloatArray mViewMatrix;
     ARAccelerator *mArx;
 
+    //Also protects mTrace
     mutex_t mLock;
+    ARXPoseTraceWriter mTrace;
 };
 
 }
@@ -91,11 +91,30 @@ static void zoomChanged(JNIEnv* env, jobject thiz, jfloat value)
     }
 }
 
+/*!
+ * Records the poses received into the given file, or stops recording if null.
+ */
+static jboolean setRecordFile(JNIEnv* env, jobject thiz, jstring fileName)
+{
+    ARProjectorJniContext *context = getContext(env, thiz);
+    if (context == NULL) {
+        return (jboolean)false;
+    }
+    if (fileName == NULL) {
+        return (jboolean)context->setRecordFile(NULL);
+    }
+    const char *name = env->GetStringUTFChars(fileName, NULL);
+    bool ret = context->setRecordFile(name);
+    env->ReleaseStringUTFChars(fileName, name);
+    return (jboolean)ret;
+}
+
 static const JNINativeMethod g_methods[] = {
     { "create",          "([F)Z",                     (void*)create },
     { "destroy",         "()V",                         (void*)destroy },
     { "reset",           "()V",                         (void*)reset },
-    { "zoomChanged",     "(F)V",                        (void*)zoomChanged }
+    { "zoomChanged",     "(F)V",                        (void*)zoomChanged },
+    { "setRecordFile",   "(Ljava/lang/String;)Z",       (void*)setRecordFile }
 };
 
 /////////////////////////////////////////////////////////////////////////////////////////////////
@@ -5,8 +5,16 @@ public class CircleHotspot extends Hotspot {
         super(id, Shape.createCircle());
     }
 
+    /**
+     * @param circle a unit circle, which may be shared between hotspots.
+     */
+    public CircleHotspot(int id, Shape circle) {
+        super(id, circle);
+    }
+
     @Override
-    public boolean isInside(float x, float y) {
-        return (distance(x, y) < mSize);
+    public boolean isInside(float x, float y, float margin) {
+        float r = mSize + margin;
+        return (distanceSquared(x, y) < r*r);
     }
 }
@@ -44,18 +44,126 @@ public class CircularTextureList implements GLObject {
         this(c, "/storage/sdcard1/images", Integer.MAX_VALUE);
     }
 
+    public void setListener(TextureLoader.Listener l) {
+        mListener = l;
+    }
+
     public void setup(GL11 gl, Properties props) {
+        int numThreads = DEFAULT_DECODE_THREADS;
+        int queueSize = DEFAULT_DECODE_QUEUE_SIZE;
+        mUploadsPerFrame = DEFAULT_UPLOADS_PER_FRAME;
+
+        String value = props.getProperty("-textureDecodeThreads");
+        if (value != null) {
+            numThreads = Integer.parseInt(value);
+        }
+        value = props.getProperty("-textureDecodeQueueSize");
+        if (value != null) {
+            queueSize = Integer.parseInt(value);
+        }
+        value = props.getProperty("-textureUploadsPerFrame");
+        if (value != null) {
+            mUploadsPerFrame = Integer.parseInt(value);
+        }
+
+        int window = DEFAULT_WINDOW;
+        int budget = DEFAULT_CACHE_BYTES;
+        value = props.getProperty("-textureWindow");
+        if (value != null) {
+            window = Integer.parseInt(value);
+        }
+        value = props.getProperty("-textureCacheBytes");
+        if (value != null) {
+            budget = Integer.parseInt(value);
+        }
+
+        long diskCacheBytes = DEFAULT_DISK_CACHE_BYTES;
+        String diskCacheDir = DEFAULT_DISK_CACHE_DIR;
+        value = props.getProperty("-textureDiskCacheBytes");
+        if (value != null) {
+            diskCacheBytes = Long.parseLong(value);
+        }
+        value = props.getProperty("-textureDiskCacheDir");
+        if (value != null) {
+            diskCacheDir = value;
+        }
+
+        value = props.getProperty("-textureDecodeMode");
+        Texture.setSubsample(!"full".equals(value));
+        value = props.getProperty("-texturePacking");
+        Texture.setPacking("square".equals(value) ? Texture.PACKING_SQUARE : Texture.PACKING_RECT);
+
+        release(mContextLost ? null : gl);
+        mContextLost = false;
+        mDiskCache = null;
+        if (diskCacheBytes > 0) {
+            mDiskCache = new TextureDiskCache(new File(diskCacheDir), diskCacheBytes);
+        }
         loadTextures();
-        for (Texture t : mTextures) {
-            t.setup(gl, props);
+        mSetupTime = System.currentTimeMillis();
+        mFirstImageLogged = false;
+
+        value = props.getProperty("-textureDecodeBenchmark");
+        if (value != null && Integer.parseInt(value) != 0) {
+            startBenchmark(diskCacheBytes > 0 ? new File(diskCacheDir, "benchmark") : null);
+        }
+
+        mCache = new TextureCache(window, budget);
+        mLoader = new TextureLoader(numThreads, queueSize);
+        mLoader.setListener(mListener);
+        mLoader.start();
+        focusChanged();
+    }
+
+    /**
+     * Stops decoding any textures not yet loaded and deletes the resident
+     * ones. Must be called from the GL thread, a null gl only forgets them.
+     */
+    public void release(GL11 gl) {
+        if (mLoader != null) {
+            mLoader.stop();
+            mLoader = null;
+        }
+        if (mCache != null) {
+            mCache.clear(gl);
+            mCache = null;
         }
     }
 
+    /**
+     * The GL context was recreated, the texture names of the previous one
+     * are forgotten instead of deleted on the next setup.
+     */
+    public void onContextLost() {
+        mContextLost = true;
+    }
+
+    public TextureCache getCache() {
+        return mCache;
+    }
+
+    /**
+     * Uploads textures decoded in the background, limited to the per frame
+     * budget. Must be called from the GL thread.
+     * @return true if more decoded textures are waiting for upload.
+     */
+    public boolean uploadPending(GL11 gl) {
+        if (mLoader == null) return false;
+        boolean pending = mLoader.upload(gl, mUploadsPerFrame, mCache);
+        mCache.evict(gl);
+        if (!mFirstImageLogged && getCurrentTexture().isLoaded()) {
+            mFirstImageLogged = true;
+            Log.d(TAG, "first image ready after "+(System.currentTimeMillis() - mSetupTime)+" ms, disk cache "+mDiskCache);
+        }
+        return pending;
+    }
+
     public Texture next() {
         mCurIdx++;
         if (mCurIdx >= mTextures.length) {
             mCurIdx = 0;
         }
+        focusChanged();
         return getCurrentTexture();
     }
 
@@ -64,6 +172,7 @@ public class CircularTextureList implements GLObject {
          if (mCurIdx < 0) {
              mCurIdx = mTextures.length -1;
          }
+         focusChanged();
          return getCurrentTexture();
     }
 
@@ -89,11 +198,49 @@ public class CircularTextureList implements GLObject {
             for (int i = 0; i < size; i++) {
                 Log.d(TAG, "found: "+files[i].toString());
                 mTextures[i] = new Texture(files[i].getAbsolutePath());
+                mTextures[i].setDiskCache(mDiskCache);
             }
         }
         mCurIdx = 0;
     }
 
+    private void startBenchmark(File cacheDir) {
+        String[] names = new String[mTextures.length];
+        int count = 0;
+        for (Texture t : mTextures) {
+            if (t.getFileName() != null) {
+                names[count++] = t.getFileName();
+            }
+        }
+        String[] fileNames = new String[count];
+        System.arraycopy(names, 0, fileNames, 0, count);
+        new Thread(new TextureDecodeBenchmark(fileNames, cacheDir), "TextureDecodeBenchmark").start();
+    }
+
+    private void focusChanged() {
+        if (mLoader == null) return;
+
+        int count = mTextures.length;
+        int window = mCache.getWindow();
+        mCache.setFocus(mCurIdx, count);
+        mLoader.setFocus(mCurIdx, count, window);
+        mCache.onAccess(getCurrentTexture());
+
+        // Current image first, then its neighbours on either side
+        for (int d = 0; d <= window && d <= count/2; d++) {
+            requestTexture((mCurIdx + d) % count);
+            requestTexture((mCurIdx - d + count) % count);
+        }
+        Log.d(TAG, "texture cache "+mCache+", disk cache "+mDiskCache);
+    }
+
+    private void requestTexture(int idx) {
+        Texture t = mTextures[idx];
+        if (!t.isLoaded() && !t.isQueued()) {
+            mLoader.request(t, idx);
+        }
+    }
+
     private File[] listFiles(File path) {
         if (path == null || !path.exists()) {
             Log.e(TAG, "Error opening path: "+path.toString());
@@ -112,5 +259,23 @@ public class CircularTextureList implements GLObject {
     private Texture[] mTextures;
     private int mCurIdx;
 
+    private TextureLoader mLoader;
+    private TextureCache mCache;
+    private TextureDiskCache mDiskCache;
+    private long mSetupTime;
+    private boolean mFirstImageLogged;
+    private TextureLoader.Listener mListener;
+    private int mUploadsPerFrame;
+    private boolean mContextLost;
+
+    private static final int DEFAULT_DECODE_THREADS = 2;
+    private static final int DEFAULT_DECODE_QUEUE_SIZE = 4;
+    private static final int DEFAULT_UPLOADS_PER_FRAME = 1;
+    private static final int DEFAULT_WINDOW = 2;
+    // Enough for the default window of 1024x1024 RGBA textures
+    private static final int DEFAULT_CACHE_BYTES = (2*DEFAULT_WINDOW + 1)*1024*1024*4;
+    private static final String DEFAULT_DISK_CACHE_DIR = "/data/misc/GalleryCache";
+    private static final long DEFAULT_DISK_CACHE_BYTES = 128*1024*1024;
+
     private static final String TAG = "CircularTextureList";
 }
@@ -0,0 +1,109 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ti.arx.ProjectorGallery;
+
+import java.io.File;
+
+import android.os.FileObserver;
+import android.util.Log;
+
+/**
+ * Watches the gallery parameter and projector calibration files and parses
+ * them into a new GalleryConfig whenever one of them is written. The
+ * current snapshot is swapped atomically, readers on any thread see either
+ * the old or the new one, never a partial update.
+ */
+public class ConfigService {
+
+    public interface Listener {
+        /**
+         * Called on the watcher thread when a new snapshot differs from the
+         * previous one.
+         */
+        public void onConfigChanged(GalleryConfig config);
+    }
+
+    public ConfigService(File dir, String paramsName, String calibrationName) {
+        mParamsFile = new File(dir, paramsName);
+        mCalibrationFile = new File(dir, calibrationName);
+        mParamsName = paramsName;
+        mCalibrationName = calibrationName;
+        mObserver = new Observer(dir.getPath());
+    }
+
+    public void setListener(Listener l) {
+        mListener = l;
+    }
+
+    /**
+     * @return the current snapshot, loading it the first time.
+     */
+    public GalleryConfig getConfig() {
+        GalleryConfig config = mConfig;
+        return config != null ? config : reload();
+    }
+
+    /**
+     * Parses the files again and makes the result the current snapshot.
+     */
+    public synchronized GalleryConfig reload() {
+        GalleryConfig config = GalleryConfig.load(mParamsFile, mCalibrationFile);
+        GalleryConfig old = mConfig;
+        mConfig = config;
+        if (old != null && config.diff(old) != 0) {
+            Log.i(TAG, "Reloaded " + config);
+            Listener l = mListener;
+            if (l != null) {
+                l.onConfigChanged(config);
+            }
+        }
+        return config;
+    }
+
+    public void startWatching() {
+        mObserver.startWatching();
+    }
+
+    public void stopWatching() {
+        mObserver.stopWatching();
+    }
+
+    private class Observer extends FileObserver {
+
+        public Observer(String path) {
+            // Editors either write in place or move a new file over
+            super(path, FileObserver.CLOSE_WRITE | FileObserver.MOVED_TO);
+        }
+
+        @Override
+        public void onEvent(int event, String path) {
+            if (mParamsName.equals(path) || mCalibrationName.equals(path)) {
+                reload();
+            }
+        }
+    }
+
+    private File mParamsFile;
+    private File mCalibrationFile;
+    private String mParamsName;
+    private String mCalibrationName;
+    private Observer mObserver;
+    private volatile Listener mListener;
+    private volatile GalleryConfig mConfig;
+
+    private static final String TAG = "ConfigService";
+}
@@ -41,6 +41,18 @@ public class Cursor implements GLDrawable {
         mLineWidth = lineWidth;
     }
 
+    public Shape getShape() {
+        return mCross;
+    }
+
+    public float getSize() {
+        return mSize;
+    }
+
+    public float getLineWidth() {
+        return mLineWidth;
+    }
+
     public void setup(GL11 gl, Properties props) {
         String value = props.getProperty("-markerSize");
         if (value != null) {
@@ -55,6 +67,13 @@ public class Cursor implements GLDrawable {
         mCross.setup(gl, props);
     }
 
+    /**
+     * Deletes the GL buffers created by setup.
+     */
+    public void release(GL11 gl) {
+        mCross.release(gl);
+    }
+
     private Shape mCross;
     private float mLineWidth;
     private float mSize;
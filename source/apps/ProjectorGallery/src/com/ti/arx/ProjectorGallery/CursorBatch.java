@@ -0,0 +1,54 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ti.arx.ProjectorGallery;
+
+import java.util.Properties;
+
+import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
+
+/**
+ * GLES 2.0 version of the Cursor, which must have been set up first.
+ */
+public class CursorBatch extends ShapeBatch {
+
+    public CursorBatch(GLES2State state, Cursor cursor) {
+        super(state, GL10.GL_LINES);
+        mCursor = cursor;
+    }
+
+    @Override
+    public void setup(GL11 gl, Properties props) {
+        begin();
+        float size = mCursor.getSize();
+        addShape(mCursor.getShape(), 0.0f, 0.0f, size, size, GLES2State.CURSOR_SLOT);
+        upload();
+    }
+
+    @Override
+    public void draw(GL11 gl) {
+        GLES2State state = getState();
+        if (!state.isReady()) return;
+
+        // Blending is left as the scene set it, the cursor is opaque
+        state.setColor(GLES2State.CURSOR_SLOT, 1.0f, 1.0f, 1.0f, 1.0f);
+        state.lineWidth(mCursor.getLineWidth());
+        drawRange(0, getIndexCount());
+    }
+
+    private Cursor mCursor;
+}
@@ -0,0 +1,111 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ti.arx.ProjectorGallery;
+
+/**
+ * Measures the cadence and cost of the frames drawn: a histogram of the
+ * time between frames in display refresh periods, the refreshes missed, and
+ * the time spent drawing. Comparing the summaries of the on demand and the
+ * continuous render modes tells which one a device affords.
+ */
+public class FramePacing {
+
+    /**
+     * @param refreshRate display refresh rate in Hz.
+     * @param interval frames per summary.
+     */
+    public FramePacing(float refreshRate, int interval) {
+        mPeriodNs = (long)(1e9/(refreshRate > 0.0f ? refreshRate : DEFAULT_REFRESH_RATE));
+        mInterval = interval;
+        mHistogram = new int[BUCKETS];
+        mSummary = "no frames";
+    }
+
+    /**
+     * Records a frame drawn from startNs to endNs.
+     * @return true when a new summary is available from toString, every
+     * interval frames.
+     */
+    public boolean frame(long startNs, long endNs) {
+        long draw = endNs - startNs;
+        mDrawNs += draw;
+        mMaxDrawNs = Math.max(mMaxDrawNs, draw);
+
+        if (mLastStartNs != 0) {
+            long elapsed = startNs - mLastStartNs;
+            // Refresh periods since the previous frame, 1 when on time
+            int periods = (int)((elapsed + mPeriodNs/2)/mPeriodNs);
+            if (periods > 1) {
+                mMissed += periods - 1;
+            }
+            mHistogram[Math.max(0, Math.min(BUCKETS - 1, periods))]++;
+            mElapsedNs += elapsed;
+            mIntervals++;
+        }
+        mLastStartNs = startNs;
+        mFrames++;
+        if (mFrames < mInterval) return false;
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%.1f fps, draw %.2f ms avg %.2f ms max, %d missed refreshes, periods between frames",
+                                mIntervals > 0 ? mIntervals*1e9/mElapsedNs : 0.0,
+                                mDrawNs/1e6/mFrames, mMaxDrawNs/1e6, mMissed));
+        for (int i = 0; i < BUCKETS; i++) {
+            if (mHistogram[i] == 0) continue;
+            sb.append(' ').append(i).append(i == BUCKETS - 1 ? "+:" : ":").append(mHistogram[i]);
+            mHistogram[i] = 0;
+        }
+        mSummary = sb.toString();
+
+        mFrames = 0;
+        mIntervals = 0;
+        mElapsedNs = 0;
+        mDrawNs = 0;
+        mMaxDrawNs = 0;
+        mMissed = 0;
+        return true;
+    }
+
+    /**
+     * Forgets the previous frame time, e.g. after a pause, so the gap is
+     * not counted.
+     */
+    public void restart() {
+        mLastStartNs = 0;
+    }
+
+    @Override
+    public String toString() {
+        return mSummary;
+    }
+
+    private long mPeriodNs;
+    private int mInterval;
+    private int[] mHistogram;
+    private String mSummary;
+
+    private long mLastStartNs;
+    private int mFrames;
+    private int mIntervals;
+    private long mElapsedNs;
+    private long mDrawNs;
+    private long mMaxDrawNs;
+    private int mMissed;
+
+    private static final int BUCKETS = 8;
+    private static final float DEFAULT_REFRESH_RATE = 60.0f;
+}
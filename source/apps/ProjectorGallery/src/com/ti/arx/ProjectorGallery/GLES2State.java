@@ -0,0 +1,341 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ti.arx.ProjectorGallery;
+
+import java.util.Arrays;
+import java.util.Properties;
+
+import javax.microedition.khronos.opengles.GL11;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+/**
+ * The single shader program of the GLES 2.0 backend and a cache of the GL
+ * state it drives. Every setter compares against the cached value and only
+ * calls GL when the state actually changes, counting both cases in GLStats.
+ *
+ * Vertices are (x, y, u, v, slot). The slot selects the vertex color from a
+ * uniform array, so differently colored shapes can share one draw call, and
+ * slot 0 is modulated by the bound texture.
+ */
+public class GLES2State implements GLObject {
+
+    public GLES2State(GLStats stats) {
+        mStats = stats;
+        mMatrix = new float[16];
+        mColors = new float[4*MAX_SLOTS];
+        mColorLocations = new int[MAX_SLOTS];
+    }
+
+    @Override
+    public void setup(GL11 gl, Properties props) {
+        mProgram = 0;
+        int vs = compile(GLES20.GL_VERTEX_SHADER, VERTEX_SHADER);
+        int fs = compile(GLES20.GL_FRAGMENT_SHADER, FRAGMENT_SHADER);
+        if (vs == 0 || fs == 0) return;
+
+        int program = GLES20.glCreateProgram();
+        GLES20.glAttachShader(program, vs);
+        GLES20.glAttachShader(program, fs);
+        GLES20.glBindAttribLocation(program, ATTRIB_POSITION, "aPosition");
+        GLES20.glBindAttribLocation(program, ATTRIB_TEXCOORD, "aTexCoord");
+        GLES20.glBindAttribLocation(program, ATTRIB_SLOT, "aSlot");
+        GLES20.glLinkProgram(program);
+        GLES20.glDeleteShader(vs);
+        GLES20.glDeleteShader(fs);
+
+        int[] status = new int[1];
+        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, status, 0);
+        if (status[0] == 0) {
+            Log.e(TAG, "Failed linking program: " + GLES20.glGetProgramInfoLog(program));
+            GLES20.glDeleteProgram(program);
+            return;
+        }
+
+        mProgram = program;
+        mMatrixLocation = GLES20.glGetUniformLocation(program, "uMvp");
+        for (int i = 0; i < MAX_SLOTS; i++) {
+            mColorLocations[i] = GLES20.glGetUniformLocation(program, "uColors[" + i + "]");
+        }
+        GLES20.glUseProgram(program);
+        GLES20.glUniform1i(GLES20.glGetUniformLocation(program, "uTexture"), 0);
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glEnableVertexAttribArray(ATTRIB_POSITION);
+        GLES20.glEnableVertexAttribArray(ATTRIB_TEXCOORD);
+        GLES20.glEnableVertexAttribArray(ATTRIB_SLOT);
+        invalidate();
+        mCurrentProgram = program;
+    }
+
+    public boolean isReady() {
+        return mProgram != 0;
+    }
+
+    /**
+     * Forgets the cached state, e.g. after other code made GL calls.
+     */
+    public void invalidate() {
+        mCurrentProgram = -1;
+        mArrayBuffer = -1;
+        mElementBuffer = -1;
+        mLayoutBuffer = -1;
+        mTexture = -1;
+        mBlend = -1;
+        mCullFace = -1;
+        mBlendSrc = -1;
+        mBlendDst = -1;
+        mLineWidth = -1.0f;
+        mMatrixValid = false;
+        Arrays.fill(mColors, -1.0f);
+    }
+
+    /**
+     * Forgets the texture binding, which texture uploads and deletes change.
+     */
+    public void invalidateTexture() {
+        mTexture = -1;
+    }
+
+    public void useProgram() {
+        if (mCurrentProgram == mProgram) {
+            mStats.elided();
+            return;
+        }
+        GLES20.glUseProgram(mProgram);
+        mCurrentProgram = mProgram;
+        mStats.stateChange();
+    }
+
+    /**
+     * Sets the column major model view projection matrix.
+     */
+    public void setMatrix(float[] m) {
+        useProgram();
+        if (mMatrixValid && Arrays.equals(m, mMatrix)) {
+            mStats.elided();
+            return;
+        }
+        System.arraycopy(m, 0, mMatrix, 0, 16);
+        mMatrixValid = true;
+        GLES20.glUniformMatrix4fv(mMatrixLocation, 1, false, m, 0);
+        mStats.stateChange();
+    }
+
+    public void setColor(int slot, float r, float g, float b, float a) {
+        int i = 4*slot;
+        float[] c = mColors;
+        if (c[i] == r && c[i + 1] == g && c[i + 2] == b && c[i + 3] == a) {
+            mStats.elided();
+            return;
+        }
+        c[i] = r;
+        c[i + 1] = g;
+        c[i + 2] = b;
+        c[i + 3] = a;
+        useProgram();
+        GLES20.glUniform4fv(mColorLocations[slot], 1, c, i);
+        mStats.stateChange();
+    }
+
+    public void setColor(int slot, float[] rgba, int offset) {
+        setColor(slot, rgba[offset], rgba[offset + 1], rgba[offset + 2], rgba[offset + 3]);
+    }
+
+    public void bindTexture(int id) {
+        if (mTexture == id) {
+            mStats.elided();
+            return;
+        }
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, id);
+        mTexture = id;
+        mStats.stateChange();
+    }
+
+    /**
+     * Binds a vertex and an index buffer and points the attributes at the
+     * vertex buffer, which only needs doing when it changes.
+     */
+    public void bindBuffers(int vertices, int indices) {
+        if (mArrayBuffer != vertices) {
+            GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vertices);
+            mArrayBuffer = vertices;
+            mStats.stateChange();
+        } else {
+            mStats.elided();
+        }
+        if (mLayoutBuffer != vertices) {
+            GLES20.glVertexAttribPointer(ATTRIB_POSITION, 2, GLES20.GL_FLOAT, false, STRIDE, 0);
+            GLES20.glVertexAttribPointer(ATTRIB_TEXCOORD, 2, GLES20.GL_FLOAT, false, STRIDE, 2*FLOAT_SIZE);
+            GLES20.glVertexAttribPointer(ATTRIB_SLOT, 1, GLES20.GL_FLOAT, false, STRIDE, 4*FLOAT_SIZE);
+            mLayoutBuffer = vertices;
+            mStats.stateChange();
+        } else {
+            mStats.elided();
+        }
+        if (mElementBuffer != indices) {
+            GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, indices);
+            mElementBuffer = indices;
+            mStats.stateChange();
+        } else {
+            mStats.elided();
+        }
+    }
+
+    /**
+     * Binds a buffer to update it, keeping the cache in sync.
+     */
+    public void bindArrayBuffer(int id) {
+        if (mArrayBuffer == id) return;
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, id);
+        mArrayBuffer = id;
+    }
+
+    public void bindElementBuffer(int id) {
+        if (mElementBuffer == id) return;
+        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, id);
+        mElementBuffer = id;
+    }
+
+    public void setBlend(boolean enable) {
+        mBlend = setEnabled(GLES20.GL_BLEND, mBlend, enable);
+    }
+
+    public void setCullFace(boolean enable) {
+        mCullFace = setEnabled(GLES20.GL_CULL_FACE, mCullFace, enable);
+    }
+
+    public void blendFunc(int src, int dst) {
+        if (mBlendSrc == src && mBlendDst == dst) {
+            mStats.elided();
+            return;
+        }
+        GLES20.glBlendFunc(src, dst);
+        mBlendSrc = src;
+        mBlendDst = dst;
+        mStats.stateChange();
+    }
+
+    public void lineWidth(float width) {
+        if (mLineWidth == width) {
+            mStats.elided();
+            return;
+        }
+        GLES20.glLineWidth(width);
+        mLineWidth = width;
+        mStats.stateChange();
+    }
+
+    /**
+     * Draws count indices of the bound index buffer, starting at first.
+     */
+    public void drawElements(int mode, int first, int count) {
+        GLES20.glDrawElements(mode, count, GLES20.GL_UNSIGNED_SHORT, first*SHORT_SIZE);
+        mStats.draw();
+    }
+
+    private int setEnabled(int cap, int current, boolean enable) {
+        int value = enable ? 1 : 0;
+        if (current == value) {
+            mStats.elided();
+            return current;
+        }
+        if (enable) {
+            GLES20.glEnable(cap);
+        } else {
+            GLES20.glDisable(cap);
+        }
+        mStats.stateChange();
+        return value;
+    }
+
+    private static int compile(int type, String source) {
+        int shader = GLES20.glCreateShader(type);
+        GLES20.glShaderSource(shader, source);
+        GLES20.glCompileShader(shader);
+        int[] status = new int[1];
+        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, status, 0);
+        if (status[0] == 0) {
+            Log.e(TAG, "Failed compiling shader: " + GLES20.glGetShaderInfoLog(shader));
+            GLES20.glDeleteShader(shader);
+            return 0;
+        }
+        return shader;
+    }
+
+    private GLStats mStats;
+    private int mProgram;
+    private int mMatrixLocation;
+    private int[] mColorLocations;
+
+    // Cached GL state, -1 when unknown
+    private int mCurrentProgram;
+    private int mArrayBuffer;
+    private int mElementBuffer;
+    private int mLayoutBuffer;
+    private int mTexture;
+    private int mBlend;
+    private int mCullFace;
+    private int mBlendSrc;
+    private int mBlendDst;
+    private float mLineWidth;
+    private float[] mMatrix;
+    private boolean mMatrixValid;
+    private float[] mColors;
+
+    /** Number of color slots, the last one is reserved for the cursor */
+    public static final int MAX_SLOTS = 16;
+    public static final int CURSOR_SLOT = MAX_SLOTS - 1;
+
+    public static final int FLOATS_PER_VERTEX = 5;
+    public static final int FLOAT_SIZE = Float.SIZE/8;
+    public static final int SHORT_SIZE = Short.SIZE/8;
+    private static final int STRIDE = FLOATS_PER_VERTEX*FLOAT_SIZE;
+
+    private static final int ATTRIB_POSITION = 0;
+    private static final int ATTRIB_TEXCOORD = 1;
+    private static final int ATTRIB_SLOT = 2;
+
+    private static final String VERTEX_SHADER =
+        "uniform mat4 uMvp;\n" +
+        "uniform vec4 uColors[" + MAX_SLOTS + "];\n" +
+        "attribute vec2 aPosition;\n" +
+        "attribute vec2 aTexCoord;\n" +
+        "attribute float aSlot;\n" +
+        "varying vec4 vColor;\n" +
+        "varying vec2 vTexCoord;\n" +
+        "varying float vTexWeight;\n" +
+        "void main() {\n" +
+        "    vColor = uColors[int(aSlot + 0.5)];\n" +
+        "    vTexCoord = aTexCoord;\n" +
+        "    vTexWeight = aSlot < 0.5 ? 1.0 : 0.0;\n" +
+        "    gl_Position = uMvp * vec4(aPosition, 0.0, 1.0);\n" +
+        "}\n";
+
+    private static final String FRAGMENT_SHADER =
+        "precision mediump float;\n" +
+        "uniform sampler2D uTexture;\n" +
+        "varying vec4 vColor;\n" +
+        "varying vec2 vTexCoord;\n" +
+        "varying float vTexWeight;\n" +
+        "void main() {\n" +
+        "    vec4 texel = texture2D(uTexture, vTexCoord);\n" +
+        "    gl_FragColor = vColor * mix(vec4(1.0), texel, vTexWeight);\n" +
+        "}\n";
+
+    private static final String TAG = "GLES2State";
+}
@@ -0,0 +1,141 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ti.arx.ProjectorGallery;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.microedition.khronos.opengles.GL11;
+
+/**
+ * Counts draw calls and GL state changes per frame, so the fixed function
+ * and the shader backends can be compared. The shader backend reports its
+ * calls itself, including the ones it elided, while the fixed function
+ * backend is counted by drawing through wrap(gl).
+ */
+public class GLStats {
+
+    public GLStats(int interval) {
+        mInterval = interval;
+        mSummary = "no frames";
+    }
+
+    public void draw() {
+        mDraws++;
+    }
+
+    public void stateChange() {
+        mStateChanges++;
+    }
+
+    /**
+     * A state change that was skipped because the state was already set.
+     */
+    public void elided() {
+        mElided++;
+    }
+
+    /**
+     * Ends a frame.
+     * @return true when a new summary is available from toString, every
+     * interval frames.
+     */
+    public boolean frame() {
+        mFrames++;
+        if (mFrames < mInterval) return false;
+
+        mSummary = String.format("%.1f draws, %.1f state changes, %.1f elided per frame over %d frames",
+                                 (float)mDraws/mFrames, (float)mStateChanges/mFrames,
+                                 (float)mElided/mFrames, mFrames);
+        mFrames = 0;
+        mDraws = 0;
+        mStateChanges = 0;
+        mElided = 0;
+        return true;
+    }
+
+    /**
+     * Returns gl wrapped so that every call made through it is counted.
+     * Calls go through reflection, so only wrap when the stats are wanted.
+     */
+    public GL11 wrap(GL11 gl) {
+        if (gl != mWrapped) {
+            mWrapped = gl;
+            mCounting = (GL11)Proxy.newProxyInstance(GL11.class.getClassLoader(),
+                                                     new Class<?>[] { GL11.class },
+                                                     new CountingHandler(gl));
+        }
+        return mCounting;
+    }
+
+    @Override
+    public String toString() {
+        return mSummary;
+    }
+
+    /**
+     * Queries, object creation and data uploads are not state changes, nor
+     * is clearing the frame, which both backends do once.
+     */
+    private static boolean isStateChange(String name) {
+        return name.startsWith("gl") &&
+               !name.startsWith("glGet") &&
+               !name.startsWith("glIs") &&
+               !name.startsWith("glGen") &&
+               !name.startsWith("glDelete") &&
+               !name.startsWith("glBufferData") &&
+               !name.startsWith("glBufferSubData") &&
+               !name.startsWith("glTexImage") &&
+               !name.startsWith("glClear");
+    }
+
+    private class CountingHandler implements InvocationHandler {
+
+        CountingHandler(GL11 gl) {
+            mGL = gl;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("glDraw")) {
+                draw();
+            } else if (isStateChange(name)) {
+                stateChange();
+            }
+            try {
+                return method.invoke(mGL, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private final GL11 mGL;
+    }
+
+    private int mInterval;
+    private int mFrames;
+    private int mDraws;
+    private int mStateChanges;
+    private int mElided;
+    private String mSummary;
+
+    private GL11 mWrapped;
+    private GL11 mCounting;
+}
@@ -0,0 +1,260 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ti.arx.ProjectorGallery;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import android.util.Log;
+
+/**
+ * Immutable snapshot of galleryParameters.txt and ProjectorCalibration.txt,
+ * parsed once. The values the renderer uses directly are typed, the rest is
+ * kept as properties for the setup of the other components.
+ *
+ * diff tells which parts of the gallery two snapshots differ in, so a new
+ * snapshot can be applied by setting up only those parts again.
+ */
+public class GalleryConfig {
+
+    /**
+     * Parses the two files. A missing or unreadable file leaves the values
+     * it holds to their defaults.
+     */
+    public static GalleryConfig load(File params, File calibration) {
+        Properties props = new Properties();
+        try {
+            FileInputStream fis = new FileInputStream(params);
+            try {
+                props.load(fis);
+            } finally {
+                fis.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read " + params + ": " + e.getMessage());
+        }
+
+        float[] k = null;
+        try {
+            BufferedReader r = new BufferedReader(new FileReader(calibration));
+            String line;
+            try {
+                line = r.readLine();
+            } finally {
+                r.close();
+            }
+            String[] values = line != null ? line.trim().split("\\s+") : new String[0];
+            if (values.length == CALIBRATION_SIZE) {
+                k = new float[CALIBRATION_SIZE];
+                for (int i = 0; i < values.length; i++) {
+                    k[i] = Float.parseFloat(values[i]);
+                }
+            } else {
+                Log.w(TAG, calibration + " holds " + values.length + " values instead of " + CALIBRATION_SIZE);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read " + calibration + ": " + e.getMessage());
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Could not parse " + calibration + ": " + e.getMessage());
+            k = null;
+        }
+        return new GalleryConfig(props, k);
+    }
+
+    GalleryConfig(Properties props, float[] projectorK) {
+        mProperties = new Properties();
+        mProperties.putAll(props);
+        mProjectorK = projectorK != null ? projectorK.clone() : null;
+
+        mProjW = parseInt("-projW", 0);
+        mProjH = parseInt("-projH", 0);
+        mObjX = parseFloat("-objX", 0.0f);
+        mObjY = parseFloat("-objY", 0.0f);
+        mObjZ = parseFloat("-objZ", 0.0f);
+        mObjScale = parseFloat("-objScale", 1.0f);
+        mObjScaleStep = parseFloat("-objScaleStep", 4.0f);
+        mObjScaleMin = parseFloat("-objScaleMin", 20.0f);
+        mObjScaleMax = parseFloat("-objScaleMax", 50.0f);
+    }
+
+    /**
+     * @return a combination of the CHANGED_ flags for the parts of the
+     * gallery that must be set up again to go from old to this snapshot,
+     * CHANGED_ALL if old is null.
+     */
+    public int diff(GalleryConfig old) {
+        if (old == null) return CHANGED_ALL;
+
+        int changes = 0;
+        if (mProjW != old.mProjW || mProjH != old.mProjH ||
+            (mProjectorK != null && !Arrays.equals(mProjectorK, old.mProjectorK))) {
+            changes |= CHANGED_PROJECTION;
+        }
+        if (mObjX != old.mObjX || mObjY != old.mObjY || mObjZ != old.mObjZ ||
+            mObjScale != old.mObjScale) {
+            changes |= CHANGED_SCENE;
+        }
+        if (mObjScaleStep != old.mObjScaleStep ||
+            mObjScaleMin != old.mObjScaleMin || mObjScaleMax != old.mObjScaleMax) {
+            changes |= CHANGED_ZOOM_LIMITS;
+        }
+
+        Set<Object> keys = new HashSet<Object>(mProperties.keySet());
+        keys.addAll(old.mProperties.keySet());
+        for (Object key : keys) {
+            String name = (String)key;
+            String value = mProperties.getProperty(name);
+            String oldValue = old.mProperties.getProperty(name);
+            if (value == null ? oldValue == null : value.equals(oldValue)) continue;
+
+            if (name.startsWith("-hotSpot") || name.startsWith("-pointer")) {
+                changes |= CHANGED_HOTSPOTS;
+            } else if (name.startsWith("-marker")) {
+                changes |= CHANGED_CURSOR;
+            } else if (name.startsWith("-texture")) {
+                changes |= CHANGED_TEXTURES;
+            } else if (!TYPED_KEYS.contains(name)) {
+                changes |= CHANGED_OTHER;
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * @return a copy of all the parameters, for the setup of components.
+     */
+    public Properties getProperties() {
+        Properties props = new Properties();
+        props.putAll(mProperties);
+        return props;
+    }
+
+    public boolean hasProjectorK() {
+        return mProjectorK != null;
+    }
+
+    /**
+     * Copies the projector intrinsics, if hasProjectorK.
+     */
+    public void getProjectorK(float[] k) {
+        System.arraycopy(mProjectorK, 0, k, 0, CALIBRATION_SIZE);
+    }
+
+    public int getProjW() {
+        return mProjW;
+    }
+
+    public int getProjH() {
+        return mProjH;
+    }
+
+    public float getObjX() {
+        return mObjX;
+    }
+
+    public float getObjY() {
+        return mObjY;
+    }
+
+    public float getObjZ() {
+        return mObjZ;
+    }
+
+    public float getObjScale() {
+        return mObjScale;
+    }
+
+    public float getObjScaleStep() {
+        return mObjScaleStep;
+    }
+
+    public float getObjScaleMin() {
+        return mObjScaleMin;
+    }
+
+    public float getObjScaleMax() {
+        return mObjScaleMax;
+    }
+
+    @Override
+    public String toString() {
+        return "projector:" + mProjW + "x" + mProjH + " k:" + Arrays.toString(mProjectorK) +
+               " properties:" + mProperties;
+    }
+
+    private int parseInt(String name, int def) {
+        String value = mProperties.getProperty(name);
+        if (value == null) return def;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Ignoring " + name + "=" + value);
+            return def;
+        }
+    }
+
+    private float parseFloat(String name, float def) {
+        String value = mProperties.getProperty(name);
+        if (value == null) return def;
+        try {
+            return Float.parseFloat(value.trim());
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Ignoring " + name + "=" + value);
+            return def;
+        }
+    }
+
+    private final Properties mProperties;
+    private final float[] mProjectorK;
+    private final int mProjW;
+    private final int mProjH;
+    private final float mObjX;
+    private final float mObjY;
+    private final float mObjZ;
+    private final float mObjScale;
+    private final float mObjScaleStep;
+    private final float mObjScaleMin;
+    private final float mObjScaleMax;
+
+    /** Projector intrinsics or resolution, used by the projection matrix */
+    public static final int CHANGED_PROJECTION = 1;
+    /** Placement and initial zoom of the virtual object, resets the zoom */
+    public static final int CHANGED_SCENE = 2;
+    /** Hotspot layout, pointer filtering and dwell */
+    public static final int CHANGED_HOTSPOTS = 4;
+    public static final int CHANGED_CURSOR = 8;
+    /** Texture loading, only applied when the surface is created again */
+    public static final int CHANGED_TEXTURES = 16;
+    /** Any other parameter, only applied when the surface is created again */
+    public static final int CHANGED_OTHER = 32;
+    /** Zoom step and limits, the current zoom is kept */
+    public static final int CHANGED_ZOOM_LIMITS = 64;
+    public static final int CHANGED_ALL = 127;
+
+    private static final int CALIBRATION_SIZE = 9;
+    private static final Set<String> TYPED_KEYS = new HashSet<String>(Arrays.asList(
+            "-projW", "-projH", "-objX", "-objY", "-objZ",
+            "-objScale", "-objScaleStep", "-objScaleMin", "-objScaleMax"));
+    private static final String TAG = "GalleryConfig";
+}
@@ -7,6 +7,9 @@ import javax.microedition.khronos.opengles.GL11;
 import android.util.FloatMath;
 import android.util.Log;
 
+import com.ti.arx.gesture.DwellTimer;
+import com.ti.arx.gesture.GestureEngine;
+
 public abstract class Hotspot implements GLDrawable {
 
     public interface Listener {
@@ -16,7 +19,6 @@ public abstract class Hotspot implements GLDrawable {
     public Hotspot(int id, Shape s) {
         mId = id;
         mShape = s;
-        mCounter = 0;
         mColorR = 1.0f;
         mColorG = 1.0f;
         mColorB = 1.0f;
@@ -25,11 +27,12 @@ public abstract class Hotspot implements GLDrawable {
         mY = 0.0f;
         mSize = 1.0f;
         mAlphaSize = 3.0f * mSize;
-        mDelay = 30;
-        mRetrigger = false;
     }
 
-    public abstract boolean isInside(float x, float y);
+    /**
+     * @param margin distance by which the hotspot is grown for the test.
+     */
+    public abstract boolean isInside(float x, float y, float margin);
 
     @Override
     public void draw(GL11 gl) {
@@ -50,13 +53,18 @@ public abstract class Hotspot implements GLDrawable {
         mShape.setup(gl, props);
     }
 
-    public void configure(float x, float y, float size, int delay) {
+    /**
+     * @param gestures engine whose dwell settings the hotspot follows.
+     */
+    public void configure(float x, float y, float size, GestureEngine gestures) {
         mX = x;
         mY = y;
         mSize = size;
         mAlphaSize = 3.0f*size;
-        mDelay = delay;
-        Log.d("Hotspot", String.format("id:%d [x:%1.2f y:%1.2f] size:%1.2f delay:%d", mId, x, y, size, delay));
+        mGestures = gestures;
+        mTimer = gestures.createTimer();
+        Log.d("Hotspot", String.format("id:%d [x:%1.2f y:%1.2f] size:%1.2f dwell:%dms", mId, x, y, size,
+                                       gestures.getDwellNs()/1000000));
     }
 
     public void setListener(Listener l) {
@@ -67,40 +75,93 @@ public abstract class Hotspot implements GLDrawable {
         return mId;
     }
 
-    public void onPointerEvent(float x, float y) {
-        float d = distance(x, y);
-        mAlpha = (d-mAlphaSize)*((1.0f-mMinAlpha)/-mAlphaSize) + mMinAlpha;
-        if (mAlpha < mMinAlpha) {
-            mAlpha = mMinAlpha;
+    public Shape getShape() {
+        return mShape;
+    }
+
+    public float getX() {
+        return mX;
+    }
+
+    public float getY() {
+        return mY;
+    }
+
+    public float getSize() {
+        return mSize;
+    }
+
+    /**
+     * Writes the RGBA color the hotspot is currently drawn with.
+     */
+    public void getColor(float[] rgba, int offset) {
+        if (mHovering) {
+            rgba[offset] = mColorR;
+            rgba[offset + 1] = mColorG;
+            rgba[offset + 2] = mColorB;
+        } else {
+            rgba[offset] = rgba[offset + 1] = rgba[offset + 2] = 1.0f;
         }
-        if (isInside(x, y)) {
-            mHovering = true;
-            mCounter++;
-            if (mCounter <= mDelay) {
-                double value = (double)mCounter/(double)mDelay;
-                mColorR = mColorB = (float)Math.log10(-9.0*value+10.001);
-            } else {
-                mColorR = mColorB = mColorG = 1.0f;
+        rgba[offset + 3] = mAlpha;
+    }
+
+    /**
+     * Updates the hotspot for the pointer at (x, y) at time timeNs.
+     */
+    public void onPointerEvent(float x, float y, long timeNs) {
+        float d2 = distanceSquared(x, y);
+        if (d2 < mAlphaSize*mAlphaSize) {
+            float d = FloatMath.sqrt(d2);
+            mAlpha = (d-mAlphaSize)*((1.0f-mMinAlpha)/-mAlphaSize) + mMinAlpha;
+            if (mAlpha < mMinAlpha) {
+                mAlpha = mMinAlpha;
             }
         } else {
-            mHovering = false;
-            reset();
-        }
-        if (mCounter == mDelay && mListener != null) {
-            mListener.onSelection(this);
-            if (mRetrigger) reset();
+            mAlpha = mMinAlpha;
         }
+        boolean inside = isInside(x, y, 0.0f);
+        boolean held = inside || isInside(x, y, mGestures.getHysteresis()*mSize);
+        onDwell(mTimer.update(inside, held, timeNs));
+    }
+
+    /**
+     * Same as onPointerEvent for a pointer beyond getReach(), where it
+     * does not affect the hotspot.
+     */
+    public void onPointerAway(long timeNs) {
+        mAlpha = mMinAlpha;
+        onDwell(mTimer.update(false, false, timeNs));
+    }
+
+    /**
+     * Distance from the center beyond which the pointer does not affect the
+     * hotspot, in both directions.
+     */
+    public float getReach() {
+        return Math.max(mAlphaSize, (2.0f + mGestures.getHysteresis())*mSize);
     }
 
     public float distance(float x, float y) {
+        return FloatMath.sqrt(distanceSquared(x, y));
+    }
+
+    public float distanceSquared(float x, float y) {
         float xd = x-mX;
         float yd = y-mY;
-        return FloatMath.sqrt(xd*xd + yd*yd);
+        return xd*xd + yd*yd;
     }
 
-    private void reset() {
-        mCounter = 0;
-        mColorR = mColorB = mColorG = 1.0f;
+    private void onDwell(int events) {
+        mHovering = mTimer.isHovering();
+        float progress = mTimer.getProgress();
+        if (mHovering && progress <= 1.0f) {
+            mColorR = mColorB = (float)Math.log10(-9.0*progress+10.001);
+        } else {
+            mColorR = mColorB = mColorG = 1.0f;
+        }
+        if ((events & DwellTimer.SELECT) != 0 && mListener != null) {
+            mListener.onSelection(this);
+        }
     }
 
     private int mId;
@@ -116,9 +177,8 @@ public abstract class Hotspot implements GLDrawable {
     private Shape mShape;
     private Listener mListener;
     private boolean mHovering;
-    private int mCounter;
-    private int mDelay;
-    private boolean mRetrigger;
+    private GestureEngine mGestures;
+    private DwellTimer mTimer;
 
     public static final int PREV = 0;
     public static final int ZOOMIN = 1;
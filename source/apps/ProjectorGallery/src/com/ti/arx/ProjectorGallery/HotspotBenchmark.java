@@ -0,0 +1,152 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ti.arx.ProjectorGallery;
+
+import java.util.Properties;
+
+import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
+
+import android.opengl.GLU;
+import android.util.Log;
+
+/**
+ * Draws grids of 4, 64 and 1024 hotspots with one draw call per hotspot and
+ * with the shared hotspot mesh, moving the pointer across them, and logs the
+ * CPU time spent per frame in UILayer. Then measures pointer hit testing on
+ * growing grids, visiting every hotspot and with the HotspotGrid index.
+ * Runs on the GL thread when -hotSpotBenchmark is set in
+ * galleryParameters.txt, with the fixed function backend.
+ */
+public class HotspotBenchmark {
+
+    public HotspotBenchmark(Properties props) {
+        mProps = props;
+    }
+
+    public void run(GL11 gl, int width, int height) {
+        for (int count : COUNTS) {
+            double perSpot = measure(gl, width, height, count, false);
+            double shared = measure(gl, width, height, count, true);
+            Log.i(TAG, String.format("%d hotspots: %.3f ms per frame with a draw per hotspot, " +
+                    "%.3f ms with the shared mesh", count, perSpot, shared));
+        }
+        for (int count : HIT_TEST_COUNTS) {
+            double linear = measureHitTest(gl, width, height, count, false);
+            double indexed = measureHitTest(gl, width, height, count, true);
+            Log.i(TAG, String.format("%d hotspots: %.2f us per pointer event visiting all, " +
+                    "%.2f us with the index", count, linear, indexed));
+        }
+        gl.glClear(GL10.GL_COLOR_BUFFER_BIT | GL10.GL_DEPTH_BUFFER_BIT);
+    }
+
+    /**
+     * @return the average CPU time per frame in ms.
+     */
+    private double measure(GL11 gl, int width, int height, int count, boolean shared) {
+        float aspectRatio = (float)width/(float)height;
+        Properties props = gridProperties(count);
+        props.setProperty("-hotSpotSharedMesh", shared ? "1" : "0");
+        UILayer ui = createLayer(gl, width, height, props);
+
+        gl.glMatrixMode(GL10.GL_PROJECTION);
+        gl.glLoadIdentity();
+        GLU.gluOrtho2D(gl, -1.0f, 1.0f, -1.0f/aspectRatio, 1.0f/aspectRatio);
+        gl.glMatrixMode(GL10.GL_MODELVIEW);
+        gl.glLoadIdentity();
+
+        long total = 0;
+        for (int frame = -WARMUP_FRAMES; frame < FRAMES; frame++) {
+            // The pointer circles the grid, changing the hover state of the
+            // hotspots it passes over
+            double angle = 2.0*Math.PI*frame/FRAMES;
+            float x = 0.6f*(float)Math.cos(angle);
+            float y = 0.6f*(float)Math.sin(angle)/aspectRatio;
+
+            long start = System.nanoTime();
+            ui.onPointerEvent(x, y, start);
+            ui.draw(gl);
+            long elapsed = System.nanoTime() - start;
+            if (frame >= 0) {
+                total += elapsed;
+            }
+            gl.glFinish();
+        }
+        return total/1e6/FRAMES;
+    }
+
+    /**
+     * @return the average time per pointer event in us.
+     */
+    private double measureHitTest(GL11 gl, int width, int height, int count, boolean indexed) {
+        float aspectRatio = (float)width/(float)height;
+        Properties props = gridProperties(count);
+        props.setProperty("-hotSpotIndex", indexed ? "1" : "0");
+        UILayer ui = createLayer(gl, width, height, props);
+
+        long start = 0;
+        for (int event = -WARMUP_EVENTS; event < EVENTS; event++) {
+            if (event == 0) {
+                start = System.nanoTime();
+            }
+            // A slow sweep across the whole grid, dwelling on a few hotspots
+            double angle = 2.0*Math.PI*event/EVENTS;
+            float x = 0.9f*(float)Math.cos(3.0*angle);
+            float y = 0.9f*(float)Math.sin(2.0*angle)/aspectRatio;
+            ui.onPointerEvent(x, y, event*EVENT_PERIOD_NS);
+        }
+        return (System.nanoTime() - start)/1e3/EVENTS;
+    }
+
+    /**
+     * Properties for a square grid of count hotspots covering the layer.
+     */
+    private Properties gridProperties(int count) {
+        int side = (int)Math.ceil(Math.sqrt(count));
+        StringBuilder spots = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            spots.append((i % side + 0.5f)/side).append(' ');
+            spots.append((i/side + 0.5f)/side).append(' ');
+        }
+
+        Properties props = new Properties();
+        props.putAll(mProps);
+        props.remove("-hotSpotBenchmark");
+        props.setProperty("-hotSpots", spots.toString().trim());
+        props.setProperty("-hotSpotSize", Float.toString(0.8f/side));
+        return props;
+    }
+
+    private UILayer createLayer(GL11 gl, int width, int height, Properties props) {
+        UILayer ui = new UILayer();
+        ui.setAspectRatio((float)width/(float)height);
+        ui.setPixelScale(width/2.0f);
+        ui.setup(gl, props);
+        return ui;
+    }
+
+    private Properties mProps;
+
+    private static final int[] COUNTS = { 4, 64, 1024 };
+    private static final int WARMUP_FRAMES = 10;
+    private static final int FRAMES = 100;
+    private static final int[] HIT_TEST_COUNTS = { 4, 64, 1024, 4096 };
+    private static final int WARMUP_EVENTS = 1000;
+    private static final int EVENTS = 10000;
+    private static final long EVENT_PERIOD_NS = 33333333L;
+    private static final String TAG = "HotspotBenchmark";
+}
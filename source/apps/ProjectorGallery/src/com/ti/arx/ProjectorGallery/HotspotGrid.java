@@ -0,0 +1,138 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ti.arx.ProjectorGallery;
+
+import java.util.List;
+
+/**
+ * Uniform grid over the reach of a set of hotspots, the square around each
+ * one where the pointer affects it. Each hotspot is listed in every cell its
+ * reach overlaps, so the hotspots a pointer position can affect are the ones
+ * listed in the single cell holding it. Cells are at least twice the largest
+ * reach, so a hotspot is listed in at most 4 cells.
+ *
+ * Queries do not allocate: cellAt gives a cell, whose hotspots are the
+ * indices getItem(getCellStart(cell)) up to getCellStart(cell + 1).
+ */
+public class HotspotGrid {
+
+    public HotspotGrid() {
+        mCellStart = new int[1];
+        mItems = new int[0];
+    }
+
+    public void build(List<Hotspot> spots) {
+        int count = spots.size();
+        mCols = 0;
+        mRows = 0;
+        mCellStart = new int[1];
+        if (count == 0) return;
+
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        float maxReach = 0.0f;
+        for (Hotspot s : spots) {
+            float r = s.getReach();
+            minX = Math.min(minX, s.getX() - r);
+            minY = Math.min(minY, s.getY() - r);
+            maxX = Math.max(maxX, s.getX() + r);
+            maxY = Math.max(maxY, s.getY() + r);
+            maxReach = Math.max(maxReach, r);
+        }
+
+        float width = maxX - minX;
+        float height = maxY - minY;
+        float cellSize = Math.max(2.0f*maxReach, Math.max(width, height)/MAX_CELLS_PER_SIDE);
+        if (cellSize <= 0.0f) cellSize = 1.0f;
+        mCols = Math.max(1, (int)Math.ceil(width/cellSize));
+        mRows = Math.max(1, (int)Math.ceil(height/cellSize));
+        mMinX = minX;
+        mMinY = minY;
+        mInvCellSize = 1.0f/cellSize;
+
+        // Counting pass, then fill, so cells are packed in one array and
+        // list their hotspots in increasing order
+        int cells = mCols*mRows;
+        mCellStart = new int[cells + 1];
+        for (int pass = 0; pass < 2; pass++) {
+            if (pass == 1) {
+                for (int c = 0; c < cells; c++) {
+                    mCellStart[c + 1] += mCellStart[c];
+                }
+                mItems = new int[mCellStart[cells]];
+                mFill = new int[cells];
+                System.arraycopy(mCellStart, 0, mFill, 0, cells);
+            }
+            for (int i = 0; i < count; i++) {
+                Hotspot s = spots.get(i);
+                float r = s.getReach();
+                int c0 = col(s.getX() - r), c1 = col(s.getX() + r);
+                int r0 = row(s.getY() - r), r1 = row(s.getY() + r);
+                for (int row = r0; row <= r1; row++) {
+                    for (int col = c0; col <= c1; col++) {
+                        int cell = row*mCols + col;
+                        if (pass == 0) {
+                            mCellStart[cell + 1]++;
+                        } else {
+                            mItems[mFill[cell]++] = i;
+                        }
+                    }
+                }
+            }
+        }
+        mFill = null;
+    }
+
+    /**
+     * @return the cell holding (x, y), or -1 if no hotspot can be affected
+     * by a pointer there.
+     */
+    public int cellAt(float x, float y) {
+        if (mCols == 0) return -1;
+        float fx = (x - mMinX)*mInvCellSize;
+        float fy = (y - mMinY)*mInvCellSize;
+        if (fx < 0.0f || fy < 0.0f || fx >= mCols || fy >= mRows) return -1;
+        return (int)fy*mCols + (int)fx;
+    }
+
+    public int getCellStart(int cell) {
+        return mCellStart[cell];
+    }
+
+    public int getItem(int index) {
+        return mItems[index];
+    }
+
+    private int col(float x) {
+        return Math.max(0, Math.min(mCols - 1, (int)((x - mMinX)*mInvCellSize)));
+    }
+
+    private int row(float y) {
+        return Math.max(0, Math.min(mRows - 1, (int)((y - mMinY)*mInvCellSize)));
+    }
+
+    private int mCols;
+    private int mRows;
+    private float mMinX;
+    private float mMinY;
+    private float mInvCellSize;
+    private int[] mCellStart;
+    private int[] mItems;
+    private int[] mFill;
+
+    private static final int MAX_CELLS_PER_SIDE = 64;
+}
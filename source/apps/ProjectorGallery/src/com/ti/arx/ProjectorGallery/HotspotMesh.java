@@ -0,0 +1,256 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ti.arx.ProjectorGallery;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.List;
+
+import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
+
+/**
+ * All the circle hotspots of a UILayer in one vertex buffer, drawn with a
+ * single call. Every hotspot is a copy of the same circle, already moved and
+ * scaled, and vertices are packed as (x, y, RGBA) so the color of each
+ * hotspot travels with its vertices. Positions only change when the mesh is
+ * rebuilt; per frame only the vertices of hotspots whose color changed are
+ * sent to GL.
+ */
+public class HotspotMesh {
+
+    public HotspotMesh() {
+        mSpotColors = new int[0];
+        mColor = new float[4];
+        mCos = new float[0];
+        mSin = new float[0];
+    }
+
+    /**
+     * Number of circle segments keeping the polygon within maxError pixels
+     * of a circle of the given radius, rounded up to a power of two so small
+     * changes of radius do not rebuild the mesh.
+     */
+    public static int segmentsFor(float radiusPixels, float maxError, int maxSegments) {
+        int segments = maxSegments;
+        if (radiusPixels > maxError && maxError > 0) {
+            double needed = Math.PI/Math.acos(1.0 - maxError/radiusPixels);
+            segments = MIN_SEGMENTS;
+            while (segments < needed && segments < maxSegments) {
+                segments <<= 1;
+            }
+        } else if (radiusPixels > 0) {
+            segments = MIN_SEGMENTS;
+        }
+        return Math.max(MIN_SEGMENTS, Math.min(segments, maxSegments));
+    }
+
+    public int getSegments() {
+        return mSegments;
+    }
+
+    public int getVertexCount() {
+        return mVertexCount;
+    }
+
+    /**
+     * Lays out the hotspots with circles of the given number of segments,
+     * fewer if needed to stay within 16 bit indices.
+     */
+    public void build(List<Hotspot> spots, int segments) {
+        int count = spots.size();
+        mSegments = segments;
+        segments = Math.max(3, Math.min(segments, MAX_VERTICES/Math.max(1, count)));
+        if (segments != mCos.length) {
+            mCos = new float[segments];
+            mSin = new float[segments];
+            for (int i = 0; i < segments; i++) {
+                double rad = 2.0*Math.PI*i/segments;
+                mCos[i] = (float)Math.cos(rad);
+                mSin[i] = (float)Math.sin(rad);
+            }
+        }
+
+        mVertexCount = count*segments;
+        mIndexCount = count*3*(segments - 2);
+        mVertices = ByteBuffer.allocateDirect(mVertexCount*VERTEX_SIZE);
+        mVertices.order(ByteOrder.nativeOrder());
+        ByteBuffer byteBuf = ByteBuffer.allocateDirect(mIndexCount*SHORT_SIZE);
+        byteBuf.order(ByteOrder.nativeOrder());
+        mIndices = byteBuf.asShortBuffer();
+        if (mSpotColors.length != count) {
+            mSpotColors = new int[count];
+        }
+
+        for (int s = 0; s < count; s++) {
+            Hotspot spot = spots.get(s);
+            float x = spot.getX();
+            float y = spot.getY();
+            float size = spot.getSize();
+            int base = s*segments;
+            for (int i = 0; i < segments; i++) {
+                int o = (base + i)*VERTEX_SIZE;
+                mVertices.putFloat(o, x + size*mCos[i]);
+                mVertices.putFloat(o + FLOAT_SIZE, y + size*mSin[i]);
+            }
+            for (int i = 1; i < segments - 1; i++) {
+                mIndices.put((short)base);
+                mIndices.put((short)(base + i));
+                mIndices.put((short)(base + i + 1));
+            }
+            // Forces the color to be written
+            mSpotColors[s] = ~packColor(spot);
+        }
+        mIndices.position(0);
+        mSpotSegments = segments;
+        mDirtyFirst = Integer.MAX_VALUE;
+        mDirtyLast = -1;
+        refreshColors(spots);
+        mUploadAll = true;
+    }
+
+    /**
+     * Forgets the GL buffers, which are created again on the next draw.
+     * Must be called when the GL context changes.
+     */
+    public void setup(GL11 gl) {
+        mVboID = 0;
+        mIboID = 0;
+        mUploadAll = true;
+    }
+
+    /**
+     * Deletes the GL buffers, before setting the mesh up again in the same
+     * context.
+     */
+    public void release(GL11 gl) {
+        if (mVboID != 0) {
+            int[] ids = { mVboID, mIboID };
+            gl.glDeleteBuffers(2, ids, 0);
+        }
+        setup(gl);
+    }
+
+    public void draw(GL11 gl, List<Hotspot> spots) {
+        if (mVertexCount == 0) return;
+        refreshColors(spots);
+
+        if (mVboID == 0) {
+            int[] ids = new int[2];
+            gl.glGenBuffers(2, ids, 0);
+            mVboID = ids[0];
+            mIboID = ids[1];
+        }
+
+        gl.glBindBuffer(GL11.GL_ARRAY_BUFFER, mVboID);
+        gl.glBindBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, mIboID);
+        if (mUploadAll) {
+            mVertices.position(0);
+            gl.glBufferData(GL11.GL_ARRAY_BUFFER, mVertexCount*VERTEX_SIZE, mVertices, GL11.GL_DYNAMIC_DRAW);
+            gl.glBufferData(GL11.GL_ELEMENT_ARRAY_BUFFER, mIndexCount*SHORT_SIZE, mIndices, GL11.GL_STATIC_DRAW);
+            mUploadAll = false;
+        } else if (mDirtyLast >= mDirtyFirst) {
+            int offset = mDirtyFirst*VERTEX_SIZE;
+            mVertices.position(offset);
+            gl.glBufferSubData(GL11.GL_ARRAY_BUFFER, offset, (mDirtyLast - mDirtyFirst + 1)*VERTEX_SIZE, mVertices);
+            mVertices.position(0);
+        }
+        mDirtyFirst = Integer.MAX_VALUE;
+        mDirtyLast = -1;
+
+        gl.glEnableClientState(GL10.GL_VERTEX_ARRAY);
+        gl.glEnableClientState(GL10.GL_COLOR_ARRAY);
+        gl.glVertexPointer(2, GL10.GL_FLOAT, VERTEX_SIZE, 0);
+        gl.glColorPointer(4, GL10.GL_UNSIGNED_BYTE, VERTEX_SIZE, 2*FLOAT_SIZE);
+        gl.glDrawElements(GL10.GL_TRIANGLES, mIndexCount, GL10.GL_UNSIGNED_SHORT, 0);
+        gl.glDisableClientState(GL10.GL_COLOR_ARRAY);
+        gl.glDisableClientState(GL10.GL_VERTEX_ARRAY);
+        gl.glBindBuffer(GL11.GL_ELEMENT_ARRAY_BUFFER, 0);
+        gl.glBindBuffer(GL11.GL_ARRAY_BUFFER, 0);
+
+        // The current color is undefined after drawing with a color array
+        gl.glColor4f(1.0f, 1.0f, 1.0f, 1.0f);
+    }
+
+    /**
+     * Writes the colors of the hotspots that changed and extends the range
+     * of vertices to send to GL.
+     */
+    private void refreshColors(List<Hotspot> spots) {
+        int count = Math.min(spots.size(), mSpotColors.length);
+        int segments = mSpotSegments;
+        for (int s = 0; s < count; s++) {
+            int color = packColor(spots.get(s));
+            if (color == mSpotColors[s]) continue;
+            mSpotColors[s] = color;
+
+            int first = s*segments;
+            int last = first + segments - 1;
+            for (int i = first; i <= last; i++) {
+                mVertices.putInt(i*VERTEX_SIZE + 2*FLOAT_SIZE, color);
+            }
+            mDirtyFirst = Math.min(mDirtyFirst, first);
+            mDirtyLast = Math.max(mDirtyLast, last);
+        }
+    }
+
+    /**
+     * RGBA bytes in memory order, as an int in the buffer's byte order.
+     */
+    private int packColor(Hotspot spot) {
+        spot.getColor(mColor, 0);
+        int r = toByte(mColor[0]);
+        int g = toByte(mColor[1]);
+        int b = toByte(mColor[2]);
+        int a = toByte(mColor[3]);
+        if (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN) {
+            return (a << 24) | (b << 16) | (g << 8) | r;
+        }
+        return (r << 24) | (g << 16) | (b << 8) | a;
+    }
+
+    private static int toByte(float c) {
+        if (c <= 0.0f) return 0;
+        if (c >= 1.0f) return 255;
+        return (int)(c*255.0f + 0.5f);
+    }
+
+    private ByteBuffer mVertices;
+    private ShortBuffer mIndices;
+    private int mVertexCount;
+    private int mIndexCount;
+    private int mSegments;
+    private int mSpotSegments;
+    private int[] mSpotColors;
+    private float[] mColor;
+    private float[] mCos;
+    private float[] mSin;
+
+    private int mVboID;
+    private int mIboID;
+    private boolean mUploadAll;
+    private int mDirtyFirst;
+    private int mDirtyLast;
+
+    public static final int MIN_SEGMENTS = 8;
+
+    private static final int FLOAT_SIZE = Float.SIZE/8;
+    private static final int SHORT_SIZE = Short.SIZE/8;
+    private static final int VERTEX_SIZE = 2*FLOAT_SIZE + 4;
+    private static final int MAX_VERTICES = 65536;
+}
@@ -0,0 +1,141 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ti.arx.ProjectorGallery;
+
+import com.ti.arx.math.Mat3x4;
+import com.ti.arx.math.Mat4;
+import com.ti.arx.math.Quat;
+
+/**
+ * Keeps the last two view matrices from the tracker with their arrival
+ * times, and gives the view matrix at any display time in between. The
+ * display runs one tracker interval behind, so that every frame falls
+ * between two known poses: the rotation is interpolated along the shortest
+ * arc and the translation linearly.
+ *
+ * Poses are pushed from the tracker thread and sampled from the GL thread.
+ * Nothing is allocated after construction.
+ */
+public class PoseInterpolator {
+
+    public PoseInterpolator() {
+        mPrev = new float[16];
+        mLast = new float[16];
+        mPoseA = new float[12];
+        mPoseB = new float[12];
+        mQuatA = new float[4];
+        mQuatB = new float[4];
+        mMaxGapNs = DEFAULT_MAX_GAP_NS;
+    }
+
+    /**
+     * Adds the column major view matrix m received at timeNs.
+     */
+    public synchronized void push(float[] m, long timeNs) {
+        if (mCount == 0 || timeNs - mLastNs > mMaxGapNs) {
+            // Nothing to interpolate from, hold this pose
+            System.arraycopy(m, 0, mPrev, 0, 16);
+            mPrevNs = timeNs;
+            mCount = 1;
+        } else {
+            float[] swap = mPrev;
+            mPrev = mLast;
+            mLast = swap;
+            mPrevNs = mLastNs;
+            mCount = 2;
+        }
+        System.arraycopy(m, 0, mLast, 0, 16);
+        mLastNs = timeNs;
+    }
+
+    /**
+     * Forgets the poses, e.g. when tracking was lost.
+     */
+    public synchronized void reset() {
+        mCount = 0;
+    }
+
+    /**
+     * Writes the view matrix to display at timeNs into out.
+     * @return false if no pose was pushed yet, leaving out unchanged.
+     */
+    public synchronized boolean sample(long timeNs, float[] out) {
+        if (mCount == 0) return false;
+
+        long interval = mLastNs - mPrevNs;
+        if (mCount < 2 || interval <= 0) {
+            System.arraycopy(mLast, 0, out, 0, 16);
+            return true;
+        }
+
+        // 0 when the last pose just arrived, 1 one interval later
+        float t = (float)(timeNs - mLastNs)/interval;
+        if (t <= 0.0f) {
+            System.arraycopy(mPrev, 0, out, 0, 16);
+            return true;
+        }
+        if (t >= 1.0f) {
+            System.arraycopy(mLast, 0, out, 0, 16);
+            return true;
+        }
+
+        toPose(mPoseA, mPrev);
+        toPose(mPoseB, mLast);
+        Quat.fromMat3x4(mQuatA, 0, mPoseA, 0);
+        Quat.fromMat3x4(mQuatB, 0, mPoseB, 0);
+        Quat.slerp(mQuatA, 0, mQuatA, 0, mQuatB, 0, t);
+        Mat3x4.fromQuat(mPoseA, 0, mQuatA, 0,
+                        mPoseA[3] + t*(mPoseB[3] - mPoseA[3]),
+                        mPoseA[7] + t*(mPoseB[7] - mPoseA[7]),
+                        mPoseA[11] + t*(mPoseB[11] - mPoseA[11]));
+        Mat4.fromPose(out, 0, mPoseA, 0);
+        return true;
+    }
+
+    /**
+     * Poses further apart than this are not interpolated, the renderer
+     * jumps to the new one.
+     */
+    public synchronized void setMaxGapMs(float ms) {
+        mMaxGapNs = (long)(ms*1e6);
+    }
+
+    /**
+     * Row major 3x4 [R|t] pose from the column major matrix m.
+     */
+    private static void toPose(float[] pose, float[] m) {
+        for (int r = 0; r < 3; r++) {
+            for (int c = 0; c < 4; c++) {
+                pose[r*4 + c] = m[c*4 + r];
+            }
+        }
+    }
+
+    private float[] mPrev;
+    private float[] mLast;
+    private long mPrevNs;
+    private long mLastNs;
+    private int mCount;
+    private long mMaxGapNs;
+
+    private float[] mPoseA;
+    private float[] mPoseB;
+    private float[] mQuatA;
+    private float[] mQuatB;
+
+    private static final long DEFAULT_MAX_GAP_NS = 250000000L;
+}
@@ -16,9 +16,12 @@
 
 package com.ti.arx.ProjectorGallery;
 
+import java.io.File;
+
 import android.app.Activity;
 import android.opengl.GLSurfaceView;
 import android.os.Bundle;
+import android.util.Log;
 import android.view.View;
 import android.view.KeyEvent;
 import android.view.View.OnClickListener;
@@ -35,8 +38,22 @@ public class ProjectorGalleryActivity extends Activity {
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
 
-        mRenderer = new ProjectorPoseRenderer(this);
+        mReplayFile = getIntent().getStringExtra(EXTRA_REPLAY_TRACE);
+        mReplaySpeed = getIntent().getFloatExtra(EXTRA_REPLAY_SPEED, 1.0f);
+        mRecordFile = getIntent().getStringExtra(EXTRA_RECORD_TRACE);
+
+        boolean gles2 = getIntent().getBooleanExtra(EXTRA_GLES2, false);
+        mRenderer = new ProjectorPoseRenderer(this, gles2);
+        mRenderer.setLogGLStats(getIntent().getBooleanExtra(EXTRA_GL_STATS, false));
+        mRenderer.setLogFramePacing(getIntent().getBooleanExtra(EXTRA_FRAME_PACING, false));
+        mRenderer.setRefreshRate(getWindowManager().getDefaultDisplay().getRefreshRate());
+        boolean continuous = getIntent().getBooleanExtra(EXTRA_CONTINUOUS, false);
+        mRenderer.setContinuous(continuous);
         mView = new GLSurfaceView(this);
+        if (gles2) {
+            // Must come before the config chooser, which depends on it
+            mView.setEGLContextClientVersion(2);
+        }
         mView.setEGLConfigChooser(8, 8, 8, 8, 16, 0);
         mRenderer.setGLView(mView);
         mView.setRenderer(mRenderer);
@@ -45,7 +62,8 @@ public class ProjectorGalleryActivity extends Activity {
         mView.setOnClickListener(trackerReset);
         mView.setClickable(true);
 
-        mView.setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
+        mView.setRenderMode(continuous ? GLSurfaceView.RENDERMODE_CONTINUOUSLY :
+                                         GLSurfaceView.RENDERMODE_WHEN_DIRTY);
         setContentView(mView);
     }
 
@@ -83,7 +101,16 @@ public class ProjectorGalleryActivity extends Activity {
     @Override
     protected void onResume() {
         super.onResume();
+        if (mReplayFile != null) {
+            if (!mRenderer.startReplay(new File(mReplayFile), mReplaySpeed)) {
+                finish();
+            }
+            return;
+        }
         mRenderer.start();
+        if (mRecordFile != null && !mRenderer.startRecording(mRecordFile)) {
+            Log.e(TAG, "Could not record poses to " + mRecordFile);
+        }
     }
 
     @Override
@@ -92,6 +119,26 @@ public class ProjectorGalleryActivity extends Activity {
         mRenderer.stop();
     }
 
+    /** Path of a pose trace to record while running */
+    public static final String EXTRA_RECORD_TRACE = "com.ti.arx.ProjectorGallery.RECORD_TRACE";
+    /** Path of a pose trace to replay instead of running ARX */
+    public static final String EXTRA_REPLAY_TRACE = "com.ti.arx.ProjectorGallery.REPLAY_TRACE";
+    /** Replay rate relative to the recorded one, float */
+    public static final String EXTRA_REPLAY_SPEED = "com.ti.arx.ProjectorGallery.REPLAY_SPEED";
+    /** Renders with OpenGL ES 2.0 shaders instead of ES 1.1, boolean */
+    public static final String EXTRA_GLES2 = "com.ti.arx.ProjectorGallery.GLES2";
+    /** Logs draw calls and GL state changes per frame, boolean */
+    public static final String EXTRA_GL_STATS = "com.ti.arx.ProjectorGallery.GL_STATS";
+    /** Renders every display refresh, interpolating the pose, boolean */
+    public static final String EXTRA_CONTINUOUS = "com.ti.arx.ProjectorGallery.CONTINUOUS";
+    /** Logs frame rate, draw time and missed refreshes, boolean */
+    public static final String EXTRA_FRAME_PACING = "com.ti.arx.ProjectorGallery.FRAME_PACING";
+
+    private static final String TAG = "ProjectorGallery";
+
     private GLSurfaceView mView;
     private ProjectorPoseRenderer mRenderer;
+    private String mRecordFile;
+    private String mReplayFile;
+    private float mReplaySpeed;
 }
@@ -16,31 +16,53 @@
 
 package com.ti.arx.ProjectorGallery;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 import javax.microedition.khronos.opengles.GL11;
 
 import android.content.Context;
+import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
 import android.opengl.GLU;
 
 import android.util.Log;
 
+import com.ti.arx.gesture.GestureEngine;
+import com.ti.arx.gesture.PointerFilter;
+import com.ti.arx.math.Mat4;
+import com.ti.arx.posetrace.PoseReplayer;
+import com.ti.arx.posetrace.PoseTrace;
+
 public class ProjectorPoseRenderer implements GLSurfaceView.Renderer {
 
     public ProjectorPoseRenderer(Context context) {
+        this(context, false);
+    }
+
+    /**
+     * @param gles2 draws with OpenGL ES 2.0 shaders and batched draw calls
+     * instead of the 1.1 fixed function pipeline. The view must then be set
+     * up for a 2.0 context.
+     */
+    public ProjectorPoseRenderer(Context context, boolean gles2) {
+        mGLES2 = gles2;
         mProjectorK = new float[9];
         mProjMatrix = new float[16];
         mViewMatrix = new float[16];
+        mPose = new float[16];
+        mPoseLock = new Object();
+        mDrawViewMatrix = new float[16];
+        mModelViewMatrix = new float[16];
+        mMvpMatrix = new float[16];
+        mStats = new GLStats(STATS_INTERVAL);
+        mPacing = new FramePacing(0.0f, STATS_INTERVAL);
+        mInterpolator = new PoseInterpolator();
 
         mSetupList = new ArrayList<GLObject>();
         mDrawableList = new ArrayList<GLDrawable>();
@@ -49,20 +71,46 @@ public class ProjectorPoseRenderer implements GLSurfaceView.Renderer {
         mTextureList = new CircularTextureList(context);
         mImageQuad = Shape.createQuad();
         mCursor = new Cursor();
-        mUI = new UILayer();
+        mGestures = new GestureEngine();
+        mUI = new UILayer(gles2);
         mUI.setListener(new UIListener());
+        mUI.setGestureEngine(mGestures);
+        mTextureList.setListener(new TextureListener());
+
+        if (gles2) {
+            // The cursor and hotspots are still set up to read their
+            // parameters, the batches are built from them afterwards
+            mState = new GLES2State(mStats);
+            SceneBatch scene = new SceneBatch(mState, mImageQuad, mUI);
+            CursorBatch cursor = new CursorBatch(mState, mCursor);
+            mSceneBatch = scene;
+            mCursorBatch = cursor;
+
+            mSetupList.add(mTextureList);
+            mSetupList.add(mCursor);
+            mSetupList.add(mUI);
+            mSetupList.add(mState);
+            mSetupList.add(scene);
+            mSetupList.add(cursor);
+
+            mDrawableList.add(scene);
+            mNoTransformDrawableList.add(cursor);
+        } else {
+            mSetupList.add(mTextureList);
+            mSetupList.add(mImageQuad);
+            mSetupList.add(mCursor);
+            mSetupList.add(mUI);
 
-        mSetupList.add(mTextureList);
-        mSetupList.add(mImageQuad);
-        mSetupList.add(mCursor);
-        mSetupList.add(mUI);
-
-        mDrawableList.add(mImageQuad);
-        mDrawableList.add(mUI);
+            mDrawableList.add(mImageQuad);
+            mDrawableList.add(mUI);
 
-        mNoTransformDrawableList.add(mCursor);
+            mNoTransformDrawableList.add(mCursor);
+        }
 
         mProperties = new Properties();
+        mConfigService = new ConfigService(new File(PARAMETERS_DIR), PARAMETERS_FILE, CALIBRATION_FILE);
+        mConfigService.setListener(new ConfigListener());
+        mPendingConfig = new AtomicReference<GalleryConfig>();
         mDraw = false;
         mDrawUI = false;
 
@@ -79,19 +127,138 @@ public class ProjectorPoseRenderer implements GLSurfaceView.Renderer {
         mView = view;
     }
 
+    /**
+     * Logs the draw calls and GL state changes per frame every few seconds.
+     * Slows the fixed function path down, which is counted through a proxy.
+     */
+    public void setLogGLStats(boolean log) {
+        mLogStats = log;
+    }
+
+    /**
+     * Draws every display refresh instead of once per pose, the pose shown
+     * being interpolated between the last two received. The view must then
+     * render continuously. Costs more GPU time, but the content moves at the
+     * display rate rather than the camera rate.
+     */
+    public void setContinuous(boolean continuous) {
+        mContinuous = continuous;
+        mInterpolator.reset();
+    }
+
+    /**
+     * Logs the frame rate, draw time and missed refreshes every few seconds,
+     * to compare the on demand and continuous modes on a device.
+     */
+    public void setLogFramePacing(boolean log) {
+        mLogPacing = log;
+    }
+
+    /**
+     * Display refresh rate in Hz the frame pacing is measured against.
+     */
+    public void setRefreshRate(float hz) {
+        mPacing = new FramePacing(hz, STATS_INTERVAL);
+    }
+
     public boolean start() {
+        mConfigService.startWatching();
         return create(mViewMatrix);
     }
 
     public void stop() {
+        mConfigService.stopWatching();
+        mInterpolator.reset();
+        mPacing.restart();
+        if (mReplayer != null) {
+            stopReplay();
+            return;
+        }
         destroy();
     }
 
+    /**
+     * Records the poses computed from now on into a pose trace file, until
+     * stopRecording or stop. Must be called after start.
+     */
+    public boolean startRecording(String fileName) {
+        return setRecordFile(fileName);
+    }
+
+    public void stopRecording() {
+        setRecordFile(null);
+    }
+
+    /**
+     * Drives the renderer from a recorded pose trace instead of ARX, which
+     * must not be started. The native library is not used.
+     * @param speed 1 for the recorded rate, 2 for twice as fast, etc.
+     * 0 delivers the poses back to back, stopReplay then logs the throughput.
+     */
+    public boolean startReplay(File trace, float speed) {
+        stopReplay();
+        try {
+            PoseReplayer replayer = new PoseReplayer(new PoseTrace(trace), new ReplayListener());
+            replayer.setSpeed(speed);
+            replayer.setLoop(true);
+            mReplayer = replayer;
+            replayer.start();
+            mConfigService.startWatching();
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Could not replay " + trace + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    public void stopReplay() {
+        PoseReplayer replayer = mReplayer;
+        if (replayer != null) {
+            replayer.stop();
+            Log.i(TAG, "Pose replay: " + replayer);
+            mReplayer = null;
+        }
+    }
+
     @Override
     public void onDrawFrame(GL10 gl10) {
         if (!(gl10 instanceof GL11)) return;
         GL11 gl = (GL11)gl10;
+        long start = System.nanoTime();
+
+        GalleryConfig config = mPendingConfig.getAndSet(null);
+        if (config != null) {
+            applyConfig(gl, config);
+        }
+
+        if (mTextureList.uploadPending(gl)) {
+            mView.requestRender();
+        }
+
+        // Draw from this frame's own copy of the pose, interpolated to this
+        // frame in continuous mode, so the pose thread cannot change it midway
+        float[] view = mDrawViewMatrix;
+        if (!mContinuous || !mInterpolator.sample(start, view)) {
+            synchronized (mPoseLock) {
+                System.arraycopy(mPose, 0, view, 0, 16);
+            }
+        }
 
+        if (mGLES2) {
+            drawGLES2(gl, view);
+        } else {
+            drawGLES1(mLogStats ? mStats.wrap(gl) : gl, view);
+        }
+
+        if (mStats.frame() && mLogStats) {
+            Log.i(TAG, (mGLES2 ? "GLES2: " : "GLES1: ") + mStats);
+        }
+        if (mPacing.frame(start, System.nanoTime()) && mLogPacing) {
+            Log.i(TAG, (mContinuous ? "continuous: " : "on demand: ") + mPacing);
+        }
+    }
+
+    private void drawGLES1(GL11 gl, float[] view) {
         gl.glClear(GL10.GL_COLOR_BUFFER_BIT | GL10.GL_DEPTH_BUFFER_BIT);
         gl.glColor4f(1.0f, 1.0f, 1.0f, 1.0f);
         gl.glDisable(GL10.GL_BLEND);
@@ -107,14 +274,18 @@ public class ProjectorPoseRenderer implements GLSurfaceView.Renderer {
         }
 
         gl.glMatrixMode(GL10.GL_MODELVIEW);
-        gl.glLoadIdentity();
         if (mUsePose) {
-            gl.glLoadMatrixf(mViewMatrix, 0);
-        }
-
-        if (mUsePose) {
-            gl.glTranslatef(mSceneX, mSceneY, mSceneZ);
-            gl.glScalef(mZoom, mZoom, 1.0f);
+            // view * scene placement, view is not shared with the pose thread
+            float[] mv = mModelViewMatrix;
+            System.arraycopy(view, 0, mv, 0, 16);
+            Mat4.translate(mv, 0, mSceneX, mSceneY, mSceneZ);
+            Mat4.scale(mv, 0, mZoom, mZoom, 1.0f);
+            gl.glLoadMatrixf(mv, 0);
+            Mat4.multiply(mMvpMatrix, 0, mProjMatrix, 0, mv, 0);
+            mUI.setPixelScale(pixelScale(mMvpMatrix));
+        } else {
+            gl.glLoadIdentity();
+            mUI.setPixelScale(mWidth/2.0f);
         }
 
         for (GLDrawable d : mDrawableList) {
@@ -132,134 +303,215 @@ public class ProjectorPoseRenderer implements GLSurfaceView.Renderer {
         }
     }
 
-    @Override
-    public void onSurfaceChanged(GL10 gl10, int width, int height) {
-        if (! (gl10 instanceof GL11)) {
-            return;
+    private void drawGLES2(GL11 gl, float[] view) {
+        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+
+        // Texture uploads and evictions bind textures behind the cache
+        mState.invalidateTexture();
+
+        if (!mDraw) return;
+
+        float[] mvp = mMvpMatrix;
+        if (mUsePose) {
+            float[] mv = mModelViewMatrix;
+            System.arraycopy(view, 0, mv, 0, 16);
+            Mat4.translate(mv, 0, mSceneX, mSceneY, mSceneZ);
+            Mat4.scale(mv, 0, mZoom, mZoom, 1.0f);
+            Mat4.multiply(mvp, 0, mProjMatrix, 0, mv, 0);
+        } else {
+            Mat4.ortho(mvp, 0, -1.0f, 1.0f, -1.0f/mAspectRatio, 1.0f/mAspectRatio, -1.0f, 1.0f);
         }
-        loadCalibration();
-        loadParams();
-        setup(mProperties);
+        mState.setMatrix(mvp);
 
-        mProjMatrix[0] = 2*mProjectorK[0]/mProjectorW;
-        mProjMatrix[4] = mProjectorK[1];
-        mProjMatrix[8] = 2*(mProjectorK[2]/mProjectorW) - 1;
-        mProjMatrix[12] = 0;
+        for (GLDrawable d : mDrawableList) {
+            d.draw(gl);
+        }
 
-        mProjMatrix[1] = mProjectorK[3];
-        mProjMatrix[5] = 2*mProjectorK[4]/mProjectorH;
-        mProjMatrix[9] = 2*(mProjectorK[5]/mProjectorH) - 1;
-        mProjMatrix[13] = 0;
+        Mat4.ortho(mvp, 0, -1.0f, 1.0f, -1.0f/mAspectRatio, 1.0f/mAspectRatio, -1.0f, 1.0f);
+        mState.setMatrix(mvp);
 
-        mProjMatrix[2] = mProjectorK[6];
-        mProjMatrix[6] = mProjectorK[7];
-        mProjMatrix[10] = -(FRUSTUM_NEAR_Z + FRUSTUM_FAR_Z)/(FRUSTUM_FAR_Z - FRUSTUM_NEAR_Z);
-        mProjMatrix[14] = -(2*FRUSTUM_NEAR_Z*FRUSTUM_FAR_Z)/(FRUSTUM_FAR_Z - FRUSTUM_NEAR_Z);
+        for (GLDrawable d : mNoTransformDrawableList) {
+            d.draw(gl);
+        }
+    }
 
-        mProjMatrix[3] = 0;
-        mProjMatrix[7] = 0;
-        mProjMatrix[11] = -1;
-        mProjMatrix[15] = 0;
+    @Override
+    public void onSurfaceChanged(GL10 gl10, int width, int height) {
+        if (! (gl10 instanceof GL11)) {
+            return;
+        }
+        // Everything is set up again, from the files as they are now
+        GalleryConfig config = mConfigService.reload();
+        mPendingConfig.set(null);
+        mConfig = config;
+        mProperties = config.getProperties();
+        Log.d(TAG, "config: " + config);
+        applyProjection(config);
+        applyScene(config);
+        setupGestures(mProperties);
 
         mAspectRatio = (float)width/(float)height;
+        mWidth = width;
         mUI.setAspectRatio(mAspectRatio);
+        mUI.setPixelScale(width/2.0f);
 
 
         GL11 gl = (GL11)gl10;
         gl.glViewport(0, 0, width, height);
         //gl.glClearColor(1.0f, 1.0f, 1.0f, 1.0f);
         gl.glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
-        gl.glEnable(GL10.GL_CULL_FACE);
+        if (!mGLES2) {
+            gl.glEnable(GL10.GL_CULL_FACE);
+        }
 
         for (GLObject o : mSetupList) {
             o.setup(gl, mProperties);
         }
 
+        if (mGLES2) {
+            mState.setCullFace(true);
+        } else {
+            String value = mProperties.getProperty("-hotSpotBenchmark");
+            if (value != null && Integer.parseInt(value) != 0) {
+                new HotspotBenchmark(mProperties).run(gl, width, height);
+            }
+        }
+
         mImageQuad.setTexture(mTextureList.getCurrentTexture());
     }
 
     @Override
-    public void onSurfaceCreated(GL10 gl, EGLConfig config) {}
-
-    private void loadCalibration() {
-        File file = new File("/data/misc/Parameters/ProjectorCalibration.txt");
-        if (!file.exists()) return;
+    public void onSurfaceCreated(GL10 gl, EGLConfig config) {
+        mTextureList.onContextLost();
+    }
 
-        try {
-            BufferedReader r = new BufferedReader (new FileReader(file));
-            String line = r.readLine();
-            r.close();
-            String[] values = line.split(" ");
-            if (values.length == mProjectorK.length) {
-                for (int i = 0; i < values.length; i++) {
-                    float value = Float.parseFloat(values[i]);
-                    Log.d(TAG, "projector_k["+i+"]="+value);
-                    mProjectorK[i] = value;
-                }
+    /**
+     * Applies a new snapshot of the parameters on the GL thread, setting up
+     * again only the parts of the gallery it changes.
+     */
+    private void applyConfig(GL11 gl, GalleryConfig config) {
+        int changes = config.diff(mConfig);
+        mConfig = config;
+        mProperties = config.getProperties();
+        if (changes == 0) return;
+        Log.i(TAG, String.format("applying parameter changes 0x%x", changes));
+
+        if ((changes & GalleryConfig.CHANGED_PROJECTION) != 0) {
+            applyProjection(config);
+        }
+        if ((changes & GalleryConfig.CHANGED_SCENE) != 0) {
+            applyScene(config);
+        }
+        if ((changes & GalleryConfig.CHANGED_ZOOM_LIMITS) != 0) {
+            applyZoomLimits(config);
+        }
+        if ((changes & GalleryConfig.CHANGED_HOTSPOTS) != 0) {
+            setupGestures(mProperties);
+            mUI.release(gl);
+            mUI.setup(gl, mProperties);
+            if (mGLES2) {
+                mSceneBatch.release();
+                mSceneBatch.setup(gl, mProperties);
             }
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
+        }
+        if ((changes & GalleryConfig.CHANGED_CURSOR) != 0) {
+            mCursor.release(gl);
+            mCursor.setup(gl, mProperties);
+            if (mGLES2) {
+                mCursorBatch.release();
+                mCursorBatch.setup(gl, mProperties);
+            }
+        }
+        if (mGLES2) {
+            // Setup binds buffers and sets blending behind the cache
+            mState.invalidate();
+        }
+        if ((changes & (GalleryConfig.CHANGED_TEXTURES | GalleryConfig.CHANGED_OTHER)) != 0) {
+            Log.i(TAG, "some parameter changes only apply once the surface is created again");
         }
     }
 
-    private void loadParams() {
-        File file = new File("/data/misc/Parameters/galleryParameters.txt");
-        FileInputStream fis;
-        try {
-            fis = new FileInputStream(file);
-            mProperties.load(fis);
-            Log.d(TAG, "properties: "+mProperties);
-        } catch (FileNotFoundException e1) {
-            e1.printStackTrace();
-        } catch (IOException e) {
-            e.printStackTrace();
+    private void applyProjection(GalleryConfig config) {
+        if (config.hasProjectorK()) {
+            config.getProjectorK(mProjectorK);
+            for (int i = 0; i < mProjectorK.length; i++) {
+                Log.d(TAG, "projector_k["+i+"]="+mProjectorK[i]);
+            }
         }
+        mProjectorW = config.getProjW();
+        mProjectorH = config.getProjH();
+        Log.d(TAG, "mProjectorW: "+mProjectorW+" mProjectorH: "+mProjectorH);
+
+        Mat4.frustumFromIntrinsics(mProjMatrix, 0, mProjectorK, 0, 1.0f, mProjectorW, mProjectorH,
+                                   FRUSTUM_NEAR_Z, FRUSTUM_FAR_Z);
     }
 
-    private void setup(Properties props) {
-        String value = props.getProperty("-objX");
-        if (value != null) {
-            mSceneX = Float.parseFloat(value);
-            Log.d(TAG, "mSceneX: "+mSceneX);
-        }
-        value = props.getProperty("-objY");
-        if (value != null) {
-            mSceneY = Float.parseFloat(value);
-            Log.d(TAG, "mSceneY: "+mSceneY);
-        }
-        value = props.getProperty("-objZ");
-        if (value != null) {
-            mSceneZ = Float.parseFloat(value);
-            Log.d(TAG, "mSceneZ: "+mSceneZ);
-        }
-        value = props.getProperty("-objScale");
-        if (value != null) {
-            mZoom = Float.parseFloat(value);
-        }
-        value = props.getProperty("-objScaleStep");
-        if (value != null) {
-            mZoomStep = Float.parseFloat(value);
+    private void applyScene(GalleryConfig config) {
+        mSceneX = config.getObjX();
+        mSceneY = config.getObjY();
+        mSceneZ = config.getObjZ();
+        Log.d(TAG, "mSceneX: "+mSceneX+" mSceneY: "+mSceneY+" mSceneZ: "+mSceneZ);
+        mZoom = config.getObjScale();
+    }
+
+    /**
+     * Like the pose engine, keeps the current zoom when only the step or
+     * the limits change.
+     */
+    private void applyZoomLimits(GalleryConfig config) {
+        mZoomStep = config.getObjScaleStep();
+        mMinZoom = config.getObjScaleMin();
+        mMaxZoom = config.getObjScaleMax();
+    }
+
+    private void setupGestures(Properties props) {
+        PointerFilter filter = mGestures.getFilter();
+        String mode = props.getProperty("-pointerFilter", "none");
+        if (mode.equals("exponential")) {
+            float timeMs = Float.parseFloat(props.getProperty("-pointerFilterTimeMs", "100"));
+            filter.setExponential(timeMs);
+        } else if (mode.equals("oneeuro")) {
+            float minCutoff = Float.parseFloat(props.getProperty("-pointerMinCutoff", "1.0"));
+            float beta = Float.parseFloat(props.getProperty("-pointerBeta", "1.0"));
+            float dCutoff = Float.parseFloat(props.getProperty("-pointerDerivativeCutoff", "1.0"));
+            filter.setOneEuro(minCutoff, beta, dCutoff);
+        } else {
+            filter.setNone();
         }
-        value = props.getProperty("-objScaleMax");
+
+        // The dwell used to be counted in pose updates, at about 30 per second
+        String value = props.getProperty("-hotSpotDwellMs");
         if (value != null) {
-            mMaxZoom = Float.parseFloat(value);
+            mGestures.setDwellMs(Float.parseFloat(value));
+        } else {
+            value = props.getProperty("-hotSpotActionDelay");
+            if (value != null) {
+                mGestures.setDwellMs(Integer.parseInt(value)*1000.0f/30.0f);
+            }
         }
-        value = props.getProperty("-objScaleMin");
+        value = props.getProperty("-hotSpotDebounceMs");
         if (value != null) {
-            mMinZoom = Float.parseFloat(value);
+            mGestures.setDebounceMs(Float.parseFloat(value));
         }
-        value = props.getProperty("-projW");
+        value = props.getProperty("-hotSpotHysteresis");
         if (value != null) {
-            mProjectorW = Integer.parseInt(value);
-            Log.d(TAG, "mProjectorW: "+mProjectorW);
+            mGestures.setHysteresis(Float.parseFloat(value));
         }
-        value = props.getProperty("-projH");
+        value = props.getProperty("-hotSpotRetrigger");
         if (value != null) {
-            mProjectorH = Integer.parseInt(value);
-            Log.d(TAG, "mProjectorH: "+mProjectorH);
+            mGestures.setRetrigger(Integer.parseInt(value) != 0);
         }
+        Log.d(TAG, "pointer filter: " + mode + ", dwell: " + mGestures.getDwellNs()/1000000 + "ms");
+    }
+
+    /**
+     * Pixels covered on screen by one unit around the origin of the model
+     * view projection matrix mvp.
+     */
+    private float pixelScale(float[] mvp) {
+        float w = Math.abs(mvp[15]);
+        if (w < 1e-6f) return mWidth/2.0f;
+        return (float)Math.sqrt(mvp[0]*mvp[0] + mvp[1]*mvp[1])/w*mWidth/2.0f;
     }
 
     private void onProjPoseUpdate(int status, float x, float y) {
@@ -272,8 +524,22 @@ public class ProjectorPoseRenderer implements GLSurfaceView.Renderer {
         //Log.d(TAG, String.format("rz [%1.2f %1.2f %1.2f %1.2f]", mViewMatrix[8], mViewMatrix[9], mViewMatrix[10], mViewMatrix[11]));
         //Log.d(TAG, String.format("t  [%1.2f %1.2f %1.2f %1.2f]", mViewMatrix[12], mViewMatrix[13], mViewMatrix[14], mViewMatrix[15]));
         //Log.d(TAG, String.format("update - status:%d [x:%1.2f y:%1.2f]", status, x, y));
-        mUI.onPointerEvent(x, y);
-        mView.requestRender();
+        if (status == STATUS_LOST_TRACKING) {
+            mGestures.resetPointer();
+        }
+        // mViewMatrix is only written by this thread, publish it for the GL thread
+        synchronized (mPoseLock) {
+            System.arraycopy(mViewMatrix, 0, mPose, 0, 16);
+        }
+        mGestures.onPointer(x, y, System.nanoTime());
+        mUI.onPointerEvent(mGestures.getX(), mGestures.getY(), mGestures.getTimeNs());
+        if (!mContinuous) {
+            mView.requestRender();
+        } else if (status == STATUS_LOST_TRACKING) {
+            mInterpolator.reset();
+        } else {
+            mInterpolator.push(mViewMatrix, mGestures.getTimeNs());
+        }
     }
 
     public void zoomIn() {
@@ -330,28 +596,92 @@ public class ProjectorPoseRenderer implements GLSurfaceView.Renderer {
         }
     }
 
+    private class ConfigListener implements ConfigService.Listener {
+
+        @Override
+        public void onConfigChanged(GalleryConfig config) {
+            // Applied on the GL thread, only the latest if several pile up
+            mPendingConfig.set(config);
+            GLSurfaceView view = mView;
+            if (view != null) {
+                view.requestRender();
+            }
+        }
+    }
+
+    private class ReplayListener implements PoseReplayer.Listener {
+
+        @Override
+        public void onCameraPose(long timestamp, int status, float[] matrix) {}
+
+        @Override
+        public void onProjectorPose(int status, float[] viewMatrix, float x, float y) {
+            // Same as the JNI callback, which also writes mViewMatrix in place
+            System.arraycopy(viewMatrix, 0, mViewMatrix, 0, 16);
+            onProjPoseUpdate(status, x, y);
+        }
+
+        @Override
+        public void onReplayDone(PoseReplayer replayer) {}
+    }
+
+    private class TextureListener implements TextureLoader.Listener {
+
+        @Override
+        public void onTextureDecoded(Texture t) {
+            GLSurfaceView view = mView;
+            if (view != null) {
+                view.requestRender();
+            }
+        }
+    }
+
     public native void reset();
     private native void zoomChanged(float value);
     private native boolean create(float[] projPose);
     private native void destroy();
+    private native boolean setRecordFile(String fileName);
 
     private boolean mDraw;
     private boolean mUsePose;
     private boolean mDrawUI;
+    private boolean mGLES2;
+    private boolean mLogStats;
+    private volatile boolean mContinuous;
+    private boolean mLogPacing;
+
+    private GLStats mStats;
+    private FramePacing mPacing;
+    private PoseInterpolator mInterpolator;
+    private GLES2State mState;
+    private SceneBatch mSceneBatch;
+    private CursorBatch mCursorBatch;
 
     private GLSurfaceView mView;
+    private volatile PoseReplayer mReplayer;
     private ArrayList<GLObject> mSetupList;
     private ArrayList<GLDrawable> mDrawableList;
     private ArrayList<GLDrawable> mNoTransformDrawableList;
     private Properties mProperties;
+    private ConfigService mConfigService;
+    private GalleryConfig mConfig;
+    private AtomicReference<GalleryConfig> mPendingConfig;
 
     private Shape mImageQuad;
     private CircularTextureList mTextureList;
     private Cursor mCursor;
     private UILayer mUI;
+    private GestureEngine mGestures;
     private float mAspectRatio;
+    private int mWidth;
 
     private float[] mProjMatrix;
+    private float[] mModelViewMatrix;
+    private float[] mMvpMatrix;
+    private float[] mDrawViewMatrix;
+    /** Latest pose, copied from mViewMatrix by the pose callback */
+    private float[] mPose;
+    private Object mPoseLock;
     private float[] mProjectorK;
     private int mProjectorW;
     private int mProjectorH;
@@ -367,6 +697,7 @@ public class ProjectorPoseRenderer implements GLSurfaceView.Renderer {
 
     ///////////////////////////////////////////////////////////
     // These fields are initialized and/or updated by JNI layer
+    // mViewMatrix is written before each onProjPoseUpdate, on the same thread
     private float[] mViewMatrix;
     private int context;
     /////////////////////////////////////////////////////////
@@ -374,6 +705,12 @@ public class ProjectorPoseRenderer implements GLSurfaceView.Renderer {
     private static final float FRUSTUM_NEAR_Z = 0.01f;
     private static final float FRUSTUM_FAR_Z = 500.0f;
 
+    private static final int STATS_INTERVAL = 300;
+
+    private static final String PARAMETERS_DIR = "/data/misc/Parameters";
+    private static final String PARAMETERS_FILE = "galleryParameters.txt";
+    private static final String CALIBRATION_FILE = "ProjectorCalibration.txt";
+
     private static final int HOTSPOT_PREV = 0;
     private static final int HOTSPOT_NEXT = 2;
     private static final int HOTSPOT_ZOOMOUT = 3;
@@ -387,6 +724,11 @@ public class ProjectorPoseRenderer implements GLSurfaceView.Renderer {
     private static final String TAG = "ProjectorPoseRenderer";
 
     static {
-        System.loadLibrary("arprojector_jni");
+        try {
+            System.loadLibrary("arprojector_jni");
+        } catch (UnsatisfiedLinkError e) {
+            // Pose trace replay still works without it
+            Log.w(TAG, "Could not load arprojector_jni: " + e.getMessage());
+        }
     }
 }
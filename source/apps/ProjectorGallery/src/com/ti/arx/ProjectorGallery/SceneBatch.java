@@ -0,0 +1,124 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ti.arx.ProjectorGallery;
+
+import java.nio.FloatBuffer;
+import java.util.List;
+import java.util.Properties;
+
+import javax.microedition.khronos.opengles.GL10;
+import javax.microedition.khronos.opengles.GL11;
+
+import android.opengl.GLES20;
+
+/**
+ * GLES 2.0 version of the image quad and the UI layer hotspots, drawn with a
+ * single call. The quad comes first in the batch, with color slot 0 so it
+ * is textured, and is left out of the draw until its texture is loaded.
+ * Its vertices are only rewritten when the displayed texture changes.
+ */
+public class SceneBatch extends ShapeBatch {
+
+    public SceneBatch(GLES2State state, Shape imageQuad, UILayer ui) {
+        super(state, GL10.GL_TRIANGLES);
+        mQuad = imageQuad;
+        mUI = ui;
+        mColor = new float[4];
+    }
+
+    @Override
+    public void setup(GL11 gl, Properties props) {
+        begin();
+        mQuadFirstVertex = addShape(mQuad, 0.0f, 0.0f, 1.0f, 1.0f, 0);
+        mQuadVertexCount = mQuad.getVertices().capacity()/mQuad.getCoordsPerVertex();
+        mQuadIndexCount = getIndexCount();
+
+        List<Hotspot> spots = mUI.getSpots();
+        int count = Math.min(spots.size(), GLES2State.CURSOR_SLOT - 1);
+        for (int i = 0; i < count; i++) {
+            Hotspot s = spots.get(i);
+            addShape(s.getShape(), s.getX(), s.getY(), s.getSize(), s.getSize(), i + 1);
+        }
+        mSpotCount = count;
+        upload();
+        mQuadTexture = null;
+    }
+
+    @Override
+    public void draw(GL11 gl) {
+        GLES2State state = getState();
+        if (!state.isReady()) return;
+
+        Texture tex = mQuad.getTexture();
+        boolean drawQuad = tex != null && tex.isLoaded();
+        if (drawQuad) {
+            if (tex != mQuadTexture || tex.getAspectRatio() != mQuadAspect ||
+                tex.getUScale() != mQuadUScale || tex.getVScale() != mQuadVScale) {
+                updateQuad(tex);
+            }
+            state.setColor(0, 1.0f, 1.0f, 1.0f, 1.0f);
+            state.bindTexture(tex.getTextureID());
+        }
+
+        List<Hotspot> spots = mUI.getSpots();
+        for (int i = 0; i < mSpotCount; i++) {
+            spots.get(i).getColor(mColor, 0);
+            state.setColor(i + 1, mColor, 0);
+        }
+
+        // The opaque image is not affected by blending, so it is drawn
+        // along with the translucent hotspots
+        state.setBlend(true);
+        state.blendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+        int first = drawQuad ? 0 : mQuadIndexCount;
+        drawRange(first, getIndexCount() - first);
+    }
+
+    /**
+     * Applies the texture aspect ratio and the part of it the image covers,
+     * which the fixed function path does with the modelview and texture
+     * matrices.
+     */
+    private void updateQuad(Texture tex) {
+        FloatBuffer v = mQuad.getVertices();
+        FloatBuffer t = mQuad.getTexCoords();
+        int stride = mQuad.getCoordsPerVertex();
+        float yScale = 1.0f/tex.getAspectRatio();
+        for (int i = 0; i < mQuadVertexCount; i++) {
+            setVertex(mQuadFirstVertex + i, v.get(i*stride), yScale*v.get(i*stride + 1),
+                      tex.getUScale()*t.get(2*i), tex.getVScale()*t.get(2*i + 1));
+        }
+        update(mQuadFirstVertex, mQuadVertexCount);
+        mQuadTexture = tex;
+        mQuadAspect = tex.getAspectRatio();
+        mQuadUScale = tex.getUScale();
+        mQuadVScale = tex.getVScale();
+    }
+
+    private Shape mQuad;
+    private UILayer mUI;
+    private float[] mColor;
+    private int mSpotCount;
+
+    private int mQuadFirstVertex;
+    private int mQuadVertexCount;
+    private int mQuadIndexCount;
+    private Texture mQuadTexture;
+    private float mQuadAspect;
+    private float mQuadUScale;
+    private float mQuadVScale;
+}
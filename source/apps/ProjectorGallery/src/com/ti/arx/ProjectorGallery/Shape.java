@@ -64,7 +64,39 @@ public class Shape implements GLDrawable {
         mTexture = tex;
     }
 
+    public Texture getTexture() {
+        return mTexture;
+    }
+
+    public FloatBuffer getVertices() {
+        return mVertices;
+    }
+
+    /**
+     * @return the texture coordinates, or null.
+     */
+    public FloatBuffer getTexCoords() {
+        return mTexCoords;
+    }
+
+    /**
+     * @return the vertex indices, or null if the vertices are drawn in order.
+     */
+    public ByteBuffer getIndices() {
+        return mIndices;
+    }
+
+    public int getMode() {
+        return mMode;
+    }
+
+    public int getCoordsPerVertex() {
+        return mCoordsPerVertex;
+    }
+
     public void draw(GL11 gl) {
+        if (mTexture != null && !mTexture.isLoaded()) return;
+
         gl.glFrontFace(GL10.GL_CCW);
 
         if (mTexture != null) {
@@ -125,6 +157,17 @@ public class Shape implements GLDrawable {
         }
     }
 
+    /**
+     * Deletes the GL buffers created by setup.
+     */
+    public void release(GL11 gl) {
+        int[] ids = { mVtxVboID, mIndVboID, mTexCoordsVboID };
+        gl.glDeleteBuffers(ids.length, ids, 0);
+        mVtxVboID = 0;
+        mIndVboID = 0;
+        mTexCoordsVboID = 0;
+    }
+
     public static Shape createQuad() {
         float vertices[] = {
             -1.0f, -1.0f,
@@ -157,15 +200,17 @@ public class Shape implements GLDrawable {
     }
 
     public static Shape createCircle() {
-        int numSegments = 360;
+        return createCircle(360);
+    }
+
+    public static Shape createCircle(int numSegments) {
         ByteBuffer byteBuf = ByteBuffer.allocateDirect(2 * numSegments * FLOAT_SIZE);
         byteBuf.order(ByteOrder.nativeOrder());
         FloatBuffer vertices = byteBuf.asFloatBuffer();
 
-        int inc = 360/(numSegments);
-        for (int i = 0; i < numSegments; i += inc)
+        for (int i = 0; i < numSegments; i++)
         {
-            float rad = (float)(i*Math.PI/180.0);
+            float rad = (float)(2.0*Math.PI*i/numSegments);
             float x = FloatMath.cos(rad);
             float y = FloatMath.sin(rad);
             vertices.put(x);
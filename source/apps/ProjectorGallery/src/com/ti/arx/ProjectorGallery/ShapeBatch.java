@@ -0,0 +1,221 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ti.arx.ProjectorGallery;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+import javax.microedition.khronos.opengles.GL10;
+
+import android.opengl.GLES20;
+
+/**
+ * Merges Shapes into a single vertex and index buffer for the GLES 2.0
+ * backend, so they are drawn with one call. Shapes are placed in the batch
+ * when it is built, their colors come from the GLES2State slot they use.
+ * Triangle fans are turned into triangle lists so they can be merged.
+ */
+public abstract class ShapeBatch implements GLDrawable {
+
+    /**
+     * @param mode GL_TRIANGLES or GL_LINES, what the shapes are turned into.
+     */
+    protected ShapeBatch(GLES2State state, int mode) {
+        mState = state;
+        mMode = mode;
+        mVertexData = new float[0];
+        mIndexData = new short[0];
+    }
+
+    /**
+     * Forgets the shapes added so far.
+     */
+    protected void begin() {
+        mVertexCount = 0;
+        mIndexCount = 0;
+    }
+
+    /**
+     * Adds s scaled by (sx, sy) then moved to (x, y).
+     * @return the index of the first vertex of s in the batch.
+     */
+    protected int addShape(Shape s, float x, float y, float sx, float sy, int slot) {
+        FloatBuffer v = s.getVertices();
+        FloatBuffer t = s.getTexCoords();
+        int stride = s.getCoordsPerVertex();
+        int count = v.capacity()/stride;
+        int first = mVertexCount;
+
+        reserveVertices(count);
+        for (int i = 0; i < count; i++) {
+            int o = (first + i)*GLES2State.FLOATS_PER_VERTEX;
+            mVertexData[o] = x + sx*v.get(i*stride);
+            mVertexData[o + 1] = y + sy*v.get(i*stride + 1);
+            mVertexData[o + 2] = t != null ? t.get(2*i) : 0.0f;
+            mVertexData[o + 3] = t != null ? t.get(2*i + 1) : 0.0f;
+            mVertexData[o + 4] = slot;
+        }
+        mVertexCount += count;
+
+        ByteBuffer indices = s.getIndices();
+        int mode = s.getMode();
+        if (indices != null && mode == mMode) {
+            reserveIndices(indices.capacity());
+            for (int i = 0; i < indices.capacity(); i++) {
+                addIndex(first + (indices.get(i) & 0xff));
+            }
+        } else if (indices == null && mode == mMode) {
+            reserveIndices(count);
+            for (int i = 0; i < count; i++) {
+                addIndex(first + i);
+            }
+        } else if (indices == null && mode == GL10.GL_TRIANGLE_FAN && mMode == GL10.GL_TRIANGLES) {
+            reserveIndices(3*(count - 2));
+            for (int i = 1; i < count - 1; i++) {
+                addIndex(first);
+                addIndex(first + i);
+                addIndex(first + i + 1);
+            }
+        } else {
+            throw new IllegalArgumentException("Cannot batch mode " + mode + " shapes into mode " + mMode);
+        }
+        return first;
+    }
+
+    /**
+     * Overwrites the position and texture coordinates of a vertex. Call
+     * update to send the change to GL.
+     */
+    protected void setVertex(int index, float x, float y, float u, float v) {
+        int o = index*GLES2State.FLOATS_PER_VERTEX;
+        mVertexData[o] = x;
+        mVertexData[o + 1] = y;
+        mVertexData[o + 2] = u;
+        mVertexData[o + 3] = v;
+    }
+
+    /**
+     * Creates the GL buffers from the shapes added since begin.
+     */
+    protected void upload() {
+        int[] ids = new int[2];
+        GLES20.glGenBuffers(2, ids, 0);
+        mVboID = ids[0];
+        mIboID = ids[1];
+
+        ByteBuffer byteBuf = ByteBuffer.allocateDirect(mVertexCount*GLES2State.FLOATS_PER_VERTEX*GLES2State.FLOAT_SIZE);
+        byteBuf.order(ByteOrder.nativeOrder());
+        mVertices = byteBuf.asFloatBuffer();
+        mVertices.put(mVertexData, 0, mVertexCount*GLES2State.FLOATS_PER_VERTEX);
+        mVertices.position(0);
+
+        byteBuf = ByteBuffer.allocateDirect(mIndexCount*GLES2State.SHORT_SIZE);
+        byteBuf.order(ByteOrder.nativeOrder());
+        ShortBuffer indices = byteBuf.asShortBuffer();
+        indices.put(mIndexData, 0, mIndexCount);
+        indices.position(0);
+
+        mState.bindArrayBuffer(mVboID);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, mVertices.capacity()*GLES2State.FLOAT_SIZE,
+                            mVertices, GLES20.GL_STATIC_DRAW);
+        mState.bindElementBuffer(mIboID);
+        GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, indices.capacity()*GLES2State.SHORT_SIZE,
+                            indices, GLES20.GL_STATIC_DRAW);
+    }
+
+    /**
+     * Sends count vertices changed by setVertex, starting at first, to GL.
+     */
+    protected void update(int first, int count) {
+        int floats = GLES2State.FLOATS_PER_VERTEX;
+        mVertices.position(first*floats);
+        mVertices.put(mVertexData, first*floats, count*floats);
+        mVertices.position(first*floats);
+        mState.bindArrayBuffer(mVboID);
+        GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, first*floats*GLES2State.FLOAT_SIZE,
+                               count*floats*GLES2State.FLOAT_SIZE, mVertices);
+        mVertices.position(0);
+    }
+
+    /**
+     * Draws count indices starting at first with a single call.
+     */
+    protected void drawRange(int first, int count) {
+        if (count <= 0) return;
+        mState.bindBuffers(mVboID, mIboID);
+        mState.drawElements(mMode, first, count);
+    }
+
+    /**
+     * Deletes the GL buffers created by upload, before setting the batch up
+     * again in the same context.
+     */
+    public void release() {
+        if (mVboID == 0) return;
+        int[] ids = { mVboID, mIboID };
+        GLES20.glDeleteBuffers(2, ids, 0);
+        mVboID = 0;
+        mIboID = 0;
+    }
+
+    protected int getIndexCount() {
+        return mIndexCount;
+    }
+
+    protected GLES2State getState() {
+        return mState;
+    }
+
+    private void addIndex(int index) {
+        mIndexData[mIndexCount++] = (short)index;
+    }
+
+    private void reserveVertices(int count) {
+        int needed = (mVertexCount + count)*GLES2State.FLOATS_PER_VERTEX;
+        if (needed > mVertexData.length) {
+            float[] data = new float[Math.max(needed, 2*mVertexData.length)];
+            System.arraycopy(mVertexData, 0, data, 0, mVertexCount*GLES2State.FLOATS_PER_VERTEX);
+            mVertexData = data;
+        }
+        if (mVertexCount + count > MAX_VERTICES) {
+            throw new IllegalArgumentException("Too many vertices for 16 bit indices");
+        }
+    }
+
+    private void reserveIndices(int count) {
+        int needed = mIndexCount + count;
+        if (needed > mIndexData.length) {
+            short[] data = new short[Math.max(needed, 2*mIndexData.length)];
+            System.arraycopy(mIndexData, 0, data, 0, mIndexCount);
+            mIndexData = data;
+        }
+    }
+
+    private GLES2State mState;
+    private int mMode;
+    private float[] mVertexData;
+    private short[] mIndexData;
+    private int mVertexCount;
+    private int mIndexCount;
+    private FloatBuffer mVertices;
+    private int mVboID;
+    private int mIboID;
+
+    private static final int MAX_VERTICES = 65536;
+}
@@ -7,7 +7,8 @@ public class SquareHotspot extends Hotspot {
     }
 
     @Override
-    public boolean isInside(float x, float y) {
-        return (x > (mX - mSize) && x < (mX + mSize) && y > (mY - mSize) && y < (mY + mSize));
+    public boolean isInside(float x, float y, float margin) {
+        float r = mSize + margin;
+        return (x > (mX - r) && x < (mX + r) && y > (mY - r) && y < (mY + r));
     }
 }
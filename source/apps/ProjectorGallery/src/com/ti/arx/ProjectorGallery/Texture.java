@@ -24,6 +24,9 @@ import javax.microedition.khronos.opengles.GL11;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
 import android.opengl.GLUtils;
 import android.util.Log;
 
@@ -44,39 +47,258 @@ public class Texture implements GLObject {
         gl.glActiveTexture(GL10.GL_TEXTURE0);
         gl.glEnable(GL10.GL_TEXTURE_2D);
         gl.glBindTexture(GL10.GL_TEXTURE_2D, mTextureID);
+        if (mUScale != 1.0f || mVScale != 1.0f) {
+            // The image only covers the top left part of the texture
+            gl.glMatrixMode(GL10.GL_TEXTURE);
+            gl.glLoadIdentity();
+            gl.glScalef(mUScale, mVScale, 1.0f);
+            gl.glMatrixMode(GL10.GL_MODELVIEW);
+        }
         gl.glPushMatrix();
         gl.glScalef(1.0f, 1.0f/mAspectRatio, 1.0f);
     }
 
     public void unbind(GL11 gl) {
         gl.glPopMatrix();
+        if (mUScale != 1.0f || mVScale != 1.0f) {
+            gl.glMatrixMode(GL10.GL_TEXTURE);
+            gl.glLoadIdentity();
+            gl.glMatrixMode(GL10.GL_MODELVIEW);
+        }
         gl.glBindTexture(GL10.GL_TEXTURE_2D, 0);
         gl.glDisable(GL10.GL_TEXTURE_2D);
     }
 
     public void setup(GL11 gl, Properties props) {
-        Bitmap b = null;
+        TextureData d = load();
+        if (d != null) {
+            upload(gl, d);
+        }
+    }
 
-        if (mFileName != null) {
-            b = BitmapFactory.decodeFile(mFileName);
-        } else {
-            b = BitmapFactory.decodeResource(mContext.getResources(), mResourceId);
+    public void setDiskCache(TextureDiskCache cache) {
+        mDiskCache = cache;
+    }
+
+    /**
+     * Produces the texture pixels, from the disk cache if possible or by
+     * decoding the image otherwise. Safe to call from a worker thread.
+     */
+    public TextureData load() {
+        if (mDiskCache != null && mFileName != null) {
+            TextureData d = mDiskCache.load(mFileName, sPacking);
+            if (d != null) {
+                mAspectRatio = d.getAspectRatio();
+                return d;
+            }
         }
 
+        long start = System.nanoTime();
+        Bitmap b = decode();
         if (b == null) {
-            Log.e(TAG, "Failed decoding image!");
-            return;
+            return null;
         }
+        if (mDiskCache != null && mFileName != null) {
+            mDiskCache.store(mFileName, b, mImageWidth, mImageHeight, sPacking,
+                             mAspectRatio, System.nanoTime() - start);
+        }
+        return new TextureData(b, mImageWidth, mImageHeight, mAspectRatio);
+    }
 
-        mAspectRatio = (float)b.getWidth()/(float)b.getHeight();
-        int potSize = 1 << (int)Math.ceil(Math.log(b.getWidth())/Math.log(2));
-        if (potSize > MAX_TEXTURE_SIZE) {
-            potSize = MAX_TEXTURE_SIZE;
+    /**
+     * Decodes and scales the image to a power of two size. Does not touch
+     * GL state so it is safe to call from a worker thread.
+     */
+    public Bitmap decode() {
+        return decode(sSubsample);
+    }
+
+    /**
+     * Decodes the image, either at full resolution and then scaled down
+     * or subsampled by the decoder to the closest size above the target.
+     */
+    public Bitmap decode(boolean subsample) {
+        long start = System.nanoTime();
+        Bitmap b = subsample ? decodeSubsampled() : decodeFull();
+        mDecodeTimeNs = System.nanoTime() - start;
+        if (b != null) {
+            Log.d(TAG, String.format("decoded %s in %.1f ms, peak %d KB",
+                    mFileName, mDecodeTimeNs/1e6, mPeakBytes/1024));
+        }
+        return b;
+    }
+
+    private Bitmap decodeFull() {
+        Bitmap b = decodeBitmap(null);
+        if (b == null) {
+            Log.e(TAG, "Failed decoding image!");
+            return null;
         }
-        Bitmap b2 = Bitmap.createScaledBitmap(b, potSize, potSize, true);
+
+        computeSize(b.getWidth(), b.getHeight());
+        Bitmap b2 = toTexture(b);
+        mPeakBytes = b.getByteCount();
         if (!b2.equals(b)) {
+            mPeakBytes += b2.getByteCount();
             b.recycle();
         }
+        return b2;
+    }
+
+    private Bitmap decodeSubsampled() {
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inJustDecodeBounds = true;
+        decodeBitmap(opts);
+        if (opts.outWidth <= 0 || opts.outHeight <= 0) {
+            Log.e(TAG, "Failed decoding image bounds!");
+            return null;
+        }
+
+        computeSize(opts.outWidth, opts.outHeight);
+        int sample = 1;
+        while (opts.outWidth/(2*sample) >= mImageWidth && opts.outHeight/(2*sample) >= mImageHeight) {
+            sample *= 2;
+        }
+
+        opts.inJustDecodeBounds = false;
+        opts.inSampleSize = sample;
+        opts.inMutable = true;
+        opts.inTempStorage = sTempStorage.get();
+
+        // Before API 19 inBitmap only works for same size decodes without subsampling
+        Bitmap reuse = sReusable.get();
+        if (reuse != null && sample == 1 &&
+            reuse.getWidth() == opts.outWidth && reuse.getHeight() == opts.outHeight) {
+            opts.inBitmap = reuse;
+        }
+
+        Bitmap b;
+        try {
+            b = decodeBitmap(opts);
+        } catch (IllegalArgumentException e) {
+            opts.inBitmap = null;
+            b = decodeBitmap(opts);
+        }
+        if (b == null) {
+            Log.e(TAG, "Failed decoding image!");
+            return null;
+        }
+
+        Bitmap b2 = toTexture(b);
+        mPeakBytes = (b == reuse) ? 0 : b.getByteCount();
+        if (!b2.equals(b)) {
+            mPeakBytes += b2.getByteCount();
+            if (sample == 1) {
+                if (reuse != null && reuse != b) {
+                    reuse.recycle();
+                }
+                sReusable.set(b);
+            } else {
+                // A subsampled intermediate can never be reused, see above
+                b.recycle();
+            }
+        } else if (b == reuse) {
+            sReusable.set(null);
+        }
+        return b2;
+    }
+
+    /**
+     * Frees the bitmap kept by the calling thread for reuse by its next
+     * subsampled decode. Called by the decoding threads when they go idle.
+     */
+    public static void releaseReusable() {
+        Bitmap reuse = sReusable.get();
+        if (reuse != null) {
+            reuse.recycle();
+            sReusable.set(null);
+        }
+    }
+
+    private Bitmap decodeBitmap(BitmapFactory.Options opts) {
+        if (mFileName != null) {
+            return BitmapFactory.decodeFile(mFileName, opts);
+        } else {
+            return BitmapFactory.decodeResource(mContext.getResources(), mResourceId, opts);
+        }
+    }
+
+    /**
+     * Picks the texture size for an image of the given size. PACKING_SQUARE
+     * stretches the image into a square based on its width. PACKING_RECT keeps
+     * the aspect ratio, never upscales, and places the image in the top left
+     * corner of the smallest power of two rectangle holding it.
+     */
+    private void computeSize(int width, int height) {
+        mAspectRatio = (float)width/(float)height;
+        if (sPacking == PACKING_SQUARE) {
+            int potSize = potSize(width);
+            mImageWidth = mImageHeight = potSize;
+            mTexWidth = mTexHeight = potSize;
+        } else {
+            float scale = Math.min(1.0f, Math.min((float)MAX_TEXTURE_SIZE/width, (float)MAX_TEXTURE_SIZE/height));
+            mImageWidth = Math.max(1, Math.round(width*scale));
+            mImageHeight = Math.max(1, Math.round(height*scale));
+            mTexWidth = potSize(mImageWidth);
+            mTexHeight = potSize(mImageHeight);
+        }
+    }
+
+    private Bitmap toTexture(Bitmap b) {
+        if (mImageWidth == mTexWidth && mImageHeight == mTexHeight) {
+            return Bitmap.createScaledBitmap(b, mTexWidth, mTexHeight, true);
+        }
+        Bitmap t = Bitmap.createBitmap(mTexWidth, mTexHeight, Bitmap.Config.ARGB_8888);
+        Canvas c = new Canvas(t);
+        c.drawBitmap(b, null, new Rect(0, 0, mImageWidth, mImageHeight), new Paint(Paint.FILTER_BITMAP_FLAG));
+        return t;
+    }
+
+    private static int potSize(int size) {
+        int potSize = 1;
+        while (potSize < size && potSize < MAX_TEXTURE_SIZE) {
+            potSize <<= 1;
+        }
+        return potSize;
+    }
+
+    /**
+     * Selects how images are laid out in their texture, PACKING_RECT (the
+     * default) or PACKING_SQUARE.
+     */
+    public static void setPacking(int packing) {
+        sPacking = packing;
+    }
+
+    /**
+     * Selects between subsampled decoding (the default) and full
+     * resolution decoding followed by a rescale.
+     */
+    public static void setSubsample(boolean subsample) {
+        sSubsample = subsample;
+    }
+
+    public String getFileName() {
+        return mFileName;
+    }
+
+    /**
+     * Bytes of pixel memory allocated by the last decode.
+     */
+    public int getPeakBytes() {
+        return mPeakBytes;
+    }
+
+    public long getDecodeTimeNs() {
+        return mDecodeTimeNs;
+    }
+
+    /**
+     * Uploads the pixels obtained from load(). Must be called from the GL thread.
+     * The texture data is recycled.
+     */
+    public void upload(GL11 gl, TextureData d) {
+        long start = System.nanoTime();
         int[] ids = new int[1];
         gl.glGenTextures(1, ids, 0);
         mTextureID = ids[0];
@@ -85,21 +307,116 @@ public class Texture implements GLObject {
 
         gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MIN_FILTER, GL10.GL_LINEAR);
         gl.glTexParameterf(GL10.GL_TEXTURE_2D, GL10.GL_TEXTURE_MAG_FILTER, GL10.GL_LINEAR);
-        GLUtils.texImage2D(GL10.GL_TEXTURE_2D, 0, b2, 0);
+        if (d.getBitmap() != null) {
+            GLUtils.texImage2D(GL10.GL_TEXTURE_2D, 0, d.getBitmap(), 0);
+        } else {
+            gl.glTexImage2D(GL10.GL_TEXTURE_2D, 0, GL10.GL_RGBA, d.getWidth(), d.getHeight(), 0,
+                            GL10.GL_RGBA, GL10.GL_UNSIGNED_BYTE, d.getPixels());
+        }
+        gl.glBindTexture(GL10.GL_TEXTURE_2D, 0);
 
-        b2.recycle();
+        // Keep linear filtering from sampling past the edge of the image
+        mUScale = d.getImageWidth() == d.getWidth() ? 1.0f : (d.getImageWidth() - 0.5f)/d.getWidth();
+        mVScale = d.getImageHeight() == d.getHeight() ? 1.0f : (d.getImageHeight() - 0.5f)/d.getHeight();
+        mSizeBytes = d.getSizeBytes();
+        mQueued = false;
+        Log.d(TAG, String.format("uploaded %s %dx%d in %dx%d (%d KB) in %.1f ms",
+                mFileName, d.getImageWidth(), d.getImageHeight(), d.getWidth(), d.getHeight(),
+                mSizeBytes/1024, (System.nanoTime() - start)/1e6));
+        d.recycle();
+    }
+
+    /**
+     * Releases the GL texture. Must be called from the GL thread.
+     */
+    public void delete(GL11 gl) {
+        if (mTextureID == 0) return;
+        int[] ids = { mTextureID };
+        gl.glDeleteTextures(1, ids, 0);
+        reset();
+    }
+
+    /**
+     * Forgets the GL texture name, e.g. after the GL context was recreated.
+     */
+    public void reset() {
+        mTextureID = 0;
+        mSizeBytes = 0;
+        mQueued = false;
+    }
+
+    public boolean isLoaded() {
+        return mTextureID != 0;
+    }
+
+    /**
+     * True while the texture is waiting to be decoded or uploaded.
+     */
+    public boolean isQueued() {
+        return mQueued;
+    }
+
+    public void setQueued(boolean queued) {
+        mQueued = queued;
+    }
+
+    public int getSizeBytes() {
+        return mSizeBytes;
     }
 
     public float getAspectRatio() {
         return mAspectRatio;
     }
 
+    public int getTextureID() {
+        return mTextureID;
+    }
+
+    /**
+     * Fraction of the texture width covered by the image.
+     */
+    public float getUScale() {
+        return mUScale;
+    }
+
+    /**
+     * Fraction of the texture height covered by the image.
+     */
+    public float getVScale() {
+        return mVScale;
+    }
+
     private String mFileName;
     private float mAspectRatio;
     private int mTextureID;
+    private int mSizeBytes;
+    private volatile boolean mQueued;
 
     private Context mContext;
     private int mResourceId;
+    private TextureDiskCache mDiskCache;
+    private int mPeakBytes;
+    private long mDecodeTimeNs;
+
+    private int mImageWidth;
+    private int mImageHeight;
+    private int mTexWidth;
+    private int mTexHeight;
+    private float mUScale = 1.0f;
+    private float mVScale = 1.0f;
+
+    private static volatile boolean sSubsample = true;
+    private static final ThreadLocal<Bitmap> sReusable = new ThreadLocal<Bitmap>();
+    private static final ThreadLocal<byte[]> sTempStorage = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[16*1024];
+        }
+    };
+
+    public static final int PACKING_SQUARE = 0;
+    public static final int PACKING_RECT = 1;
+    private static volatile int sPacking = PACKING_RECT;
 
     private static final int MAX_TEXTURE_SIZE = 1024;
     private static final String TAG = "Texture";
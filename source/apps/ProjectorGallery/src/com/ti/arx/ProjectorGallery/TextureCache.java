@@ -0,0 +1,142 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ti.arx.ProjectorGallery;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.microedition.khronos.opengles.GL11;
+
+/**
+ * Tracks which textures of a circular list are resident on the GPU.
+ * Textures within window entries of the focus are always kept; the rest
+ * are evicted in least recently used order once the resident size goes
+ * over the byte budget.
+ */
+public class TextureCache {
+
+    public TextureCache(int window, int budgetBytes) {
+        mWindow = window;
+        mBudgetBytes = budgetBytes;
+        mResident = new LinkedHashMap<Texture, Integer>(16, 0.75f, true);
+        mCount = 1;
+    }
+
+    public int getWindow() {
+        return mWindow;
+    }
+
+    public synchronized void setFocus(int focus, int count) {
+        mFocus = focus;
+        mCount = count;
+    }
+
+    /**
+     * Records an access to a texture, counting a hit if it is resident.
+     */
+    public synchronized void onAccess(Texture t) {
+        if (t.isLoaded()) {
+            mHits++;
+            mResident.get(t);
+        } else {
+            mMisses++;
+        }
+    }
+
+    public synchronized void onUploaded(Texture t, int index) {
+        if (mResident.put(t, index) == null) {
+            mResidentBytes += t.getSizeBytes();
+        }
+    }
+
+    /**
+     * Deletes least recently used textures outside the window until the
+     * resident size fits the budget. Must be called from the GL thread.
+     */
+    public synchronized void evict(GL11 gl) {
+        Iterator<Map.Entry<Texture, Integer>> it = mResident.entrySet().iterator();
+        while (mResidentBytes > mBudgetBytes && it.hasNext()) {
+            Map.Entry<Texture, Integer> e = it.next();
+            if (distance(e.getValue()) <= mWindow) continue;
+            Texture t = e.getKey();
+            mResidentBytes -= t.getSizeBytes();
+            t.delete(gl);
+            it.remove();
+            mEvictions++;
+        }
+    }
+
+    /**
+     * Deletes all resident textures. Must be called from the GL thread.
+     * A null gl only forgets them, when the GL context they belonged to was
+     * recreated.
+     */
+    public synchronized void clear(GL11 gl) {
+        for (Texture t : mResident.keySet()) {
+            if (gl != null) {
+                t.delete(gl);
+            } else {
+                t.reset();
+            }
+        }
+        mResident.clear();
+        mResidentBytes = 0;
+    }
+
+    public synchronized int getHits() {
+        return mHits;
+    }
+
+    public synchronized int getMisses() {
+        return mMisses;
+    }
+
+    public synchronized int getEvictions() {
+        return mEvictions;
+    }
+
+    public synchronized int getResidentCount() {
+        return mResident.size();
+    }
+
+    public synchronized long getResidentBytes() {
+        return mResidentBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("hits:%d misses:%d evictions:%d resident:%d (%d KB)",
+                mHits, mMisses, mEvictions, mResident.size(), mResidentBytes/1024);
+    }
+
+    private int distance(int index) {
+        int d = Math.abs(index - mFocus);
+        return Math.min(d, mCount - d);
+    }
+
+    private LinkedHashMap<Texture, Integer> mResident;
+    private long mResidentBytes;
+    private int mBudgetBytes;
+    private int mWindow;
+    private int mFocus;
+    private int mCount;
+
+    private int mHits;
+    private int mMisses;
+    private int mEvictions;
+}
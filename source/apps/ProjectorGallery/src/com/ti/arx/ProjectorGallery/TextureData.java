@@ -0,0 +1,101 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ti.arx.ProjectorGallery;
+
+import java.nio.ByteBuffer;
+
+import android.graphics.Bitmap;
+
+/**
+ * Texture pixels ready for upload, either as a decoded Bitmap or as raw
+ * RGBA pixels (e.g. mapped from the disk cache).
+ */
+public class TextureData {
+
+    public TextureData(Bitmap b, int imageWidth, int imageHeight, float aspectRatio) {
+        mBitmap = b;
+        mPixels = null;
+        mWidth = b.getWidth();
+        mHeight = b.getHeight();
+        mImageWidth = imageWidth;
+        mImageHeight = imageHeight;
+        mAspectRatio = aspectRatio;
+    }
+
+    public TextureData(ByteBuffer pixels, int width, int height,
+                       int imageWidth, int imageHeight, float aspectRatio) {
+        mBitmap = null;
+        mPixels = pixels;
+        mWidth = width;
+        mHeight = height;
+        mImageWidth = imageWidth;
+        mImageHeight = imageHeight;
+        mAspectRatio = aspectRatio;
+    }
+
+    public Bitmap getBitmap() {
+        return mBitmap;
+    }
+
+    public ByteBuffer getPixels() {
+        return mPixels;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Width of the part of the texture covered by the image.
+     */
+    public int getImageWidth() {
+        return mImageWidth;
+    }
+
+    public int getImageHeight() {
+        return mImageHeight;
+    }
+
+    public float getAspectRatio() {
+        return mAspectRatio;
+    }
+
+    public int getSizeBytes() {
+        return mWidth*mHeight*BYTES_PER_PIXEL;
+    }
+
+    public void recycle() {
+        if (mBitmap != null) {
+            mBitmap.recycle();
+        }
+        mPixels = null;
+    }
+
+    private Bitmap mBitmap;
+    private ByteBuffer mPixels;
+    private int mWidth;
+    private int mHeight;
+    private int mImageWidth;
+    private int mImageHeight;
+    private float mAspectRatio;
+
+    public static final int BYTES_PER_PIXEL = 4;
+}
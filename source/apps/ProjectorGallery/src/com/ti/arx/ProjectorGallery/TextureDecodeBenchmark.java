@@ -0,0 +1,170 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ti.arx.ProjectorGallery;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import android.graphics.Bitmap;
+import android.os.Debug;
+import android.util.Log;
+
+/**
+ * Decodes a set of images with the full resolution and the subsampled
+ * decode paths and logs latency, peak pixel memory, allocations and GC
+ * counts for each. Then loads them through an empty disk cache twice, cold
+ * (decoded and stored) and warm (read back from the cache), and checks that
+ * the warm loads are faster. Enabled with -textureDecodeBenchmark in
+ * galleryParameters.txt.
+ */
+public class TextureDecodeBenchmark implements Runnable {
+
+    /**
+     * @param cacheDir a scratch directory for the disk cache measurement,
+     *                 deleted afterwards, or null to skip it.
+     */
+    public TextureDecodeBenchmark(String[] fileNames, File cacheDir) {
+        mFileNames = fileNames;
+        mCacheDir = cacheDir;
+    }
+
+    @Override
+    public void run() {
+        measure(false);
+        measure(true);
+        if (mCacheDir != null) {
+            measureDiskCache();
+        }
+    }
+
+    private void measure(boolean subsample) {
+        long totalNs = 0;
+        long maxNs = 0;
+        long totalPeak = 0;
+        long maxPeak = 0;
+        int count = 0;
+
+        System.gc();
+        int gcStart = Debug.getGlobalGcInvocationCount();
+        Debug.resetGlobalAllocSize();
+        Debug.startAllocCounting();
+
+        for (String name : mFileNames) {
+            Texture t = new Texture(name);
+            Bitmap b = t.decode(subsample);
+            if (b == null) continue;
+            b.recycle();
+
+            count++;
+            totalNs += t.getDecodeTimeNs();
+            maxNs = Math.max(maxNs, t.getDecodeTimeNs());
+            totalPeak += t.getPeakBytes();
+            maxPeak = Math.max(maxPeak, t.getPeakBytes());
+        }
+
+        Debug.stopAllocCounting();
+        int gcs = Debug.getGlobalGcInvocationCount() - gcStart;
+        if (count == 0) return;
+
+        Log.i(TAG, String.format("%s: %d images, latency avg %.1f ms max %.1f ms, " +
+                "peak avg %d KB max %d KB, allocated %d KB, %d GCs",
+                subsample ? "subsampled" : "full", count,
+                totalNs/1e6/count, maxNs/1e6,
+                totalPeak/1024/count, maxPeak/1024,
+                Debug.getGlobalAllocSize()/1024, gcs));
+    }
+
+    /**
+     * Times Texture.load() cold then warm for each image. The warm time
+     * includes reading every pixel, as the upload does, so the lazily
+     * mapped pages are not left out.
+     */
+    private void measureDiskCache() {
+        deleteDir(mCacheDir);
+        TextureDiskCache cache = new TextureDiskCache(mCacheDir, Long.MAX_VALUE);
+        long coldNs = 0;
+        long maxColdNs = 0;
+        long warmNs = 0;
+        long maxWarmNs = 0;
+        int count = 0;
+
+        for (String name : mFileNames) {
+            Texture t = new Texture(name);
+            t.setDiskCache(cache);
+
+            long start = System.nanoTime();
+            TextureData cold = t.load();
+            long cNs = System.nanoTime() - start;
+            if (cold == null) continue;
+            cold.recycle();
+
+            start = System.nanoTime();
+            TextureData warm = t.load();
+            if (warm == null || warm.getPixels() == null) {
+                Log.e(TAG, "disk cache: FAILED, "+name+" not read back from the cache");
+                deleteDir(mCacheDir);
+                return;
+            }
+            mChecksum += touch(warm.getPixels());
+            long wNs = System.nanoTime() - start;
+            warm.recycle();
+
+            count++;
+            coldNs += cNs;
+            maxColdNs = Math.max(maxColdNs, cNs);
+            warmNs += wNs;
+            maxWarmNs = Math.max(maxWarmNs, wNs);
+        }
+        deleteDir(mCacheDir);
+        if (count == 0) return;
+
+        String result = String.format("disk cache: %d images, cold avg %.1f ms max %.1f ms, " +
+                "warm avg %.1f ms max %.1f ms, speedup %.1fx",
+                count, coldNs/1e6/count, maxColdNs/1e6,
+                warmNs/1e6/count, maxWarmNs/1e6, (double)coldNs/Math.max(warmNs, 1));
+        if (warmNs < coldNs) {
+            Log.i(TAG, result+": PASSED");
+        } else {
+            Log.e(TAG, result+": FAILED, warm loads are not faster");
+        }
+    }
+
+    private static int touch(ByteBuffer pixels) {
+        int sum = 0;
+        for (int i = 0; i + 4 <= pixels.limit(); i += 4) {
+            sum += pixels.getInt(i);
+        }
+        return sum;
+    }
+
+    private static void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private String[] mFileNames;
+    private File mCacheDir;
+    /** Keeps the pixel reads from being optimized away */
+    private int mChecksum;
+
+    private static final String TAG = "TextureDecodeBenchmark";
+}
@@ -0,0 +1,341 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ti.arx.ProjectorGallery;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+/**
+ * Persistent cache of decoded and scaled textures. Each entry holds the raw
+ * RGBA pixels of one image so it can be memory mapped and uploaded without
+ * decoding. Entries are keyed by the source path, size and modification time;
+ * entries for a modified source are deleted on lookup. The cache is trimmed to
+ * its size cap in least recently used order.
+ *
+ * The directory is listed once, when the cache is created. The entries and
+ * their total size are then tracked in memory, so lookups and stores do not
+ * touch the directory. Entries are written to temporary files first, which
+ * are only indexed once renamed, so trimming never deletes a file still
+ * being written.
+ *
+ * Entry layout (native byte order):
+ * magic, version, width, height, image width, image height, packing,
+ * aspect ratio, path length, path (UTF-8), pixels.
+ */
+public class TextureDiskCache {
+
+    public TextureDiskCache(File dir, long maxBytes) {
+        mDir = dir;
+        mMaxBytes = maxBytes;
+        mEntries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+        mCurrent = new HashMap<String, String>();
+        if (!mDir.exists() && !mDir.mkdirs()) {
+            Log.e(TAG, "Could not create cache dir: "+mDir);
+        }
+        scan();
+    }
+
+    /**
+     * Looks up the scaled texture for the given image file.
+     * @return the mapped pixels or null on a cache miss.
+     */
+    public TextureData load(String path, int packing) {
+        long start = System.nanoTime();
+        File src = new File(path);
+        File entry = new File(mDir, entryName(src));
+        if (!lookup(src, entry.getName())) {
+            missed(0);
+            return null;
+        }
+
+        FileInputStream fis = null;
+        try {
+            fis = new FileInputStream(entry);
+            FileChannel ch = fis.getChannel();
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            buf.order(ByteOrder.nativeOrder());
+
+            int magic = buf.getInt();
+            int version = buf.getInt();
+            int width = buf.getInt();
+            int height = buf.getInt();
+            int imageWidth = buf.getInt();
+            int imageHeight = buf.getInt();
+            int entryPacking = buf.getInt();
+            float aspectRatio = buf.getFloat();
+            byte[] name = new byte[buf.getInt()];
+            buf.get(name);
+            if (magic != MAGIC || version != VERSION || entryPacking != packing ||
+                !path.equals(new String(name, "UTF-8")) ||
+                buf.remaining() != width*height*TextureData.BYTES_PER_PIXEL) {
+                Log.d(TAG, "Discarding invalid entry "+entry);
+                remove(entry.getName());
+                missed(0);
+                return null;
+            }
+
+            ByteBuffer pixels = buf.slice();
+            entry.setLastModified(System.currentTimeMillis());
+            hit(System.nanoTime() - start);
+            return new TextureData(pixels, width, height, imageWidth, imageHeight, aspectRatio);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed reading "+entry+": "+e);
+            remove(entry.getName());
+            missed(0);
+            return null;
+        } catch (RuntimeException e) {
+            // Truncated entry
+            Log.e(TAG, "Failed parsing "+entry+": "+e);
+            remove(entry.getName());
+            missed(0);
+            return null;
+        } finally {
+            close(fis);
+        }
+    }
+
+    /**
+     * Stores a scaled texture for the given image file, then trims the
+     * cache to its size cap. decodeNs is the time it took to produce the
+     * bitmap, used for the cold/warm statistics.
+     */
+    public void store(String path, Bitmap b, int imageWidth, int imageHeight, int packing,
+                      float aspectRatio, long decodeNs) {
+        synchronized (this) {
+            mMissNs += decodeNs;
+        }
+        if (b.getConfig() != Bitmap.Config.ARGB_8888) {
+            return;
+        }
+
+        File src = new File(path);
+        File entry = new File(mDir, entryName(src));
+        File tmp = new File(mDir, entry.getName()+TMP_SUFFIX+Thread.currentThread().getId());
+        FileOutputStream fos = null;
+        try {
+            byte[] name = path.getBytes("UTF-8");
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + name.length);
+            header.order(ByteOrder.nativeOrder());
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putInt(b.getWidth());
+            header.putInt(b.getHeight());
+            header.putInt(imageWidth);
+            header.putInt(imageHeight);
+            header.putInt(packing);
+            header.putFloat(aspectRatio);
+            header.putInt(name.length);
+            header.put(name);
+            header.flip();
+
+            ByteBuffer pixels = ByteBuffer.allocateDirect(b.getWidth()*b.getHeight()*TextureData.BYTES_PER_PIXEL);
+            b.copyPixelsToBuffer(pixels);
+            pixels.flip();
+
+            fos = new FileOutputStream(tmp);
+            FileChannel ch = fos.getChannel();
+            while (header.hasRemaining()) ch.write(header);
+            while (pixels.hasRemaining()) ch.write(pixels);
+            fos.close();
+            fos = null;
+            synchronized (this) {
+                if (!tmp.renameTo(entry)) {
+                    tmp.delete();
+                    return;
+                }
+                add(src, entry.getName(), entry.length());
+                if (mTotalBytes > mMaxBytes) {
+                    trim();
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed writing "+entry+": "+e);
+            close(fos);
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Deletes least recently used entries until the cache fits its size cap.
+     */
+    public synchronized void trim() {
+        Iterator<Map.Entry<String, Long>> it = mEntries.entrySet().iterator();
+        while (mTotalBytes > mMaxBytes && it.hasNext()) {
+            Map.Entry<String, Long> e = it.next();
+            String name = e.getKey();
+            new File(mDir, name).delete();
+            mTotalBytes -= e.getValue();
+            it.remove();
+            String prefix = prefixOf(name);
+            if (name.equals(mCurrent.get(prefix))) {
+                mCurrent.remove(prefix);
+            }
+            mEvictions++;
+        }
+    }
+
+    public synchronized long getSizeBytes() {
+        return mTotalBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("hits:%d (avg %.1f ms) misses:%d (avg %.1f ms) evictions:%d entries:%d (%d KB)",
+                mHits, mHits > 0 ? mHitNs/1e6/mHits : 0.0,
+                mMisses, mMisses > 0 ? mMissNs/1e6/mMisses : 0.0,
+                mEvictions, mEntries.size(), mTotalBytes/1024);
+    }
+
+    /**
+     * Indexes the entries on disk, oldest first, and deletes the temporary
+     * files left by an earlier run.
+     */
+    private synchronized void scan() {
+        File[] files = mDir.listFiles();
+        if (files == null) return;
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long d = a.lastModified() - b.lastModified();
+                return d < 0 ? -1 : (d > 0 ? 1 : 0);
+            }
+        });
+        for (File f : files) {
+            String name = f.getName();
+            if (name.endsWith(".tex")) {
+                String prefix = prefixOf(name);
+                String older = mCurrent.get(prefix);
+                if (older != null) {
+                    // Sorted oldest first, the last entry of a source is current
+                    remove(older);
+                }
+                mEntries.put(name, f.length());
+                mTotalBytes += f.length();
+                mCurrent.put(prefix, name);
+            } else if (name.contains(TMP_SUFFIX)) {
+                f.delete();
+            }
+        }
+        trim();
+    }
+
+    /**
+     * Deletes the entry of an older version of the source file.
+     * @return true if name is cached, marking it as the most recently used.
+     */
+    private synchronized boolean lookup(File src, String name) {
+        String stale = mCurrent.get(keyPrefix(src));
+        if (stale != null && !stale.equals(name)) {
+            Log.d(TAG, "Invalidating "+stale);
+            remove(stale);
+        }
+        return mEntries.get(name) != null;
+    }
+
+    private synchronized void add(File src, String name, long size) {
+        String prefix = keyPrefix(src);
+        String older = mCurrent.get(prefix);
+        if (older != null && !older.equals(name)) {
+            remove(older);
+        }
+        Long replaced = mEntries.put(name, size);
+        if (replaced != null) {
+            mTotalBytes -= replaced;
+        }
+        mTotalBytes += size;
+        mCurrent.put(prefix, name);
+    }
+
+    private synchronized void remove(String name) {
+        new File(mDir, name).delete();
+        Long size = mEntries.remove(name);
+        if (size != null) {
+            mTotalBytes -= size;
+        }
+        String prefix = prefixOf(name);
+        if (name.equals(mCurrent.get(prefix))) {
+            mCurrent.remove(prefix);
+        }
+    }
+
+    private synchronized void hit(long ns) {
+        mHits++;
+        mHitNs += ns;
+    }
+
+    private synchronized void missed(long ns) {
+        mMisses++;
+        mMissNs += ns;
+    }
+
+    private static String keyPrefix(File src) {
+        return Integer.toHexString(src.getAbsolutePath().hashCode())+"-";
+    }
+
+    private static String prefixOf(String name) {
+        return name.substring(0, name.indexOf('-') + 1);
+    }
+
+    private static String entryName(File src) {
+        return keyPrefix(src)+Long.toHexString(src.length())+"-"+Long.toHexString(src.lastModified())+".tex";
+    }
+
+    private static void close(Closeable c) {
+        if (c == null) return;
+        try {
+            c.close();
+        } catch (IOException e) {
+            // nothing to do
+        }
+    }
+
+    private File mDir;
+    private long mMaxBytes;
+    /** Entry file names and sizes, least recently used first */
+    private LinkedHashMap<String, Long> mEntries;
+    /** Current entry name of each source, by key prefix */
+    private HashMap<String, String> mCurrent;
+    private long mTotalBytes;
+
+    private int mHits;
+    private int mMisses;
+    private int mEvictions;
+    private long mHitNs;
+    private long mMissNs;
+
+    private static final int MAGIC = 0x41525854; // "ARXT"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 9*4;
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final String TAG = "TextureDiskCache";
+}
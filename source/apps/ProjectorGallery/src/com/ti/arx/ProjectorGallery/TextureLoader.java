@@ -0,0 +1,221 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ti.arx.ProjectorGallery;
+
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+
+import javax.microedition.khronos.opengles.GL11;
+
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Decodes textures on a pool of worker threads and hands the bitmaps over
+ * to the GL thread through a bounded queue. Requests closest to the focus
+ * index (the image on display) are decoded first.
+ */
+public class TextureLoader {
+
+    public interface Listener {
+        public void onTextureDecoded(Texture t);
+    }
+
+    public TextureLoader(int numThreads, int queueSize) {
+        mPending = new PriorityBlockingQueue<Request>();
+        mDecoded = new ArrayBlockingQueue<Decoded>(queueSize);
+        mWorkers = new Thread[numThreads];
+        mFocus = 0;
+        mCount = 1;
+        mListener = null;
+    }
+
+    public void setListener(Listener l) {
+        mListener = l;
+    }
+
+    public void start() {
+        mRunning = true;
+        for (int i = 0; i < mWorkers.length; i++) {
+            mWorkers[i] = new Thread(new Worker(), "TextureLoader-"+i);
+            mWorkers[i].start();
+        }
+    }
+
+    public void stop() {
+        mRunning = false;
+        for (Thread t : mWorkers) {
+            if (t != null) t.interrupt();
+        }
+        for (int i = 0; i < mWorkers.length; i++) {
+            if (mWorkers[i] == null) continue;
+            try {
+                mWorkers[i].join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mWorkers[i] = null;
+        }
+        for (Request r : mPending) {
+            r.texture.setQueued(false);
+        }
+        mPending.clear();
+        Decoded d;
+        while ((d = mDecoded.poll()) != null) {
+            d.texture.setQueued(false);
+            d.data.recycle();
+        }
+    }
+
+    /**
+     * Queues a texture for decoding. index is the position of the texture in
+     * a circular list of count entries, used to prioritize the request.
+     */
+    public void request(Texture t, int index) {
+        Request r = new Request(t, index);
+        t.setQueued(true);
+        synchronized (mPending) {
+            r.priority = distance(index);
+            mPending.add(r);
+        }
+    }
+
+    /**
+     * Moves the focus to a new index, decoding requests closest to it first.
+     * Requests further than window entries away from the focus are dropped;
+     * a negative window keeps all of them.
+     */
+    public void setFocus(int focus, int count, int window) {
+        ArrayList<Request> requests = new ArrayList<Request>(mPending.size());
+        synchronized (mPending) {
+            mFocus = focus;
+            mCount = count;
+            mPending.drainTo(requests);
+            for (Request r : requests) {
+                r.priority = distance(r.index);
+                if (window >= 0 && r.priority > window) {
+                    r.texture.setQueued(false);
+                } else {
+                    mPending.add(r);
+                }
+            }
+        }
+    }
+
+    /**
+     * Uploads up to budget decoded textures. Must be called from the GL thread.
+     * @return true if decoded textures are still waiting to be uploaded.
+     */
+    public boolean upload(GL11 gl, int budget, TextureCache cache) {
+        for (int i = 0; i < budget; i++) {
+            Decoded d = mDecoded.poll();
+            if (d == null) {
+                return false;
+            }
+            d.texture.upload(gl, d.data);
+            if (cache != null) {
+                cache.onUploaded(d.texture, d.index);
+            }
+        }
+        return !mDecoded.isEmpty();
+    }
+
+    private int distance(int index) {
+        int d = Math.abs(index - mFocus);
+        return Math.min(d, mCount - d);
+    }
+
+    private class Worker implements Runnable {
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            try {
+                while (mRunning) {
+                    Request r = mPending.poll();
+                    if (r == null) {
+                        // Idle, do not pin a full size bitmap until the next request
+                        Texture.releaseReusable();
+                        r = mPending.take();
+                    }
+                    TextureData d = r.texture.load();
+                    if (d == null) {
+                        r.texture.setQueued(false);
+                        continue;
+                    }
+                    boolean handedOver = false;
+                    try {
+                        mDecoded.put(new Decoded(r.texture, r.index, d));
+                        handedOver = true;
+                    } finally {
+                        // Interrupted while the GL thread was behind
+                        if (!handedOver) {
+                            d.recycle();
+                            r.texture.setQueued(false);
+                        }
+                    }
+                    Listener l = mListener;
+                    if (l != null) {
+                        l.onTextureDecoded(r.texture);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Log.d(TAG, Thread.currentThread().getName()+" stopped");
+            } finally {
+                Texture.releaseReusable();
+            }
+        }
+    }
+
+    private static class Request implements Comparable<Request> {
+        public Request(Texture t, int i) {
+            texture = t;
+            index = i;
+        }
+
+        @Override
+        public int compareTo(Request other) {
+            return priority - other.priority;
+        }
+
+        public final Texture texture;
+        public final int index;
+        public int priority;
+    }
+
+    private static class Decoded {
+        public Decoded(Texture t, int i, TextureData d) {
+            texture = t;
+            index = i;
+            data = d;
+        }
+
+        public final Texture texture;
+        public final int index;
+        public final TextureData data;
+    }
+
+    private PriorityBlockingQueue<Request> mPending;
+    private ArrayBlockingQueue<Decoded> mDecoded;
+    private Thread[] mWorkers;
+    private volatile boolean mRunning;
+    private volatile Listener mListener;
+    private int mFocus;
+    private int mCount;
+
+    private static final String TAG = "TextureLoader";
+}
@@ -1,44 +1,95 @@
 package com.ti.arx.ProjectorGallery;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 import javax.microedition.khronos.opengles.GL10;
 import javax.microedition.khronos.opengles.GL11;
 
+import com.ti.arx.gesture.GestureEngine;
+
 public class UILayer implements GLDrawable {
 
     public UILayer() {
+        this(false);
+    }
+
+    /**
+     * @param gles2 true if the hotspots are drawn by the GLES 2.0 scene
+     * batch, which only needs their shapes, not the GLES 1.1 buffers.
+     */
+    public UILayer(boolean gles2) {
+        mGLES2 = gles2;
         mAspectRatio = 1.0f;
         mSpots = new ArrayList<Hotspot>(4);
         mSize = 0.2f;
-        mDelay = 30;
         mListener = null;
+        mGestures = new GestureEngine();
+        mMesh = new HotspotMesh();
+        mSharedMesh = true;
+        mMaxSegments = DEFAULT_MAX_SEGMENTS;
+        mLodError = DEFAULT_LOD_ERROR;
+        mGrid = new HotspotGrid();
+        mUseIndex = true;
+        mNear = new boolean[0];
+        mNearBefore = new int[0];
+        mNearNow = new int[0];
     }
 
     @Override
     public void draw(GL11 gl) {
         gl.glEnable(GL10.GL_BLEND);
-        for (Hotspot s : mSpots) {
-            s.draw(gl);
+        if (mSharedMesh) {
+            int segments = HotspotMesh.segmentsFor(mSize*mPixelScale, mLodError, mMaxSegments);
+            if (segments != mMesh.getSegments()) {
+                mMesh.build(mSpots, segments);
+            }
+            mMesh.draw(gl, mSpots);
+        } else {
+            for (Hotspot s : mSpots) {
+                s.draw(gl);
+            }
         }
         gl.glDisable(GL10.GL_BLEND);
     }
 
+    /**
+     * May be called again while pointer events arrive on another thread,
+     * when the parameters are reloaded.
+     */
     @Override
-    public void setup(GL11 gl, Properties props) {
-        gl.glBlendFunc(GL10.GL_SRC_ALPHA, GL10.GL_ONE_MINUS_SRC_ALPHA);
-
+    public synchronized void setup(GL11 gl, Properties props) {
         String value = props.getProperty("-hotSpotSize");
         if (value != null) {
             mSize = Float.parseFloat(value);
         }
 
-        value = props.getProperty("-hotSpotActionDelay");
+        value = props.getProperty("-hotSpotSharedMesh");
+        if (value != null) {
+            mSharedMesh = Integer.parseInt(value) != 0;
+        }
+
+        value = props.getProperty("-hotSpotMaxSegments");
         if (value != null) {
-            mDelay = Integer.parseInt(value);
+            mMaxSegments = Math.max(HotspotMesh.MIN_SEGMENTS, Integer.parseInt(value));
         }
 
+        value = props.getProperty("-hotSpotIndex");
+        if (value != null) {
+            mUseIndex = Integer.parseInt(value) != 0;
+        }
+
+        value = props.getProperty("-hotSpotLodError");
+        if (value != null) {
+            mLodError = Float.parseFloat(value);
+        }
+
+        // All the hotspots share one circle, detailed enough for their size
+        int segments = HotspotMesh.segmentsFor(mSize*mPixelScale, mLodError, mMaxSegments);
+        mCircle = Shape.createCircle(segments);
+        mSpots.clear();
+
         value = props.getProperty("-hotSpots");
         if (value != null) {
             String[] coords = value.split(" ");
@@ -53,39 +104,138 @@ public class UILayer implements GLDrawable {
             }
         }
 
-        for (Hotspot s : mSpots) {
-            s.setup(gl, props);
+        int count = mSpots.size();
+        mGrid.build(mSpots);
+        mNear = new boolean[count];
+        mNearBefore = new int[count];
+        mNearNow = new int[count];
+        mNearCount = 0;
+
+        if (mGLES2) return;
+        gl.glBlendFunc(GL10.GL_SRC_ALPHA, GL10.GL_ONE_MINUS_SRC_ALPHA);
+        if (mSharedMesh) {
+            mMesh.build(mSpots, segments);
+            mMesh.setup(gl);
+        } else {
+            mCircle.setup(gl, props);
         }
     }
 
-    public void onPointerEvent(float x, float y) {
-        for (Hotspot s : mSpots) {
-            s.onPointerEvent(x, y);
+    /**
+     * Deletes the GL buffers created by setup, before setting the layer up
+     * again in the same context.
+     */
+    public synchronized void release(GL11 gl) {
+        if (mGLES2) {
+            return;
+        } else if (mSharedMesh) {
+            mMesh.release(gl);
+        } else if (mCircle != null) {
+            mCircle.release(gl);
         }
     }
 
+    /**
+     * Updates the hotspots for the pointer at (x, y) at time timeNs, as
+     * filtered by the gesture engine.
+     */
+    public synchronized void onPointerEvent(float x, float y, long timeNs) {
+        if (!mUseIndex) {
+            for (Hotspot s : mSpots) {
+                s.onPointerEvent(x, y, timeNs);
+            }
+            return;
+        }
+
+        // Only the hotspots near the pointer are updated, and the ones near
+        // it last time are told it moved away
+        int cell = mGrid.cellAt(x, y);
+        int count = 0;
+        if (cell >= 0) {
+            int end = mGrid.getCellStart(cell + 1);
+            for (int i = mGrid.getCellStart(cell); i < end; i++) {
+                int index = mGrid.getItem(i);
+                mSpots.get(index).onPointerEvent(x, y, timeNs);
+                mNear[index] = true;
+                mNearNow[count++] = index;
+            }
+        }
+        for (int i = 0; i < mNearCount; i++) {
+            int index = mNearBefore[i];
+            if (!mNear[index]) {
+                mSpots.get(index).onPointerAway(timeNs);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            mNear[mNearNow[i]] = false;
+        }
+
+        int[] swap = mNearBefore;
+        mNearBefore = mNearNow;
+        mNearNow = swap;
+        mNearCount = count;
+    }
+
     public void setListener(Hotspot.Listener l) {
         mListener = l;
     }
 
+    /**
+     * Sets the engine the hotspots take their dwell settings from, before
+     * setup.
+     */
+    public void setGestureEngine(GestureEngine gestures) {
+        mGestures = gestures;
+    }
+
     public void setAspectRatio(float ar) {
         mAspectRatio = ar;
     }
 
+    public List<Hotspot> getSpots() {
+        return mSpots;
+    }
+
+    /**
+     * Sets how many pixels one unit of the layer covers on screen, which
+     * selects the level of detail of the hotspot circles.
+     */
+    public void setPixelScale(float pixelsPerUnit) {
+        mPixelScale = pixelsPerUnit;
+    }
+
     private void addSpot(int id, float x, float y) {
         x = (2.0f*x - 1.0f);
         y = (-2.0f*y + 1.0f);
         y /= mAspectRatio;
-        Hotspot s = new CircleHotspot(id);
+        Hotspot s = new CircleHotspot(id, mCircle);
         //Hotspot s = new SquareHotspot(id);
-        s.configure(x, y, mSize, mDelay);
+        s.configure(x, y, mSize, mGestures);
         s.setListener(mListener);
         mSpots.add(s);
     }
 
     private Hotspot.Listener mListener;
     private ArrayList<Hotspot> mSpots;
-    private int mDelay;
+    private GestureEngine mGestures;
     private float mSize;
     private float mAspectRatio;
+    private float mPixelScale;
+
+    private boolean mGLES2;
+    private Shape mCircle;
+    private HotspotMesh mMesh;
+    private boolean mSharedMesh;
+    private int mMaxSegments;
+    private float mLodError;
+
+    private HotspotGrid mGrid;
+    private boolean mUseIndex;
+    private boolean[] mNear;
+    private int[] mNearBefore;
+    private int[] mNearNow;
+    private int mNearCount;
+
+    private static final int DEFAULT_MAX_SEGMENTS = 360;
+    private static final float DEFAULT_LOD_ERROR = 0.5f;
 }
@@ -17,7 +17,8 @@ include $(CLEAR_VARS)
 LOCAL_MODULE_TAGS := optional
 LOCAL_CPPFLAGS := $(ARX_DEBUGGING) $(ARX_CPPFLAGS) $(DVP_FEATURES)
 LOCAL_SRC_FILES := IBufferMgrClient.cpp IFlatBufferMgr.cpp IImageBufferMgr.cpp BufferMgr.cpp \
-                   FlatBufferMgr.cpp ImageBufferMgr.cpp Buffer.cpp FlatBuffer.cpp ImageBuffer.cpp
+                   FlatBufferMgr.cpp ImageBufferMgr.cpp Buffer.cpp FlatBuffer.cpp ImageBuffer.cpp \
+                   BufferSubscribers.cpp
 LOCAL_C_INCLUDES := $(ARX_INC) $(DVP_INC)
 LOCAL_SHARED_LIBRARIES := libdvp libbinder libutils libcutils libgui libui libhardware
 ifeq ($(TARGET_ANDROID_VERSION),JELLYBEANMR1)
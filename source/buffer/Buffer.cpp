@@ -15,14 +15,14 @@
  */
 
 #include <buffer/Buffer.h>
-#include <buffer/IBufferMgrClient.h>
+#include <buffer/BufferSubscribers.h>
 #include <arx_debug.h>
 
 using namespace android;
 
 namespace tiarx {
 
-Buffer::Buffer(uint32_t index, DVP_Handle dvp, const sp<IBufferMgrClient>& client, queue_t *freeQ, queue_t *readyQ, bool holdForClient)
+Buffer::Buffer(uint32_t index, DVP_Handle dvp, const sp<BufferSubscribers>& subscribers, queue_t *freeQ, queue_t *readyQ, bool holdForClient)
 {
     ARX_PRINT(ARX_ZONE_API, "%s\n", __FUNCTION__);
     mRemote = false;
@@ -32,14 +32,16 @@ Buffer::Buffer(uint32_t index, DVP_Handle dvp, const sp<IBufferMgrClient>& clien
     mFreeQ = freeQ;
     mReadyQ = readyQ;
     mDvp = dvp;
-    mClient = client;
+    mSubscribers = subscribers;
+    mDelivered = 0;
     mHoldReady = holdForClient;
+    mRenderHold = 0;
 }
 
 Buffer::~Buffer()
 {
     ARX_PRINT(ARX_ZONE_API, "%s\n", __FUNCTION__);
-    mClient.clear();
+    mSubscribers.clear();
 }
 //inline void obtain() { android_atomic_inc(&mUsers); };
 //inline int32_t release() { return android_atomic_dec(&mUsers); }
@@ -73,31 +75,43 @@ arxstatus_t Buffer::ready()
 {
     ARX_PRINT(ARX_ZONE_API, "%s\n", __FUNCTION__);
 
+    //Every consumer takes its reference before any of them can release it
     if (mReadyQ != NULL) {
         consume();
     }
 
-    if (mClient != NULL || mHoldReady) {
+    //A held stream keeps its own reference until render(timestamp) or an index
+    //only release ends the hold, whichever clients also receive the buffer
+    if (mHoldReady) {
         consume();
+        android_atomic_release_store(1, &mRenderHold);
     }
 
-    if (mReadyQ == NULL && mClient == NULL) {
+    //One reference per client the buffer is delivered to
+    mDelivered = 0;
+    if (mSubscribers != NULL) {
+        mSubscribers->deliver(this);
+    }
+
+    if (mReadyQ == NULL && mDelivered == 0 && !mHoldReady) {
         //there are no consumers of this buffer, release it
         ARX_PRINT(ARX_ZONE_BUFFER, "buff:%p: idx:%d ready but releasing since there are no consumers!\n", this, mIndex);
         consume();
         return release();
     }
 
-    ARX_PRINT(ARX_ZONE_BUFFER, "buff:%p: ready idx:%d\n", this, mIndex);
+    ARX_PRINT(ARX_ZONE_BUFFER, "buff:%p: ready idx:%d for %u clients\n", this, mIndex, mDelivered);
     bool ret = true;
     if (mReadyQ != NULL) {
         ret = queue_write(mReadyQ, false_e, &mIndex);
     }
-
-    if (mClient != NULL) {
-        mClient->onBufferChanged(mIndex, mTimestamp);
-    }
     return ret ? NOERROR : FAILED;
 }
 
+bool Buffer::clearHold()
+{
+    //Several callers may race to end the hold, only one releases its reference
+    return android_atomic_cmpxchg(1, 0, &mRenderHold) == 0;
+}
+
 }
@@ -16,7 +16,9 @@
 
 #include <buffer/BufferMgr.h>
 #include <buffer/IBufferMgrClient.h>
+#include <buffer/Buffer.h>
 #include <arx/ARXBufferTypes.h>
+#include <utils/ARXLatency.h>
 #include <arx_debug.h>
 
 using namespace android;
@@ -41,11 +43,25 @@ BufferMgr::BufferMgr(uint32_t bufId, uint32_t count, DVP_MemType_e memType, bool
     mMemType = memType;
 
     mHoldReady = holdReady;
+    mEnabledForClients = false;
+    mSubscribers = new BufferSubscribers(bufId);
+
+    mPolicy = BUFF_POLICY_BLOCK;
+    memset(&mStats, 0, sizeof(mStats));
+    mPendingHead = 0;
+    mNumPending = 0;
+    mutex_init(&mLock);
+
+    mReadyReserve = 0;
+    mCountSet = false;
+    mTuning = false;
+    memset(mNeeded, 0, sizeof(mNeeded));
 }
 
 BufferMgr::~BufferMgr()
 {
     ARX_PRINT(ARX_ZONE_API, "%s\n", __FUNCTION__);
+    mutex_deinit(&mLock);
 }
 
 arxstatus_t BufferMgr::bindGraph(DVP_KernelGraph_t *)
@@ -62,6 +78,7 @@ arxstatus_t BufferMgr::setCount(uint32_t count)
         return INVALID_STATE;
     }
     mCount = count;
+    mCountSet = true;
     return NOERROR;
 }
 
@@ -74,9 +91,64 @@ uint32_t BufferMgr::getCount() const
 arxstatus_t BufferMgr::registerClient(IBufferMgrClient *client)
 {
     ARX_PRINT(ARX_ZONE_API, "%s\n", __FUNCTION__);
-    mClient = client;
+    arxstatus_t status = mSubscribers->add(client);
+    if (status != NOERROR) {
+        return status;
+    }
 
-    mEnabled = mClient != NULL ? true : false;
+    //Streams the engine enables for itself stay enabled when the clients leave
+    if (!mEnabled) {
+        mEnabled = true;
+        mEnabledForClients = true;
+    }
+    return NOERROR;
+}
+
+arxstatus_t BufferMgr::unregisterClient(IBufferMgrClient *client)
+{
+    ARX_PRINT(ARX_ZONE_API, "%s\n", __FUNCTION__);
+    arxstatus_t status = mSubscribers->remove(client);
+    if (status != NOERROR) {
+        return status;
+    }
+
+    if (mEnabledForClients && mSubscribers->size() == 0) {
+        mEnabled = false;
+        mEnabledForClients = false;
+    }
+    return NOERROR;
+}
+
+arxstatus_t BufferMgr::setMaxHeld(IBufferMgrClient *client, uint32_t count)
+{
+    ARX_PRINT(ARX_ZONE_API, "%s\n", __FUNCTION__);
+    if (count >= IBufferMgr::MAX_BUFFERS) {
+        ARX_PRINT(ARX_ZONE_ERROR, "mgr:%u cannot hold %u buffers!\n", mBuffId, count);
+        return INVALID_ARGUMENT;
+    }
+    return mSubscribers->setMaxHeld(client, count);
+}
+
+arxstatus_t BufferMgr::setPolicy(uint32_t policy)
+{
+    ARX_PRINT(ARX_ZONE_API, "%s\n", __FUNCTION__);
+    if (policy >= BUFF_POLICY_MAX) {
+        ARX_PRINT(ARX_ZONE_ERROR, "mgr:%u unknown policy %u!\n", mBuffId, policy);
+        return INVALID_ARGUMENT;
+    }
+    SOSAL::AutoLock lock(&mLock);
+    mPolicy = policy;
+    mStats.policy = policy;
+    return NOERROR;
+}
+
+arxstatus_t BufferMgr::getStats(ARXBufferStats *stats)
+{
+    if (stats == NULL) {
+        return NULL_POINTER;
+    }
+    SOSAL::AutoLock lock(&mLock);
+    *stats = mStats;
     return NOERROR;
 }
 
@@ -108,6 +180,13 @@ arxstatus_t BufferMgr::allocate(DVP_Handle dvp)
     }
 
     mDvp = dvp;
+    mSubscribers->setCount(mCount);
+    mutex_lock(&mLock);
+    memset(&mStats, 0, sizeof(mStats));
+    mStats.policy = mPolicy;
+    mPendingHead = 0;
+    mNumPending = 0;
+    mutex_unlock(&mLock);
     for (uint32_t i = 0; i < mCount; i++) {
         arxstatus_t status = allocateBuffer(i);
         if (status != NOERROR) {
@@ -129,6 +208,16 @@ arxstatus_t BufferMgr::free()
 {
     ARX_PRINT(ARX_ZONE_API, "%s\n", __FUNCTION__);
 
+    mSubscribers->clear();
+    if (mAllocated) {
+        SOSAL::AutoLock lock(&mLock);
+        ARX_PRINT(ARX_ZONE_ALWAYS, "mgr:%u policy:%u produced:%u consumed:%u dropped:%u recycled:%u "
+                "waits:%u (%u us, max %u us) max depth:%u\n", mBuffId, mStats.policy, mStats.produced,
+                mStats.consumed, mStats.dropped, mStats.recycled, mStats.waits, mStats.waitUs,
+                mStats.maxWaitUs, mStats.maxDepth);
+        mNumPending = 0;
+    }
+
     if (mFreeQueue != NULL) {
         queue_destroy(mFreeQueue);
         mFreeQueue = NULL;
@@ -149,24 +238,225 @@ void BufferMgr::unblock()
     queue_pop(mReadyQueue);
 }
 
+void BufferMgr::startTuning()
+{
+    SOSAL::AutoLock lock(&mLock);
+    memset(mNeeded, 0, sizeof(mNeeded));
+    mTuning = true;
+}
+
+uint32_t BufferMgr::tunedCount(uint32_t stallPermille)
+{
+    SOSAL::AutoLock lock(&mLock);
+    mTuning = false;
+
+    uint64_t total = 0;
+    for (uint32_t n = 0; n < IBufferMgr::MAX_BUFFERS + 2; n++) {
+        total += mNeeded[n];
+    }
+    if (total == 0) {
+        return 0;
+    }
+
+    //A stream stalled at the current count needed more than it, so a count
+    //grows by at most one per tuning, while unused buffers are dropped at once
+    uint32_t minCount = minTunedCount();
+    uint64_t over = total - mNeeded[0];
+    for (uint32_t count = 1; count <= IBufferMgr::MAX_BUFFERS; count++) {
+        //Samples which needed more than count buffers
+        over -= mNeeded[count];
+        if (over*1000 <= stallPermille*total) {
+            ARX_PRINT(ARX_ZONE_ENGINE, "mgr:%u needs %u buffers for "FMT_UINT64_T" of "FMT_UINT64_T" samples\n",
+                    mBuffId, count, total - over, total);
+            return count > minCount ? count : minCount;
+        }
+    }
+    return IBufferMgr::MAX_BUFFERS;
+}
+
+void BufferMgr::setTunedCount(uint32_t count)
+{
+    if (mCountSet || mAllocated || count == 0) {
+        return;
+    }
+    //Counts saved before the minimum was enforced, or with fewer clients
+    uint32_t minCount = minTunedCount();
+    if (count < minCount) {
+        count = minCount;
+    }
+    mCount = count < IBufferMgr::MAX_BUFFERS ? count : IBufferMgr::MAX_BUFFERS;
+}
+
+uint32_t BufferMgr::minTunedCount()
+{
+    //One buffer for each client and one being produced, a single buffer
+    //would serialize the producer with the consumers
+    uint32_t count = mSubscribers->size() + 1;
+    if (count < 2) {
+        count = 2;
+    }
+    return count < IBufferMgr::MAX_BUFFERS ? count : IBufferMgr::MAX_BUFFERS;
+}
+
+uint32_t BufferMgr::countNeeded(uint32_t reserve)
+{
+    uint32_t needed = reserve;
+    for (uint32_t i = 0; i < mCount; i++) {
+        Buffer *b = bufferAt(i);
+        if (b != NULL && b->inUse()) {
+            needed++;
+        }
+    }
+    return needed;
+}
+
+void BufferMgr::recordNeeded(uint32_t needed)
+{
+    mNeeded[needed <= IBufferMgr::MAX_BUFFERS ? needed : IBufferMgr::MAX_BUFFERS + 1]++;
+}
+
+arxstatus_t BufferMgr::cancelFree(uint32_t index)
+{
+    if (!queue_write(mFreeQueue, false_e, &index)) {
+        ARX_PRINT(ARX_ZONE_ERROR, "mgr:%u idx:%u error writing into free queue!\n", mBuffId, index);
+        return FAILED;
+    }
+    SOSAL::AutoLock lock(&mLock);
+    mStats.produced--;
+    return NOERROR;
+}
+
+void BufferMgr::drainReady()
+{
+    uint32_t idx;
+    while (mReadyQueue != NULL && mNumPending < IBufferMgr::MAX_BUFFERS &&
+           queue_read(mReadyQueue, false_e, &idx)) {
+        mPending[(mPendingHead + mNumPending) % IBufferMgr::MAX_BUFFERS] = idx;
+        mNumPending++;
+    }
+    mStats.depth = mNumPending;
+    if (mNumPending > mStats.maxDepth) {
+        mStats.maxDepth = mNumPending;
+    }
+}
+
+uint32_t BufferMgr::popPending()
+{
+    uint32_t idx = mPending[mPendingHead];
+    mPendingHead = (mPendingHead + 1) % IBufferMgr::MAX_BUFFERS;
+    mNumPending--;
+    mStats.depth = mNumPending;
+    return idx;
+}
+
+void BufferMgr::addWait(uint64_t start)
+{
+    uint32_t us = (uint32_t)((arx_monotonic_ns() - start)/1000);
+    mStats.waits++;
+    mStats.waitUs += us;
+    if (us > mStats.maxWaitUs) {
+        mStats.maxWaitUs = us;
+    }
+}
+
 arxstatus_t BufferMgr::nextFreeIdx(uint32_t *index)
 {
     uint32_t idx = 0xFFFFFFFF;
-    bool ret = queue_read(mFreeQueue, true_e, &idx);
-    if (ret) {
-        *index = idx;
+    //The buffers in use and the one about to be obtained, 0 when not tuning
+    uint32_t needed = 0;
+    mutex_lock(&mLock);
+    if (mTuning) {
+        needed = countNeeded(1);
     }
-    return ret ? NOERROR : FAILED;
+    mutex_unlock(&mLock);
+
+    if (!queue_read(mFreeQueue, false_e, &idx)) {
+        if (mPolicy == BUFF_POLICY_BLOCK) {
+            uint64_t start = arx_monotonic_ns();
+            if (!queue_read(mFreeQueue, true_e, &idx)) {
+                return FAILED;
+            }
+            SOSAL::AutoLock lock(&mLock);
+            addWait(start);
+            //Waiting for a free buffer means the stream needed more than it has,
+            //even when a buffer in transit was not counted as in use
+            if (needed > 0 && needed <= mCount) {
+                needed = mCount + 1;
+            }
+        } else {
+            //Reuse the oldest buffer the engine has not read yet. The buffers the clients
+            //hold cannot be taken back, if they hold them all this frame is dropped.
+            Buffer *oldest = NULL;
+            mutex_lock(&mLock);
+            drainReady();
+            if (mNumPending > 0) {
+                oldest = bufferAt(popPending());
+                mStats.recycled++;
+            }
+            mutex_unlock(&mLock);
+            if (oldest != NULL) {
+                oldest->release();
+            }
+            if (!queue_read(mFreeQueue, false_e, &idx)) {
+                SOSAL::AutoLock lock(&mLock);
+                if (mTuning && needed > 0) {
+                    recordNeeded(needed > mCount ? needed : mCount + 1);
+                }
+                mStats.dropped++;
+                ARX_PRINT(ARX_ZONE_BUFFER, "mgr:%u no free buffer, dropping frame\n", mBuffId);
+                return FAILED;
+            }
+        }
+    }
+
+    SOSAL::AutoLock lock(&mLock);
+    if (mTuning && needed > 0) {
+        recordNeeded(needed);
+    }
+    mStats.produced++;
+    *index = idx;
+    return NOERROR;
 }
 
 arxstatus_t BufferMgr::nextReadyIdx(uint32_t *index)
 {
-    uint32_t idx = 0xFFFFFFFF;
-    bool ret = queue_read(mReadyQueue, true_e, &idx);
-    if (ret) {
-        *index = idx;
+    Buffer *skipped[IBufferMgr::MAX_BUFFERS];
+    uint32_t numSkipped = 0;
+
+    mutex_lock(&mLock);
+    drainReady();
+    if (mNumPending == 0) {
+        mutex_unlock(&mLock);
+        uint32_t idx = 0xFFFFFFFF;
+        if (!queue_read(mReadyQueue, true_e, &idx)) {
+            return FAILED;
+        }
+        mutex_lock(&mLock);
+        mPending[(mPendingHead + mNumPending) % IBufferMgr::MAX_BUFFERS] = idx;
+        mNumPending++;
+        drainReady();
+    }
+
+    if (mTuning && mReadyReserve > 0) {
+        recordNeeded(countNeeded(mReadyReserve));
     }
-    return ret ? NOERROR : FAILED;
+
+    if (mPolicy == BUFF_POLICY_LATEST_ONLY) {
+        while (mNumPending > 1) {
+            skipped[numSkipped++] = bufferAt(popPending());
+            mStats.recycled++;
+        }
+    }
+    *index = popPending();
+    mStats.consumed++;
+    mutex_unlock(&mLock);
+
+    //Outside the lock, releasing may return the frame to the camera
+    for (uint32_t i = 0; i < numSkipped; i++) {
+        ARX_PRINT(ARX_ZONE_BUFFER, "mgr:%u idx:%u skipped for a newer buffer\n", mBuffId, skipped[i]->index());
+        skipped[i]->release();
+    }
+    return NOERROR;
 }
 
 }
@@ -0,0 +1,248 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include <buffer/BufferSubscribers.h>
+#include <buffer/Buffer.h>
+#include <buffer/IBufferMgrClient.h>
+#include <arx_debug.h>
+
+using namespace android;
+
+namespace tiarx {
+
+BufferSubscribers::BufferSubscribers(uint32_t bufId)
+{
+    mBuffId = bufId;
+    mCount = 0;
+    mNumClients = 0;
+    for (uint32_t i = 0; i < IBufferMgr::MAX_BUFFERS; i++) {
+        mBuffers[i] = NULL;
+    }
+    mutex_init(&mLock);
+}
+
+BufferSubscribers::~BufferSubscribers()
+{
+    for (uint32_t i = 0; i < mNumClients; i++) {
+        mClients[i].client.clear();
+    }
+    mutex_deinit(&mLock);
+}
+
+int32_t BufferSubscribers::find(IBinder *binder)
+{
+    for (uint32_t i = 0; i < mNumClients; i++) {
+        if (mClients[i].client->asBinder().get() == binder) {
+            return i;
+        }
+    }
+    return -1;
+}
+
+int32_t BufferSubscribers::find(IBufferMgrClient *client)
+{
+    //Each transaction may hand us a new proxy, the binder is what identifies the client
+    return client != NULL ? find(client->asBinder().get()) : -1;
+}
+
+arxstatus_t BufferSubscribers::add(const sp<IBufferMgrClient>& client)
+{
+    if (client == NULL) {
+        return NULL_POINTER;
+    }
+
+    SOSAL::AutoLock lock(&mLock);
+    if (find(client.get()) >= 0) {
+        ARX_PRINT(ARX_ZONE_WARNING, "mgr:%u client %p is already registered!\n", mBuffId, client.get());
+        return NOERROR;
+    }
+    if (mNumClients == MAX_CLIENTS) {
+        ARX_PRINT(ARX_ZONE_ERROR, "mgr:%u cannot register more than %u clients!\n", mBuffId, MAX_CLIENTS);
+        return NOMEMORY;
+    }
+
+    //Fails for clients in this process, which do not need it
+    client->asBinder()->linkToDeath(this);
+
+    Subscriber& s = mClients[mNumClients++];
+    s.client = client;
+    s.maxHeld = 0;
+    s.held = 0;
+    s.heldMask = 0;
+    s.delivered = 0;
+    s.dropped = 0;
+    ARX_PRINT(ARX_ZONE_BUFFER, "mgr:%u registered client %p, %u clients\n", mBuffId, client.get(), mNumClients);
+    return NOERROR;
+}
+
+void BufferSubscribers::removeAt(uint32_t i)
+{
+    Subscriber& s = mClients[i];
+    ARX_PRINT(ARX_ZONE_BUFFER, "mgr:%u client %p delivered:%u dropped:%u, releasing %u held buffers\n",
+            mBuffId, s.client.get(), s.delivered, s.dropped, s.held);
+
+    //Release what the client still holds so the other clients are not starved.
+    //Buffer::release does not call back into this object.
+    for (uint32_t idx = 0; idx < IBufferMgr::MAX_BUFFERS; idx++) {
+        if ((s.heldMask & (1 << idx)) && mBuffers[idx] != NULL) {
+            mBuffers[idx]->release();
+        }
+    }
+
+    mNumClients--;
+    if (i != mNumClients) {
+        s = mClients[mNumClients];
+    }
+    mClients[mNumClients].client.clear();
+}
+
+arxstatus_t BufferSubscribers::remove(const sp<IBufferMgrClient>& client)
+{
+    SOSAL::AutoLock lock(&mLock);
+    int32_t i = find(client.get());
+    if (i < 0) {
+        return INVALID_ARGUMENT;
+    }
+    client->asBinder()->unlinkToDeath(this);
+    removeAt(i);
+    return NOERROR;
+}
+
+void BufferSubscribers::binderDied(const wp<IBinder>& who)
+{
+    SOSAL::AutoLock lock(&mLock);
+    int32_t i = find(who.unsafe_get());
+    if (i >= 0) {
+        ARX_PRINT(ARX_ZONE_WARNING, "mgr:%u client %p died!\n", mBuffId, mClients[i].client.get());
+        removeAt(i);
+    }
+}
+
+arxstatus_t BufferSubscribers::setMaxHeld(const sp<IBufferMgrClient>& client, uint32_t count)
+{
+    SOSAL::AutoLock lock(&mLock);
+    int32_t i = find(client.get());
+    if (i < 0) {
+        return INVALID_ARGUMENT;
+    }
+    mClients[i].maxHeld = count;
+    return NOERROR;
+}
+
+uint32_t BufferSubscribers::size()
+{
+    SOSAL::AutoLock lock(&mLock);
+    return mNumClients;
+}
+
+void BufferSubscribers::setCount(uint32_t count)
+{
+    SOSAL::AutoLock lock(&mLock);
+    mCount = count;
+}
+
+void BufferSubscribers::clear()
+{
+    SOSAL::AutoLock lock(&mLock);
+    for (uint32_t i = 0; i < mNumClients; i++) {
+        mClients[i].held = 0;
+        mClients[i].heldMask = 0;
+    }
+    for (uint32_t i = 0; i < IBufferMgr::MAX_BUFFERS; i++) {
+        mBuffers[i] = NULL;
+    }
+}
+
+uint32_t BufferSubscribers::deliver(Buffer *buffer)
+{
+    sp<IBufferMgrClient> targets[MAX_CLIENTS];
+    uint32_t numTargets = 0;
+    uint32_t index = buffer->index();
+    uint64_t timestamp = buffer->timestamp();
+    uint32_t bit = 1 << index;
+
+    mutex_lock(&mLock);
+    mBuffers[index] = buffer;
+    uint32_t share = mNumClients > 0 && mCount > 1 ? (mCount - 1)/mNumClients : 1;
+    //With more clients than count - 1, or large setMaxHeld values, the shares
+    //could cover every buffer. Never let the clients hold the last free one.
+    uint32_t heldMask = 0;
+    for (uint32_t i = 0; i < mNumClients; i++) {
+        heldMask |= mClients[i].heldMask;
+    }
+    bool full = mCount > 1 && !(heldMask & bit) && (uint32_t)__builtin_popcount(heldMask) >= mCount - 1;
+    for (uint32_t i = 0; i < mNumClients; i++) {
+        Subscriber& s = mClients[i];
+        uint32_t maxHeld = s.maxHeld > 0 ? s.maxHeld : (share > 0 ? share : 1);
+        if (full || s.held >= maxHeld || (s.heldMask & bit)) {
+            s.dropped++;
+            ARX_PRINT(ARX_ZONE_BUFFER, "mgr:%u idx:%u dropped for client %p holding %u\n", mBuffId, index, s.client.get(), s.held);
+            continue;
+        }
+        //Referenced before any client is told, so an early release cannot recycle it
+        buffer->consume();
+        s.held++;
+        s.heldMask |= bit;
+        s.delivered++;
+        targets[numTargets++] = s.client;
+    }
+    //Set before any client can release it, internalRelease reads it
+    buffer->mDelivered = numTargets;
+    mutex_unlock(&mLock);
+
+    //Outside the lock, a client in this process may release from the callback
+    for (uint32_t i = 0; i < numTargets; i++) {
+        targets[i]->onBufferChanged(index, timestamp);
+    }
+    return numTargets;
+}
+
+arxstatus_t BufferSubscribers::release(IBufferMgrClient *client, uint32_t index)
+{
+    uint32_t bit = 1 << index;
+    SOSAL::AutoLock lock(&mLock);
+    if (client != NULL) {
+        int32_t i = find(client);
+        if (i < 0 || !(mClients[i].heldMask & bit)) {
+            ARX_PRINT(ARX_ZONE_WARNING, "mgr:%u client %p does not hold idx:%u!\n", mBuffId, client, index);
+            return INVALID_ARGUMENT;
+        }
+        mClients[i].heldMask &= ~bit;
+        mClients[i].held--;
+        return NOERROR;
+    }
+
+    //Without its identity, the caller can only be the single client holding the buffer
+    int32_t holder = -1;
+    for (uint32_t i = 0; i < mNumClients; i++) {
+        if (mClients[i].heldMask & bit) {
+            if (holder >= 0) {
+                ARX_PRINT(ARX_ZONE_ERROR, "mgr:%u idx:%u is held by several clients, release it as a client!\n", mBuffId, index);
+                return INVALID_STATE;
+            }
+            holder = i;
+        }
+    }
+    if (holder < 0) {
+        ARX_PRINT(ARX_ZONE_WARNING, "mgr:%u no client holds idx:%u!\n", mBuffId, index);
+        return INVALID_ARGUMENT;
+    }
+    mClients[holder].heldMask &= ~bit;
+    mClients[holder].held--;
+    return NOERROR;
+}
+
+}
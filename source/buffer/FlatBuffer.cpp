@@ -15,7 +15,7 @@
  */
 
 #include <buffer/FlatBuffer.h>
-#include <buffer/IBufferMgrClient.h>
+#include <buffer/BufferSubscribers.h>
 #include <dvp/dvp_mem.h>
 #include <dvp/dvp_api.h>
 
@@ -26,8 +26,8 @@ using namespace android;
 namespace tiarx {
 
 FlatBuffer::FlatBuffer(uint32_t index, uint32_t size, DVP_Handle dvp, DVP_MemType_e type,
-                       sp<IBufferMgrClient>& client, queue_t *freeQ, queue_t *readyQ) :
-        Buffer(index, dvp, client, freeQ, readyQ, false)
+                       const sp<BufferSubscribers>& subscribers, queue_t *freeQ, queue_t *readyQ) :
+        Buffer(index, dvp, subscribers, freeQ, readyQ, false)
 {
     ARX_PRINT(ARX_ZONE_API, "%s\n", __FUNCTION__);
     mSize = size;
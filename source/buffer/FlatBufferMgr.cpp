@@ -39,7 +39,7 @@ FlatBufferMgr::~FlatBufferMgr()
 
 arxstatus_t FlatBufferMgr::allocateBuffer(uint32_t index)
 {
-    sp<FlatBuffer> b = new FlatBuffer(index, mSize, mDvp, mMemType, mClient, mFreeQueue, mReadyQueue);
+    sp<FlatBuffer> b = new FlatBuffer(index, mSize, mDvp, mMemType, mSubscribers, mFreeQueue, mReadyQueue);
     arxstatus_t status = b->allocate();
     if (status != NOERROR) {
         ARX_PRINT(ARX_ZONE_ERROR, "failed allocating buffer! (0x%x)\n", status);
@@ -89,6 +89,11 @@ arxstatus_t FlatBufferMgr::setSize(uint32_t size)
 }
 
 arxstatus_t FlatBufferMgr::release(uint32_t index)
+{
+    return release(NULL, index);
+}
+
+arxstatus_t FlatBufferMgr::release(IBufferMgrClient *client, uint32_t index)
 {
     if (!mAllocated) {
         return UNALLOCATED_RESOURCES;
@@ -98,16 +103,26 @@ arxstatus_t FlatBufferMgr::release(uint32_t index)
         return INVALID_ARGUMENT;
     }
 
+    //Only the clients the buffer was delivered to may release it
+    arxstatus_t status = mSubscribers->release(client, index);
+    if (status != NOERROR) {
+        return status;
+    }
+
     const sp<FlatBuffer>& b = mBuffers[index];
     b->release();
     return NOERROR;
 }
 
+Buffer *FlatBufferMgr::bufferAt(uint32_t index)
+{
+    return mBuffers[index].get();
+}
+
 FlatBuffer *FlatBufferMgr::nextFree()
 {
     uint32_t idx;
-    bool ret = queue_read(mFreeQueue, true_e, &idx);
-    if (ret) {
+    if (nextFreeIdx(&idx) == NOERROR) {
         const sp<FlatBuffer>& b = mBuffers[idx];
         ARX_PRINT(ARX_ZONE_BUFFER, "mgr: %d, a buffer is free: %p, idx:%d", mBuffId, b.get(), idx);
         return b.get();
@@ -117,9 +132,8 @@ FlatBuffer *FlatBufferMgr::nextFree()
 
 FlatBuffer *FlatBufferMgr::nextReady()
 {
-    uint32_t idx;
-    bool ret = queue_read(mReadyQueue, true_e, &idx);
-    if (ret) {
+    uint32_t idx = 0;
+    if (nextReadyIdx(&idx) == NOERROR) {
         const sp<FlatBuffer>& b = mBuffers[idx];
         ARX_PRINT(ARX_ZONE_BUFFER, "mgr: %d, a buffer is ready: %p, idx:%d", mBuffId, b.get(), idx);
         return b.get();
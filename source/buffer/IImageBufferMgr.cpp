@@ -80,6 +80,16 @@ public:
         return reply.readInt32();
     }
 
+    arxstatus_t render(IBufferMgrClient *client, uint32_t index)
+    {
+        Parcel data, reply;
+        data.writeInterfaceToken(getInterfaceDescriptor());
+        data.writeStrongBinder(client->asBinder());
+        data.writeInt32(index);
+        remote()->transact(BnImageBufferMgr::CLIENTRENDER, data, &reply);
+        return reply.readInt32();
+    }
+
     arxstatus_t render(uint64_t timestamp)
     {
         Parcel data, reply;
@@ -163,6 +173,15 @@ status_t BnImageBufferMgr::onTransact(uint32_t code, const Parcel &data, Parcel
             reply->writeInt32(ret);
             break;
         }
+        case CLIENTRENDER:
+        {
+            CHECK_INTERFACE(IBufferMgr, data, reply);
+            sp<IBufferMgrClient> client = interface_cast<IBufferMgrClient>(data.readStrongBinder());
+            uint32_t index = data.readInt32();
+            arxstatus_t ret = render(client.get(), index);
+            reply->writeInt32(ret);
+            break;
+        }
         case TSRENDER:
         {
             CHECK_INTERFACE(IBufferMgr, data, reply);
@@ -16,13 +16,14 @@
 
 #include <buffer/ImageBuffer.h>
 #include <buffer/ImageBufferMgr.h>
-#include <buffer/IBufferMgrClient.h>
+#include <buffer/BufferSubscribers.h>
 #include <dvp/dvp_types.h>
 #include <dvp/dvp_mem.h>
 #include <dvp/dvp_api.h>
 #include <dvp/VisionCam.h>
 
 #include <arx_debug.h>
+#include <utils/ARXLatency.h>
 
 using namespace android;
 
@@ -30,8 +31,8 @@ namespace tiarx {
 
 ImageBuffer::ImageBuffer(uint32_t index, anativewindow_t *anw, uint32_t width, uint32_t height,
         ImageBufferMgr *mgr, bool usingTexture,
-        sp<IBufferMgrClient>& client, queue_t *freeQ, queue_t *readyQ, bool holdForClient) :
-        Buffer(index, 0, client, freeQ, readyQ, holdForClient)
+        const sp<BufferSubscribers>& subscribers, queue_t *freeQ, queue_t *readyQ, bool holdForClient) :
+        Buffer(index, 0, subscribers, freeQ, readyQ, holdForClient)
 {
     ARX_PRINT(ARX_ZONE_API, "%s\n", __FUNCTION__);
     mAnw = anw;
@@ -47,9 +48,9 @@ ImageBuffer::ImageBuffer(uint32_t index, anativewindow_t *anw, uint32_t width, u
 ImageBuffer::ImageBuffer(
         uint32_t index, uint32_t width, uint32_t height,
         uint32_t bufWidth, uint32_t bufHeight, uint32_t format,
-        DVP_Handle dvp, DVP_MemType_e type, android::sp<IBufferMgrClient>& client,
+        DVP_Handle dvp, DVP_MemType_e type, const sp<BufferSubscribers>& subscribers,
         queue_t *freeQ, queue_t *readyQ, bool holdForClient) :
-        Buffer(index, dvp, client, freeQ, readyQ, holdForClient)
+        Buffer(index, dvp, subscribers, freeQ, readyQ, holdForClient)
 
 {
     ARX_PRINT(ARX_ZONE_API, "%s\n", __FUNCTION__);
@@ -84,6 +85,7 @@ void ImageBuffer::init()
     mCam = NULL;
     mCamFrame = NULL;
     mPendingRender = false;
+    mReceivedTime = 0;
 }
 
 arxstatus_t ImageBuffer::readyOnMatch(VisionCamFrame *camFrame)
@@ -93,6 +95,7 @@ arxstatus_t ImageBuffer::readyOnMatch(VisionCamFrame *camFrame)
     if (pImage->pBuffer[0] == mImage.pBuffer[0]) {
         mCamFrame = camFrame;
         mTimestamp = camFrame->mTimestamp;
+        mReceivedTime = arx_monotonic_ns();
         ready();
         return NOERROR;
     }
@@ -142,7 +145,10 @@ arxstatus_t ImageBuffer::copyInfo(DVP_Image_t *pImage, uint32_t format)
 
 arxstatus_t ImageBuffer::renderAndRelease(bool render)
 {
-    mPendingRender = render;
+    //Any of the clients sharing the buffer may ask for it to be rendered
+    if (render) {
+        mPendingRender = true;
+    }
     return Buffer::release();
 }
 
@@ -170,9 +176,11 @@ bool ImageBuffer::internalRelease()
 {
     mTimestamp = 0xFFFFFFFFFFFFFFFFULL;
 
-    //If no client is registered for callbacks, the buffer will be automatically displayed
-    //if there is a surface bound to this buffer
-    bool render = mPendingRender || mClient == NULL;
+    //If no client received this buffer, it will be automatically displayed
+    //if there is a surface bound to this buffer. A held buffer is displayed
+    //only when asked to.
+    bool render = mPendingRender || (mDelivered == 0 && !mHoldReady);
+    mPendingRender = false;
     display(render);
 
     //When using ANativeWindow (a surface/surface texture has been bound) this buffer cannot
@@ -49,12 +49,14 @@ ImageBufferMgr::ImageBufferMgr(
     mHoldReadyForClient = false;
     mUsingTexture = false;
     mCam = NULL;
+    mutex_init(&mOrderLock);
 }
 
 ImageBufferMgr::~ImageBufferMgr()
 {
     ARX_PRINT(ARX_ZONE_API, "%s\n", __FUNCTION__);
     mSurface.clear();
+    mutex_deinit(&mOrderLock);
 }
 
 arxstatus_t ImageBufferMgr::allocateBuffer(uint32_t index)
@@ -82,9 +84,9 @@ arxstatus_t ImageBufferMgr::allocateBuffer(uint32_t index)
     arxstatus_t status;
     sp<ImageBuffer> b;
     if (mAnw != NULL) {
-        b = new ImageBuffer(index, mAnw, mWidth, mHeight, this, mUsingTexture, mClient, mFreeQueue, mReadyQueue, mHoldReadyForClient);
+        b = new ImageBuffer(index, mAnw, mWidth, mHeight, this, mUsingTexture, mSubscribers, mFreeQueue, mReadyQueue, mHoldReadyForClient);
     } else {
-        b = new ImageBuffer(index, mWidth, mHeight, mBufWidth, mBufHeight, mFormat, mDvp, mMemType, mClient, mFreeQueue, mReadyQueue, mHoldReadyForClient);
+        b = new ImageBuffer(index, mWidth, mHeight, mBufWidth, mBufHeight, mFormat, mDvp, mMemType, mSubscribers, mFreeQueue, mReadyQueue, mHoldReadyForClient);
     }
 
     status = b->allocate();
@@ -94,6 +96,11 @@ arxstatus_t ImageBufferMgr::allocateBuffer(uint32_t index)
     }
     ARX_PRINT(ARX_ZONE_ERROR, "mgr:%d allocated buffer:%p idx:%d\n", mBuffId, b.get(), index);
     mBuffers[index] = b;
+
+    DVP_Image_t image;
+    b->copyInfo(&image);
+    mFrameIndex.add(image.pBuffer[0], index);
+    mHandleIndex.add(image.reserved, index);
     return NOERROR;
 }
 
@@ -103,6 +110,11 @@ arxstatus_t ImageBufferMgr::free()
     for (uint32_t i = 0; i < IBufferMgr::MAX_BUFFERS; i++) {
         mBuffers[i].clear();
     }
+    mFrameIndex.clear();
+    mHandleIndex.clear();
+    mutex_lock(&mOrderLock);
+    mReadyOrder.clear();
+    mutex_unlock(&mOrderLock);
 
     if (mAnw != NULL) {
         anativewindow_free(mAnw);
@@ -170,21 +182,56 @@ arxstatus_t ImageBufferMgr::render(uint64_t timestamp)
         return INVALID_STATE;
     }
 
-    for (uint32_t i = 0; i < mCount; i++) {
-        const sp<ImageBuffer>& b = mBuffers[i];
-        if (b->timestamp() == timestamp) {
-           ARX_PRINT(ARX_ZONE_BUFFER, "rendering timestamp:%llu\n", timestamp);
-           return render(i);
-        } else if (b->timestamp() < timestamp) {
-            ARX_PRINT(ARX_ZONE_BUFFER, "dropping buffer with timestamp:%llu\n", b->timestamp());
-            return release(i);
+    //Every buffer older than timestamp is dropped in this call
+    uint32_t stale[2*IBufferMgr::MAX_BUFFERS];
+    uint32_t numStale = 0;
+    int32_t match = -1;
+    mutex_lock(&mOrderLock);
+    while (mReadyOrder.size() > 0 && mReadyOrder.at(0).timestamp <= timestamp) {
+        ARXTimestampQueue<2*IBufferMgr::MAX_BUFFERS>::Entry e = mReadyOrder.at(0);
+        mReadyOrder.pop();
+        if (mBuffers[e.index]->timestamp() != e.timestamp) {
+            continue;
+        }
+        if (e.timestamp == timestamp) {
+            match = e.index;
+            break;
         }
+        stale[numStale++] = e.index;
     }
+    mutex_unlock(&mOrderLock);
 
+    //Outside the lock, releasing may dequeue from the window and call freeOnMatch.
+    //Only the hold is released, the clients keep the buffer until they release it.
+    for (uint32_t i = 0; i < numStale; i++) {
+        ARX_PRINT(ARX_ZONE_BUFFER, "dropping buffer with timestamp:%llu\n", mBuffers[stale[i]]->timestamp());
+        releaseHold(stale[i], false);
+    }
+    if (match >= 0) {
+        ARX_PRINT(ARX_ZONE_BUFFER, "rendering timestamp:%llu\n", timestamp);
+        releaseHold((uint32_t)match, true);
+    }
     return NOERROR;
 }
 
-arxstatus_t ImageBufferMgr::release(uint32_t index, bool render)
+void ImageBufferMgr::addReadyOrder(uint64_t timestamp, uint32_t index)
+{
+    SOSAL::AutoLock lock(&mOrderLock);
+    if (mReadyOrder.full()) {
+        //Keep the entries of the buffers still held, at most mCount of them
+        ARXTimestampQueue<2*IBufferMgr::MAX_BUFFERS> held;
+        for (uint32_t i = 0; i < mReadyOrder.size(); i++) {
+            const ARXTimestampQueue<2*IBufferMgr::MAX_BUFFERS>::Entry& e = mReadyOrder.at(i);
+            if (mBuffers[e.index]->timestamp() == e.timestamp) {
+                held.push(e.timestamp, e.index);
+            }
+        }
+        mReadyOrder = held;
+    }
+    mReadyOrder.push(timestamp, index);
+}
+
+arxstatus_t ImageBufferMgr::release(IBufferMgrClient *client, uint32_t index, bool render)
 {
     ARX_PRINT(ARX_ZONE_API, "%s\n", __FUNCTION__);
     if (!mAllocated) {
@@ -195,27 +242,63 @@ arxstatus_t ImageBufferMgr::release(uint32_t index, bool render)
         return INVALID_ARGUMENT;
     }
 
+    //Without a client, the index only calls end the hold of a held buffer
+    if (client == NULL && releaseHold(index, render) == NOERROR) {
+        return NOERROR;
+    }
+
+    //Only the clients the buffer was delivered to may release it
+    arxstatus_t status = mSubscribers->release(client, index);
+    if (status != NOERROR) {
+        return status;
+    }
+
+    //A client rendering a held buffer decides for the hold as well
+    if (render) {
+        releaseHold(index, true);
+    }
+    const sp<ImageBuffer>& b = mBuffers[index];
+    return b->renderAndRelease(render);
+}
+
+arxstatus_t ImageBufferMgr::releaseHold(uint32_t index, bool render)
+{
     const sp<ImageBuffer>& b = mBuffers[index];
+    if (b == NULL || !b->clearHold()) {
+        return INVALID_STATE;
+    }
     return b->renderAndRelease(render);
 }
 
 arxstatus_t ImageBufferMgr::render(uint32_t index)
 {
-    release(index, true);
-    return NOERROR;
+    return release(NULL, index, true);
+}
+
+arxstatus_t ImageBufferMgr::render(IBufferMgrClient *client, uint32_t index)
+{
+    return release(client, index, true);
 }
 
 arxstatus_t ImageBufferMgr::release(uint32_t index)
 {
-    release(index, false);
-    return NOERROR;
+    return release(NULL, index, false);
+}
+
+arxstatus_t ImageBufferMgr::release(IBufferMgrClient *client, uint32_t index)
+{
+    return release(client, index, false);
+}
+
+Buffer *ImageBufferMgr::bufferAt(uint32_t index)
+{
+    return mBuffers[index].get();
 }
 
 ImageBuffer *ImageBufferMgr::nextFree()
 {
     uint32_t idx;
-    bool ret = queue_read(mFreeQueue, true_e, &idx);
-    if (ret) {
+    if (nextFreeIdx(&idx) == NOERROR) {
         const sp<ImageBuffer>& b = mBuffers[idx];
         return b.get();
     }
@@ -225,8 +308,7 @@ ImageBuffer *ImageBufferMgr::nextFree()
 ImageBuffer *ImageBufferMgr::nextReady()
 {
     uint32_t idx = 0;
-    bool ret = queue_read(mReadyQueue, true_e, &idx);
-    if (ret) {
+    if (nextReadyIdx(&idx) == NOERROR) {
         const sp<ImageBuffer>& b = mBuffers[idx];
         ARX_PRINT(ARX_ZONE_BUFFER, "mgr: %d, a buffer is ready: %p, idx:%d", mBuffId, b.get(), idx);
         return b.get();
@@ -236,28 +318,25 @@ ImageBuffer *ImageBufferMgr::nextReady()
 
 arxstatus_t ImageBufferMgr::readyOnMatch(VisionCamFrame *frame)
 {
-    arxstatus_t status = INVALID_ARGUMENT;
-    for (uint32_t i = 0; i < mCount; i++) {
-        const sp<ImageBuffer>& b = mBuffers[i];
-        status = b->readyOnMatch(frame);
-        if (status == NOERROR) {
-            return NOERROR;
-        }
+    DVP_Image_t *pImage = (DVP_Image_t *)frame->mFrameBuff;
+    int32_t idx = mFrameIndex.find(pImage->pBuffer[0]);
+    if (idx < 0) {
+        return INVALID_ARGUMENT;
+    }
+    //Recorded before the buffer is ready, a client may render it from its callback
+    if (mHoldReadyForClient && mSurface != NULL) {
+        addReadyOrder(frame->mTimestamp, idx);
     }
-    return status;
+    return mBuffers[idx]->readyOnMatch(frame);
 }
 
 arxstatus_t ImageBufferMgr::freeOnMatch(void *handle)
 {
-    arxstatus_t status = INVALID_ARGUMENT;
-    for (uint32_t i = 0; i < mCount; i++) {
-        const sp<ImageBuffer>& b = mBuffers[i];
-        status = b->freeOnMatch(handle);
-        if (status == NOERROR) {
-            return NOERROR;
-        }
+    int32_t idx = mHandleIndex.find(handle);
+    if (idx < 0) {
+        return INVALID_ARGUMENT;
     }
-    return status;
+    return mBuffers[idx]->freeOnMatch(handle);
 }
 
 arxstatus_t ImageBufferMgr::hold(bool enable)
@@ -306,6 +385,8 @@ arxstatus_t ImageBufferMgr::setFormat(uint32_t format)
 arxstatus_t ImageBufferMgr::setCam(VisionCam *cam)
 {
     mCam = cam;
+    //The camera fills the buffers, it never calls nextFree
+    mReadyReserve = mCam != NULL ? CAMERA_RESERVE : 0;
     if (mAllocated && mCam) {
         for (uint32_t i = 0; i < mCount; i++) {
             const sp<ImageBuffer>& b = mBuffers[i];
@@ -69,7 +69,7 @@ arxstatus_t ARXFlatBufferMgrImpl::getBuffer(uint32_t index, sp<ARXFlatBufferImpl
             status = nativeBuf->import(mDvp);
             if (status != NOERROR) {
                 ARX_PRINT(ARX_ZONE_ERROR, "Failed to import buffer! returning to daemon (0x%x)\n", status);
-                mManager->release(index);
+                mManager->release(this, index);
             } else {
                 mBuffers[index] = new ARXFlatBufferImpl(mID, index, this, nativeBuf);
             }
@@ -102,12 +102,39 @@ uint32_t ARXFlatBufferMgrImpl::getCount()
 
 arxstatus_t ARXFlatBufferMgrImpl::release(uint32_t index)
 {
-    return mManager->release(index);
+    return mManager->release(this, index);
+}
+
+arxstatus_t ARXFlatBufferMgrImpl::setMaxHeld(uint32_t count)
+{
+    if (mListener == NULL) {
+        ARX_PRINT(ARX_ZONE_ERROR, "no listener registered!\n");
+        return INVALID_STATE;
+    }
+    return mManager->setMaxHeld(this, count);
+}
+
+arxstatus_t ARXFlatBufferMgrImpl::setPolicy(uint32_t policy)
+{
+    return mManager->setPolicy(policy);
+}
+
+arxstatus_t ARXFlatBufferMgrImpl::getStats(ARXBufferStats *stats)
+{
+    if (stats == NULL) {
+        return NULL_POINTER;
+    }
+    return mManager->getStats(stats);
 }
 
 arxstatus_t ARXFlatBufferMgrImpl::registerClient(ARXFlatBufferListener *listener)
 {
-    arxstatus_t status = mManager->registerClient(listener == NULL ? NULL : this);
+    arxstatus_t status = NOERROR;
+    if (listener != NULL) {
+        status = mManager->registerClient(this);
+    } else if (mListener != NULL) {
+        status = mManager->unregisterClient(this);
+    }
     this->mListener = listener;
     return status;
 }
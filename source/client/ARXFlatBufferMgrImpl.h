@@ -41,6 +41,9 @@ public:
     arxstatus_t bindGraph(DVP_KernelGraph_t *pGraph);
     arxstatus_t setCount(uint32_t count);
     uint32_t getCount();
+    arxstatus_t setMaxHeld(uint32_t count);
+    arxstatus_t setPolicy(uint32_t policy);
+    arxstatus_t getStats(ARXBufferStats *stats);
 
     //IBufferMgrClient interface
     void onBufferChanged(uint32_t index, uint64_t timestamp);
@@ -67,7 +67,7 @@ arxstatus_t ARXImageBufferMgrImpl::getBuffer(uint32_t index, sp<ARXImageBufferIm
             status = nativeBuf->import(mDvp);
             if (status != NOERROR) {
                 ARX_PRINT(ARX_ZONE_ERROR, "Failed to import buffer! returning to daemon (0x%x)\n", status);
-                mManager->release(index);
+                mManager->release(this, index);
             } else {
                 mBuffers[index] = new ARXImageBufferImpl(mID, index, this, nativeBuf);
             }
@@ -100,7 +100,29 @@ uint32_t ARXImageBufferMgrImpl::getCount()
 
 arxstatus_t ARXImageBufferMgrImpl::release(uint32_t index)
 {
-    return mManager->release(index);
+    return mManager->release(this, index);
+}
+
+arxstatus_t ARXImageBufferMgrImpl::setMaxHeld(uint32_t count)
+{
+    if (mListener == NULL) {
+        ARX_PRINT(ARX_ZONE_ERROR, "no listener registered!\n");
+        return INVALID_STATE;
+    }
+    return mManager->setMaxHeld(this, count);
+}
+
+arxstatus_t ARXImageBufferMgrImpl::setPolicy(uint32_t policy)
+{
+    return mManager->setPolicy(policy);
+}
+
+arxstatus_t ARXImageBufferMgrImpl::getStats(ARXBufferStats *stats)
+{
+    if (stats == NULL) {
+        return NULL_POINTER;
+    }
+    return mManager->getStats(stats);
 }
 
 void ARXImageBufferMgrImpl::onBufferChanged(uint32_t index, uint64_t timestamp)
@@ -140,7 +162,7 @@ arxstatus_t ARXImageBufferMgrImpl::render(uint64_t timestamp)
 
 arxstatus_t ARXImageBufferMgrImpl::render(uint32_t index)
 {
-    return mManager->render(index);
+    return mManager->render(this, index);
 }
 
 arxstatus_t ARXImageBufferMgrImpl::hold(bool enable)
@@ -150,7 +172,12 @@ arxstatus_t ARXImageBufferMgrImpl::hold(bool enable)
 
 arxstatus_t ARXImageBufferMgrImpl::registerClient(ARXImageBufferListener *listener)
 {
-    arxstatus_t status = mManager->registerClient(listener == NULL ? NULL : this);
+    arxstatus_t status = NOERROR;
+    if (listener != NULL) {
+        status = mManager->registerClient(this);
+    } else if (mListener != NULL) {
+        status = mManager->unregisterClient(this);
+    }
     if (status == NOERROR) {
         mListener = listener;
     }
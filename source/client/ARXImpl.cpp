@@ -28,7 +28,7 @@ using namespace android;
 namespace tiarx {
 
 ARXImpl::ARXImpl(ARXPropertyListener *listener, bool useDVP)
-    : mListener(listener)
+    : mListener(listener), mStarted(false)
 {
     if (useDVP) {
         mDvp = DVP_KernelGraph_Init();
@@ -64,8 +64,13 @@ void ARXImpl::destroy()
     mFlatBufMgrMap.clear();
     mImgBufMgrMap.clear();
     if (mDaemon != NULL) {
+        //Other clients may keep the engine running, only withdraw this one's start
+        if (mStarted) {
+            mDaemon->setProperty(PROP_ENGINE_STATE, ENGINE_STATE_STOP);
+            mStarted = false;
+        }
         mDaemon->asBinder()->unlinkToDeath(this);
-        mDaemon->disconnect();
+        mDaemon->disconnect(this);
         mDaemon.clear();
     }
     decStrong(this);
@@ -74,6 +79,7 @@ void ARXImpl::destroy()
 void ARXImpl::binderDied(const wp<IBinder>&)
 {
     mDaemon.clear();
+    mStarted = false;
     mListener->onPropertyChanged(PROP_ENGINE_STATE, ENGINE_STATE_DEAD);
 }
 
@@ -86,6 +92,18 @@ arxstatus_t ARXImpl::loadEngine(const char *modname)
 
 arxstatus_t ARXImpl::setProperty(uint32_t property, int32_t value)
 {
+    if (property == PROP_ENGINE_STATE) {
+        //The daemon counts the start requests, send each change once
+        bool start = value == ENGINE_STATE_START;
+        if (start == mStarted) {
+            return NOERROR;
+        }
+        arxstatus_t status = mDaemon->setProperty(property, value);
+        if (status == NOERROR) {
+            mStarted = start;
+        }
+        return status;
+    }
     return mDaemon->setProperty(property, value);
 }
 
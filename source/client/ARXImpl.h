@@ -70,6 +70,7 @@ protected:
     android::DefaultKeyedVector<uint32_t, android::sp<ARXImageBufferMgrImpl> > mImgBufMgrMap;
     DVP_Handle mDvp;
     bool mUseDVP;
+    bool mStarted;
 };
 
 }
@@ -19,6 +19,7 @@
 #include <arx/ARXStatus.h>
 #include <arx/ARXProperties.h>
 
+#include <binder/IPCThreadState.h>
 #include <ipc/IARXClient.h>
 #include <arx_debug.h>
 
@@ -26,58 +27,165 @@ using namespace android;
 
 namespace tiarx {
 
+ARXClientGroup::ARXClientGroup()
+{
+    mutex_init(&mLock);
+}
+
+ARXClientGroup::~ARXClientGroup()
+{
+    mClients.clear();
+    mutex_deinit(&mLock);
+}
+
+void ARXClientGroup::add(const sp<IARXClient>& client)
+{
+    SOSAL::AutoLock lock(&mLock);
+    mClients.add(client);
+}
+
+void ARXClientGroup::remove(const sp<IARXClient>& client)
+{
+    SOSAL::AutoLock lock(&mLock);
+    for (size_t i = 0; i < mClients.size(); i++) {
+        if (mClients[i]->asBinder() == client->asBinder()) {
+            mClients.removeAt(i);
+            break;
+        }
+    }
+}
+
+void ARXClientGroup::onPropertyChanged(uint32_t prop, int32_t value)
+{
+    //Called from the engine thread, the clients are notified outside the lock
+    mutex_lock(&mLock);
+    Vector<sp<IARXClient> > clients(mClients);
+    mutex_unlock(&mLock);
+
+    for (size_t i = 0; i < clients.size(); i++) {
+        clients[i]->onPropertyChanged(prop, value);
+    }
+}
+
 ARXDaemon::ARXDaemon() :
         mState(ENGINE_STATE_STOP),
         mModule(NULL),
         mFactory(NULL),
-        mEngine(NULL)
+        mEngine(NULL),
+        mStartCount(0)
 {
+    mClientGroup = new ARXClientGroup();
     mutex_init(&mLock);
 }
 
 ARXDaemon::~ARXDaemon()
 {
-    disconnect();
+    mutex_lock(&mLock);
+    while (mClients.size() > 0) {
+        mClients[0].client->asBinder()->unlinkToDeath(this);
+        removeClient(0);
+    }
+    unloadEngine(false);
+    mutex_unlock(&mLock);
     mutex_deinit(&mLock);
 }
 
-void ARXDaemon::binderDied(const wp<IBinder>&)
+void ARXDaemon::binderDied(const wp<IBinder>& who)
+{
+    SOSAL::AutoLock lock(&mLock);
+    ssize_t i = findClient(who.unsafe_get());
+    if (i < 0) {
+        return;
+    }
+    ARX_PRINT(ARX_ZONE_WARNING, "WARNING: client of pid %d died!\n", mClients[i].pid);
+    removeClient(i);
+    if (mClients.isEmpty()) {
+        unloadEngine();
+    }
+}
+
+ssize_t ARXDaemon::findClient(IBinder *binder)
 {
-    disconnect();
-    unloadEngine();
+    for (size_t i = 0; i < mClients.size(); i++) {
+        if (mClients[i].client->asBinder().get() == binder) {
+            return i;
+        }
+    }
+    return -1;
+}
+
+void ARXDaemon::removeClient(size_t i)
+{
+    pid_t pid = mClients[i].pid;
+    mClientGroup->remove(mClients[i].client);
+    mClients.removeAt(i);
+
+    for (size_t j = 0; j < mClients.size(); j++) {
+        if (mClients[j].pid == pid) {
+            return;
+        }
+    }
+
+    //The last client of this process is gone, so are its start requests
+    ssize_t idx = mStarts.indexOfKey(pid);
+    if (idx >= 0) {
+        mStartCount -= mStarts.valueAt(idx);
+        mStarts.removeItemsAt(idx);
+        if (mStartCount == 0 && mState == ENGINE_STATE_START) {
+            stopEngine();
+        }
+    }
 }
 
 arxstatus_t ARXDaemon::connect(const sp<IARXClient>& client)
 {
+    if (client == NULL) {
+        return NULL_POINTER;
+    }
+
     SOSAL::AutoLock lock(&mLock);
-    if (mClient == NULL) {
-        client->asBinder()->linkToDeath(this);
-        mClient = client;
+    if (findClient(client->asBinder().get()) >= 0) {
+        ARX_PRINT(ARX_ZONE_WARNING, "WARNING: client is already connected!\n");
         return NOERROR;
     }
+    if (mClients.size() == MAX_CLIENTS) {
+        ARX_PRINT(ARX_ZONE_WARNING, "WARNING: ARXDaemon already has %u clients!\n", MAX_CLIENTS);
+        return ALREADY_HAVE_CLIENT;
+    }
 
-    ARX_PRINT(ARX_ZONE_WARNING, "WARNING: ARXDaemon already has a client!\n");
-    return ALREADY_HAVE_CLIENT;
+    Client c;
+    c.client = client;
+    c.pid = IPCThreadState::self()->getCallingPid();
+    client->asBinder()->linkToDeath(this);
+    mClients.add(c);
+    mClientGroup->add(client);
+    ARX_PRINT(ARX_ZONE_DAEMON, "Connected client of pid %d, %u clients\n", c.pid, mClients.size());
+    return NOERROR;
 }
 
-void ARXDaemon::disconnect()
+void ARXDaemon::disconnect(const sp<IARXClient>& client)
 {
     SOSAL::AutoLock lock(&mLock);
-    if (mClient != NULL) {
-        mClient->asBinder()->unlinkToDeath(this);
-        mClient.clear();
+    if (client != NULL) {
+        ssize_t i = findClient(client->asBinder().get());
+        if (i >= 0) {
+            client->asBinder()->unlinkToDeath(this);
+            removeClient(i);
+        }
     }
 
     //TODO: Need a way to know when all Buffer Manager references
     //have been destroyed so the module can be unloaded
-    unloadEngine(false);
+    if (mClients.isEmpty()) {
+        unloadEngine(false);
+    }
 }
 
 arxstatus_t ARXDaemon::loadDefaultEngine()
 {
     if (mEngine == NULL) {
         //Try loading default engine
-        arxstatus_t status = loadEngine("arxengine");
+        arxstatus_t status = load("arxengine");
         if (status != NOERROR) {
             ARX_PRINT(ARX_ZONE_ERROR, "Failed to load default engine!\n");
             return status;
@@ -87,6 +195,22 @@ arxstatus_t ARXDaemon::loadDefaultEngine()
 }
 
 arxstatus_t ARXDaemon::loadEngine(const char *modname)
+{
+    SOSAL::AutoLock lock(&mLock);
+    if (mEngine != NULL && mClients.size() > 1) {
+        //Other clients use the engine, only joining it is allowed
+        if (mModuleName == modname) {
+            ARX_PRINT(ARX_ZONE_DAEMON, "Sharing the loaded %s engine\n", modname);
+            return NOERROR;
+        }
+        ARX_PRINT(ARX_ZONE_ERROR, "Cannot load %s, other clients use the %s engine!\n",
+                modname, mModuleName.string());
+        return INVALID_STATE;
+    }
+    return load(modname);
+}
+
+arxstatus_t ARXDaemon::load(const char *modname)
 {
     if (mModuleName == modname && mModule != NULL) {
         ARX_PRINT(ARX_ZONE_WARNING, "Module is already loaded!\n");
@@ -118,7 +242,7 @@ arxstatus_t ARXDaemon::loadEngine(const char *modname)
         return FAILED_CREATING_ENGINE;
     }
 
-    mEngine->SetClient(mClient);
+    mEngine->SetClient(mClientGroup);
     return NOERROR;
 }
 
@@ -130,6 +254,8 @@ arxstatus_t ARXDaemon::unloadEngine(bool unloadModule)
         delete mEngine;
         mEngine = NULL;
     }
+    mStarts.clear();
+    mStartCount = 0;
 
     if (mModule && unloadModule) {
         ARX_PRINT(ARX_ZONE_DAEMON, "Unloading current module "FMT_MODULE_T"!\n",
@@ -165,19 +291,48 @@ arxstatus_t ARXDaemon::stopEngine()
     return NOERROR;
 }
 
+arxstatus_t ARXDaemon::changeState(pid_t pid, int32_t value)
+{
+    //The engine runs while any client process wants it started
+    ssize_t idx = mStarts.indexOfKey(pid);
+    if (value == ENGINE_STATE_START) {
+        if (mState == ENGINE_STATE_STOP) {
+            arxstatus_t status = startEngine();
+            if (status != NOERROR) {
+                return status;
+            }
+        }
+        if (idx < 0) {
+            mStarts.add(pid, 1);
+        } else {
+            mStarts.editValueAt(idx)++;
+        }
+        mStartCount++;
+    } else if (value == ENGINE_STATE_STOP) {
+        if (idx < 0) {
+            ARX_PRINT(ARX_ZONE_WARNING, "WARNING: pid %d did not start the engine!\n", pid);
+            return NOERROR;
+        }
+        if (--mStarts.editValueAt(idx) == 0) {
+            mStarts.removeItemsAt(idx);
+        }
+        mStartCount--;
+        if (mStartCount == 0 && mState == ENGINE_STATE_START) {
+            stopEngine();
+        }
+    }
+    return NOERROR;
+}
+
 arxstatus_t ARXDaemon::setProperty(uint32_t property, int32_t value)
 {
+    SOSAL::AutoLock lock(&mLock);
     switch (property) {
         case PROP_ENGINE_STATE:
             ARX_PRINT(ARX_ZONE_DAEMON,
-                    "Current state is %d, requested state is %d\n",
-                    mState, value);
-            if (mState == ENGINE_STATE_STOP && value == ENGINE_STATE_START) {
-                startEngine();
-            } else if (mState == ENGINE_STATE_START && value == ENGINE_STATE_STOP) {
-                stopEngine();
-            }
-            break;
+                    "Current state is %d, requested state is %d, %u starts\n",
+                    mState, value, mStartCount);
+            return changeState(IPCThreadState::self()->getCallingPid(), value);
         default:
             arxstatus_t status = loadDefaultEngine();
             if (status != NOERROR) {
@@ -190,6 +345,7 @@ arxstatus_t ARXDaemon::setProperty(uint32_t property, int32_t value)
 
 arxstatus_t ARXDaemon::getProperty(uint32_t property, int32_t *value)
 {
+    SOSAL::AutoLock lock(&mLock);
     switch (property) {
         case PROP_ENGINE_STATE:
             *value = mState;
@@ -206,6 +362,7 @@ arxstatus_t ARXDaemon::getProperty(uint32_t property, int32_t *value)
 
 arxstatus_t ARXDaemon::getBufferMgr(uint32_t bufID, android::sp<IFlatBufferMgr>* mgr)
 {
+    SOSAL::AutoLock lock(&mLock);
     arxstatus_t status = loadDefaultEngine();
     if (status != NOERROR) {
         return status;
@@ -215,9 +372,10 @@ arxstatus_t ARXDaemon::getBufferMgr(uint32_t bufID, android::sp<IFlatBufferMgr>*
 
 arxstatus_t ARXDaemon::getBufferMgr(uint32_t bufID, android::sp<IImageBufferMgr>* mgr)
 {
+    SOSAL::AutoLock lock(&mLock);
     arxstatus_t status = loadDefaultEngine();
     if (status != NOERROR) {
-        return NOERROR;
+        return status;
     }
     return mEngine->GetBufferMgr(bufID, mgr);
 }
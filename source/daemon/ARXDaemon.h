@@ -19,22 +19,47 @@
 
 #include <binder/BinderService.h>
 #include <utils/KeyedVector.h>
+#include <utils/Vector.h>
 
 #include <ipc/IARXDaemon.h>
+#include <ipc/IARXClient.h>
 #include <engine/ARXEngine.h>
 #include <sosal/module.h>
+#include <sosal/mutex.h>
 
 namespace tiarx {
 
-class IARXClient;
 class ARXEngine;
 
+/*!
+ * \brief Forwards the engine property changes to every connected client
+ */
+class ARXClientGroup : public BnARXClient
+{
+public:
+    ARXClientGroup();
+    virtual ~ARXClientGroup();
+
+    void add(const android::sp<IARXClient>& client);
+    void remove(const android::sp<IARXClient>& client);
+
+    //IARXClient
+    virtual void onPropertyChanged(uint32_t prop, int32_t value);
+
+private:
+    android::Vector<android::sp<IARXClient> > mClients;
+    mutex_t mLock;
+};
+
 class ARXDaemon :
     public android::BinderService<ARXDaemon>,
     public BnARXDaemon,
     public android::IBinder::DeathRecipient
 {
 public:
+    /** Processes sharing the engine at once */
+    static const uint32_t MAX_CLIENTS = 8;
+
     ARXDaemon();
     virtual ~ARXDaemon();
 
@@ -42,11 +67,9 @@ public:
 
     //IARXDaemon
     virtual arxstatus_t connect(const android::sp<IARXClient> &client);
-    virtual void disconnect();
+    virtual void disconnect(const android::sp<IARXClient> &client);
 
-    virtual arxstatus_t loadDefaultEngine();
     virtual arxstatus_t loadEngine(const char *modname);
-    virtual arxstatus_t unloadEngine(bool unloadModule = true);
 
     virtual arxstatus_t getProperty(uint32_t prop, int32_t *value);
     virtual arxstatus_t setProperty(uint32_t prop, int32_t value);
@@ -57,15 +80,31 @@ public:
 protected:
     virtual void binderDied(const android::wp<android::IBinder>& who);
 
+    //These expect mLock to be held
+    arxstatus_t load(const char *modname);
+    arxstatus_t loadDefaultEngine();
+    arxstatus_t unloadEngine(bool unloadModule = true);
     arxstatus_t startEngine();
     arxstatus_t stopEngine();
+    ssize_t findClient(android::IBinder *binder);
+    void removeClient(size_t i);
+    arxstatus_t changeState(pid_t pid, int32_t value);
+
+    struct Client {
+        android::sp<IARXClient> client;
+        pid_t pid;
+    };
 
     int                     mState;
     android::String8        mModuleName;
     module_t                mModule;
     ARXEngineFactory_f      mFactory;
     ARXEngine               *mEngine;
-    android::sp<IARXClient> mClient;
+    android::Vector<Client> mClients;
+    android::sp<ARXClientGroup> mClientGroup;
+    /** Start requests not yet stopped, per client process */
+    android::KeyedVector<pid_t, uint32_t> mStarts;
+    uint32_t                mStartCount;
 
     mutex_t                 mLock;
 };
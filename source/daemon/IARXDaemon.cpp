@@ -43,10 +43,11 @@ public:
         return reply.readInt32();
     }
 
-    void disconnect()
+    void disconnect(const sp<IARXClient> &client)
     {
         Parcel data, reply;
         data.writeInterfaceToken(IARXDaemon::getInterfaceDescriptor());
+        data.writeStrongBinder(client != NULL ? client->asBinder() : NULL);
         remote()->transact(BnARXDaemon::DISCONNECT, data, &reply);
     }
 
@@ -128,7 +129,8 @@ status_t BnARXDaemon::onTransact(uint32_t code, const Parcel &data, Parcel *repl
         case DISCONNECT:
         {
             CHECK_INTERFACE(IARXDaemon, data, reply);
-            disconnect();
+            sp<IARXClient> client = interface_cast<IARXClient>(data.readStrongBinder());
+            disconnect(client);
             break;
         }
         case LOADENGINE:
@@ -0,0 +1,108 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include <engine/ARXBufferTuning.h>
+#include <arx_debug.h>
+
+#include <cutils/properties.h>
+#include <stdio.h>
+#include <string.h>
+
+using namespace android;
+
+namespace tiarx {
+
+ARXBufferTuning::ARXBufferTuning(const char *path)
+{
+    mPath = path;
+    char device[PROPERTY_VALUE_MAX];
+    property_get("ro.product.device", device, "unknown");
+    mDevice = device;
+}
+
+arxstatus_t ARXBufferTuning::load()
+{
+    mEntries.clear();
+    FILE *fp = fopen(mPath.string(), "r");
+    if (fp == NULL) {
+        ARX_PRINT(ARX_ZONE_ENGINE, "no buffer counts stored in %s\n", mPath.string());
+        return FAILED;
+    }
+
+    char line[160];
+    while (fgets(line, sizeof(line), fp) != NULL) {
+        char device[PROPERTY_VALUE_MAX];
+        char config[32];
+        Entry e;
+        if (sscanf(line, "%91s %u %31s %u", device, &e.bufId, config, &e.count) != 4) {
+            continue;
+        }
+        e.device = device;
+        e.config = config;
+        mEntries.add(e);
+    }
+    fclose(fp);
+    return NOERROR;
+}
+
+arxstatus_t ARXBufferTuning::save()
+{
+    FILE *fp = fopen(mPath.string(), "w");
+    if (fp == NULL) {
+        ARX_PRINT(ARX_ZONE_ERROR, "failed opening %s to store the buffer counts!\n", mPath.string());
+        return FAILED;
+    }
+    for (size_t i = 0; i < mEntries.size(); i++) {
+        const Entry& e = mEntries[i];
+        fprintf(fp, "%s %u %s %u\n", e.device.string(), e.bufId, e.config.string(), e.count);
+    }
+    fclose(fp);
+    return NOERROR;
+}
+
+int32_t ARXBufferTuning::find(uint32_t bufId, const char *config) const
+{
+    for (size_t i = 0; i < mEntries.size(); i++) {
+        const Entry& e = mEntries[i];
+        if (e.bufId == bufId && e.config == config && e.device == mDevice) {
+            return i;
+        }
+    }
+    return -1;
+}
+
+uint32_t ARXBufferTuning::get(uint32_t bufId, const char *config) const
+{
+    int32_t i = find(bufId, config);
+    return i >= 0 ? mEntries[i].count : 0;
+}
+
+void ARXBufferTuning::set(uint32_t bufId, const char *config, uint32_t count)
+{
+    int32_t i = find(bufId, config);
+    if (i >= 0) {
+        mEntries.editItemAt(i).count = count;
+        return;
+    }
+    Entry e;
+    e.device = mDevice;
+    e.bufId = bufId;
+    e.config = config;
+    e.count = count;
+    mEntries.add(e);
+}
+
+}
@@ -22,8 +22,10 @@
 #include <buffer/FlatBufferMgr.h>
 #include <buffer/ImageBuffer.h>
 #include <buffer/ImageBufferMgr.h>
+#include <utils/ARXLatency.h>
 #include <arx_debug.h>
 
+#include <cutils/atomic.h>
 #include <dvp/dvp_api.h>
 
 using namespace android;
@@ -37,7 +39,57 @@ namespace tiarx {
         break;\
     }
 
-ARXEngine::ARXEngine() : VisionEngine()
+//A NULL buffer only ends the loop for streams that wait for free buffers,
+//the others drop the frame when their consumers fall behind
+#define BREAK_LOOP_IFBLOCKED(mgr, b, message) \
+    if (b == NULL && mgr->policy() == BUFF_POLICY_BLOCK) {\
+        ARX_PRINT(ARX_ZONE_ERROR, (message)); \
+        status = NULL_POINTER;\
+        break;\
+    }
+
+static const char *sBufferTuningFile = "/data/misc/Parameters/BufferCounts.txt";
+
+static void streamConfig(const sp<ImageBufferMgr>& mgr, char *config, size_t len)
+{
+    snprintf(config, len, "%ux%u", mgr->width(), mgr->height());
+}
+
+static void streamConfig(const sp<FlatBufferMgr>& mgr, char *config, size_t len)
+{
+    snprintf(config, len, "%u", mgr->size());
+}
+
+template <class MGR>
+static void loadTunedCounts(const DefaultKeyedVector<uint32_t, sp<MGR> >& map, const ARXBufferTuning& tuning)
+{
+    char config[32];
+    for (size_t i = 0; i < map.size(); i++) {
+        const sp<MGR>& mgr = map.valueAt(i);
+        streamConfig(mgr, config, sizeof(config));
+        mgr->setTunedCount(tuning.get(mgr->id(), config));
+        mgr->startTuning();
+    }
+}
+
+template <class MGR>
+static void saveTunedCounts(const DefaultKeyedVector<uint32_t, sp<MGR> >& map, uint32_t stallTarget, ARXBufferTuning *tuning)
+{
+    char config[32];
+    for (size_t i = 0; i < map.size(); i++) {
+        const sp<MGR>& mgr = map.valueAt(i);
+        uint32_t count = mgr->tunedCount(stallTarget);
+        if (!mgr->enabled() || count == 0) {
+            continue;
+        }
+        streamConfig(mgr, config, sizeof(config));
+        ARX_PRINT(ARX_ZONE_ALWAYS, "mgr:%u %s uses %u buffers, tuned to %u\n", mgr->id(), config, mgr->getCount(), count);
+        tuning->set(mgr->id(), config, count);
+    }
+}
+
+ARXEngine::ARXEngine() : VisionEngine(), mTuning(sBufferTuningFile),
+        mCaptureStats("capture"), mComputeStats("compute")
 {
     ARX_PRINT(ARX_ZONE_API, "%s\n", __FUNCTION__);
 
@@ -68,6 +120,10 @@ ARXEngine::ARXEngine() : VisionEngine()
     sp<FlatBufferMgr> fdMgr = new FlatBufferMgr(BUFF_FACEDETECT, sizeof(ARXFaceDetectInfo), DVP_MTYPE_MPUCACHED_VIRTUAL_SHARED);
     sp<FlatBufferMgr> fdFiltMgr = new FlatBufferMgr(BUFF_FACEDETECT, sizeof(ARXFaceDetectInfo), DVP_MTYPE_MPUCACHED_VIRTUAL_SHARED);
 
+    //A slow face detect client must not hold back the camera and the engine
+    fdMgr->setPolicy(BUFF_POLICY_DROP_OLDEST);
+    fdFiltMgr->setPolicy(BUFF_POLICY_DROP_OLDEST);
+
     mImgBuffMgrMap.add(BUFF_CAMOUT, camOut);
     mImgBuffMgrMap.add(BUFF_CAMOUT2, secCamout);
     mFlatBuffMgrMap.add(BUFF_FACEDETECT, fdMgr);
@@ -77,6 +133,16 @@ ARXEngine::ARXEngine() : VisionEngine()
     mSecMirror = VCAM_MIRROR_NONE;
 
     mCam2ALockDelay = 0;
+
+    mAutotune = false;
+    mAutotuneFrames = 300;
+    mStallTarget = 10;
+
+    mProcessUsesPreview = false;
+    mPipelineDepth = 2;
+    mComputeRunning = false;
+    mComputeStatus = NOERROR;
+    mLatestOnly = false;
 }
 
 ARXEngine::~ARXEngine()
@@ -107,6 +173,107 @@ arxstatus_t ARXEngine::GetBufferMgr(uint32_t bufID, android::sp<IImageBufferMgr>
     return NOERROR;
 }
 
+void ARXEngine::loadTunedCounts()
+{
+    mTuning.load();
+    tiarx::loadTunedCounts(mImgBuffMgrMap, mTuning);
+    tiarx::loadTunedCounts(mFlatBuffMgrMap, mTuning);
+}
+
+void ARXEngine::saveTunedCounts()
+{
+    tiarx::saveTunedCounts(mImgBuffMgrMap, mStallTarget, &mTuning);
+    tiarx::saveTunedCounts(mFlatBuffMgrMap, mStallTarget, &mTuning);
+    mTuning.save();
+}
+
+arxstatus_t ARXEngine::startCompute()
+{
+    android_atomic_release_store(NOERROR, &mComputeStatus);
+    mCaptureStats.reset();
+    mComputeStats.reset();
+    mScheduler.reset();
+    if (mPipelineDepth == 0) {
+        return NOERROR;
+    }
+    mComputeQueue.setDepth(mPipelineDepth);
+    mComputeQueue.start();
+    if (pthread_create(&mComputeThread, NULL, computeThread, this) != 0) {
+        ARX_PRINT(ARX_ZONE_ERROR, "Failed to start the compute thread!\n");
+        return FAILED;
+    }
+    mComputeRunning = true;
+    return NOERROR;
+}
+
+void ARXEngine::stopCompute()
+{
+    if (mComputeRunning) {
+        mComputeQueue.stop();
+        pthread_join(mComputeThread, NULL);
+        mComputeRunning = false;
+    }
+    ARXFrame frame;
+    while (mComputeQueue.flush(&frame)) {
+        releaseFrame(frame);
+    }
+    mCaptureStats.print();
+    mComputeStats.print();
+    ARX_PRINT(ARX_ZONE_ALWAYS, "Process cost estimate:%uus\n", mScheduler.costUs());
+}
+
+void ARXEngine::releaseFrame(const ARXFrame& frame)
+{
+    if (frame.preview != NULL) {
+        frame.preview->release();
+    }
+    if (frame.video != NULL) {
+        frame.video->release();
+    }
+}
+
+arxstatus_t ARXEngine::computeFrame(const ARXFrame& frame, uint32_t depth)
+{
+    uint64_t start = arx_monotonic_ns();
+    //depth is the number of frames queued behind this one
+    if (!mScheduler.accept(frame, start, depth > 0)) {
+        ARX_PRINT(ARX_ZONE_ENGINE, "scheduler skipped frame %u\n", frame.seq);
+        releaseFrame(frame);
+        mComputeStats.skip();
+        return NOERROR;
+    }
+    arxstatus_t status = Process(frame.preview, frame.video);
+    uint64_t end = arx_monotonic_ns();
+    mScheduler.computed(end - start);
+    releaseFrame(frame);
+    mComputeStats.record(end - start, depth, end - frame.receivedTime);
+    return status;
+}
+
+void *ARXEngine::computeThread(void *arg)
+{
+    ARXEngine *engine = reinterpret_cast<ARXEngine *>(arg);
+    ARXFrame frame;
+    bool superseded = false;
+    ARX_PRINT(ARX_ZONE_ENGINE, "Compute thread is alive!\n");
+    while (engine->mScheduler.next(&engine->mComputeQueue, engine->mLatestOnly, &frame, &superseded)) {
+        if (superseded) {
+            ARX_PRINT(ARX_ZONE_ENGINE, "frame %u superseded by a newer frame\n", frame.seq);
+            releaseFrame(frame);
+            engine->mComputeStats.skip();
+            continue;
+        }
+        arxstatus_t status = engine->computeFrame(frame, engine->mComputeQueue.size());
+        if (status != NOERROR) {
+            ARX_PRINT(ARX_ZONE_ERROR, "Compute thread quitting due to error 0x%x\n", status);
+            android_atomic_release_store(status, &engine->mComputeStatus);
+            break;
+        }
+    }
+    ARX_PRINT(ARX_ZONE_ENGINE, "Compute thread is shutting down!\n");
+    return NULL;
+}
+
 arxstatus_t ARXEngine::Setup()
 {
     m_capFrames = 0;
@@ -277,7 +444,13 @@ status_e ARXEngine::Engine()
     arxstatus_t status = NOERROR;
     ARX_PRINT(ARX_ZONE_ENGINE, "+Engine()\n");
     Lock();
+    if (mAutotune) {
+        loadTunedCounts();
+    }
     status = Setup();
+    if (status == NOERROR) {
+        status = startCompute();
+    }
     if (status == NOERROR) {
         status = (StartCamera() == STATUS_SUCCESS) ? NOERROR : FAILED;
         if (status == NOERROR && mClient != NULL) {
@@ -288,6 +461,7 @@ status_e ARXEngine::Engine()
 
     if (status != NOERROR) {
         ARX_PRINT(ARX_ZONE_ERROR, "Failed setting up engine! 0x%x\n", status);
+        stopCompute();
         Teardown();
         return STATUS_FAILURE;
     }
@@ -302,24 +476,29 @@ status_e ARXEngine::Engine()
         BREAK_LOOP_IFNULL(previewBuf, "no preview buffer available!");
 
         ARX_PRINT(ARX_ZONE_ENGINE, "read buffer %u from preview Manager\n", previewBuf->index());
+        uint64_t captureStart = arx_monotonic_ns();
         VisionCamFrame *camFrame = previewBuf->getCamFrame();
 
         FlatBuffer *fdBuf;
         if (fdMgr->enabled()) {
             FlatBuffer *fdBuf = fdMgr->nextFree();
-            BREAK_LOOP_IFNULL(fdBuf, "no facedetect buffer available!");
-            ARX_PRINT(ARX_ZONE_ENGINE, "obtained free face detect buffer\n");
-            fdBuf->setTimestamp(camFrame->mTimestamp);
-            copyFaceDetect(fdBuf, camFrame->mFacesRaw, camFrame->mDetectedFacesNumRaw);
-            fdBuf->ready();
+            BREAK_LOOP_IFBLOCKED(fdMgr, fdBuf, "no facedetect buffer available!");
+            if (fdBuf != NULL) {
+                ARX_PRINT(ARX_ZONE_ENGINE, "obtained free face detect buffer\n");
+                fdBuf->setTimestamp(camFrame->mTimestamp);
+                copyFaceDetect(fdBuf, camFrame->mFacesRaw, camFrame->mDetectedFacesNumRaw);
+                fdBuf->ready();
+            }
         }
 
         if (fdFiltMgr->enabled()) {
             fdBuf = fdFiltMgr->nextFree();
-            BREAK_LOOP_IFNULL(fdBuf, "no facedetect filtered buffer available!");
-            fdBuf->setTimestamp(camFrame->mTimestamp);
-            copyFaceDetect(fdBuf, camFrame->mFaces, camFrame->mDetectedFacesNum);
-            fdBuf->ready();
+            BREAK_LOOP_IFBLOCKED(fdFiltMgr, fdBuf, "no facedetect filtered buffer available!");
+            if (fdBuf != NULL) {
+                fdBuf->setTimestamp(camFrame->mTimestamp);
+                copyFaceDetect(fdBuf, camFrame->mFaces, camFrame->mDetectedFacesNum);
+                fdBuf->ready();
+            }
         }
 
         ImageBuffer *videoBuf = NULL;
@@ -339,15 +518,43 @@ status_e ARXEngine::Engine()
             DelayedCamera2ALock();
         }
 
-        status = Process(previewBuf, videoBuf);
+        if (mAutotune && m_capFrames == mAutotuneFrames) {
+            saveTunedCounts();
+        }
+
+        ARXFrame frame;
+        frame.preview = previewBuf;
+        frame.video = videoBuf;
+        frame.timestamp = camFrame->mTimestamp;
+        frame.receivedTime = previewBuf->receivedTime();
+        frame.seq = m_capFrames;
+
+        if (!mComputeRunning) {
+            mCaptureStats.record(arx_monotonic_ns() - captureStart, 0, arx_monotonic_ns() - frame.receivedTime);
+            //The capture waits for the computations, no newer frame is ever queued
+            //for the deadline to prefer, only PROP_SCHED_EVERY_NTH skips frames
+            status = computeFrame(frame, 0);
+            continue;
+        }
 
-        previewBuf->release();
-        if (videoBuf != NULL) {
-            videoBuf->release();
+        //The camera gets the preview back without waiting for the computations
+        if (!mProcessUsesPreview) {
+            previewBuf->release();
+            frame.preview = NULL;
+        }
+        ARXFrame dropped;
+        if (mComputeQueue.push(frame, &dropped)) {
+            ARX_PRINT(ARX_ZONE_ENGINE, "compute stage is behind, dropped frame %u\n", dropped.seq);
+            releaseFrame(dropped);
+            mComputeStats.drop();
         }
+        uint64_t captureEnd = arx_monotonic_ns();
+        mCaptureStats.record(captureEnd - captureStart, 0, captureEnd - frame.receivedTime);
+        status = android_atomic_acquire_load(&mComputeStatus);
     }
 
     m_running = false_e;
+    stopCompute();
 
     if (status != NOERROR)
     {
@@ -459,6 +666,65 @@ arxstatus_t ARXEngine::SetProperty(uint32_t property, int32_t value)
             }
             break;
         }
+        case PROP_BUFFER_AUTOTUNE:
+        {
+            mAutotune = value != 0;
+            break;
+        }
+        case PROP_BUFFER_AUTOTUNE_FRAMES:
+        {
+            if (value <= 0) {
+                return INVALID_VALUE;
+            }
+            mAutotuneFrames = value;
+            break;
+        }
+        case PROP_BUFFER_STALL_TARGET:
+        {
+            if (value < 0 || value > 1000) {
+                return INVALID_VALUE;
+            }
+            mStallTarget = value;
+            break;
+        }
+        case PROP_PIPELINE_DEPTH:
+        {
+            if (value < 0 || value > (int32_t)ARXFrameQueue::MAX_DEPTH) {
+                return INVALID_VALUE;
+            }
+            mPipelineDepth = value;
+            break;
+        }
+        case PROP_SCHED_LATEST_ONLY:
+        {
+            //The deadline would never skip a frame, only the newest is computed
+            if (value != 0 && mScheduler.deadlineMs() != 0) {
+                ARX_PRINT(ARX_ZONE_ERROR, "Engine: clear PROP_SCHED_DEADLINE before PROP_SCHED_LATEST_ONLY!\n");
+                return INVALID_STATE;
+            }
+            mLatestOnly = value != 0;
+            break;
+        }
+        case PROP_SCHED_EVERY_NTH:
+        {
+            if (value <= 0) {
+                return INVALID_VALUE;
+            }
+            mScheduler.setEveryNth(value);
+            break;
+        }
+        case PROP_SCHED_DEADLINE:
+        {
+            if (value < 0 || value > 10000) {
+                return INVALID_VALUE;
+            }
+            if (value != 0 && mLatestOnly) {
+                ARX_PRINT(ARX_ZONE_ERROR, "Engine: clear PROP_SCHED_LATEST_ONLY before PROP_SCHED_DEADLINE!\n");
+                return INVALID_STATE;
+            }
+            mScheduler.setDeadlineMs(value);
+            break;
+        }
         default:
             return INVALID_PROPERTY;
     }
@@ -490,6 +756,72 @@ arxstatus_t ARXEngine::GetProperty(uint32_t property, int32_t *value)
             *value = mSecMirror;
             break;
         }
+        case PROP_BUFFER_AUTOTUNE:
+        {
+            *value = mAutotune;
+            break;
+        }
+        case PROP_BUFFER_AUTOTUNE_FRAMES:
+        {
+            *value = mAutotuneFrames;
+            break;
+        }
+        case PROP_BUFFER_STALL_TARGET:
+        {
+            *value = mStallTarget;
+            break;
+        }
+        case PROP_PIPELINE_DEPTH:
+        {
+            *value = mPipelineDepth;
+            break;
+        }
+        case PROP_SCHED_LATEST_ONLY:
+        {
+            *value = mLatestOnly;
+            break;
+        }
+        case PROP_SCHED_EVERY_NTH:
+        {
+            *value = mScheduler.everyNth();
+            break;
+        }
+        case PROP_SCHED_DEADLINE:
+        {
+            *value = mScheduler.deadlineMs();
+            break;
+        }
+        case PROP_SCHED_COST:
+        {
+            *value = mScheduler.costUs();
+            break;
+        }
+        case PROP_PIPELINE_CAPTURE_FPS:
+        {
+            ARXStageSummary s;
+            mCaptureStats.get(&s);
+            *value = s.fps;
+            break;
+        }
+        case PROP_PIPELINE_COMPUTE_FPS:
+        case PROP_PIPELINE_COMPUTE_BUSY:
+        case PROP_PIPELINE_COMPUTE_QUEUE:
+        case PROP_PIPELINE_DROPPED:
+        case PROP_PIPELINE_LATENCY:
+        case PROP_SCHED_SKIPPED:
+        {
+            ARXStageSummary s;
+            mComputeStats.get(&s);
+            switch (property) {
+                case PROP_PIPELINE_COMPUTE_FPS:   *value = s.fps; break;
+                case PROP_PIPELINE_COMPUTE_BUSY:  *value = s.busy; break;
+                case PROP_PIPELINE_COMPUTE_QUEUE: *value = s.depth; break;
+                case PROP_PIPELINE_DROPPED:       *value = s.dropped; break;
+                case PROP_SCHED_SKIPPED:          *value = s.skipped; break;
+                default:                          *value = s.latencyUs; break;
+            }
+            break;
+        }
         default:
             return INVALID_PROPERTY;
     }
@@ -0,0 +1,267 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include <engine/ARXPipeline.h>
+
+#include <utils/ARXLatency.h>
+#include <arx_debug.h>
+
+#include <string.h>
+
+namespace tiarx {
+
+ARXFrameQueue::ARXFrameQueue()
+{
+    mHead = 0;
+    mCount = 0;
+    mDepth = MAX_DEPTH;
+    mStopped = false;
+    pthread_mutex_init(&mLock, NULL);
+    pthread_cond_init(&mReady, NULL);
+}
+
+ARXFrameQueue::~ARXFrameQueue()
+{
+    pthread_cond_destroy(&mReady);
+    pthread_mutex_destroy(&mLock);
+}
+
+void ARXFrameQueue::setDepth(uint32_t depth)
+{
+    pthread_mutex_lock(&mLock);
+    mDepth = depth == 0 ? 1 : (depth > MAX_DEPTH ? MAX_DEPTH : depth);
+    pthread_mutex_unlock(&mLock);
+}
+
+void ARXFrameQueue::start()
+{
+    pthread_mutex_lock(&mLock);
+    mStopped = false;
+    pthread_mutex_unlock(&mLock);
+}
+
+void ARXFrameQueue::stop()
+{
+    pthread_mutex_lock(&mLock);
+    mStopped = true;
+    pthread_cond_broadcast(&mReady);
+    pthread_mutex_unlock(&mLock);
+}
+
+bool ARXFrameQueue::push(const ARXFrame& frame, ARXFrame *dropped)
+{
+    bool full = false;
+    pthread_mutex_lock(&mLock);
+    if (mCount >= mDepth) {
+        *dropped = mFrames[mHead];
+        mHead = (mHead + 1) % MAX_DEPTH;
+        mCount--;
+        full = true;
+    }
+    mFrames[(mHead + mCount) % MAX_DEPTH] = frame;
+    mCount++;
+    pthread_cond_signal(&mReady);
+    pthread_mutex_unlock(&mLock);
+    return full;
+}
+
+bool ARXFrameQueue::pop(ARXFrame *frame)
+{
+    pthread_mutex_lock(&mLock);
+    while (mCount == 0 && !mStopped) {
+        pthread_cond_wait(&mReady, &mLock);
+    }
+    bool ok = !mStopped;
+    if (ok) {
+        *frame = mFrames[mHead];
+        mHead = (mHead + 1) % MAX_DEPTH;
+        mCount--;
+    }
+    pthread_mutex_unlock(&mLock);
+    return ok;
+}
+
+bool ARXFrameQueue::flush(ARXFrame *frame)
+{
+    pthread_mutex_lock(&mLock);
+    bool ok = mCount > 0;
+    if (ok) {
+        *frame = mFrames[mHead];
+        mHead = (mHead + 1) % MAX_DEPTH;
+        mCount--;
+    }
+    pthread_mutex_unlock(&mLock);
+    return ok;
+}
+
+uint32_t ARXFrameQueue::size()
+{
+    pthread_mutex_lock(&mLock);
+    uint32_t count = mCount;
+    pthread_mutex_unlock(&mLock);
+    return count;
+}
+
+ARXStageStats::ARXStageStats(const char *name)
+{
+    mName = name;
+    pthread_mutex_init(&mLock, NULL);
+    reset();
+}
+
+ARXStageStats::~ARXStageStats()
+{
+    pthread_mutex_destroy(&mLock);
+}
+
+void ARXStageStats::reset()
+{
+    pthread_mutex_lock(&mLock);
+    mWindowStart = arx_monotonic_ns();
+    mFrames = 0;
+    mBusyNs = 0;
+    mDepthSum = 0;
+    mLatencySum = 0;
+    mMaxDepth = 0;
+    mMaxLatency = 0;
+    mTotalFrames = 0;
+    mTotalDropped = 0;
+    mTotalSkipped = 0;
+    memset(&mLast, 0, sizeof(mLast));
+    pthread_mutex_unlock(&mLock);
+}
+
+void ARXStageStats::record(uint64_t busyNs, uint32_t depth, uint64_t latencyNs)
+{
+    uint64_t now = arx_monotonic_ns();
+    pthread_mutex_lock(&mLock);
+    mFrames++;
+    mTotalFrames++;
+    mBusyNs += busyNs;
+    mDepthSum += depth;
+    mLatencySum += latencyNs;
+    if (depth > mMaxDepth) {
+        mMaxDepth = depth;
+    }
+    if (latencyNs > mMaxLatency) {
+        mMaxLatency = latencyNs;
+    }
+
+    uint64_t elapsed = now - mWindowStart;
+    if (elapsed >= WINDOW_NS) {
+        mLast.fps = (uint32_t)((uint64_t)mFrames*1000000000ULL/elapsed);
+        mLast.busy = (uint32_t)(mBusyNs*100/elapsed);
+        mLast.depth = (uint32_t)(mDepthSum*100/mFrames);
+        mLast.maxDepth = mMaxDepth;
+        mLast.latencyUs = (uint32_t)(mLatencySum/mFrames/1000);
+        mLast.maxLatencyUs = (uint32_t)(mMaxLatency/1000);
+        mWindowStart = now;
+        mFrames = 0;
+        mBusyNs = 0;
+        mDepthSum = 0;
+        mLatencySum = 0;
+        mMaxDepth = 0;
+        mMaxLatency = 0;
+    }
+    pthread_mutex_unlock(&mLock);
+}
+
+void ARXStageStats::drop()
+{
+    pthread_mutex_lock(&mLock);
+    mTotalDropped++;
+    pthread_mutex_unlock(&mLock);
+}
+
+void ARXStageStats::skip()
+{
+    pthread_mutex_lock(&mLock);
+    mTotalSkipped++;
+    pthread_mutex_unlock(&mLock);
+}
+
+void ARXStageStats::get(ARXStageSummary *summary)
+{
+    pthread_mutex_lock(&mLock);
+    *summary = mLast;
+    summary->frames = mTotalFrames;
+    summary->dropped = mTotalDropped;
+    summary->skipped = mTotalSkipped;
+    pthread_mutex_unlock(&mLock);
+}
+
+void ARXStageStats::print()
+{
+    ARXStageSummary s;
+    get(&s);
+    ARX_PRINT(ARX_ZONE_ALWAYS, "%s stage: frames:%u dropped:%u skipped:%u, last second fps:%u busy:%u%% depth:%u.%02u max:%u latency:%uus max:%uus\n",
+            mName, s.frames, s.dropped, s.skipped, s.fps, s.busy, s.depth/100, s.depth%100, s.maxDepth, s.latencyUs, s.maxLatencyUs);
+}
+
+ARXFrameScheduler::ARXFrameScheduler()
+{
+    mEveryNth = 1;
+    mDeadlineUs = 0;
+    mCostUs = 0;
+}
+
+void ARXFrameScheduler::reset()
+{
+    mCostUs = 0;
+}
+
+bool ARXFrameScheduler::accept(const ARXFrame& frame, uint64_t now, bool newerQueued)
+{
+    if (frame.seq % mEveryNth != 0) {
+        return false;
+    }
+    //Without a newer frame to compute instead, computing late beats not computing
+    return !newerQueued || !late(frame, now);
+}
+
+bool ARXFrameScheduler::next(ARXFrameQueue *queue, bool latestOnly, ARXFrame *frame, bool *superseded)
+{
+    if (!queue->pop(frame)) {
+        return false;
+    }
+    *superseded = queue->size() > 0 && (latestOnly || late(*frame, arx_monotonic_ns()));
+    return true;
+}
+
+bool ARXFrameScheduler::late(const ARXFrame& frame, uint64_t now)
+{
+    uint32_t deadline = mDeadlineUs;
+    uint32_t cost = mCostUs;
+    if (deadline == 0 || cost >= deadline) {
+        //Without a deadline, or when no frame can meet it
+        return false;
+    }
+    uint64_t age = (now - frame.receivedTime)/1000;
+    return age + cost > deadline;
+}
+
+void ARXFrameScheduler::computed(uint64_t costNs)
+{
+    uint32_t sample = (uint32_t)(costNs/1000);
+    uint32_t cost = mCostUs;
+    if (cost == 0) {
+        mCostUs = sample;
+    } else {
+        mCostUs = cost + ((int32_t)(sample - cost) >> COST_SHIFT);
+    }
+}
+
+}
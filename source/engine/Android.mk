@@ -18,7 +18,7 @@ include $(CLEAR_VARS)
 LOCAL_MODULE_TAGS := optional
 LOCAL_C_INCLUDES := $(ARX_INC) $(DVP_INC)
 LOCAL_CPPFLAGS := $(ARX_DEBUGGING) $(ARX_CPPFLAGS) $(DVP_FEATURES)
-LOCAL_SRC_FILES := ARXEngine.cpp
+LOCAL_SRC_FILES := ARXEngine.cpp ARXBufferTuning.cpp ARXPipeline.cpp
 LOCAL_WHOLE_STATIC_LIBRARIES := libVisionEngine
 LOCAL_MODULE := libarxengine_base
 include $(BUILD_STATIC_LIBRARY)
@@ -25,6 +25,7 @@
 #include <arx/ARXStatus.h>
 #include <arx/ARXProperties.h>
 #include <arx_debug.h>
+#include <utils/ARXLatency.h>
 
 
 #define ARX_12MP_CAMCALIBRATE 1
@@ -67,6 +68,8 @@ CameraPoseEngine::CameraPoseEngine() : ARXEngine()
     m_focusDepth = 30;
     mCam2ALockDelay = 30;
     mARTIBuffer = NULL;
+    //A pose is stale once a newer frame arrived
+    mLatestOnly = true;
 }
 
 CameraPoseEngine::~CameraPoseEngine()
@@ -303,7 +306,14 @@ arxstatus_t CameraPoseEngine::Process(ImageBuffer *, ImageBuffer *videoBuf)
 {
     const sp<FlatBufferMgr>& mgr = mFlatBuffMgrMap.valueFor(BUFF_CAMERA_POSE);
     FlatBuffer *buf = mgr->nextFree();
-    ARXCameraPoseMatrix *m = reinterpret_cast<ARXCameraPoseMatrix *>(buf->data());
+    if (buf == NULL && mgr->policy() == BUFF_POLICY_BLOCK) {
+        ARX_PRINT(ARX_ZONE_ERROR, "no pose buffer available!\n");
+        return NULL_POINTER;
+    }
+    //The stream dropped this frame, track it anyway so the next pose is not lost
+    ARXCameraPoseMatrix *m = buf != NULL ? reinterpret_cast<ARXCameraPoseMatrix *>(buf->data()) : &mDroppedPose;
+    m->frameReceivedTime = videoBuf->receivedTime();
+    m->processStartTime = arx_monotonic_ns();
 
     if (m_capFrames > mInitialDelay) {
         DVP_Image_t im;
@@ -366,8 +376,11 @@ arxstatus_t CameraPoseEngine::Process(ImageBuffer *, ImageBuffer *videoBuf)
             ImageDebug_Write(m_imgdbg, m_numImgDbg);
         }
     }
-    buf->setTimestamp(videoBuf->timestamp());
-    buf->ready();
+    m->processEndTime = arx_monotonic_ns();
+    if (buf != NULL) {
+        buf->setTimestamp(videoBuf->timestamp());
+        buf->ready();
+    }
     return NOERROR;
 }
 
@@ -61,6 +61,7 @@ private:
     bool mEnableGausFilter;
     uint32_t mInitialDelay;
     DVP_Perf_t mPerf;
+    ARXCameraPoseMatrix mDroppedPose;
 
     DVP_Image_t mImages[6];
     DVP_Buffer_t mBuffers[4];
@@ -37,6 +37,19 @@ ARXEngine *ARXEngineFactory()
     return new DVPARXEngine();
 }
 
+/*!
+ * Gives back an output obtained for a frame whose graph is skipped.
+ * @returns false if the output is missing from a stream waiting for free buffers
+ */
+static bool cancelOutput(const sp<ImageBufferMgr>& mgr, ImageBuffer *buf)
+{
+    if (buf != NULL) {
+        mgr->cancelFree(buf->index());
+        return true;
+    }
+    return mgr->policy() != BUFF_POLICY_BLOCK;
+}
+
 DVPARXEngine::DVPARXEngine() : ARXEngine()
 {
     ARX_PRINT(ARX_ZONE_API, "%s\n", __FUNCTION__);
@@ -117,6 +130,8 @@ arxstatus_t DVPARXEngine::Setup()
         camMgr->setEnable(true);
         fpartMgr->setCount(camMgr->getCount());
     }
+    //Facial parts detection reads the face detect results of the preview
+    mProcessUsesPreview = fpartMgr->enabled();
     mFacePose.init(camMgr->width(), camMgr->height(), mSecMirror);
 #endif
 
@@ -201,12 +216,64 @@ arxstatus_t DVPARXEngine::Process(ImageBuffer *previewBuf, ImageBuffer *videoBuf
     }
 
     const sp<ImageBufferMgr>& sobelMgr = mImgBuffMgrMap.valueFor(BUFF_SOBEL_3X3);
+    const sp<ImageBufferMgr>& cannyGradX = mImgBuffMgrMap.valueFor(BUFF_CANNY2D_GRADIENT_X);
+    const sp<ImageBufferMgr>& cannyGradY = mImgBuffMgrMap.valueFor(BUFF_CANNY2D_GRADIENT_Y);
+    const sp<ImageBufferMgr>& cannyGradMag = mImgBuffMgrMap.valueFor(BUFF_CANNY2D_GRADIENT_MAG);
+#if defined(DVP_USE_VLIB)
+    const sp<ImageBufferMgr>& harrisMgr = mImgBuffMgrMap.valueFor(BUFF_HARRIS_SCORE);
+    bool runGrad = cannyGradX->enabled() || cannyGradY->enabled() || cannyGradMag->enabled() || harrisMgr->enabled();
+#else
+    bool runGrad = cannyGradX->enabled() || cannyGradY->enabled() || cannyGradMag->enabled();
+#endif
+
+    //The graph sections run for all of their outputs or not at all, so every
+    //output is obtained before anything is configured
+    ImageBuffer *sobelBuf = NULL;
+    ImageBuffer *gradXBuf = NULL;
+    ImageBuffer *gradYBuf = NULL;
+    ImageBuffer *gradMagBuf = NULL;
+    bool missing = false;
     if (sobelMgr->enabled()) {
-        ImageBuffer *sobelBuf = sobelMgr->nextFree();
-        if (sobelBuf == NULL) {
-            ARX_PRINT(ARX_ZONE_ERROR, "Could not obtain an output buffer for sobel kernel!\n");
+        sobelBuf = sobelMgr->nextFree();
+        missing |= sobelBuf == NULL;
+    }
+    if (runGrad) {
+        gradXBuf = cannyGradX->nextFree();
+        gradYBuf = cannyGradY->nextFree();
+        gradMagBuf = cannyGradMag->nextFree();
+        missing |= gradXBuf == NULL || gradYBuf == NULL || gradMagBuf == NULL;
+    }
+#if defined(DVP_USE_VLIB)
+    ImageBuffer *harrisBuf = NULL;
+    if (harrisMgr->enabled()) {
+        harrisBuf = harrisMgr->nextFree();
+        missing |= harrisBuf == NULL;
+    }
+#endif
+
+    if (missing) {
+        bool dropped = true;
+        if (sobelMgr->enabled()) {
+            dropped = cancelOutput(sobelMgr, sobelBuf) && dropped;
+        }
+        if (runGrad) {
+            dropped = cancelOutput(cannyGradX, gradXBuf) && dropped;
+            dropped = cancelOutput(cannyGradY, gradYBuf) && dropped;
+            dropped = cancelOutput(cannyGradMag, gradMagBuf) && dropped;
+        }
+#if defined(DVP_USE_VLIB)
+        if (harrisMgr->enabled()) {
+            dropped = cancelOutput(harrisMgr, harrisBuf) && dropped;
+        }
+#endif
+        if (!dropped) {
+            ARX_PRINT(ARX_ZONE_ERROR, "Could not obtain output buffers for the DVP graph!\n");
             return NULL_POINTER;
         }
+        ARX_PRINT(ARX_ZONE_ENGINE, "DVP outputs dropped this frame, skipping the graph\n");
+    }
+
+    if (!missing && sobelBuf != NULL) {
         DVP_Transform_t *t = dvp_knode_to(&m_pNodes[node], DVP_Transform_t);
         videoBuf->copyInfo(&t->input, FOURCC_Y800);
         sobelBuf->copyInfo(&t->output, FOURCC_Y800);
@@ -217,25 +284,7 @@ arxstatus_t DVPARXEngine::Process(ImageBuffer *previewBuf, ImageBuffer *videoBuf
         node++;
     }
 
-    const sp<ImageBufferMgr>& cannyGradX = mImgBuffMgrMap.valueFor(BUFF_CANNY2D_GRADIENT_X);
-    const sp<ImageBufferMgr>& cannyGradY = mImgBuffMgrMap.valueFor(BUFF_CANNY2D_GRADIENT_Y);
-    const sp<ImageBufferMgr>& cannyGradMag = mImgBuffMgrMap.valueFor(BUFF_CANNY2D_GRADIENT_MAG);
-    ImageBuffer *gradXBuf = NULL;
-    ImageBuffer *gradYBuf = NULL;
-#if defined(DVP_USE_VLIB)
-    const sp<ImageBufferMgr>& harrisMgr = mImgBuffMgrMap.valueFor(BUFF_HARRIS_SCORE);
-    if (cannyGradX->enabled() || cannyGradY->enabled() || cannyGradMag->enabled() || harrisMgr->enabled()) {
-#else
-    if (cannyGradX->enabled() || cannyGradY->enabled() || cannyGradMag->enabled()) {
-#endif
-        gradXBuf = cannyGradX->nextFree();
-        gradYBuf = cannyGradY->nextFree();
-        ImageBuffer *gradMagBuf = cannyGradMag->nextFree();
-        if (gradXBuf == NULL || gradYBuf == NULL || gradMagBuf == NULL) {
-            ARX_PRINT(ARX_ZONE_ERROR, "Could not obtain output buffers for canny 2D kernel!\n");
-            return NULL_POINTER;
-        }
-
+    if (!missing && runGrad) {
         DVP_Canny2dGradient_t *canny = dvp_knode_to(&m_pNodes[node], DVP_Canny2dGradient_t);
         videoBuf->copyInfo(&canny->input, FOURCC_Y800);
         gradXBuf->copyInfo(&canny->outGradX);
@@ -253,13 +302,7 @@ arxstatus_t DVPARXEngine::Process(ImageBuffer *previewBuf, ImageBuffer *videoBuf
     }
 
 #if defined(DVP_USE_VLIB)
-    if (harrisMgr->enabled()) {
-        ImageBuffer *harrisBuf = harrisMgr->nextFree();
-        if (harrisBuf == NULL) {
-            ARX_PRINT(ARX_ZONE_ERROR, "Could not obtain output buffers for harris score!\n");
-            return NULL_POINTER;
-        }
-
+    if (!missing && harrisBuf != NULL) {
         DVP_HarrisDSP_t *harris = dvp_knode_to(&m_pNodes[node], DVP_HarrisDSP_t);
         harrisBuf->copyInfo(&harris->harrisScore);
         gradXBuf->copyInfo(&harris->inGradX);
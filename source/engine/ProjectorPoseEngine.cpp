@@ -26,8 +26,18 @@
 #include <arx/ARXProperties.h>
 #include <arx_debug.h>
 
+#include <time.h>
+
 namespace tiarx {
 
+static const char *sParamsFiles[PARAMS_NUM_FILES] = {
+    "/data/misc/Parameters/libartiParameters.txt",
+    "/data/misc/Parameters/galleryParameters.txt",
+    "/data/misc/Parameters/CameraCalibration.txt",
+    "/data/misc/Parameters/ProjectorCalibration.txt",
+    "/data/misc/Parameters/RelativeOrientationCamProj.txt",
+};
+
 ARXEngine *ARXEngineFactory() {
     return new ProjectorPoseEngine();
 }
@@ -41,6 +51,7 @@ ProjectorPoseEngine::ProjectorPoseEngine() :
     mARHandle = NULL;
     mReset = false;
     mInitialDelay = 35; //number of frames to wait until we start processing
+    mProcessedFrames = 0;
     m_imgdbg_enabled = false_e;
     if (m_imgdbg_enabled) {
         strcpy(m_imgdbg_path, PATH_DELIM"sdcard"PATH_DELIM"raw"PATH_DELIM);
@@ -52,13 +63,22 @@ ProjectorPoseEngine::ProjectorPoseEngine() :
     mCam2ALockDelay = 30;
     mARTIBuffer = NULL;
     mARTITempBuffer = NULL;
+    //A pose is stale once a newer frame arrived
+    mLatestOnly = true;
 
+    memset(&appGallery, 0, sizeof(appGallery));
     appGallery.projW = 854;
     appGallery.projH = 480;
+    appGallery.objScale = 1.0f;
+    appGalleryFile = appGallery;
 
-    mEnableFilter = true;
-    mAlpha1 = 0.95;
-    mAlpha2 = 0.25;
+    memset(&appLibarti, 0, sizeof(appLibarti));
+    appLibarti.enableFilter = 1;
+    appLibarti.alpha1 = 0.95;
+    appLibarti.alpha2 = 0.25;
+
+    memset(&appCalibration, 0, sizeof(appCalibration));
+    memset(mParamsStat, 0, sizeof(mParamsStat));
     mPrevARStatus = 0;
 }
 
@@ -250,25 +270,25 @@ arxstatus_t ProjectorPoseEngine::Setup() {
     uint32_t size = w * h;
 
     //Default 12MP Sony camera, overriden if there's a calibration file
-    cameraK[0] = 277.8069f;
-    cameraK[1] = 0.00f;
-    cameraK[2] = 161.273f;
-    cameraK[3] = 0.00f;
-    cameraK[4] = 278.9756f;
-    cameraK[5] = 119.5077f;
-    cameraK[6] = 0.00f;
-    cameraK[7] = 0.00f;
-    cameraK[8] = 1.0f;
-
-    loadCalibration();
-    loadGalleryParams();
+    float *camK = appCalibration.cameraK;
+    camK[0] = 277.8069f;
+    camK[1] = 0.00f;
+    camK[2] = 161.273f;
+    camK[3] = 0.00f;
+    camK[4] = 278.9756f;
+    camK[5] = 119.5077f;
+    camK[6] = 0.00f;
+    camK[7] = 0.00f;
+    camK[8] = 1.0f;
+
+    // Remember the files as read, they are reloaded when they change
+    paramsChanged();
+    loadCalibration(&appCalibration);
+    loadGalleryParams(&appGalleryFile);
+    appGallery = appGalleryFile;
 
     projectorFrameCounter = 0;
-    projector_w = appGallery.projW;
-    projector_h = appGallery.projH;
-
-    projectorK[2] = projectorK[2] - 0.5 * projector_w;
-    projectorK[5] = projectorK[5] - 0.5 * projector_h;
+    applyCalibration();
 
     mARHandle = AR_open();
     if (mARHandle == NULL) {
@@ -276,7 +296,9 @@ arxstatus_t ProjectorPoseEngine::Setup() {
         return NOMEMORY;
     }
 
-    loadARParams();
+    if (loadARParams(&appLibarti) == NOERROR) {
+        applyARParams(&appLibarti, NULL);
+    }
 
     int bufSize = 0;
     AR_initialize(mARHandle, camMgr->width(), camMgr->height(), cameraK, &bufSize);
@@ -340,7 +362,12 @@ arxstatus_t ProjectorPoseEngine::Setup() {
 arxstatus_t ProjectorPoseEngine::Process(ImageBuffer *, ImageBuffer *videoBuf) {
     const sp<FlatBufferMgr>& mgr = mFlatBuffMgrMap.valueFor(BUFF_PROJECTOR_POSE);
     FlatBuffer *buf = mgr->nextFree();
-    ARXProjectorPose *m = reinterpret_cast<ARXProjectorPose *>(buf->data());
+    if (buf == NULL && mgr->policy() == BUFF_POLICY_BLOCK) {
+        ARX_PRINT(ARX_ZONE_ERROR, "no pose buffer available!\n");
+        return NULL_POINTER;
+    }
+    //The stream dropped this frame, track it anyway so the next pose is not lost
+    ARXProjectorPose *m = buf != NULL ? reinterpret_cast<ARXProjectorPose *>(buf->data()) : &mDroppedPose;
 
     m->pointerX = 0.0f;
     m->pointerY = 0.0f;
@@ -356,6 +383,14 @@ arxstatus_t ProjectorPoseEngine::Process(ImageBuffer *, ImageBuffer *videoBuf) {
             pSrc += im.y_stride;
         }
 
+        //Captured frames may be skipped by the compute stage, count the processed ones
+        if ((++mProcessedFrames % PARAMS_CHECK_INTERVAL) == 0) {
+            uint32_t changed = paramsChanged();
+            if (changed) {
+                reloadParams(changed);
+            }
+        }
+
         if (mReset) {
             if (m_imgdbg_enabled) {
                 ImageDebug_Close(m_imgdbg, m_numImgDbg);
@@ -390,8 +425,10 @@ arxstatus_t ProjectorPoseEngine::Process(ImageBuffer *, ImageBuffer *videoBuf) {
             ImageDebug_Write(m_imgdbg, m_numImgDbg);
         }
     }
-    buf->setTimestamp(videoBuf->timestamp());
-    buf->ready();
+    if (buf != NULL) {
+        buf->setTimestamp(videoBuf->timestamp());
+        buf->ready();
+    }
     return NOERROR;
 }
 
@@ -413,9 +450,9 @@ arxstatus_t ProjectorPoseEngine::computeProjectorPose(ARXProjectorPose *buf) {
     // Weighted update for Bproj
     float alpha;
     if (buf->status == TRACKING_AND_MOVING) {
-        alpha = mAlpha1;
+        alpha = appLibarti.alpha1;
     } else {
-        alpha = mAlpha2;
+        alpha = appLibarti.alpha2;
     }
 
     if (projectorFrameCounter <= BWFILTER_NZEROS) {
@@ -423,7 +460,7 @@ arxstatus_t ProjectorPoseEngine::computeProjectorPose(ARXProjectorPose *buf) {
             xv[i][projectorFrameCounter] = proj_pose[i] / BWFILTER_GAIN;
             yv[i][projectorFrameCounter] = proj_pose[i];
         }
-    } else if (mEnableFilter) {
+    } else if (appLibarti.enableFilter) {
         butterworthFilter(proj_pose);
     }
 
@@ -534,11 +571,11 @@ arxstatus_t ProjectorPoseEngine::GetProperty(uint32_t property, int32_t *value)
     return NOERROR;
 }
 
-arxstatus_t ProjectorPoseEngine::loadARParams() {
+arxstatus_t ProjectorPoseEngine::loadARParams(App_libartiParams *params) {
     char input[100];
     unsigned int value;
     float fvalue;
-    FILE *fp = fopen("/data/misc/Parameters/libartiParameters.txt", "r");
+    FILE *fp = fopen(sParamsFiles[PARAMS_LIBARTI], "r");
 
     if (fp == NULL) {
         ARX_PRINT(ARX_ZONE_WARNING, "ProjectorPoseEngine: failed opening libarti parameter file");
@@ -550,102 +587,132 @@ arxstatus_t ProjectorPoseEngine::loadARParams() {
 
         if (strcmp(input, "-harrisThreshold") == 0) {
             fscanf(fp, "%d", &value);
-            mHarrisThreshold = (unsigned int) value;
+            params->harrisThreshold = (unsigned int) value;
         }
         if (strcmp(input, "-harrisSensitivity") == 0) {
             fscanf(fp, "%f", &fvalue);
             // converting value to SQ0.15
-            mHarrisSensitivity = (short) (fvalue * 32767);
+            params->harrisSensitivity = (short) (fvalue * 32767);
         }
         if (strcmp(input, "-nonmaxWindowSize") == 0) {
             fscanf(fp, "%d", &value);
-            mNonmaxWindowSize = (short) value;
+            params->nonmaxWindowSize = (short) value;
         }
         if (strcmp(input, "-featureMatchRadius") == 0) {
             fscanf(fp, "%d", &value);
-            mFeatureMatchRadius = (int) value;
+            params->featureMatchRadius = (int) value;
         }
         if (strcmp(input, "-featureMatchInlierRatio1") == 0) {
             fscanf(fp, "%f", &fvalue);
-            mFeatureMatchInlierRatio1 = (float) fvalue;
+            params->featureMatchInlierRatio1 = (float) fvalue;
         }
         if (strcmp(input, "-featureMatchInlierRatio2") == 0) {
             fscanf(fp, "%f", &fvalue);
-            mFeatureMatchInlierRatio2 = (float) fvalue;
+            params->featureMatchInlierRatio2 = (float) fvalue;
         }
         if (strcmp(input, "-featuresMinimum") == 0) {
             fscanf(fp, "%d", &value);
-            mFeaturesMinimum = (int) value;
+            params->featureMinimum = (int) value;
         }
         if (strcmp(input, "-extendWorkspace") == 0) {
             fscanf(fp, "%d", &value);
-            mExtendWorkspace = (int) value;
+            params->extendWorkspace = (int) value;
         }
         if (strcmp(input, "-projectorYCoord") == 0) {
             fscanf(fp, "%d", &value);
-            appLibarti.projectorYCoord = (int) value;
+            params->projectorYCoord = (int) value;
         }
         if (strcmp(input, "-enableFilter") == 0) {
             fscanf(fp, "%d", &value);
             ARX_PRINT(ARX_ZONE_ALWAYS, "ProjectorPoseEngine: enableFilter:%d", value);
-            mEnableFilter = (value != 0);
+            params->enableFilter = (value != 0);
         }
         if (strcmp(input, "-alpha1") == 0) {
             fscanf(fp, "%f", &fvalue);
-            mAlpha1 = fvalue;
+            params->alpha1 = fvalue;
         }
         if (strcmp(input, "-alpha2") == 0) {
             fscanf(fp, "%f", &fvalue);
-            mAlpha2 = fvalue;
+            params->alpha2 = fvalue;
         }
         if (strcmp(input, "//") == 0) {
             fscanf(fp, "%[\n]");
         }
 
     }
+    fclose(fp);
 
-    ARX_PRINT(ARX_ZONE_ALWAYS, "ProjectorPoseEngine: mHarrisThreshold:%u", mHarrisThreshold);
-    ARX_PRINT(ARX_ZONE_ALWAYS, "ProjectorPoseEngine: mHarrisSensitivity:%d", mHarrisSensitivity);
-    ARX_PRINT(ARX_ZONE_ALWAYS, "ProjectorPoseEngine: mNonmaxWindowSize:%d", mNonmaxWindowSize);
-    ARX_PRINT(ARX_ZONE_ALWAYS, "ProjectorPoseEngine: mFeatureMatchRadius:%d", mFeatureMatchRadius);
-    ARX_PRINT(ARX_ZONE_ALWAYS, "ProjectorPoseEngine: mFeatureMatchInlierRatio1:%f",
-            mFeatureMatchInlierRatio1);
-    ARX_PRINT(ARX_ZONE_ALWAYS, "ProjectorPoseEngine: mFeatureMatchInlierRatio2:%f",
-            mFeatureMatchInlierRatio2);
-    ARX_PRINT(ARX_ZONE_ALWAYS, "ProjectorPoseEngine: mFeaturesMinimum:%d", mFeaturesMinimum);
-    ARX_PRINT(ARX_ZONE_ALWAYS, "ProjectorPoseEngine: mExtendWorkspace:%d", mExtendWorkspace);
-    ARX_PRINT(ARX_ZONE_ALWAYS, "ProjectorPoseEngine: mEnableFilter:%d", mEnableFilter);
-    ARX_PRINT(ARX_ZONE_ALWAYS, "ProjectorPoseEngine: mAlpha1:%f", mAlpha1);
-    ARX_PRINT(ARX_ZONE_ALWAYS, "ProjectorPoseEngine: mAlpha2:%f", mAlpha2);
-
-    AR_setParameter(mARHandle, LIBARTI_HARRIS_CORNER_THRESHOLD, (void *) &mHarrisThreshold,
-            AR_TYPE_U32);
-    AR_setParameter(mARHandle, LIBARTI_HARRIS_SENSITIVITY, (void *) &mHarrisSensitivity,
-            AR_TYPE_S16);
-    AR_setParameter(mARHandle, LIBARTI_NONMAX_WINDOWSIZE, (void *) &mNonmaxWindowSize, AR_TYPE_S16);
-    AR_setParameter(mARHandle, LIBARTI_FEATUREMATCH_RADIUS, (void *) &mFeatureMatchRadius,
-            AR_TYPE_S32);
-    AR_setParameter(mARHandle, LIBARTI_FEATUREMATCH_INLIER_RATIO_1,
-            (void *) &mFeatureMatchInlierRatio1, AR_TYPE_F32);
-    AR_setParameter(mARHandle, LIBARTI_FEATUREMATCH_INLIER_RATIO_2,
-            (void *) &mFeatureMatchInlierRatio2, AR_TYPE_F32);
-    AR_setParameter(mARHandle, LIBARTI_FEATURES_MINIMUM, (void *) &mFeaturesMinimum, AR_TYPE_S32);
-    AR_setParameter(mARHandle, LIBARTI_MODE_EXTENDWORKSPACE, (void *) &mExtendWorkspace,
-            AR_TYPE_S32);
-    AR_setParameter(mARHandle, LIBARTI_SET_PROJECTOR_YCOORD, (void *) &appLibarti.projectorYCoord,
-            AR_TYPE_S32);
+    ARX_PRINT(ARX_ZONE_ALWAYS, "ProjectorPoseEngine: harrisThreshold:%u", params->harrisThreshold);
+    ARX_PRINT(ARX_ZONE_ALWAYS, "ProjectorPoseEngine: harrisSensitivity:%d", params->harrisSensitivity);
+    ARX_PRINT(ARX_ZONE_ALWAYS, "ProjectorPoseEngine: nonmaxWindowSize:%d", params->nonmaxWindowSize);
+    ARX_PRINT(ARX_ZONE_ALWAYS, "ProjectorPoseEngine: featureMatchRadius:%d", params->featureMatchRadius);
+    ARX_PRINT(ARX_ZONE_ALWAYS, "ProjectorPoseEngine: featureMatchInlierRatio1:%f",
+            params->featureMatchInlierRatio1);
+    ARX_PRINT(ARX_ZONE_ALWAYS, "ProjectorPoseEngine: featureMatchInlierRatio2:%f",
+            params->featureMatchInlierRatio2);
+    ARX_PRINT(ARX_ZONE_ALWAYS, "ProjectorPoseEngine: featuresMinimum:%d", params->featureMinimum);
+    ARX_PRINT(ARX_ZONE_ALWAYS, "ProjectorPoseEngine: extendWorkspace:%d", params->extendWorkspace);
+    ARX_PRINT(ARX_ZONE_ALWAYS, "ProjectorPoseEngine: enableFilter:%d", params->enableFilter);
+    ARX_PRINT(ARX_ZONE_ALWAYS, "ProjectorPoseEngine: alpha1:%f", params->alpha1);
+    ARX_PRINT(ARX_ZONE_ALWAYS, "ProjectorPoseEngine: alpha2:%f", params->alpha2);
 
-    fclose(fp);
     return NOERROR;
 }
 
-arxstatus_t ProjectorPoseEngine::loadGalleryParams() {
+/**
+ * Passes the tracker parameters to LIBARTI, only the ones different from
+ * prev if given. The pose filter settings are read directly from
+ * appLibarti while processing.
+ */
+void ProjectorPoseEngine::applyARParams(const App_libartiParams *params,
+        const App_libartiParams *prev) {
+    App_libartiParams p = *params;
+
+    if (!prev || p.harrisThreshold != prev->harrisThreshold) {
+        AR_setParameter(mARHandle, LIBARTI_HARRIS_CORNER_THRESHOLD, (void *) &p.harrisThreshold,
+                AR_TYPE_U32);
+    }
+    if (!prev || p.harrisSensitivity != prev->harrisSensitivity) {
+        AR_setParameter(mARHandle, LIBARTI_HARRIS_SENSITIVITY, (void *) &p.harrisSensitivity,
+                AR_TYPE_S16);
+    }
+    if (!prev || p.nonmaxWindowSize != prev->nonmaxWindowSize) {
+        AR_setParameter(mARHandle, LIBARTI_NONMAX_WINDOWSIZE, (void *) &p.nonmaxWindowSize,
+                AR_TYPE_S16);
+    }
+    if (!prev || p.featureMatchRadius != prev->featureMatchRadius) {
+        AR_setParameter(mARHandle, LIBARTI_FEATUREMATCH_RADIUS, (void *) &p.featureMatchRadius,
+                AR_TYPE_S32);
+    }
+    if (!prev || p.featureMatchInlierRatio1 != prev->featureMatchInlierRatio1) {
+        AR_setParameter(mARHandle, LIBARTI_FEATUREMATCH_INLIER_RATIO_1,
+                (void *) &p.featureMatchInlierRatio1, AR_TYPE_F32);
+    }
+    if (!prev || p.featureMatchInlierRatio2 != prev->featureMatchInlierRatio2) {
+        AR_setParameter(mARHandle, LIBARTI_FEATUREMATCH_INLIER_RATIO_2,
+                (void *) &p.featureMatchInlierRatio2, AR_TYPE_F32);
+    }
+    if (!prev || p.featureMinimum != prev->featureMinimum) {
+        AR_setParameter(mARHandle, LIBARTI_FEATURES_MINIMUM, (void *) &p.featureMinimum,
+                AR_TYPE_S32);
+    }
+    if (!prev || p.extendWorkspace != prev->extendWorkspace) {
+        AR_setParameter(mARHandle, LIBARTI_MODE_EXTENDWORKSPACE, (void *) &p.extendWorkspace,
+                AR_TYPE_S32);
+    }
+    if (!prev || p.projectorYCoord != prev->projectorYCoord) {
+        AR_setParameter(mARHandle, LIBARTI_SET_PROJECTOR_YCOORD, (void *) &p.projectorYCoord,
+                AR_TYPE_S32);
+    }
+}
+
+arxstatus_t ProjectorPoseEngine::loadGalleryParams(App_galleryParams *params) {
 
     char input[100];
     unsigned int value;
     float fvalue;
 
-    FILE *fp = fopen("/data/misc/Parameters/galleryParameters.txt", "r");
+    FILE *fp = fopen(sParamsFiles[PARAMS_GALLERY], "r");
     if (fp == NULL) {
         ARX_PRINT(ARX_ZONE_WARNING, "ProjectorPoseEngine: failed opening gallery parameter file");
         return FAILED;
@@ -656,32 +723,32 @@ arxstatus_t ProjectorPoseEngine::loadGalleryParams() {
 
         if (strcmp(input, "-projW") == 0) {
             fscanf(fp, "%d", &value);
-            appGallery.projW = (int) value;
+            params->projW = (int) value;
         }
         if (strcmp(input, "-projH") == 0) {
             fscanf(fp, "%d", &value);
-            appGallery.projH = (int) value;
+            params->projH = (int) value;
         }
         if (strcmp(input, "-objX") == 0) {
             fscanf(fp, "%f", &fvalue);
-            appGallery.objX = (float) fvalue;
+            params->objX = (float) fvalue;
         }
         if (strcmp(input, "-objY") == 0) {
             fscanf(fp, "%f", &fvalue);
-            appGallery.objY = (float) fvalue;
+            params->objY = (float) fvalue;
         }
         if (strcmp(input, "-objZ") == 0) {
             fscanf(fp, "%f", &fvalue);
-            appGallery.objZ = (float) fvalue;
+            params->objZ = (float) fvalue;
         }
         if (strcmp(input, "-objScale") == 0) {
             fscanf(fp, "%f", &fvalue);
-            appGallery.objScale = (float) fvalue;
+            params->objScale = (float) fvalue;
         }
         if (strcmp(input, "-projectorDisplacement") == 0) {
             fscanf(fp, "%f", &fvalue);
-            appGallery.projectorDisplacement = (float) fvalue;
-            ARX_PRINT(ARX_ZONE_ALWAYS, "projectorDisplacement:%f", appGallery.projectorDisplacement);
+            params->projectorDisplacement = (float) fvalue;
+            ARX_PRINT(ARX_ZONE_ALWAYS, "projectorDisplacement:%f", params->projectorDisplacement);
         }
         if (strcmp(input, "//") == 0) {
             fscanf(fp, "%[\n]");
@@ -691,13 +758,18 @@ arxstatus_t ProjectorPoseEngine::loadGalleryParams() {
     return NOERROR;
 }
 
-arxstatus_t ProjectorPoseEngine::loadCalibration() {
-    FILE *fp = fopen("/data/misc/Parameters/CameraCalibration.txt", "r");
+/**
+ * Reads the calibration files into params. Stops at the first missing file,
+ * leaving the values it holds unchanged, and returns FAILED.
+ */
+arxstatus_t ProjectorPoseEngine::loadCalibration(App_calibrationParams *params) {
+    FILE *fp = fopen(sParamsFiles[PARAMS_CAMERA_CALIBRATION], "r");
     if (fp == NULL) {
         ARX_PRINT(ARX_ZONE_WARNING, "ProjectorPoseEngine: failed opening camera calibration file");
         return FAILED;
     }
     // Read in calibration data from file: Camera intrinsics
+    float *cameraK = params->cameraK;
     for (int i = 0; i < 9; i++) {
         fscanf(fp, "%f", &cameraK[i]);
     }
@@ -705,12 +777,13 @@ arxstatus_t ProjectorPoseEngine::loadCalibration() {
     ARX_PRINT(ARX_ZONE_ALWAYS, "cameraK [%1.2f %1.2f %1.2f %1.2f %1.2f %1.2f %1.2f %1.2f %1.2f]",
             cameraK[0], cameraK[1], cameraK[2], cameraK[3], cameraK[4], cameraK[5], cameraK[6], cameraK[7], cameraK[8]);
     // Read in calibration data from file: Projector intrinsics
-    fp = fopen("/data/misc/Parameters/ProjectorCalibration.txt", "r");
+    fp = fopen(sParamsFiles[PARAMS_PROJECTOR_CALIBRATION], "r");
     if (fp == NULL) {
         ARX_PRINT(ARX_ZONE_WARNING,
                 "ProjectorPoseEngine: failed opening projector calibration file");
         return FAILED;
     }
+    float *projectorK = params->projectorK;
     for (int i = 0; i < 9; i++) {
         fscanf(fp, "%f", &projectorK[i]);
     }
@@ -723,13 +796,14 @@ arxstatus_t ProjectorPoseEngine::loadCalibration() {
     //[R11 R12 R13 Tx]
     //[R21 R22 R23 Ty]
     //[R31 R32 R33 Tz]
-    fp = fopen("/data/misc/Parameters/RelativeOrientationCamProj.txt", "r");
+    fp = fopen(sParamsFiles[PARAMS_RELATIVE_ORIENTATION], "r");
     if (fp == NULL) {
         ARX_PRINT(ARX_ZONE_WARNING,
                 "ProjectorPoseEngine: failed opening relative orientation calibration file");
         return FAILED;
     }
 
+    float *relCamProj = params->relCamProj;
     for (int i = 0; i < 12; i++) {
         fscanf(fp, "%f", &relCamProj[i]);
     }
@@ -742,4 +816,109 @@ arxstatus_t ProjectorPoseEngine::loadCalibration() {
     return NOERROR;
 }
 
+/**
+ * Derives the intrinsics and projector size used while processing from
+ * appCalibration and appGallery.
+ */
+void ProjectorPoseEngine::applyCalibration() {
+    memcpy(cameraK, appCalibration.cameraK, sizeof(cameraK));
+    memcpy(relCamProj, appCalibration.relCamProj, sizeof(relCamProj));
+    memcpy(projectorK, appCalibration.projectorK, sizeof(projectorK));
+
+    projector_w = appGallery.projW;
+    projector_h = appGallery.projH;
+
+    projectorK[2] = projectorK[2] - 0.5 * projector_w;
+    projectorK[5] = projectorK[5] - 0.5 * projector_h;
+}
+
+/**
+ * @return a bit per PARAMS_ file written, created or removed since the
+ * last call.
+ */
+uint32_t ProjectorPoseEngine::paramsChanged() {
+    uint32_t changed = 0;
+    time_t now = time(NULL);
+    for (int i = 0; i < PARAMS_NUM_FILES; i++) {
+        struct stat st;
+        if (stat(sParamsFiles[i], &st) != 0) {
+            memset(&st, 0, sizeof(st));
+        }
+        struct stat *prev = &mParamsStat[i];
+        if (st.st_mtime != prev->st_mtime || st.st_size != prev->st_size ||
+                st.st_ino != prev->st_ino) {
+            changed |= (1 << i);
+        }
+        *prev = st;
+        if (st.st_mtime >= now) {
+            // Written this second, it may be written again without its
+            // modification time changing: compare it again next time
+            prev->st_mtime = 0;
+        }
+    }
+    return changed;
+}
+
+/**
+ * Reads the changed parameter files again while processing, and applies
+ * what changed without tearing the engine down. Files that fail to load
+ * are ignored, keeping the previous values.
+ */
+void ProjectorPoseEngine::reloadParams(uint32_t changed) {
+    ARX_PRINT(ARX_ZONE_ALWAYS, "ProjectorPoseEngine: parameter files changed 0x%x", changed);
+    bool projectorChanged = false;
+
+    if (changed & (1 << PARAMS_LIBARTI)) {
+        App_libartiParams params = appLibarti;
+        if (loadARParams(&params) == NOERROR) {
+            applyARParams(&params, &appLibarti);
+            appLibarti = params;
+        }
+    }
+
+    if (changed & (1 << PARAMS_GALLERY)) {
+        App_galleryParams params = appGalleryFile;
+        if (loadGalleryParams(&params) == NOERROR) {
+            projectorChanged = params.projW != appGalleryFile.projW ||
+                    params.projH != appGalleryFile.projH;
+            bool objectChanged = params.objX != appGalleryFile.objX ||
+                    params.objY != appGalleryFile.objY || params.objZ != appGalleryFile.objZ ||
+                    params.objScale != appGalleryFile.objScale;
+
+            // Like the app, keep the zoom unless the object placement changed
+            float zoom = appGallery.objScale;
+            appGalleryFile = params;
+            appGallery = params;
+            if (!objectChanged) {
+                appGallery.objScale = zoom;
+            }
+            defineVirtualObject();
+        }
+    }
+
+    uint32_t calibrationFiles = (1 << PARAMS_CAMERA_CALIBRATION) |
+            (1 << PARAMS_PROJECTOR_CALIBRATION) | (1 << PARAMS_RELATIVE_ORIENTATION);
+    if (changed & calibrationFiles) {
+        App_calibrationParams params = appCalibration;
+        if (loadCalibration(&params) == NOERROR) {
+            if (memcmp(params.cameraK, appCalibration.cameraK, sizeof(params.cameraK)) != 0) {
+                // The tracker only takes the camera intrinsics when initialized
+                mReset = true;
+            }
+            if (memcmp(params.projectorK, appCalibration.projectorK, sizeof(params.projectorK)) != 0 ||
+                    memcmp(params.relCamProj, appCalibration.relCamProj, sizeof(params.relCamProj)) != 0) {
+                projectorChanged = true;
+            }
+            appCalibration = params;
+        }
+    }
+
+    applyCalibration();
+    if (projectorChanged) {
+        AR_initializeProjectorInfo(mARHandle, projectorK, relCamProj, projector_w, projector_h);
+        // Restart the pose filters from the new projector pose
+        projectorFrameCounter = 0;
+    }
+}
+
 }
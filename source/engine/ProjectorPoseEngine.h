@@ -20,6 +20,8 @@
 #include <engine/ARXEngine.h>
 #include <arx/ARXBufferTypes.h>
 
+#include <sys/stat.h>
+
 #include <arti/LIBARTI.h>
 #include <arti/ARLIB.h>
 
@@ -27,6 +29,9 @@
 #define BWFILTER_NPOLES 4
 #define BWFILTER_GAIN     3.834690819e+01 // Cutoff frequency = 5Hz
 
+/** Number of processed frames between checks for edited parameter files */
+#define PARAMS_CHECK_INTERVAL 30
+
 namespace tiarx {
 
 class ImageBuffer;
@@ -41,6 +46,9 @@ typedef struct{
     float featureMatchInlierRatio2;
     int extendWorkspace;
     int projectorYCoord; // experimental: added for Pico LTI
+    int enableFilter;
+    float alpha1;
+    float alpha2;
 } App_libartiParams;
 
 
@@ -54,6 +62,22 @@ typedef struct{
     float projectorDisplacement;
 } App_galleryParams;
 
+typedef struct{
+    float cameraK[9];
+    float projectorK[9]; // as calibrated, centered on the projector image
+    float relCamProj[12];
+} App_calibrationParams;
+
+/** The parameter files watched for changes while processing */
+enum {
+    PARAMS_LIBARTI,
+    PARAMS_GALLERY,
+    PARAMS_CAMERA_CALIBRATION,
+    PARAMS_PROJECTOR_CALIBRATION,
+    PARAMS_RELATIVE_ORIENTATION,
+    PARAMS_NUM_FILES
+};
+
 class ProjectorPoseEngine : public ARXEngine
 {
 public:
@@ -73,9 +97,13 @@ public:
     arxstatus_t DelayedCamera2ALock();
 
 private:
-    arxstatus_t loadARParams();
-    arxstatus_t loadGalleryParams();
-    arxstatus_t loadCalibration();
+    arxstatus_t loadARParams(App_libartiParams *params);
+    arxstatus_t loadGalleryParams(App_galleryParams *params);
+    arxstatus_t loadCalibration(App_calibrationParams *params);
+    void applyARParams(const App_libartiParams *params, const App_libartiParams *prev);
+    void applyCalibration();
+    uint32_t paramsChanged();
+    void reloadParams(uint32_t changed);
     arxstatus_t computeProjectorPose(ARXProjectorPose *buf);
 
     void defineVirtualObject();
@@ -93,6 +121,9 @@ private:
     AR_object virtObject;
     App_libartiParams appLibarti;
     App_galleryParams appGallery;
+    App_galleryParams appGalleryFile; // as last read, appGallery also follows the zoom
+    App_calibrationParams appCalibration;
+    struct stat mParamsStat[PARAMS_NUM_FILES];
 
     float cameraK[9];
     float projectorK[9];
@@ -116,23 +147,13 @@ private:
 
     bool mReset;
     uint32_t mInitialDelay;
+    //Frames processed past the initial delay, counted on the compute thread
+    uint32_t mProcessedFrames;
     DVP_Perf_t mPerf;
+    ARXProjectorPose mDroppedPose;
 
     uint32_t projectorFrameCounter;
 
-    unsigned int mHarrisThreshold;
-    short mHarrisSensitivity;
-    short mNonmaxWindowSize;
-    int mFeatureMatchRadius;
-    float mFeatureMatchInlierRatio1;
-    float mFeatureMatchInlierRatio2;
-    int mFeaturesMinimum;
-    int mExtendWorkspace;
-
-    bool mEnableFilter;
-    float mAlpha1;
-    float mAlpha2;
-
     int mPrevARStatus;
 
 };
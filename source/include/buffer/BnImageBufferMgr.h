@@ -33,7 +33,8 @@ public:
         RENDER,
         HOLD,
         SETFORMAT,
-        SETSIZE
+        SETSIZE,
+        CLIENTRENDER
     };
 
     virtual android::status_t onTransact(uint32_t code,
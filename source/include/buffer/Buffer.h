@@ -28,7 +28,7 @@ class VisionCamFrame;
 
 namespace tiarx {
 
-class IBufferMgrClient;
+class BufferSubscribers;
 
 /*!
  * \brief A Buffer class
@@ -37,13 +37,15 @@ class IBufferMgrClient;
 class Buffer : public android::LightRefBase<Buffer>
 {
 public:
-    Buffer(uint32_t index, DVP_Handle dvp, const android::sp<IBufferMgrClient>& client,
+    Buffer(uint32_t index, DVP_Handle dvp, const android::sp<BufferSubscribers>& subscribers,
            queue_t *freeQ, queue_t *readyQ, bool holdForClient);
     virtual ~Buffer();
 
     inline void setTimestamp(uint64_t timestamp) { mTimestamp = timestamp; }
     inline uint64_t timestamp() const { return mTimestamp; }
     inline uint32_t index() const { return mIndex; }
+    /** True while the buffer is ready or being consumed */
+    inline bool inUse() const { return mConsumers > 0; }
 
     /** Signals a consumer will consume the buffer */
     arxstatus_t consume();
@@ -51,6 +53,12 @@ public:
     arxstatus_t release();
     /** Signals the buffer is ready (to be done by producer)*/
     arxstatus_t ready();
+    /*!
+     * Ends the hold a held stream takes on each buffer made ready. The
+     * caller then releases the reference of the hold.
+     * @returns false if the buffer is not held
+     */
+    bool clearHold();
 
     virtual arxstatus_t allocate() = 0;
     virtual arxstatus_t free() = 0;
@@ -58,6 +66,8 @@ public:
     virtual arxstatus_t import(DVP_Handle dvp) = 0;
 
 protected:
+    friend class BufferSubscribers;
+
     virtual bool internalRelease() = 0;
 
     bool mRemote;
@@ -69,8 +79,12 @@ protected:
     uint64_t mTimestamp;
     DVP_Handle mDvp;
 
-    android::sp<IBufferMgrClient> mClient;
+    android::sp<BufferSubscribers> mSubscribers;
+    /** Number of clients the buffer was last delivered to */
+    uint32_t mDelivered;
     bool mHoldReady;
+    /** 1 while the hold of a held stream keeps a reference, apart from the clients */
+    volatile int32_t mRenderHold;
 };
 
 }
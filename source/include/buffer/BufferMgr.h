@@ -18,9 +18,11 @@
 #define _BUFFERMGR_H_
 
 #include <buffer/IBufferMgr.h>
+#include <buffer/BufferSubscribers.h>
 
 #include <dvp/dvp_types.h>
 #include <sosal/queue.h>
+#include <sosal/mutex.h>
 
 #include <utils/RefBase.h>
 
@@ -28,6 +30,7 @@ namespace tiarx {
 
 class IBufferMgrClient;
 class FlatBuffer;
+class Buffer;
 
 class BufferMgr : public virtual IBufferMgr
 {
@@ -39,12 +42,33 @@ public:
     inline uint32_t id() const { return mBuffId; }
     inline bool enabled() const { return mEnabled; }
     inline void setEnable(bool flag) { mEnabled = flag; }
+    inline uint32_t policy() const { return mPolicy; }
 
     virtual arxstatus_t allocate(DVP_Handle dvp);
     virtual arxstatus_t free();
 
     virtual void unblock();
 
+    /*!
+     * Gives back a buffer obtained from nextFree which was not used, e.g. when
+     * another output of the same frame could not be obtained.
+     */
+    arxstatus_t cancelFree(uint32_t index);
+
+    /*!
+     * Buffer count tuning. While tuning, each buffer obtained records how many
+     * buffers the stream needed at that time. tunedCount then gives the smallest
+     * count for which at most stallPermille per thousand of them needed more,
+     * or 0 without any record. A wait for a free buffer, or a frame dropped
+     * for the lack of one, records that more than the current count was
+     * needed. A tuned count is at least 2 and one more than the clients. It
+     * stops tuning.
+     */
+    void startTuning();
+    uint32_t tunedCount(uint32_t stallPermille);
+    /** Uses count from tuning, unless a count was set with setCount */
+    void setTunedCount(uint32_t count);
+
     //From IBufferMgr
     virtual arxstatus_t bindGraph(DVP_KernelGraph_t *pGraph);
     virtual arxstatus_t setCount(uint32_t count);
@@ -52,9 +76,19 @@ public:
 
     //virtual arxstatus_t release(uint32_t index);
     virtual arxstatus_t registerClient(IBufferMgrClient *client);
+    virtual arxstatus_t unregisterClient(IBufferMgrClient *client);
+    virtual arxstatus_t setMaxHeld(IBufferMgrClient *client, uint32_t count);
+    virtual arxstatus_t setPolicy(uint32_t policy);
+    virtual arxstatus_t getStats(ARXBufferStats *stats);
 
 protected:
     virtual arxstatus_t allocateBuffer(uint32_t index) = 0;
+    virtual Buffer *bufferAt(uint32_t index) = 0;
+
+    /*!
+     * Obtain the next buffer for the producer and for the consumer in the
+     * engine, following the policy of the stream. Both fail once unblocked.
+     */
     virtual arxstatus_t nextFreeIdx(uint32_t *index);
     virtual arxstatus_t nextReadyIdx(uint32_t *index);
 
@@ -63,15 +97,45 @@ protected:
     bool mAllocated;
     bool mLockedConfig;
     bool mHoldReady;
+    bool mEnabledForClients;
 
     queue_t *mFreeQueue;
     queue_t *mReadyQueue;
     uint32_t mCount;
 
     DVP_KernelGraph_t *mGraph;
-    android::sp<IBufferMgrClient> mClient;
+    android::sp<BufferSubscribers> mSubscribers;
     DVP_Handle mDvp;
     DVP_MemType_e mMemType;
+    //Buffers the producer keeps when it does not obtain them with nextFree,
+    //the need is then recorded when the consumer reads a ready buffer
+    uint32_t mReadyReserve;
+
+private:
+    //Called with mLock held
+    void drainReady();
+    uint32_t popPending();
+    void addWait(uint64_t start);
+    /** Buffers in use plus reserve */
+    uint32_t countNeeded(uint32_t reserve);
+    void recordNeeded(uint32_t needed);
+    /** Smallest count tuning gives, one buffer more than the clients and at least 2 */
+    uint32_t minTunedCount();
+
+    uint32_t mPolicy;
+    ARXBufferStats mStats;
+    //Ready buffers taken out of mReadyQueue, oldest first, so that the
+    //depth is known and the oldest can be dropped
+    uint32_t mPending[IBufferMgr::MAX_BUFFERS];
+    uint32_t mPendingHead;
+    uint32_t mNumPending;
+    mutex_t mLock;
+
+    bool mCountSet;
+    bool mTuning;
+    //Number of times the stream needed each count of buffers, the last entry
+    //for more than MAX_BUFFERS
+    uint32_t mNeeded[IBufferMgr::MAX_BUFFERS + 2];
 };
 
 }
@@ -0,0 +1,107 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#ifndef _BUFFERSUBSCRIBERS_H_
+#define _BUFFERSUBSCRIBERS_H_
+
+#include <arx/ARXStatus.h>
+#include <buffer/IBufferMgr.h>
+
+#include <binder/IBinder.h>
+#include <sosal/mutex.h>
+
+namespace tiarx {
+
+class Buffer;
+class IBufferMgrClient;
+
+/*!
+ * \brief The clients a buffer stream is published to
+ * Each buffer made ready is delivered to every registered client, and holds
+ * one reference per client it was delivered to. The buffer is reused once
+ * all of them have released it.
+ *
+ * A client already holding its maximum number of buffers is skipped, the
+ * buffer is dropped for that client only. A slow client thus loses frames
+ * instead of stalling the producer and the other clients. By default the
+ * clients share count - 1 buffers evenly. Whatever the shares, the clients
+ * together never hold more than count - 1 buffers: once they do, new buffers
+ * are dropped for all of them, so the producer always has one to fill.
+ */
+class BufferSubscribers : public android::IBinder::DeathRecipient
+{
+public:
+    static const uint32_t MAX_CLIENTS = 8;
+
+    BufferSubscribers(uint32_t bufId);
+    virtual ~BufferSubscribers();
+
+    arxstatus_t add(const android::sp<IBufferMgrClient>& client);
+    /** Removes the client, releasing any buffer it still holds */
+    arxstatus_t remove(const android::sp<IBufferMgrClient>& client);
+    /** Maximum number of buffers the client may hold, 0 for the default share */
+    arxstatus_t setMaxHeld(const android::sp<IBufferMgrClient>& client, uint32_t count);
+    uint32_t size();
+
+    /** Number of buffers in the stream, used for the default share */
+    void setCount(uint32_t count);
+    /** Forgets the buffers held, which are about to be freed */
+    void clear();
+
+    /*!
+     * Takes a reference on buffer for each client that can take it, then
+     * notifies them.
+     * @returns the number of clients the buffer was delivered to
+     */
+    uint32_t deliver(Buffer *buffer);
+
+    /*!
+     * Drops the reference client holds on buffer index. The caller then
+     * releases the buffer itself. A NULL client, for callers that do not
+     * identify themselves, drops the reference of the only client holding it.
+     * @returns INVALID_ARGUMENT if client does not hold this buffer,
+     * INVALID_STATE if client is NULL and several clients hold it
+     */
+    arxstatus_t release(IBufferMgrClient *client, uint32_t index);
+
+    //IBinder::DeathRecipient
+    virtual void binderDied(const android::wp<android::IBinder>& who);
+
+private:
+    struct Subscriber {
+        android::sp<IBufferMgrClient> client;
+        uint32_t maxHeld;
+        uint32_t held;
+        uint32_t heldMask;
+        uint32_t delivered;
+        uint32_t dropped;
+    };
+
+    int32_t find(IBufferMgrClient *client);
+    int32_t find(android::IBinder *binder);
+    void removeAt(uint32_t i);
+
+    uint32_t mBuffId;
+    uint32_t mCount;
+    uint32_t mNumClients;
+    Subscriber mClients[MAX_CLIENTS];
+    Buffer *mBuffers[IBufferMgr::MAX_BUFFERS];
+    mutex_t mLock;
+};
+
+}
+
+#endif //_BUFFERSUBSCRIBERS_H_
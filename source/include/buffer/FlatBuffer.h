@@ -27,7 +27,7 @@ class FlatBuffer : public Buffer
 {
 public:
     FlatBuffer(uint32_t index, uint32_t size, DVP_Handle dvp, DVP_MemType_e type,
-               android::sp<IBufferMgrClient>& client, queue_t *freeQ, queue_t *readyQ);
+               const android::sp<BufferSubscribers>& subscribers, queue_t *freeQ, queue_t *readyQ);
     virtual ~FlatBuffer();
 
     arxstatus_t copy(DVP_Buffer_t *image);
@@ -49,9 +49,11 @@ public:
 
     //From IBufferMgr
     virtual arxstatus_t release(uint32_t index);
+    virtual arxstatus_t release(IBufferMgrClient *client, uint32_t index);
 
 private:
     arxstatus_t allocateBuffer(uint32_t index);
+    Buffer *bufferAt(uint32_t index);
     uint32_t mSize;
     sp<FlatBuffer> mBuffers[IBufferMgr::MAX_BUFFERS];
 };
@@ -20,6 +20,7 @@
 #include <binder/IInterface.h>
 
 #include <arx/ARXStatus.h>
+#include <arx/ARXBufferTypes.h>
 #include <dvp/dvp_types.h>
 
 namespace tiarx {
@@ -53,10 +54,38 @@ public:
     virtual arxstatus_t release(uint32_t index) = 0;
 
     /*!
-     * Allows the client to receive callbacks for this buffer ID.
+     * Same as release, on behalf of a registered client. The buffer is reused once every client
+     * it was delivered to has released it. Fails with INVALID_ARGUMENT if client does not hold it.
+     */
+    virtual arxstatus_t release(IBufferMgrClient *client, uint32_t index) = 0;
+
+    /*!
+     * Allows the client to receive callbacks for this buffer ID. Several clients may register,
+     * each ready buffer is delivered to all of them.
      */
     virtual arxstatus_t registerClient(IBufferMgrClient *client) = 0;
 
+    /*!
+     * Stops the callbacks to client, releasing any buffer it still holds.
+     */
+    virtual arxstatus_t unregisterClient(IBufferMgrClient *client) = 0;
+
+    /*!
+     * Sets how many buffers client may hold at once, 0 for an even share of the buffers among
+     * the clients. Buffers ready while client holds that many are not delivered to it.
+     */
+    virtual arxstatus_t setMaxHeld(IBufferMgrClient *client, uint32_t count) = 0;
+
+    /*!
+     * Sets how the stream behaves when its consumers fall behind, one of BufferPolicy_e.
+     */
+    virtual arxstatus_t setPolicy(uint32_t policy) = 0;
+
+    /*!
+     * Gets the delivery counters of the stream.
+     */
+    virtual arxstatus_t getStats(ARXBufferStats *stats) = 0;
+
 protected:
     ~IBufferMgr() {}
 
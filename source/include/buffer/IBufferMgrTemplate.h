@@ -33,6 +33,11 @@ public:
         GETCOUNT,
         RELEASE,
         REGISTERCLIENT,
+        CLIENTRELEASE,
+        UNREGISTERCLIENT,
+        SETMAXHELD,
+        SETPOLICY,
+        GETSTATS,
         FIRST_DERIVED_TRANSACTION
     };
     virtual android::status_t onTransact(uint32_t code,
@@ -67,6 +72,51 @@ public:
                 reply->writeInt32(ret);
                 break;
             }
+            case CLIENTRELEASE:
+            {
+                CHECK_INTERFACE(INTERFACE, data, reply);
+                android::sp<IBufferMgrClient> client = interface_cast<IBufferMgrClient>(data.readStrongBinder());
+                uint32_t index = data.readInt32();
+                arxstatus_t ret = this->release(client.get(), index);
+                reply->writeInt32(ret);
+                break;
+            }
+            case UNREGISTERCLIENT:
+            {
+                CHECK_INTERFACE(INTERFACE, data, reply);
+                android::sp<IBufferMgrClient> client = interface_cast<IBufferMgrClient>(data.readStrongBinder());
+                arxstatus_t ret = this->unregisterClient(client.get());
+                reply->writeInt32(ret);
+                break;
+            }
+            case SETMAXHELD:
+            {
+                CHECK_INTERFACE(INTERFACE, data, reply);
+                android::sp<IBufferMgrClient> client = interface_cast<IBufferMgrClient>(data.readStrongBinder());
+                uint32_t count = data.readInt32();
+                arxstatus_t ret = this->setMaxHeld(client.get(), count);
+                reply->writeInt32(ret);
+                break;
+            }
+            case SETPOLICY:
+            {
+                CHECK_INTERFACE(INTERFACE, data, reply);
+                uint32_t policy = data.readInt32();
+                arxstatus_t ret = this->setPolicy(policy);
+                reply->writeInt32(ret);
+                break;
+            }
+            case GETSTATS:
+            {
+                CHECK_INTERFACE(INTERFACE, data, reply);
+                ARXBufferStats stats;
+                arxstatus_t ret = this->getStats(&stats);
+                reply->writeInt32(ret);
+                if (ret == NOERROR) {
+                    reply->write(&stats, sizeof(stats));
+                }
+                break;
+            }
             case SETCOUNT:
             {
                 CHECK_INTERFACE(INTERFACE, data, reply);
@@ -116,6 +166,16 @@ public:
         return reply.readInt32();
     }
 
+    arxstatus_t release(IBufferMgrClient *client, uint32_t index)
+    {
+        android::Parcel data, reply;
+        data.writeInterfaceToken(this->getInterfaceDescriptor());
+        data.writeStrongBinder(client->asBinder());
+        data.writeInt32(index);
+        this->remote()->transact(BnBufferMgr<INTERFACE>::CLIENTRELEASE, data, &reply);
+        return reply.readInt32();
+    }
+
     arxstatus_t registerClient(IBufferMgrClient *client)
     {
         android::Parcel data, reply;
@@ -125,6 +185,46 @@ public:
         return reply.readInt32();
     }
 
+    arxstatus_t unregisterClient(IBufferMgrClient *client)
+    {
+        android::Parcel data, reply;
+        data.writeInterfaceToken(this->getInterfaceDescriptor());
+        data.writeStrongBinder(client->asBinder());
+        this->remote()->transact(BnBufferMgr<INTERFACE>::UNREGISTERCLIENT, data, &reply);
+        return reply.readInt32();
+    }
+
+    arxstatus_t setMaxHeld(IBufferMgrClient *client, uint32_t count)
+    {
+        android::Parcel data, reply;
+        data.writeInterfaceToken(this->getInterfaceDescriptor());
+        data.writeStrongBinder(client->asBinder());
+        data.writeInt32(count);
+        this->remote()->transact(BnBufferMgr<INTERFACE>::SETMAXHELD, data, &reply);
+        return reply.readInt32();
+    }
+
+    arxstatus_t setPolicy(uint32_t policy)
+    {
+        android::Parcel data, reply;
+        data.writeInterfaceToken(this->getInterfaceDescriptor());
+        data.writeInt32(policy);
+        this->remote()->transact(BnBufferMgr<INTERFACE>::SETPOLICY, data, &reply);
+        return reply.readInt32();
+    }
+
+    arxstatus_t getStats(ARXBufferStats *stats)
+    {
+        android::Parcel data, reply;
+        data.writeInterfaceToken(this->getInterfaceDescriptor());
+        this->remote()->transact(BnBufferMgr<INTERFACE>::GETSTATS, data, &reply);
+        arxstatus_t ret = reply.readInt32();
+        if (ret == NOERROR) {
+            reply.read(stats, sizeof(*stats));
+        }
+        return ret;
+    }
+
     arxstatus_t setCount(uint32_t count)
     {
         android::Parcel data, reply;
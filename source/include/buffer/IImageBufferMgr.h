@@ -73,6 +73,12 @@ public:
      */
     virtual arxstatus_t render(uint32_t index) = 0;
 
+    /*!
+     * Same as render, on behalf of a registered client. The buffer is posted once every client
+     * it was delivered to has released it, if any of them asked for it to be rendered.
+     */
+    virtual arxstatus_t render(IBufferMgrClient *client, uint32_t index) = 0;
+
     /*!
      * Signals the manager to hold any buffer that is ready until the client calls post(uint64_t timestamp)
      * Returns NOTCONFIGURABLE if no surface has been bound
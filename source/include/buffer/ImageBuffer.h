@@ -33,10 +33,10 @@ class ImageBufferMgr;
 class ImageBuffer : public Buffer
 {
 public:
-    ImageBuffer(uint32_t index, anativewindow_t *anw, uint32_t width, uint32_t height, ImageBufferMgr *mgr, bool usingTexture, android::sp<IBufferMgrClient>& client,
-                queue_t *freeQ, queue_t *readyQ, bool holdForClient);
+    ImageBuffer(uint32_t index, anativewindow_t *anw, uint32_t width, uint32_t height, ImageBufferMgr *mgr, bool usingTexture,
+                const android::sp<BufferSubscribers>& subscribers, queue_t *freeQ, queue_t *readyQ, bool holdForClient);
     ImageBuffer(uint32_t index, uint32_t width, uint32_t height, uint32_t bufWidth, uint32_t bufHeight, uint32_t format,
-                DVP_Handle dvp, DVP_MemType_e type, android::sp<IBufferMgrClient>& client,
+                DVP_Handle dvp, DVP_MemType_e type, const android::sp<BufferSubscribers>& subscribers,
                 queue_t *freeQ, queue_t *readyQ, bool holdForClient);
     virtual ~ImageBuffer();
 
@@ -46,6 +46,8 @@ public:
     arxstatus_t copyInfo(DVP_Image_t *image, uint32_t forcedFormat);
     inline VisionCamFrame *getCamFrame() const { return mCamFrame; }
     inline void setCam(VisionCam *cam) { mCam = cam; }
+    /** Monotonic time (ns) at which the camera frame was handed to this buffer */
+    inline uint64_t receivedTime() const { return mReceivedTime; }
 
     arxstatus_t renderAndRelease(bool render);
     arxstatus_t import(DVP_Handle mDvp);
@@ -70,6 +72,7 @@ private:
     VisionCamFrame *mCamFrame;
     VisionCam *mCam;
     bool mPendingRender;
+    uint64_t mReceivedTime;
     bool mHoldForClient;
     bool mUsingTexture;
     ImageBufferMgr *mMgr;
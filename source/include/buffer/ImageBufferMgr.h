@@ -19,7 +19,9 @@
 
 #include <buffer/BnImageBufferMgr.h>
 #include <buffer/BufferMgr.h>
+#include <utils/ARXBufferIndex.h>
 #include <dvp/anativewindow.h>
+#include <sosal/mutex.h>
 
 class VisionCam;
 class VisionCamFrame;
@@ -31,6 +33,9 @@ class ImageBufferMgr :
     public BufferMgr
 {
 public:
+    /** Frames the camera keeps queued to capture into */
+    static const uint32_t CAMERA_RESERVE = 2;
+
     ImageBufferMgr(uint32_t bufId, uint32_t w, uint32_t h, uint32_t format,
                      DVP_MemType_e memType = DVP_MTYPE_DEFAULT,
                      uint32_t count = DEFAULT_COUNT,
@@ -59,16 +64,22 @@ public:
     virtual arxstatus_t getImage(uint32_t index, android::sp<ImageBuffer> *buffer);
     virtual arxstatus_t render(uint64_t timestamp);
     virtual arxstatus_t render(uint32_t index);
+    virtual arxstatus_t render(IBufferMgrClient *client, uint32_t index);
     virtual arxstatus_t hold(bool enable);
     virtual arxstatus_t setSize(uint32_t width, uint32_t height);
     virtual arxstatus_t setFormat(uint32_t format);
 
     //From IBufferMgr
     virtual arxstatus_t release(uint32_t index);
+    virtual arxstatus_t release(IBufferMgrClient *client, uint32_t index);
 
 private:
     arxstatus_t allocateBuffer(uint32_t index);
-    virtual arxstatus_t release(uint32_t index, bool render);
+    Buffer *bufferAt(uint32_t index);
+    virtual arxstatus_t release(IBufferMgrClient *client, uint32_t index, bool render);
+    /** Ends the hold on buffer index, leaving the references of the clients alone */
+    arxstatus_t releaseHold(uint32_t index, bool render);
+    void addReadyOrder(uint64_t timestamp, uint32_t index);
 
     uint32_t mWidth;
     uint32_t mHeight;
@@ -82,6 +93,14 @@ private:
     VisionCam *mCam;
     bool mHoldReadyForClient;
     bool mUsingTexture;
+
+    //Camera frames and window handles to buffer index, filled on allocation
+    ARXHandleIndex<6> mFrameIndex;
+    ARXHandleIndex<6> mHandleIndex;
+    //Buffers held for render(timestamp), oldest first. Entries of buffers
+    //released by index are skipped when their timestamp no longer matches.
+    ARXTimestampQueue<2*IBufferMgr::MAX_BUFFERS> mReadyOrder;
+    mutex_t mOrderLock;
 };
 
 }
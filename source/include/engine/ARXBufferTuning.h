@@ -0,0 +1,65 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#ifndef _ARXBUFFERTUNING_H_
+#define _ARXBUFFERTUNING_H_
+
+#include <arx/ARXStatus.h>
+
+#include <utils/String8.h>
+#include <utils/Vector.h>
+
+namespace tiarx {
+
+/*!
+ * \brief The buffer counts chosen by tuning, kept in a text file
+ * Each line holds the device, the buffer ID, the stream configuration
+ * (e.g. its resolution) and the count:
+ * @code
+blaze_tablet 1 320x240 5
+ * @endcode
+ * Lines of other devices are kept, so one file can be shared.
+ */
+class ARXBufferTuning
+{
+public:
+    ARXBufferTuning(const char *path);
+
+    arxstatus_t load();
+    arxstatus_t save();
+
+    /** @returns the count stored for this device, 0 if none */
+    uint32_t get(uint32_t bufId, const char *config) const;
+    void set(uint32_t bufId, const char *config, uint32_t count);
+
+private:
+    struct Entry {
+        android::String8 device;
+        uint32_t bufId;
+        android::String8 config;
+        uint32_t count;
+    };
+
+    int32_t find(uint32_t bufId, const char *config) const;
+
+    android::String8 mPath;
+    android::String8 mDevice;
+    android::Vector<Entry> mEntries;
+};
+
+}
+
+#endif //_ARXBUFFERTUNING_H_
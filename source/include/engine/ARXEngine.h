@@ -18,6 +18,8 @@
 #define _ARXENGINE_H_
 
 #include <arx/ARXStatus.h>
+#include <engine/ARXBufferTuning.h>
+#include <engine/ARXPipeline.h>
 #include <ipc/IARXClient.h>
 #include <dvp/VisionEngine.h>
 
@@ -66,6 +68,19 @@ public:
 
 protected:
     virtual arxstatus_t copyFaceDetect(FlatBuffer *buf, VisionCamFaceType *faces, uint32_t numFaces);
+    /** Allocates the tuned buffer counts and starts measuring them again */
+    void loadTunedCounts();
+    /** Stores the counts measured since loadTunedCounts */
+    void saveTunedCounts();
+    /** Starts the compute thread, unless the pipeline depth is 0 */
+    arxstatus_t startCompute();
+    /** Stops the compute thread and releases the frames left in its queue */
+    void stopCompute();
+    /** Runs Process on frame then releases its buffers */
+    arxstatus_t computeFrame(const ARXFrame& frame, uint32_t depth);
+    static void releaseFrame(const ARXFrame& frame);
+    static void *computeThread(void *arg);
+
     android::DefaultKeyedVector<uint32_t, android::sp<ImageBufferMgr> > mImgBuffMgrMap;
     android::DefaultKeyedVector<uint32_t, android::sp<FlatBufferMgr> > mFlatBuffMgrMap;
     android::sp<IARXClient> mClient;
@@ -74,6 +89,25 @@ protected:
     VisionCamMirrorType mSecMirror;
 
     uint32_t mCam2ALockDelay;
+
+    bool mAutotune;
+    uint32_t mAutotuneFrames;
+    uint32_t mStallTarget;
+    ARXBufferTuning mTuning;
+
+    /** Set by engines whose Process reads the preview buffer, which is then kept until computed */
+    bool mProcessUsesPreview;
+    uint32_t mPipelineDepth;
+    ARXFrameQueue mComputeQueue;
+    pthread_t mComputeThread;
+    bool mComputeRunning;
+    /** Set by the compute thread when it quits, read by the engine thread with android_atomic */
+    volatile int32_t mComputeStatus;
+    ARXStageStats mCaptureStats;
+    ARXStageStats mComputeStats;
+    ARXFrameScheduler mScheduler;
+    /** Compute only the newest queued frame, skipping the older ones */
+    bool mLatestOnly;
 };
 
 
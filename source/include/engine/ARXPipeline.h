@@ -0,0 +1,203 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#ifndef _ARXPIPELINE_H_
+#define _ARXPIPELINE_H_
+
+#include <stdint.h>
+#include <pthread.h>
+
+namespace tiarx {
+
+class ImageBuffer;
+
+/*!
+ * \brief A camera frame handed from the capture stage to the compute stage
+ * The frame holds one reference on each of its buffers, released once
+ * computed or dropped.
+ */
+struct ARXFrame {
+    /** NULL unless the engine processes the preview */
+    ImageBuffer *preview;
+    ImageBuffer *video;
+    /** Camera timestamp */
+    uint64_t timestamp;
+    /** Monotonic time the camera delivered the frame */
+    uint64_t receivedTime;
+    /** Frame number since the engine started */
+    uint32_t seq;
+};
+
+/*!
+ * \brief Bounded FIFO of frames between two stages
+ * The producer never waits: pushing to a full queue evicts the oldest frame,
+ * which the producer then releases.
+ */
+class ARXFrameQueue
+{
+public:
+    static const uint32_t MAX_DEPTH = 8;
+
+    ARXFrameQueue();
+    ~ARXFrameQueue();
+
+    /** Number of frames queued before the oldest is dropped, at most MAX_DEPTH */
+    void setDepth(uint32_t depth);
+    /** Lets pop wait again after stop */
+    void start();
+    /** Wakes up pop, which fails from then on */
+    void stop();
+
+    /*!
+     * Queues frame.
+     * @returns true if the queue was full, with the oldest frame in dropped
+     */
+    bool push(const ARXFrame& frame, ARXFrame *dropped);
+    /*!
+     * Waits for a frame.
+     * @returns false once stopped
+     */
+    bool pop(ARXFrame *frame);
+    /** Takes out a frame without waiting, to drain the queue once stopped */
+    bool flush(ARXFrame *frame);
+    uint32_t size();
+
+private:
+    ARXFrame mFrames[MAX_DEPTH];
+    uint32_t mHead;
+    uint32_t mCount;
+    uint32_t mDepth;
+    bool mStopped;
+    pthread_mutex_t mLock;
+    pthread_cond_t mReady;
+};
+
+/*!
+ * \brief Throughput and occupancy of a pipeline stage
+ * The rates are measured over windows of about a second, the previous
+ * complete window is reported.
+ */
+struct ARXStageSummary {
+    /** Frames out of the stage per second */
+    uint32_t fps;
+    /** Share of the time spent working on frames, in percent */
+    uint32_t busy;
+    /** Average number of frames waiting for the stage, in hundredths */
+    uint32_t depth;
+    uint32_t maxDepth;
+    /** Average and maximum time from capture to the end of the stage */
+    uint32_t latencyUs;
+    uint32_t maxLatencyUs;
+    /** Totals since the engine started */
+    uint32_t frames;
+    uint32_t dropped;
+    /** Frames the scheduler chose not to compute */
+    uint32_t skipped;
+};
+
+class ARXStageStats
+{
+public:
+    ARXStageStats(const char *name);
+    ~ARXStageStats();
+
+    void reset();
+    /*!
+     * A frame left the stage after busyNs of work, depth frames were waiting
+     * for the stage when it started and latencyNs elapsed since capture.
+     */
+    void record(uint64_t busyNs, uint32_t depth, uint64_t latencyNs);
+    /** A frame was dropped before reaching the stage */
+    void drop();
+    /** A frame reached the stage but was not worth working on */
+    void skip();
+    void get(ARXStageSummary *summary);
+    /** Prints the totals */
+    void print();
+
+private:
+    static const uint64_t WINDOW_NS = 1000000000ULL;
+
+    const char *mName;
+    uint64_t mWindowStart;
+    uint32_t mFrames;
+    uint64_t mBusyNs;
+    uint64_t mDepthSum;
+    uint64_t mLatencySum;
+    uint32_t mMaxDepth;
+    uint64_t mMaxLatency;
+    ARXStageSummary mLast;
+    uint32_t mTotalFrames;
+    uint32_t mTotalDropped;
+    uint32_t mTotalSkipped;
+    pthread_mutex_t mLock;
+};
+
+/*!
+ * \brief Chooses the frames worth computing
+ * Keeps a moving average of the time Process takes. A frame is skipped when
+ * only every Nth frame is computed and it is not one of them, or when it
+ * would be late for the deadline while a newer frame is queued, which could
+ * still meet it. The newest frame is computed even when late, so with only
+ * the latest frame computed the deadline never skips one.
+ */
+class ARXFrameScheduler
+{
+public:
+    ARXFrameScheduler();
+
+    /** Forgets the cost measured */
+    void reset();
+    /** Computes only frames whose number is a multiple of n, 1 for all */
+    void setEveryNth(uint32_t n) { mEveryNth = n == 0 ? 1 : n; }
+    uint32_t everyNth() const { return mEveryNth; }
+    /** Time from camera delivery to the end of Process, 0 for none */
+    void setDeadlineMs(uint32_t ms) { mDeadlineUs = ms*1000; }
+    uint32_t deadlineMs() const { return mDeadlineUs/1000; }
+
+    /**
+     * @param newerQueued whether a newer frame waits to be computed
+     * @returns false if frame should be released without computing it
+     */
+    bool accept(const ARXFrame& frame, uint64_t now, bool newerQueued);
+    /*!
+     * Waits for the next frame of queue, as the compute stage does. While a
+     * newer frame is queued, frame is superseded by it when latestOnly is set
+     * or when it would miss the deadline.
+     * @param superseded set when frame should be released without computing it
+     * @returns false once queue is stopped
+     */
+    bool next(ARXFrameQueue *queue, bool latestOnly, ARXFrame *frame, bool *superseded);
+    /** Process took costNs on an accepted frame */
+    void computed(uint64_t costNs);
+    /** Moving average of the time Process takes */
+    uint32_t costUs() const { return mCostUs; }
+
+private:
+    /** Weight of a new measurement is 1/2^COST_SHIFT */
+    static const uint32_t COST_SHIFT = 3;
+
+    /** Whether frame would finish after the deadline, which some frame can meet */
+    bool late(const ARXFrame& frame, uint64_t now);
+
+    volatile uint32_t mEveryNth;
+    volatile uint32_t mDeadlineUs;
+    volatile uint32_t mCostUs;
+};
+
+}
+
+#endif //_ARXPIPELINE_H_
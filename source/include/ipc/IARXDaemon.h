@@ -34,7 +34,7 @@ public:
     DECLARE_META_INTERFACE(ARXDaemon);
 
     virtual arxstatus_t connect(const android::sp<IARXClient> &client) = 0;
-    virtual void disconnect() = 0;
+    virtual void disconnect(const android::sp<IARXClient> &client) = 0;
 
     /*!
      * Loads the specified AR Engine module into the ARXDaemon.
@@ -0,0 +1,165 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#ifndef _ARXBUFFERINDEX_H_
+#define _ARXBUFFERINDEX_H_
+
+#include <stdint.h>
+#include <stddef.h>
+
+namespace tiarx {
+
+/*!
+ * \brief Maps the handles of a set of buffers (pointers) to their index.
+ *
+ * Open addressing in 1 << BITS slots, kept at most half full, so a lookup
+ * probes about one slot whatever the number of buffers. Handles are only
+ * added, when the buffers are allocated, and cleared with them.
+ */
+template <uint32_t BITS>
+class ARXHandleIndex
+{
+public:
+    ARXHandleIndex() { clear(); }
+
+    void clear()
+    {
+        for (uint32_t i = 0; i < SLOTS; i++) {
+            mSlots[i].key = NULL;
+            mSlots[i].index = 0;
+        }
+        mSize = 0;
+    }
+
+    /*!
+     * Adds or updates the index of key. NULL keys are ignored.
+     * @returns false if the index is half full
+     */
+    bool add(const void *key, uint32_t index)
+    {
+        if (key == NULL) {
+            return true;
+        }
+        for (uint32_t i = hash(key); ; i = (i + 1) & MASK) {
+            if (mSlots[i].key == key) {
+                mSlots[i].index = index;
+                return true;
+            }
+            if (mSlots[i].key == NULL) {
+                if (mSize >= SLOTS/2) {
+                    return false;
+                }
+                mSlots[i].key = key;
+                mSlots[i].index = index;
+                mSize++;
+                return true;
+            }
+        }
+    }
+
+    /** @returns the index of key, -1 if it is not a known handle */
+    int32_t find(const void *key) const
+    {
+        if (key == NULL) {
+            return -1;
+        }
+        for (uint32_t i = hash(key); ; i = (i + 1) & MASK) {
+            if (mSlots[i].key == key) {
+                return mSlots[i].index;
+            }
+            if (mSlots[i].key == NULL) {
+                return -1;
+            }
+        }
+    }
+
+private:
+    static const uint32_t SLOTS = 1 << BITS;
+    static const uint32_t MASK = SLOTS - 1;
+
+    static uint32_t hash(const void *key)
+    {
+        //Buffer addresses are aligned, the low bits carry nothing
+        uint32_t k = (uint32_t)((uintptr_t)key >> 4);
+        return (k * 2654435761U) >> (32 - BITS);
+    }
+
+    struct Slot {
+        const void *key;
+        uint32_t index;
+    };
+    Slot mSlots[SLOTS];
+    uint32_t mSize;
+};
+
+/*!
+ * \brief The buffers of a stream in the order they were made ready, with
+ * their timestamps. Camera timestamps only grow, so the buffers older than
+ * a timestamp are at the front. Fixed capacity, nothing is allocated.
+ */
+template <uint32_t N>
+class ARXTimestampQueue
+{
+public:
+    struct Entry {
+        uint64_t timestamp;
+        uint32_t index;
+    };
+
+    ARXTimestampQueue() { clear(); }
+
+    void clear()
+    {
+        mHead = 0;
+        mSize = 0;
+    }
+
+    inline uint32_t size() const { return mSize; }
+    inline bool full() const { return mSize == N; }
+
+    /** @returns false when full */
+    bool push(uint64_t timestamp, uint32_t index)
+    {
+        if (mSize == N) {
+            return false;
+        }
+        Entry& e = mEntries[(mHead + mSize) % N];
+        e.timestamp = timestamp;
+        e.index = index;
+        mSize++;
+        return true;
+    }
+
+    /** The i-th oldest entry, i < size() */
+    inline const Entry& at(uint32_t i) const { return mEntries[(mHead + i) % N]; }
+
+    void pop()
+    {
+        if (mSize > 0) {
+            mHead = (mHead + 1) % N;
+            mSize--;
+        }
+    }
+
+private:
+    Entry mEntries[N];
+    uint32_t mHead;
+    uint32_t mSize;
+};
+
+}
+
+#endif //_ARXBUFFERINDEX_H_
@@ -0,0 +1,145 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#ifndef _ARXCONVERT_H_
+#define _ARXCONVERT_H_
+
+#include <stdint.h>
+#include <pthread.h>
+
+/*!
+ * \file ARXConvert.h
+ * \brief Conversion of single channel ARX image buffers to RGBA8888 for display,
+ * e.g. into an Android Bitmap.
+ */
+namespace tiarx {
+
+/*!
+ * Selects how 16-bit samples are mapped to 8-bit gray levels.
+ */
+enum ARXNormMode_e {
+    /*!
+     * Output is the sample shifted right by ARXNormalization::shift, saturated to 255.
+     */
+    NORM_SHIFT,
+    /*!
+     * Samples in [ARXNormalization::min, ARXNormalization::max] are mapped linearly to [0, 255],
+     * values outside the range are clamped.
+     */
+    NORM_RANGE,
+    /*!
+     * Like NORM_RANGE, using the minimum and maximum of each image.
+     */
+    NORM_AUTO,
+};
+
+/*!
+ * Normalization applied when converting 16-bit images.
+ */
+struct ARXNormalization {
+    ARXNormMode_e mode;
+    uint32_t shift;
+    int32_t min;
+    int32_t max;
+    /*!
+     * Treats the samples as signed (e.g. BUFF_HARRIS_SCORE).
+     */
+    bool isSigned;
+};
+
+/*!
+ * Expands an 8-bit gray image to RGBA8888 (R=G=B=gray, A=255).
+ * Strides are in bytes.
+ */
+void convert_gray8_to_rgba(const uint8_t *pSrc, uint32_t srcStride,
+                           uint8_t *pDst, uint32_t dstStride,
+                           uint32_t width, uint32_t height);
+
+/*!
+ * Expands a 16-bit image to RGBA8888 using the given normalization.
+ * Strides are in bytes. NORM_AUTO is resolved over the rows given.
+ */
+void convert_gray16_to_rgba(const uint16_t *pSrc, uint32_t srcStride,
+                            uint8_t *pDst, uint32_t dstStride,
+                            uint32_t width, uint32_t height,
+                            const ARXNormalization& norm);
+
+/*!
+ * Splits conversions into bands of rows processed by a small pool of worker
+ * threads plus the calling thread. Images smaller than the band threshold are
+ * converted on the calling thread only. A converter must only be used by one
+ * thread at a time.
+ */
+class ARXConverter
+{
+public:
+    /*!
+     * @param numThreads number of worker threads in addition to the caller.
+     * @param minBandPixels images are split in bands of at least this many pixels.
+     */
+    ARXConverter(uint32_t numThreads, uint32_t minBandPixels = DEFAULT_MIN_BAND_PIXELS);
+    ~ARXConverter();
+
+    void gray8ToRGBA(const uint8_t *pSrc, uint32_t srcStride,
+                     uint8_t *pDst, uint32_t dstStride,
+                     uint32_t width, uint32_t height);
+
+    /*!
+     * NORM_AUTO computes the range over the whole image before splitting it in bands.
+     */
+    void gray16ToRGBA(const uint16_t *pSrc, uint32_t srcStride,
+                      uint8_t *pDst, uint32_t dstStride,
+                      uint32_t width, uint32_t height,
+                      const ARXNormalization& norm);
+
+    enum {
+        MAX_THREADS = 8,
+        DEFAULT_MIN_BAND_PIXELS = 320*240,
+    };
+
+private:
+    struct Job {
+        bool is16;
+        const uint8_t *pSrc;
+        uint32_t srcStride;
+        uint8_t *pDst;
+        uint32_t dstStride;
+        uint32_t width;
+        uint32_t height;
+        ARXNormalization norm;
+    };
+
+    void run(const Job& job);
+    void convertBand(uint32_t band);
+    static void *workerThread(void *arg);
+
+    uint32_t mNumThreads;
+    uint32_t mMinBandPixels;
+    pthread_t mThreads[MAX_THREADS];
+
+    pthread_mutex_t mLock;
+    pthread_cond_t mStart;
+    pthread_cond_t mDone;
+    Job mJob;
+    uint32_t mNumBands;
+    uint32_t mNextBand;
+    uint32_t mBandsDone;
+    uint32_t mGeneration;
+    bool mExit;
+};
+
+}
+#endif //_ARXCONVERT_H_
@@ -0,0 +1,140 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#ifndef _ARXLATENCY_H_
+#define _ARXLATENCY_H_
+
+#include <stdint.h>
+#include <string.h>
+#include <time.h>
+
+namespace tiarx {
+
+/*!
+ * Returns the CLOCK_MONOTONIC time in nanoseconds. This is the clock behind
+ * System.nanoTime(), so times taken by the daemon, native and Java code can
+ * be compared with each other.
+ */
+static inline uint64_t arx_monotonic_ns()
+{
+    struct timespec ts;
+    clock_gettime(CLOCK_MONOTONIC, &ts);
+    return (uint64_t)ts.tv_sec*1000000000ULL + ts.tv_nsec;
+}
+
+/*!
+ * \brief Fixed size latency histogram with percentile queries.
+ *
+ * Values are kept in microseconds in log-linear buckets, like HdrHistogram:
+ * exact below 64us, then 32 linear buckets per power of two, so any value is
+ * reported within ~3%. Recording never allocates. Not thread safe.
+ */
+class ARXLatencyHistogram
+{
+public:
+    ARXLatencyHistogram() { reset(); }
+
+    void reset()
+    {
+        memset(mCounts, 0, sizeof(mCounts));
+        mCount = 0;
+        mSumUs = 0;
+        mMinUs = 0xFFFFFFFF;
+        mMaxUs = 0;
+    }
+
+    /*!
+     * Records a latency. Negative values (clock skew between stamps) count as 0.
+     */
+    void record(int64_t ns)
+    {
+        uint64_t us64 = (ns > 0) ? (uint64_t)ns/1000 : 0;
+        uint32_t us = (us64 > 0xFFFFFFFFULL) ? 0xFFFFFFFF : (uint32_t)us64;
+        mCounts[indexOf(us)]++;
+        mCount++;
+        mSumUs += us;
+        if (us < mMinUs) mMinUs = us;
+        if (us > mMaxUs) mMaxUs = us;
+    }
+
+    inline uint32_t count() const { return mCount; }
+    inline uint64_t minNs() const { return mCount ? (uint64_t)mMinUs*1000 : 0; }
+    inline uint64_t maxNs() const { return (uint64_t)mMaxUs*1000; }
+    inline uint64_t meanNs() const { return mCount ? (mSumUs*1000)/mCount : 0; }
+
+    /*!
+     * @param percent in [0, 100]
+     * @return the highest value of the bucket holding the given percentile,
+     * never above the maximum recorded.
+     */
+    uint64_t percentileNs(double percent) const
+    {
+        if (mCount == 0) {
+            return 0;
+        }
+        uint64_t target = (uint64_t)(percent*mCount/100.0 + 0.5);
+        if (target < 1) target = 1;
+        if (target > mCount) target = mCount;
+        uint64_t seen = 0;
+        for (uint32_t i = 0; i < NUM_BUCKETS; i++) {
+            seen += mCounts[i];
+            if (seen >= target) {
+                uint32_t us = highestOf(i);
+                return (uint64_t)((us < mMaxUs) ? us : mMaxUs)*1000;
+            }
+        }
+        return maxNs();
+    }
+
+private:
+    enum {
+        LINEAR_BITS = 6,
+        LINEAR_MAX = 1 << LINEAR_BITS,          // values below are exact
+        SUB_BUCKETS = LINEAR_MAX/2,             // buckets per power of two above
+        NUM_BUCKETS = LINEAR_MAX + (32 - LINEAR_BITS)*SUB_BUCKETS,
+    };
+
+    static inline uint32_t indexOf(uint32_t us)
+    {
+        if (us < LINEAR_MAX) {
+            return us;
+        }
+        uint32_t magnitude = 31 - __builtin_clz(us);    // >= LINEAR_BITS
+        uint32_t shift = magnitude - (LINEAR_BITS - 1);
+        return LINEAR_MAX + (magnitude - LINEAR_BITS)*SUB_BUCKETS + ((us >> shift) - SUB_BUCKETS);
+    }
+
+    static inline uint32_t highestOf(uint32_t index)
+    {
+        if (index < LINEAR_MAX) {
+            return index;
+        }
+        uint32_t magnitude = LINEAR_BITS + (index - LINEAR_MAX)/SUB_BUCKETS;
+        uint32_t shift = magnitude - (LINEAR_BITS - 1);
+        uint64_t sub = SUB_BUCKETS + (index - LINEAR_MAX)%SUB_BUCKETS;
+        uint64_t highest = ((sub + 1) << shift) - 1;
+        return (highest > 0xFFFFFFFFULL) ? 0xFFFFFFFF : (uint32_t)highest;
+    }
+
+    uint32_t mCounts[NUM_BUCKETS];
+    uint32_t mCount;
+    uint64_t mSumUs;
+    uint32_t mMinUs;
+    uint32_t mMaxUs;
+};
+
+}
+#endif //_ARXLATENCY_H_
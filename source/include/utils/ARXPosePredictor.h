@@ -0,0 +1,281 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#ifndef _ARXPOSEPREDICTOR_H_
+#define _ARXPOSEPREDICTOR_H_
+
+#include <stdint.h>
+#include <math.h>
+
+#include <utils/ARXSeqLock.h>
+
+namespace tiarx {
+
+/*!
+ * \brief Extrapolates a camera pose to a later time with a constant
+ * velocity model.
+ *
+ * Poses are 3x4 row major [R|t] matrices, as in ARXCameraPoseMatrix. The
+ * rotation is tracked as a quaternion and the translation as a vector. The
+ * angular and linear velocities are estimated over the last few poses and
+ * applied to the newest one. Poses are added from one thread and predictions
+ * may be made from another one, neither locks nor allocates.
+ */
+class ARXPosePredictor
+{
+public:
+    ARXPosePredictor()
+    {
+        mMaxHorizonNs = DEFAULT_MAX_HORIZON_NS;
+        mMaxGapNs = DEFAULT_MAX_GAP_NS;
+        reset();
+    }
+
+    /*!
+     * Forgets all poses, e.g. when tracking is lost.
+     */
+    void reset()
+    {
+        mCount = 0;
+        mHead = 0;
+        Model m;
+        memset(&m, 0, sizeof(m));
+        mModel.write(m);
+    }
+
+    /*!
+     * Predictions further than this from the newest pose are clamped.
+     */
+    void setMaxHorizon(uint64_t ns) { mMaxHorizonNs = ns; }
+
+    /*!
+     * Adds a pose measured at timeNs. Poses must be added in time order,
+     * from one thread at a time. A gap longer than the maximum gap restarts
+     * the velocity estimation.
+     */
+    void addPose(const float matrix[12], uint64_t timeNs)
+    {
+        if (mCount > 0) {
+            const Sample& last = mHistory[(mHead + HISTORY - 1) % HISTORY];
+            if (timeNs <= last.time) {
+                return;
+            }
+            if (timeNs - last.time > mMaxGapNs) {
+                mCount = 0;
+            }
+        }
+
+        Sample& s = mHistory[mHead];
+        toQuat(matrix, s.q);
+        s.t[0] = matrix[3];
+        s.t[1] = matrix[7];
+        s.t[2] = matrix[11];
+        s.time = timeNs;
+        if (mCount > 0) {
+            // Keep the quaternions in the same hemisphere so differences are short
+            const Sample& prev = mHistory[(mHead + HISTORY - 1) % HISTORY];
+            if (dot(s.q, prev.q) < 0) {
+                for (uint32_t i = 0; i < 4; i++) s.q[i] = -s.q[i];
+            }
+        }
+        mHead = (mHead + 1) % HISTORY;
+        if (mCount < HISTORY) mCount++;
+
+        Model m;
+        memcpy(m.q, s.q, sizeof(m.q));
+        memcpy(m.t, s.t, sizeof(m.t));
+        m.time = timeNs;
+        m.valid = 1;
+        m.reserved = 0;
+        estimateVelocity(m);
+        mModel.write(m);
+    }
+
+    /*!
+     * Computes the pose expected at timeNs.
+     * @return false if no pose was added since the last reset.
+     */
+    bool predict(uint64_t timeNs, float matrix[12]) const
+    {
+        Model m;
+        if (mModel.read(&m) == 0 || !m.valid) {
+            return false;
+        }
+        float dt = 0.0f;
+        if (timeNs > m.time) {
+            uint64_t h = timeNs - m.time;
+            if (h > mMaxHorizonNs) h = mMaxHorizonNs;
+            dt = h/1e9f;
+        }
+
+        // q(t) = exp(w*dt/2) * q
+        float q[4];
+        float dq[4];
+        float angle = sqrtf(m.w[0]*m.w[0] + m.w[1]*m.w[1] + m.w[2]*m.w[2])*dt;
+        if (angle > 1e-9f) {
+            float s = sinf(angle/2)/angle*dt;
+            dq[0] = cosf(angle/2);
+            dq[1] = m.w[0]*s;
+            dq[2] = m.w[1]*s;
+            dq[3] = m.w[2]*s;
+            mul(dq, m.q, q);
+        } else {
+            memcpy(q, m.q, sizeof(q));
+        }
+        toMatrix(q, matrix);
+        matrix[3] = m.t[0] + m.v[0]*dt;
+        matrix[7] = m.t[1] + m.v[1]*dt;
+        matrix[11] = m.t[2] + m.v[2]*dt;
+        return true;
+    }
+
+    enum {
+        HISTORY = 4,
+    };
+    static const uint64_t DEFAULT_MAX_HORIZON_NS = 100000000ULL;
+    static const uint64_t DEFAULT_MAX_GAP_NS = 250000000ULL;
+
+private:
+    struct Sample {
+        float q[4];     // w, x, y, z
+        float t[3];
+        uint64_t time;
+    };
+
+    struct Model {
+        float q[4];
+        float t[3];
+        float w[3];     // angular velocity (rad/s), applied on the left
+        float v[3];     // linear velocity (units/s)
+        uint32_t valid;
+        uint32_t reserved;
+        uint64_t time;
+    };
+
+    /*!
+     * Average velocities between the oldest and the newest pose in the history.
+     */
+    void estimateVelocity(Model& m) const
+    {
+        memset(m.w, 0, sizeof(m.w));
+        memset(m.v, 0, sizeof(m.v));
+        if (mCount < 2) {
+            return;
+        }
+        const Sample& newest = mHistory[(mHead + HISTORY - 1) % HISTORY];
+        const Sample& oldest = mHistory[(mHead + HISTORY - mCount) % HISTORY];
+        float dt = (newest.time - oldest.time)/1e9f;
+
+        // dq = newest * conj(oldest), as an axis and angle
+        float conj[4] = { oldest.q[0], -oldest.q[1], -oldest.q[2], -oldest.q[3] };
+        float dq[4];
+        mul(newest.q, conj, dq);
+        if (dq[0] < 0) {
+            for (uint32_t i = 0; i < 4; i++) dq[i] = -dq[i];
+        }
+        float sinHalf = sqrtf(dq[1]*dq[1] + dq[2]*dq[2] + dq[3]*dq[3]);
+        if (sinHalf > 1e-9f) {
+            float angle = 2*atan2f(sinHalf, dq[0]);
+            float k = angle/(sinHalf*dt);
+            m.w[0] = dq[1]*k;
+            m.w[1] = dq[2]*k;
+            m.w[2] = dq[3]*k;
+        }
+        for (uint32_t i = 0; i < 3; i++) {
+            m.v[i] = (newest.t[i] - oldest.t[i])/dt;
+        }
+    }
+
+    static inline float dot(const float a[4], const float b[4])
+    {
+        return a[0]*b[0] + a[1]*b[1] + a[2]*b[2] + a[3]*b[3];
+    }
+
+    static inline void mul(const float a[4], const float b[4], float r[4])
+    {
+        r[0] = a[0]*b[0] - a[1]*b[1] - a[2]*b[2] - a[3]*b[3];
+        r[1] = a[0]*b[1] + a[1]*b[0] + a[2]*b[3] - a[3]*b[2];
+        r[2] = a[0]*b[2] - a[1]*b[3] + a[2]*b[0] + a[3]*b[1];
+        r[3] = a[0]*b[3] + a[1]*b[2] - a[2]*b[1] + a[3]*b[0];
+    }
+
+    /*!
+     * Rotation part of a row major 3x4 matrix to a unit quaternion.
+     */
+    static void toQuat(const float m[12], float q[4])
+    {
+        float r00 = m[0], r01 = m[1], r02 = m[2];
+        float r10 = m[4], r11 = m[5], r12 = m[6];
+        float r20 = m[8], r21 = m[9], r22 = m[10];
+        float trace = r00 + r11 + r22;
+        if (trace > 0) {
+            float s = sqrtf(trace + 1.0f)*2;
+            q[0] = s/4;
+            q[1] = (r21 - r12)/s;
+            q[2] = (r02 - r20)/s;
+            q[3] = (r10 - r01)/s;
+        } else if (r00 > r11 && r00 > r22) {
+            float s = sqrtf(1.0f + r00 - r11 - r22)*2;
+            q[0] = (r21 - r12)/s;
+            q[1] = s/4;
+            q[2] = (r01 + r10)/s;
+            q[3] = (r02 + r20)/s;
+        } else if (r11 > r22) {
+            float s = sqrtf(1.0f + r11 - r00 - r22)*2;
+            q[0] = (r02 - r20)/s;
+            q[1] = (r01 + r10)/s;
+            q[2] = s/4;
+            q[3] = (r12 + r21)/s;
+        } else {
+            float s = sqrtf(1.0f + r22 - r00 - r11)*2;
+            q[0] = (r10 - r01)/s;
+            q[1] = (r02 + r20)/s;
+            q[2] = (r12 + r21)/s;
+            q[3] = s/4;
+        }
+        float n = sqrtf(dot(q, q));
+        for (uint32_t i = 0; i < 4; i++) q[i] /= n;
+    }
+
+    /*!
+     * Unit quaternion to the rotation part of a row major 3x4 matrix.
+     */
+    static void toMatrix(const float q[4], float m[12])
+    {
+        float w = q[0], x = q[1], y = q[2], z = q[3];
+        m[0] = 1 - 2*(y*y + z*z);
+        m[1] = 2*(x*y - w*z);
+        m[2] = 2*(x*z + w*y);
+        m[4] = 2*(x*y + w*z);
+        m[5] = 1 - 2*(x*x + z*z);
+        m[6] = 2*(y*z - w*x);
+        m[8] = 2*(x*z - w*y);
+        m[9] = 2*(y*z + w*x);
+        m[10] = 1 - 2*(x*x + y*y);
+    }
+
+    // Writer side only
+    Sample mHistory[HISTORY];
+    uint32_t mHead;
+    uint32_t mCount;
+
+    uint64_t mMaxHorizonNs;
+    uint64_t mMaxGapNs;
+    ARXSeqLock<Model> mModel;
+};
+
+}
+#endif //_ARXPOSEPREDICTOR_H_
@@ -0,0 +1,148 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#ifndef _ARXPOSETRACE_H_
+#define _ARXPOSETRACE_H_
+
+#include <stdint.h>
+#include <stdio.h>
+#include <string.h>
+
+#include <arx/ARXBufferTypes.h>
+#include <utils/ARXLatency.h>
+
+namespace tiarx {
+
+/*!
+ * \brief Pose trace file layout, read back by com.ti.arx.posetrace.PoseTrace.
+ *
+ * A trace is a header followed by fixed size records, all little endian, so
+ * the reader can memory map the file and index records directly. Camera
+ * poses keep the row major 3x4 matrix of ARXCameraPoseMatrix in the first
+ * 12 floats, projector poses the column major view matrix of
+ * ARXProjectorPose.
+ */
+struct ARXPoseTraceHeader {
+    uint32_t magic;         //!< ARX_POSE_TRACE_MAGIC
+    uint16_t version;       //!< ARX_POSE_TRACE_VERSION
+    uint16_t recordSize;    //!< sizeof(ARXPoseTraceRecord)
+    uint64_t startTime;     //!< CLOCK_MONOTONIC ns when recording started
+    uint32_t reserved[4];
+};
+
+struct ARXPoseTraceRecord {
+    uint64_t time;          //!< CLOCK_MONOTONIC ns when the pose was delivered
+    uint64_t timestamp;     //!< buffer timestamp of the pose
+    uint32_t type;          //!< ARXPoseTraceType_e
+    int32_t status;
+    float matrix[16];
+    float pointerX;
+    float pointerY;
+};
+
+enum ARXPoseTraceType_e {
+    POSE_TRACE_CAMERA = 1,
+    POSE_TRACE_PROJECTOR = 2,
+};
+
+#define ARX_POSE_TRACE_MAGIC    (0x50585241)    // "ARXP"
+#define ARX_POSE_TRACE_VERSION  (1)
+
+/*!
+ * \brief Appends poses to a trace file. Not thread safe.
+ */
+class ARXPoseTraceWriter
+{
+public:
+    ARXPoseTraceWriter() : mFile(NULL), mCount(0) {}
+    ~ARXPoseTraceWriter() { close(); }
+
+    bool open(const char *fileName)
+    {
+        close();
+        mFile = fopen(fileName, "wb");
+        if (mFile == NULL) {
+            return false;
+        }
+        ARXPoseTraceHeader h;
+        memset(&h, 0, sizeof(h));
+        h.magic = ARX_POSE_TRACE_MAGIC;
+        h.version = ARX_POSE_TRACE_VERSION;
+        h.recordSize = sizeof(ARXPoseTraceRecord);
+        h.startTime = arx_monotonic_ns();
+        if (fwrite(&h, sizeof(h), 1, mFile) != 1) {
+            close();
+            return false;
+        }
+        return true;
+    }
+
+    void close()
+    {
+        if (mFile != NULL) {
+            fclose(mFile);
+            mFile = NULL;
+        }
+        mCount = 0;
+    }
+
+    inline bool isOpen() const { return mFile != NULL; }
+    inline uint32_t count() const { return mCount; }
+
+    bool write(uint64_t timestamp, const ARXCameraPoseMatrix *pose)
+    {
+        ARXPoseTraceRecord r;
+        memset(&r, 0, sizeof(r));
+        r.type = POSE_TRACE_CAMERA;
+        r.status = pose->status;
+        memcpy(r.matrix, pose->matrix, sizeof(pose->matrix));
+        return append(timestamp, r);
+    }
+
+    bool write(uint64_t timestamp, const ARXProjectorPose *pose)
+    {
+        ARXPoseTraceRecord r;
+        memset(&r, 0, sizeof(r));
+        r.type = POSE_TRACE_PROJECTOR;
+        r.status = pose->status;
+        memcpy(r.matrix, pose->view_matrix, sizeof(pose->view_matrix));
+        r.pointerX = pose->pointerX;
+        r.pointerY = pose->pointerY;
+        return append(timestamp, r);
+    }
+
+private:
+    bool append(uint64_t timestamp, ARXPoseTraceRecord& r)
+    {
+        if (mFile == NULL) {
+            return false;
+        }
+        r.time = arx_monotonic_ns();
+        r.timestamp = timestamp;
+        if (fwrite(&r, sizeof(r), 1, mFile) != 1) {
+            close();
+            return false;
+        }
+        mCount++;
+        return true;
+    }
+
+    FILE *mFile;
+    uint32_t mCount;
+};
+
+}
+#endif //_ARXPOSETRACE_H_
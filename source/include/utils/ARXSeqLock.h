@@ -0,0 +1,103 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#ifndef _ARXSEQLOCK_H_
+#define _ARXSEQLOCK_H_
+
+#include <stdint.h>
+#include <string.h>
+#include <sched.h>
+
+namespace tiarx {
+
+/*!
+ * \brief Single writer, multiple reader slot holding the latest value of T.
+ *
+ * The writer never blocks. Readers never take a lock either: they copy the
+ * value and retry if the writer updated it in the meantime, so a read never
+ * returns a mix of two values. T must be a plain structure whose size is a
+ * multiple of 4 bytes.
+ */
+template <typename T>
+class ARXSeqLock
+{
+public:
+    ARXSeqLock()
+    {
+        mSeq = 0;
+        memset((void *)mWords, 0, sizeof(mWords));
+    }
+
+    /*!
+     * Publishes a new value. Must only be called from one thread at a time.
+     */
+    void write(const T& value)
+    {
+        const uint32_t *pSrc = reinterpret_cast<const uint32_t *>(&value);
+        mSeq = mSeq + 1;
+        __sync_synchronize();
+        for (uint32_t i = 0; i < NUM_WORDS; i++) {
+            mWords[i] = pSrc[i];
+        }
+        __sync_synchronize();
+        mSeq = mSeq + 1;
+    }
+
+    /*!
+     * Copies the latest value published.
+     * @return the number of values published so far, 0 if pValue was left untouched.
+     */
+    uint32_t read(T *pValue) const
+    {
+        uint32_t *pDst = reinterpret_cast<uint32_t *>(pValue);
+        uint32_t spins = 0;
+        for (;;) {
+            uint32_t seq = mSeq;
+            if (seq == 0) {
+                return 0;
+            }
+            if ((seq & 1) == 0) {
+                __sync_synchronize();
+                for (uint32_t i = 0; i < NUM_WORDS; i++) {
+                    pDst[i] = mWords[i];
+                }
+                __sync_synchronize();
+                if (mSeq == seq) {
+                    return seq/2;
+                }
+            }
+            // The writer may have been preempted in the middle of an update
+            if (++spins > MAX_SPINS) {
+                sched_yield();
+                spins = 0;
+            }
+        }
+    }
+
+private:
+    enum {
+        NUM_WORDS = sizeof(T)/sizeof(uint32_t),
+        MAX_SPINS = 100,
+    };
+    typedef char size_must_be_a_multiple_of_4[(sizeof(T) % sizeof(uint32_t) == 0) ? 1 : -1];
+
+    // Odd while the writer is updating mWords
+    volatile uint32_t mSeq;
+    volatile uint32_t mWords[NUM_WORDS];
+};
+
+}
+#endif //_ARXSEQLOCK_H_
@@ -0,0 +1,332 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <time.h>
+#include <pthread.h>
+
+#include <buffer/ImageBufferMgr.h>
+#include <buffer/ImageBuffer.h>
+#include <arx/ARXBufferTypes.h>
+#include <dvp/dvp_api.h>
+#include <dvp/VisionCam.h>
+#include <binder/ProcessState.h>
+#include <DisplaySurface.h>
+
+using namespace tiarx;
+using namespace android;
+
+static const uint32_t NUM_BUFFERS = IBufferMgr::MAX_BUFFERS;
+static const uint32_t WIDTH = 640;
+static const uint32_t HEIGHT = 480;
+static const uint64_t FRAME_NS = 16666667ULL; // 60 fps
+static const uint64_t FREE_TS = 0xFFFFFFFFFFFFFFFFULL;
+
+static uint64_t now_ns()
+{
+    struct timespec ts;
+    clock_gettime(CLOCK_MONOTONIC, &ts);
+    return (uint64_t)ts.tv_sec*1000000000ULL + ts.tv_nsec;
+}
+
+static uint64_t sClockCost;
+
+//Stands in for the engine lock ReceiveImage holds around readyOnMatch
+static pthread_mutex_t sEngineLock = PTHREAD_MUTEX_INITIALIZER;
+
+/*!
+ * Time the engine lock is held for each call, less the cost of reading the clock.
+ */
+struct CallTimes {
+    uint32_t *ns;
+    uint32_t count;
+
+    void init(uint32_t max) { ns = new uint32_t[max]; count = 0; }
+    void deinit() { delete [] ns; }
+    void add(uint64_t start, uint64_t end)
+    {
+        uint64_t d = end - start;
+        ns[count++] = (uint32_t)(d > sClockCost ? d - sClockCost : 0);
+    }
+    static int compare(const void *a, const void *b)
+    {
+        uint32_t x = *(const uint32_t *)a, y = *(const uint32_t *)b;
+        return x < y ? -1 : (x > y ? 1 : 0);
+    }
+    double mean() const
+    {
+        uint64_t sum = 0;
+        for (uint32_t i = 0; i < count; i++) {
+            sum += ns[i];
+        }
+        return count > 0 ? (double)sum/count : 0.0;
+    }
+    uint32_t percentile(uint32_t p)
+    {
+        if (count == 0) {
+            return 0;
+        }
+        qsort(ns, count, sizeof(uint32_t), compare);
+        return ns[(uint64_t)(count - 1)*p/100];
+    }
+};
+
+struct Result {
+    CallTimes ready;
+    CallTimes render;
+    uint32_t starved;
+    uint32_t rendered;
+    uint32_t dropped;
+    uint32_t missed;
+    uint32_t staleHeld;
+};
+
+/*!
+ * Counts the buffers still held for render(timestamp) up to timestamp, and
+ * whether the buffer of timestamp itself is held.
+ */
+static uint32_t countHeld(ImageBufferMgr *mgr, uint64_t timestamp, bool *found)
+{
+    uint32_t held = 0;
+    *found = false;
+    for (uint32_t i = 0; i < NUM_BUFFERS; i++) {
+        sp<ImageBuffer> b;
+        if (mgr->getImage(i, &b) != NOERROR || b == NULL) {
+            continue;
+        }
+        uint64_t ts = b->timestamp();
+        if (ts != FREE_TS && ts <= timestamp) {
+            held++;
+            if (ts == timestamp) {
+                *found = true;
+            }
+        }
+    }
+    return held;
+}
+
+/*!
+ * The lookup readyOnMatch did before the buffers were indexed, asking each
+ * buffer in turn whether the frame is its own.
+ */
+static arxstatus_t linearReadyOnMatch(ImageBufferMgr *mgr, VisionCamFrame *frame)
+{
+    arxstatus_t status = INVALID_ARGUMENT;
+    for (uint32_t i = 0; i < NUM_BUFFERS; i++) {
+        sp<ImageBuffer> b;
+        if (mgr->getImage(i, &b) != NOERROR || b == NULL) {
+            continue;
+        }
+        status = b->readyOnMatch(frame);
+        if (status == NOERROR) {
+            return NOERROR;
+        }
+    }
+    return status;
+}
+
+/*!
+ * render(timestamp) before the ready order was kept, which scans the buffers
+ * and returns at the first one matching or older, dropping at most one
+ * stale buffer per call.
+ */
+static arxstatus_t linearRender(ImageBufferMgr *mgr, uint64_t timestamp)
+{
+    for (uint32_t i = 0; i < NUM_BUFFERS; i++) {
+        sp<ImageBuffer> b;
+        if (mgr->getImage(i, &b) != NOERROR || b == NULL) {
+            continue;
+        }
+        if (b->timestamp() == timestamp) {
+            return mgr->render(i);
+        } else if (b->timestamp() < timestamp) {
+            return mgr->release(i);
+        }
+    }
+    return NOERROR;
+}
+
+/*!
+ * Ends the hold of every buffer the previous run left held, so that the
+ * next one starts with all the buffers free.
+ */
+static void releaseHeld(ImageBufferMgr *mgr)
+{
+    for (uint32_t i = 0; i < NUM_BUFFERS; i++) {
+        sp<ImageBuffer> b;
+        if (mgr->getImage(i, &b) == NOERROR && b != NULL && b->timestamp() != FREE_TS) {
+            mgr->release(i);
+        }
+    }
+}
+
+/*!
+ * Plays the camera and a client of a held stream against ImageBufferMgr,
+ * as the engine does with BUFF_CAMOUT bound to a surface. Each frame takes
+ * the next free buffer and is made ready by readyOnMatch. The client renders
+ * the frame two frames back and misses every fourth one, so stale buffers
+ * pile up unless render(timestamp) drops them. The window hands the
+ * displayed buffers back through freeOnMatch. With linear set the previous
+ * lookups are used instead of those of ImageBufferMgr.
+ */
+static arxstatus_t run(ImageBufferMgr *mgr, uint32_t frames, bool linear, Result *r)
+{
+    VisionCamFrame camFrames[NUM_BUFFERS];
+    DVP_Image_t images[NUM_BUFFERS];
+    memset(camFrames, 0, sizeof(camFrames));
+
+    for (uint32_t n = 0; n < frames; n++) {
+        uint64_t ts = (n + 1)*FRAME_NS;
+        ImageBuffer *b = mgr->nextFree();
+        if (b == NULL) {
+            r->starved++;
+        } else {
+            uint32_t idx = b->index();
+            b->copyInfo(&images[idx]);
+            camFrames[idx].mFrameBuff = &images[idx];
+            camFrames[idx].mTimestamp = ts;
+            pthread_mutex_lock(&sEngineLock);
+            uint64_t start = now_ns();
+            arxstatus_t status = linear ? linearReadyOnMatch(mgr, &camFrames[idx]) : mgr->readyOnMatch(&camFrames[idx]);
+            r->ready.add(start, now_ns());
+            pthread_mutex_unlock(&sEngineLock);
+            if (status != NOERROR) {
+                printf("frame %u: readyOnMatch failed (0x%x)\n", n, status);
+                return status;
+            }
+        }
+
+        if (n >= 2 && (n % 4) != 3) {
+            uint64_t target = ts - 2*FRAME_NS;
+            bool found = false;
+            uint32_t held = countHeld(mgr, target, &found);
+
+            pthread_mutex_lock(&sEngineLock);
+            uint64_t start = now_ns();
+            arxstatus_t status = linear ? linearRender(mgr, target) : mgr->render(target);
+            r->render.add(start, now_ns());
+            pthread_mutex_unlock(&sEngineLock);
+            if (status != NOERROR) {
+                printf("frame %u: render failed (0x%x)\n", n, status);
+                return status;
+            }
+
+            if (found) {
+                r->rendered++;
+                r->dropped += held - 1;
+            } else {
+                r->missed++;
+                r->dropped += held;
+            }
+            //Nothing up to the timestamp rendered may be left held
+            r->staleHeld += countHeld(mgr, target, &found);
+        }
+    }
+    return NOERROR;
+}
+
+static void print(const char *name, CallTimes *linear, CallTimes *indexed)
+{
+    double lm = linear->mean();
+    double im = indexed->mean();
+    uint32_t l99 = linear->percentile(99);
+    uint32_t i99 = indexed->percentile(99);
+    printf("%-13s mean %8.1f ns %8.1f ns  p99 %7u ns %7u ns  mean reduced %5.1f%%\n",
+           name, lm, im, l99, i99, lm > 0.0 ? 100.0*(lm - im)/lm : 0.0);
+}
+
+static void print(const char *name, Result *r)
+{
+    printf("%-13s rendered %u, dropped %u, missed %u, stale held %u, frames starved %u\n",
+           name, r->rendered, r->dropped, r->missed, r->staleHeld, r->starved);
+}
+
+int main(int argc, char *argv[])
+{
+    uint32_t frames = (argc > 1) ? atoi(argv[1]) : 60*60;
+
+    ProcessState::self()->startThreadPool();
+
+    sClockCost = 0xFFFFFFFF;
+    for (uint32_t i = 0; i < 1000; i++) {
+        uint64_t start = now_ns();
+        uint64_t d = now_ns() - start;
+        if (d < sClockCost) {
+            sClockCost = d;
+        }
+    }
+
+    DisplaySurface *surface = new DisplaySurface(WIDTH, HEIGHT);
+    if (surface->init() != NOERROR) {
+        printf("failed initializing the display surface\n");
+        delete surface;
+        return 1;
+    }
+
+    DVP_Handle dvp = DVP_KernelGraph_Init();
+    sp<ImageBufferMgr> mgr = new ImageBufferMgr(BUFF_CAMOUT, WIDTH, HEIGHT, FOURCC_NV12,
+                                                DVP_MTYPE_DISPLAY_2DTILED, NUM_BUFFERS, false);
+    Result linear, indexed;
+    memset(&linear, 0, sizeof(linear));
+    memset(&indexed, 0, sizeof(indexed));
+    linear.ready.init(frames);
+    linear.render.init(frames);
+    indexed.ready.init(frames);
+    indexed.render.init(frames);
+
+    arxstatus_t status = mgr->bindSurface(surface->getSurface());
+    if (status == NOERROR) {
+        status = mgr->hold(true);
+    }
+    if (status == NOERROR) {
+        //The camera would not wait for a buffer
+        status = mgr->setPolicy(BUFF_POLICY_DROP_OLDEST);
+    }
+    if (status == NOERROR) {
+        status = mgr->allocate(dvp);
+    }
+    //Both runs use the same buffers, the linear one leaves stale buffers held
+    if (status == NOERROR) {
+        status = run(mgr.get(), frames, true, &linear);
+        releaseHeld(mgr.get());
+    }
+    if (status == NOERROR) {
+        status = run(mgr.get(), frames, false, &indexed);
+    }
+    mgr->free();
+
+    printf("%u buffers, %u frames at 60 fps, engine lock held per call, linear vs indexed\n", NUM_BUFFERS, frames);
+    print("readyOnMatch", &linear.ready, &indexed.ready);
+    print("render(ts)", &linear.render, &indexed.render);
+    print("linear", &linear);
+    print("indexed", &indexed);
+
+    //Every held frame is found and rendered, the older ones dropped in the
+    //same call, and the camera never runs out of buffers
+    bool ok = status == NOERROR && indexed.missed == 0 && indexed.staleHeld == 0 && indexed.starved == 0;
+    printf("%s\n", ok ? "PASSED" : "FAILED");
+
+    linear.ready.deinit();
+    linear.render.deinit();
+    indexed.ready.deinit();
+    indexed.render.deinit();
+    mgr.clear();
+    DVP_KernelGraph_Deinit(dvp);
+    delete surface;
+    return ok ? 0 : 1;
+}
@@ -19,6 +19,8 @@
 #include <arx/ARXBufferTypes.h>
 #include <arx/ARXFlatBuffer.h>
 #include <arx/ARXFlatBufferMgr.h>
+#include <arx/ARXImageBuffer.h>
+#include <arx/ARXImageBufferMgr.h>
 
 #include <ARXImgRenderer.h>
 #include <FDRenderer.h>
@@ -26,6 +28,9 @@
 #include <ARXClientTest.h>
 #include <DVPTestGraph.h>
 
+#include <pthread.h>
+#include <unistd.h>
+
 namespace tiarx {
 
 ARXClientTest::ARXClientTest()
@@ -176,6 +181,11 @@ void ARXClientTest::waitToComplete()
     event_wait(&mDoneEvt, timeout);
 }
 
+arxstatus_t ARXClientTest::verify()
+{
+    return NOERROR;
+}
+
 
 //=============================================================================
 ARXMainClientTest::ARXMainClientTest()
@@ -457,4 +467,347 @@ arxstatus_t ARXDVPTest::init()
     return NOERROR;
 }
 
+//=============================================================================
+/*!
+ * One more client of the daemon, with its own ARAccelerator instance, which
+ * takes a camera stream and the face detect stream. A slow client hands
+ * the buffers to a thread which releases them after a delay. A rendering
+ * client ends the hold of each image it receives with render(timestamp).
+ */
+class SimulatedClient : public ARXImageBufferListener, public ARXFlatBufferListener
+{
+public:
+    SimulatedClient(uint32_t id, uint32_t delayMs, uint32_t bufId, bool renders)
+    {
+        mId = id;
+        mDelayMs = delayMs;
+        mBufId = bufId;
+        mRenders = renders;
+        mArx = NULL;
+        mImgMgr = NULL;
+        mStopping = false;
+        mThreadStarted = false;
+        mHead = 0;
+        mNumPending = 0;
+        mImages = 0;
+        mFaces = 0;
+        mOutOfOrder = 0;
+        mReleaseErrors = 0;
+        mRenderErrors = 0;
+        mLastImageTs = 0;
+        mLastFaceTs = 0;
+        pthread_mutex_init(&mLock, NULL);
+        pthread_cond_init(&mCond, NULL);
+    }
+
+    ~SimulatedClient()
+    {
+        pthread_mutex_lock(&mLock);
+        mStopping = true;
+        pthread_cond_signal(&mCond);
+        pthread_mutex_unlock(&mLock);
+        if (mThreadStarted) {
+            pthread_join(mThread, NULL);
+        }
+        //Late callbacks release right away once stopping
+        while (mNumPending > 0) {
+            releaseBuffer(mPending[mHead]);
+            mHead = (mHead + 1) % MAX_PENDING;
+            mNumPending--;
+        }
+
+        if (mArx) {
+            mArx->destroy();
+        }
+        pthread_cond_destroy(&mCond);
+        pthread_mutex_destroy(&mLock);
+    }
+
+    arxstatus_t init(ARXPropertyListener *listener, uint32_t maxHeld)
+    {
+        mArx = ARAccelerator::create(listener, false);
+        if (mArx == NULL) {
+            ARX_PRINT(ARX_ZONE_ERROR, "client %u: failed to connect to the daemon!", mId);
+            return FAILED;
+        }
+
+        mImgMgr = mArx->getImageBufferMgr(mBufId);
+        ARXFlatBufferMgr *fdMgr = mArx->getFlatBufferMgr(BUFF_FACEDETECT);
+        if (mImgMgr == NULL || fdMgr == NULL) {
+            ARX_PRINT(ARX_ZONE_ERROR, "client %u: failed to obtain the streams!", mId);
+            return FAILED;
+        }
+
+        arxstatus_t ret = mImgMgr->registerClient(this);
+        if (ret == NOERROR) {
+            ret = fdMgr->registerClient(this);
+        }
+        if (ret == NOERROR && maxHeld > 0) {
+            ret = mImgMgr->setMaxHeld(maxHeld);
+            if (ret == NOERROR) {
+                ret = fdMgr->setMaxHeld(maxHeld);
+            }
+        }
+        if (ret != NOERROR) {
+            ARX_PRINT(ARX_ZONE_ERROR, "client %u: failed to register with the streams! (0x%x)", mId, ret);
+            return ret;
+        }
+
+        if (mDelayMs > 0) {
+            if (pthread_create(&mThread, NULL, releaseThread, this) != 0) {
+                ARX_PRINT(ARX_ZONE_ERROR, "client %u: failed to create the release thread!", mId);
+                return FAILED;
+            }
+            mThreadStarted = true;
+        }
+        return NOERROR;
+    }
+
+    arxstatus_t start()
+    {
+        return mArx->setProperty(PROP_ENGINE_STATE, ENGINE_STATE_START);
+    }
+
+    void onBufferChanged(ARXImageBuffer *pImage)
+    {
+        //Only the hold ends here, the others still get to release the image
+        if (mRenders && mImgMgr->render(pImage->timestamp()) != NOERROR) {
+            pthread_mutex_lock(&mLock);
+            mRenderErrors++;
+            pthread_mutex_unlock(&mLock);
+        }
+        received(pImage, &mImages, &mLastImageTs);
+    }
+
+    void onBufferChanged(ARXFlatBuffer *pBuffer)
+    {
+        received(pBuffer, &mFaces, &mLastFaceTs);
+    }
+
+    inline bool slow() const { return mDelayMs > 0; }
+    inline bool renders() const { return mRenders; }
+    inline uint32_t images() const { return mImages; }
+    inline uint32_t faces() const { return mFaces; }
+    inline uint32_t outOfOrder() const { return mOutOfOrder; }
+    inline uint32_t releaseErrors() const { return mReleaseErrors; }
+    inline uint32_t renderErrors() const { return mRenderErrors; }
+    inline uint32_t id() const { return mId; }
+
+private:
+    static const uint32_t MAX_PENDING = 32;
+
+    void releaseBuffer(ARXBuffer *pBuffer)
+    {
+        if (pBuffer->release() != NOERROR) {
+            pthread_mutex_lock(&mLock);
+            mReleaseErrors++;
+            pthread_mutex_unlock(&mLock);
+        }
+    }
+
+    void received(ARXBuffer *pBuffer, uint32_t *count, uint64_t *lastTs)
+    {
+        pthread_mutex_lock(&mLock);
+        (*count)++;
+        if (pBuffer->timestamp() < *lastTs) {
+            ARX_PRINT(ARX_ZONE_WARNING, "client %u: buffer %u ts:"FMT_UINT64_T" is before ts:"FMT_UINT64_T"!",
+                    mId, pBuffer->id(), pBuffer->timestamp(), *lastTs);
+            mOutOfOrder++;
+        }
+        *lastTs = pBuffer->timestamp();
+
+        if (mDelayMs == 0 || mStopping || mNumPending == MAX_PENDING) {
+            pthread_mutex_unlock(&mLock);
+            releaseBuffer(pBuffer);
+            return;
+        }
+        mPending[(mHead + mNumPending) % MAX_PENDING] = pBuffer;
+        mNumPending++;
+        pthread_cond_signal(&mCond);
+        pthread_mutex_unlock(&mLock);
+    }
+
+    static void *releaseThread(void *arg)
+    {
+        SimulatedClient *client = reinterpret_cast<SimulatedClient *>(arg);
+        pthread_mutex_lock(&client->mLock);
+        while (!client->mStopping) {
+            if (client->mNumPending == 0) {
+                pthread_cond_wait(&client->mCond, &client->mLock);
+                continue;
+            }
+            ARXBuffer *pBuffer = client->mPending[client->mHead];
+            client->mHead = (client->mHead + 1) % MAX_PENDING;
+            client->mNumPending--;
+            pthread_mutex_unlock(&client->mLock);
+
+            usleep(client->mDelayMs*1000);
+            client->releaseBuffer(pBuffer);
+
+            pthread_mutex_lock(&client->mLock);
+        }
+        pthread_mutex_unlock(&client->mLock);
+        return NULL;
+    }
+
+    uint32_t mId;
+    uint32_t mDelayMs;
+    uint32_t mBufId;
+    bool mRenders;
+    ARAccelerator *mArx;
+    ARXImageBufferMgr *mImgMgr;
+
+    pthread_t mThread;
+    bool mThreadStarted;
+    pthread_mutex_t mLock;
+    pthread_cond_t mCond;
+    bool mStopping;
+    ARXBuffer *mPending[MAX_PENDING];
+    uint32_t mHead;
+    uint32_t mNumPending;
+
+    uint32_t mImages;
+    uint32_t mFaces;
+    uint32_t mOutOfOrder;
+    uint32_t mReleaseErrors;
+    uint32_t mRenderErrors;
+    uint64_t mLastImageTs;
+    uint64_t mLastFaceTs;
+};
+
+ARXMultiClientTest::ARXMultiClientTest()
+{
+    for (uint32_t i = 0; i < MAX_CLIENTS; i++) {
+        mClients[i] = NULL;
+    }
+    mNumClients = 3;
+    mSlowDelayMs = 200;
+    mMaxHeld = 0;
+    mHeld = false_e;
+}
+
+ARXMultiClientTest::~ARXMultiClientTest()
+{
+    //Each client withdraws its start request, the engine runs for the others
+    for (uint32_t i = 0; i < MAX_CLIENTS; i++) {
+        delete mClients[i];
+    }
+
+    if (mArx) {
+        mArx->destroy();
+        mArx = NULL;
+    }
+}
+
+arxstatus_t ARXMultiClientTest::init()
+{
+    arxstatus_t ret = ARXClientTest::init();
+    if (ret != NOERROR) {
+        return ret;
+    }
+
+    //On a held stream the first client renders, the others only release
+    uint32_t bufId = BUFF_CAMOUT2;
+    if (mHeld) {
+        bufId = BUFF_CAMOUT;
+        ret = mArx->getImageBufferMgr(bufId)->hold(true);
+        if (ret != NOERROR) {
+            ARX_PRINT(ARX_ZONE_ERROR, "Failed to hold the camera stream! (0x%x)", ret);
+            return ret;
+        }
+    }
+
+    for (int i = 0; i < mNumClients; i++) {
+        //The last client is the slow one
+        bool slow = mNumClients > 1 && i == mNumClients - 1;
+        mClients[i] = new SimulatedClient(i, slow ? mSlowDelayMs : 0, bufId, mHeld && i == 0);
+        if (mClients[i] == NULL) {
+            ARX_PRINT(ARX_ZONE_ERROR, "Failed to allocate simulated client!");
+            return NOMEMORY;
+        }
+        ret = mClients[i]->init(mPropL, slow ? mMaxHeld : 0);
+        if (ret != NOERROR) {
+            return ret;
+        }
+    }
+
+    return NOERROR;
+}
+
+arxstatus_t ARXMultiClientTest::start()
+{
+    arxstatus_t ret = ARXClientTest::start();
+    for (int i = 0; i < mNumClients && ret == NOERROR; i++) {
+        ret = mClients[i]->start();
+    }
+    return ret;
+}
+
+arxstatus_t ARXMultiClientTest::parseOptions(int argc, char *argv[])
+{
+    arxstatus_t ret = ARXClientTest::parseOptions(argc, argv);
+    if (ret != NOERROR) {
+        return ret;
+    }
+
+    option_t opts[] = {
+        {OPTION_TYPE_INT, &mNumClients, sizeof(int), "-nc", "--clients", "Number of simulated clients"},
+        {OPTION_TYPE_INT, &mSlowDelayMs, sizeof(int), "-slow", "--slow-delay", "Release delay of the last client in ms"},
+        {OPTION_TYPE_INT, &mMaxHeld, sizeof(int), "-mh", "--max-held", "Buffers the slow client may hold, 0 for the default"},
+        {OPTION_TYPE_BOOL, &mHeld, sizeof(bool_e), "-held", "--held", "Clients share the held camera stream, the first one renders it"},
+    };
+    option_process(argc, argv, opts, dimof(opts));
+
+    if (mNumClients < 1 || mNumClients > (int)MAX_CLIENTS) {
+        ARX_PRINT(ARX_ZONE_ERROR, "Number of clients must be between 1 and %u!", MAX_CLIENTS);
+        return INVALID_ARGUMENT;
+    }
+    if (mHeld && mNumClients < 2) {
+        ARX_PRINT(ARX_ZONE_ERROR, "A held stream needs at least 2 clients!");
+        return INVALID_ARGUMENT;
+    }
+
+    ARX_PRINT(ARX_ZONE_ALWAYS, "Clients:%d, Slow Delay:%d ms, Max Held:%d, Held:%d",
+            mNumClients, mSlowDelayMs, mMaxHeld, mHeld);
+    return NOERROR;
+}
+
+arxstatus_t ARXMultiClientTest::verify()
+{
+    uint32_t maxImages = 0;
+    uint32_t maxFaces = 0;
+    for (int i = 0; i < mNumClients; i++) {
+        SimulatedClient *c = mClients[i];
+        ARX_PRINT(ARX_ZONE_ALWAYS, "client %u%s%s: %u images, %u face detect, %u out of order, %u failed releases, %u failed renders",
+                c->id(), c->slow() ? " (slow)" : "", c->renders() ? " (renders)" : "", c->images(), c->faces(),
+                c->outOfOrder(), c->releaseErrors(), c->renderErrors());
+        if (!c->slow()) {
+            maxImages = c->images() > maxImages ? c->images() : maxImages;
+            maxFaces = c->faces() > maxFaces ? c->faces() : maxFaces;
+        }
+    }
+
+    //The fast clients must not be held back by the slow one, nor by each other
+    arxstatus_t ret = NOERROR;
+    for (int i = 0; i < mNumClients; i++) {
+        SimulatedClient *c = mClients[i];
+        if (c->outOfOrder() > 0) {
+            ARX_PRINT(ARX_ZONE_ERROR, "client %u received buffers out of order!", c->id());
+            ret = FAILED;
+        }
+        //A render must not take the reference of another client
+        if (c->releaseErrors() > 0 || c->renderErrors() > 0) {
+            ARX_PRINT(ARX_ZONE_ERROR, "client %u failed to release or render its buffers!", c->id());
+            ret = FAILED;
+        }
+        if (!c->slow() && (c->images() == 0 || c->images() < maxImages*8/10 || c->faces() < maxFaces*8/10)) {
+            ARX_PRINT(ARX_ZONE_ERROR, "client %u was starved!", c->id());
+            ret = FAILED;
+        }
+    }
+
+    ARX_PRINT(ARX_ZONE_ALWAYS, "Multiple client test %s", ret == NOERROR ? "PASSED" : "FAILED");
+    return ret;
+}
+
 }
@@ -55,6 +55,7 @@ public:
     virtual arxstatus_t start();
     virtual arxstatus_t parseOptions(int argc, char *argv[]);
     void waitToComplete();
+    virtual arxstatus_t verify();
 
 protected:
     virtual arxstatus_t loadEngine();
@@ -140,5 +141,29 @@ private:
     DVPTestGraph *mGraph;
 };
 
+//=============================================================================
+class SimulatedClient;
+class ARXMultiClientTest : public ARXClientTest
+{
+public:
+    /** The daemon takes 8 clients, one is used by the main test instance */
+    static const uint32_t MAX_CLIENTS = 7;
+
+    ARXMultiClientTest();
+    ~ARXMultiClientTest();
+
+    arxstatus_t init();
+    arxstatus_t start();
+    arxstatus_t parseOptions(int argc, char *argv[]);
+    arxstatus_t verify();
+
+private:
+    SimulatedClient *mClients[MAX_CLIENTS];
+    int mNumClients;
+    int mSlowDelayMs;
+    int mMaxHeld;
+    bool_e mHeld;
+};
+
 
 }
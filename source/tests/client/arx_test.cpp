@@ -27,6 +27,7 @@ enum {
     ARX_MAIN_TEST = 0,
     ARX_CAMPOSE_TEST,
     ARX_DVP_TEST,
+    ARX_MULTICLIENT_TEST,
 };
 
 int testCase = ARX_MAIN_TEST;
@@ -52,6 +53,9 @@ int main(int argc, char *argv[])
         case ARX_DVP_TEST:
             arxTest = new ARXDVPTest();
             break;
+        case ARX_MULTICLIENT_TEST:
+            arxTest = new ARXMultiClientTest();
+            break;
         case ARX_MAIN_TEST:
         default:
             arxTest = new ARXMainClientTest();
@@ -83,5 +87,5 @@ int main(int argc, char *argv[])
     arxTest->waitToComplete();
     ARX_PRINT(ARX_ZONE_ALWAYS, "Finished.\n");
 
-    return 0;
+    return arxTest->verify();
 }
@@ -0,0 +1,190 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <time.h>
+
+#include <utils/ARXConvert.h>
+
+using namespace tiarx;
+
+/*!
+ * The loop ARXStreams used to fill its bitmap with, kept as the reference.
+ */
+static void reference_gray8(const uint8_t *pSrc, uint32_t srcStride,
+                            uint8_t *pDst, uint32_t dstStride,
+                            uint32_t w, uint32_t h)
+{
+    for (uint32_t i = 0; i < h; i++) {
+        for (uint32_t j = 0, k = 0; j < w; j++, k += 4) {
+            pDst[k] = pSrc[j]; //R
+            pDst[k+1] = pSrc[j]; //G
+            pDst[k+2] = pSrc[j]; //B
+            pDst[k+3] = 255; //A
+        }
+        pSrc += srcStride;
+        pDst += dstStride;
+    }
+}
+
+static void reference_gray16(const uint16_t *pSrc, uint32_t srcStride,
+                             uint8_t *pDst, uint32_t dstStride,
+                             uint32_t w, uint32_t h, int32_t min, int32_t max)
+{
+    const uint8_t *pRow = (const uint8_t *)pSrc;
+    int64_t scale = ((int64_t)255 << 16) / (max - min);
+    for (uint32_t i = 0; i < h; i++) {
+        const int16_t *p = (const int16_t *)pRow;
+        for (uint32_t j = 0, k = 0; j < w; j++, k += 4) {
+            int32_t v = p[j] - min;
+            int32_t g = (v <= 0) ? 0 : (int32_t)((v * scale) >> 16);
+            if (g > 255) g = 255;
+            pDst[k] = pDst[k+1] = pDst[k+2] = (uint8_t)g;
+            pDst[k+3] = 255;
+        }
+        pRow += srcStride;
+        pDst += dstStride;
+    }
+}
+
+static double now_ms()
+{
+    struct timespec ts;
+    clock_gettime(CLOCK_MONOTONIC, &ts);
+    return ts.tv_sec*1000.0 + ts.tv_nsec/1000000.0;
+}
+
+static bool same(const uint8_t *a, const uint8_t *b, uint32_t stride, uint32_t w, uint32_t h)
+{
+    for (uint32_t y = 0; y < h; y++) {
+        if (memcmp(a + y*stride, b + y*stride, w*4) != 0) {
+            return false;
+        }
+    }
+    return true;
+}
+
+static bool bench(uint32_t w, uint32_t h, uint32_t iterations)
+{
+    // Odd strides as the ARX buffers are usually padded
+    uint32_t srcStride = w + 32;
+    uint32_t src16Stride = w*2 + 64;
+    uint32_t dstStride = w*4;
+    uint8_t *pSrc = (uint8_t *)malloc(srcStride*h);
+    uint16_t *pSrc16 = (uint16_t *)malloc(src16Stride*h);
+    uint8_t *pRef = (uint8_t *)malloc(dstStride*h);
+    uint8_t *pDst = (uint8_t *)malloc(dstStride*h);
+    bool ok = true;
+
+    srand(w*h);
+    for (uint32_t i = 0; i < srcStride*h; i++) {
+        pSrc[i] = (uint8_t)rand();
+    }
+    for (uint32_t i = 0; i < src16Stride*h/2; i++) {
+        pSrc16[i] = (uint16_t)((rand() % 4096) - 1024);
+    }
+
+    double t = now_ms();
+    for (uint32_t i = 0; i < iterations; i++) {
+        reference_gray8(pSrc, srcStride, pRef, dstStride, w, h);
+    }
+    double refMs = (now_ms() - t)/iterations;
+    printf("%4ux%-4u gray8  reference        %7.3f ms\n", w, h, refMs);
+
+    for (uint32_t threads = 0; threads <= 3; threads++) {
+        ARXConverter conv(threads, 64*1024);
+        memset(pDst, 0, dstStride*h);
+        t = now_ms();
+        for (uint32_t i = 0; i < iterations; i++) {
+            conv.gray8ToRGBA(pSrc, srcStride, pDst, dstStride, w, h);
+        }
+        double ms = (now_ms() - t)/iterations;
+        bool match = same(pRef, pDst, dstStride, w, h);
+        ok = ok && match;
+        printf("%4ux%-4u gray8  %u worker(s)      %7.3f ms  x%.1f %s\n",
+               w, h, threads, ms, refMs/ms, match ? "" : "MISMATCH");
+    }
+
+    ARXNormalization norm;
+    norm.mode = NORM_RANGE;
+    norm.shift = 0;
+    norm.isSigned = true;
+    int32_t lo = 32767, hi = -32768;
+    for (uint32_t y = 0; y < h; y++) {
+        const int16_t *p = (const int16_t *)((uint8_t *)pSrc16 + y*src16Stride);
+        for (uint32_t x = 0; x < w; x++) {
+            if (p[x] < lo) lo = p[x];
+            if (p[x] > hi) hi = p[x];
+        }
+    }
+    norm.min = lo;
+    norm.max = hi;
+    t = now_ms();
+    for (uint32_t i = 0; i < iterations; i++) {
+        reference_gray16(pSrc16, src16Stride, pRef, dstStride, w, h, lo, hi);
+    }
+    refMs = (now_ms() - t)/iterations;
+    printf("%4ux%-4u gray16 reference        %7.3f ms\n", w, h, refMs);
+
+    for (uint32_t threads = 0; threads <= 3; threads++) {
+        ARXConverter conv(threads, 64*1024);
+        memset(pDst, 0, dstStride*h);
+        t = now_ms();
+        for (uint32_t i = 0; i < iterations; i++) {
+            conv.gray16ToRGBA(pSrc16, src16Stride, pDst, dstStride, w, h, norm);
+        }
+        double ms = (now_ms() - t)/iterations;
+        bool match = same(pRef, pDst, dstStride, w, h);
+        ok = ok && match;
+        printf("%4ux%-4u gray16 %u worker(s)      %7.3f ms  x%.1f %s\n",
+               w, h, threads, ms, refMs/ms, match ? "" : "MISMATCH");
+    }
+
+    // Same range found by the converter itself, includes the min/max pass
+    norm.mode = NORM_AUTO;
+    ARXConverter conv(0);
+    memset(pDst, 0, dstStride*h);
+    t = now_ms();
+    for (uint32_t i = 0; i < iterations; i++) {
+        conv.gray16ToRGBA(pSrc16, src16Stride, pDst, dstStride, w, h, norm);
+    }
+    double ms = (now_ms() - t)/iterations;
+    bool match = same(pRef, pDst, dstStride, w, h);
+    ok = ok && match;
+    printf("%4ux%-4u gray16 auto range       %7.3f ms  x%.1f %s\n",
+           w, h, ms, refMs/ms, match ? "" : "MISMATCH");
+
+    free(pSrc);
+    free(pSrc16);
+    free(pRef);
+    free(pDst);
+    return ok;
+}
+
+int main(int argc, char *argv[])
+{
+    uint32_t iterations = (argc > 1) ? atoi(argv[1]) : 100;
+    bool ok = true;
+    ok = bench(320, 240, iterations) && ok;
+    ok = bench(640, 480, iterations) && ok;
+    ok = bench(1280, 720, iterations) && ok;
+    ok = bench(1920, 1080, iterations/4 + 1) && ok;
+    ok = bench(317, 233, iterations) && ok;
+    printf("%s\n", ok ? "PASSED" : "FAILED");
+    return ok ? 0 : 1;
+}
@@ -45,7 +45,7 @@ int main()
 	    ARX_PRINT(ARX_ZONE_ERROR, "ERROR: failed getting IImageBufferMgr interface with error=0x%x\n", status);
 	}
 
-	daemon->disconnect();
+	daemon->disconnect(NULL);
 
 	ARX_PRINT(ARX_ZONE_ALWAYS, "Test done.\n");
 }
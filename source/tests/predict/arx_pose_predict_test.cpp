@@ -0,0 +1,222 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*!
+ * Replays a pose trace through ARXPosePredictor and measures the reprojection
+ * error of the predicted poses against the poses actually recorded later,
+ * compared to simply holding the last pose.
+ *
+ * Usage: arx_pose_predict_test [trace.txt]
+ *
+ * A trace has one pose per line: "<time ns> <status> <12 floats>", the
+ * floats being the row major 3x4 matrix of ARXCameraPoseMatrix. Without a
+ * trace, a synthetic pan with measurement noise is replayed.
+ */
+
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <math.h>
+#include <algorithm>
+#include <vector>
+
+#include <utils/ARXPosePredictor.h>
+
+using namespace tiarx;
+
+struct TracePose {
+    uint64_t time;
+    int32_t status;
+    float m[12];
+};
+
+// Camera intrinsics of ARCamera, for 320x240 images
+static const float K[9] = { 267.27434f, 0.00f, 158.823f,
+                            0.00f, 269.2575423f, 122.68925f,
+                            0.00f, 0.00f, 1.00f };
+
+// Corners of the cube drawn by ARCowboid
+static const float CUBE[8][3] = {
+    {-0.25f, -0.25f, 0.25f}, {0.25f, -0.25f, 0.25f}, {-0.25f, 0.25f, 0.25f}, {0.25f, 0.25f, 0.25f},
+    {-0.25f, -0.25f, 0.75f}, {0.25f, -0.25f, 0.75f}, {-0.25f, 0.25f, 0.75f}, {0.25f, 0.25f, 0.75f},
+};
+
+static bool project(const float m[12], const float p[3], float *u, float *v)
+{
+    float x = m[0]*p[0] + m[1]*p[1] + m[2]*p[2] + m[3];
+    float y = m[4]*p[0] + m[5]*p[1] + m[6]*p[2] + m[7];
+    float z = m[8]*p[0] + m[9]*p[1] + m[10]*p[2] + m[11];
+    if (fabsf(z) < 1e-6f) {
+        return false;
+    }
+    *u = (K[0]*x + K[1]*y + K[2]*z)/z;
+    *v = (K[4]*y + K[5]*z)/z;
+    return true;
+}
+
+/*!
+ * Mean distance in pixels between the cube corners projected with a and b.
+ */
+static float reprojectionError(const float a[12], const float b[12])
+{
+    float sum = 0;
+    for (uint32_t i = 0; i < 8; i++) {
+        float ua, va, ub, vb;
+        if (!project(a, CUBE[i], &ua, &va) || !project(b, CUBE[i], &ub, &vb)) {
+            return 1e6f;
+        }
+        sum += sqrtf((ua - ub)*(ua - ub) + (va - vb)*(va - vb));
+    }
+    return sum/8;
+}
+
+static void rotation(float yaw, float pitch, float roll, float m[12])
+{
+    float cy = cosf(yaw), sy = sinf(yaw);
+    float cp = cosf(pitch), sp = sinf(pitch);
+    float cr = cosf(roll), sr = sinf(roll);
+    // R = Rz(roll) * Rx(pitch) * Ry(yaw)
+    m[0] = cr*cy - sr*sp*sy;  m[1] = -sr*cp; m[2] = cr*sy + sr*sp*cy;
+    m[4] = sr*cy + cr*sp*sy;  m[5] = cr*cp;  m[6] = sr*sy - cr*sp*cy;
+    m[8] = -cp*sy;            m[9] = sp;     m[10] = cp*cy;
+}
+
+static float noise(float amplitude)
+{
+    return amplitude*(2.0f*rand()/RAND_MAX - 1.0f);
+}
+
+/*!
+ * A hand held pan around the marker at ~30 fps with timing jitter and
+ * tracking noise.
+ */
+static void synthesize(std::vector<TracePose>& trace)
+{
+    srand(42);
+    uint64_t time = 1000000000ULL;
+    for (uint32_t i = 0; i < 600; i++) {
+        float t = (time - 1000000000ULL)/1e9f;
+        TracePose p;
+        p.time = time;
+        p.status = 1;
+        rotation(0.5f*sinf(2*M_PI*0.4f*t) + noise(0.002f),
+                 0.2f*sinf(2*M_PI*0.25f*t + 1.0f) + noise(0.002f),
+                 0.1f*sinf(2*M_PI*0.15f*t) + noise(0.002f), p.m);
+        p.m[3] = 0.3f*sinf(2*M_PI*0.3f*t) + noise(0.002f);
+        p.m[7] = 0.1f*sinf(2*M_PI*0.2f*t) + noise(0.002f);
+        p.m[11] = 3.0f + 0.5f*sinf(2*M_PI*0.1f*t) + noise(0.004f);
+        trace.push_back(p);
+        time += 33333333ULL + (int64_t)noise(3000000.0f);
+    }
+}
+
+static bool load(const char *fileName, std::vector<TracePose>& trace)
+{
+    FILE *f = fopen(fileName, "r");
+    if (f == NULL) {
+        return false;
+    }
+    char line[1024];
+    while (fgets(line, sizeof(line), f) != NULL) {
+        TracePose p;
+        unsigned long long time;
+        int n = sscanf(line, "%llu %d %f %f %f %f %f %f %f %f %f %f %f %f", &time, &p.status,
+                       &p.m[0], &p.m[1], &p.m[2], &p.m[3], &p.m[4], &p.m[5],
+                       &p.m[6], &p.m[7], &p.m[8], &p.m[9], &p.m[10], &p.m[11]);
+        if (n == 14) {
+            p.time = time;
+            trace.push_back(p);
+        }
+    }
+    fclose(f);
+    return true;
+}
+
+struct Errors {
+    std::vector<float> hold;
+    std::vector<float> predicted;
+};
+
+static float mean(const std::vector<float>& v)
+{
+    float sum = 0;
+    for (size_t i = 0; i < v.size(); i++) sum += v[i];
+    return v.empty() ? 0 : sum/v.size();
+}
+
+static float percentile(std::vector<float> v, float p)
+{
+    if (v.empty()) return 0;
+    std::sort(v.begin(), v.end());
+    return v[std::min(v.size() - 1, (size_t)(p/100*v.size()))];
+}
+
+/*!
+ * Predicts each pose from the ones up to `lead` poses before it.
+ */
+static Errors replay(const std::vector<TracePose>& trace, uint32_t lead)
+{
+    Errors e;
+    ARXPosePredictor predictor;
+    for (size_t i = 0; i + lead < trace.size(); i++) {
+        const TracePose& p = trace[i];
+        if (p.status == 0) {
+            predictor.reset();
+            continue;
+        }
+        predictor.addPose(p.m, p.time);
+
+        const TracePose& target = trace[i + lead];
+        if (target.status == 0 || i < ARXPosePredictor::HISTORY) {
+            continue;
+        }
+        float m[12];
+        if (predictor.predict(target.time, m)) {
+            e.predicted.push_back(reprojectionError(m, target.m));
+            e.hold.push_back(reprojectionError(p.m, target.m));
+        }
+    }
+    return e;
+}
+
+int main(int argc, char *argv[])
+{
+    std::vector<TracePose> trace;
+    bool synthetic = (argc < 2);
+    if (synthetic) {
+        synthesize(trace);
+    } else if (!load(argv[1], trace)) {
+        printf("Could not read %s\n", argv[1]);
+        return 1;
+    }
+    printf("%zu poses, %s\n", trace.size(), synthetic ? "synthetic pan" : argv[1]);
+
+    bool ok = true;
+    for (uint32_t lead = 1; lead <= 3; lead++) {
+        Errors e = replay(trace, lead);
+        float hold = mean(e.hold);
+        float predicted = mean(e.predicted);
+        printf("%u frame(s) ahead: hold mean %.2f px p95 %.2f px, predicted mean %.2f px p95 %.2f px\n",
+               lead, hold, percentile(e.hold, 95), predicted, percentile(e.predicted, 95));
+        if (synthetic && predicted >= hold) {
+            ok = false;
+        }
+    }
+    if (synthetic) {
+        printf("%s\n", ok ? "PASSED" : "FAILED");
+    }
+    return ok ? 0 : 1;
+}
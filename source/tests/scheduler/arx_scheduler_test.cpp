@@ -0,0 +1,269 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include <stdio.h>
+#include <string.h>
+#include <pthread.h>
+
+#include <engine/ARXPipeline.h>
+#include <utils/ARXLatency.h>
+
+using namespace tiarx;
+
+static const uint64_t MS = 1000000ULL;
+
+static uint32_t sFailures;
+
+static void expect(const char *name, bool actual, bool expected)
+{
+    if (actual != expected) {
+        printf("%s: accepted %d, expected %d\n", name, actual, expected);
+        sFailures++;
+    }
+}
+
+static ARXFrame makeFrame(uint32_t seq, uint64_t receivedTime)
+{
+    ARXFrame frame;
+    memset(&frame, 0, sizeof(frame));
+    frame.seq = seq;
+    frame.timestamp = receivedTime;
+    frame.receivedTime = receivedTime;
+    return frame;
+}
+
+/*!
+ * Process takes 20 ms against a 50 ms deadline: a frame received 40 ms ago
+ * would finish 10 ms late.
+ */
+static void testDeadline()
+{
+    ARXFrameScheduler sched;
+    sched.setDeadlineMs(50);
+    sched.computed(20*MS);
+
+    uint64_t now = 1000*MS;
+    ARXFrame fresh = makeFrame(1, now - 10*MS);
+    ARXFrame late = makeFrame(2, now - 40*MS);
+
+    expect("fresh frame, newer queued", sched.accept(fresh, now, true), true);
+    expect("fresh frame, alone", sched.accept(fresh, now, false), true);
+    expect("late frame, newer queued", sched.accept(late, now, true), false);
+    //Nothing newer to compute instead, a late result beats none
+    expect("single late frame", sched.accept(late, now, false), true);
+}
+
+/*!
+ * Frames arrive every 33 ms while Process takes 45 ms against a 50 ms
+ * deadline, so each frame waits longer than the one before. With a single
+ * frame queued at a time, every frame is still computed.
+ */
+static void testSingleLateFrames()
+{
+    ARXFrameScheduler sched;
+    sched.setDeadlineMs(50);
+
+    uint64_t now = 0;
+    uint32_t computed = 0;
+    for (uint32_t seq = 1; seq <= 30; seq++) {
+        uint64_t received = seq*33*MS;
+        if (now < received) {
+            now = received;
+        }
+        ARXFrame frame = makeFrame(seq, received);
+        if (sched.accept(frame, now, false)) {
+            sched.computed(45*MS);
+            now += 45*MS;
+            computed++;
+        }
+    }
+    if (computed != 30) {
+        printf("single late frames: computed %u of 30\n", computed);
+        sFailures++;
+    }
+}
+
+static void testEveryNth()
+{
+    ARXFrameScheduler sched;
+    sched.setEveryNth(2);
+    expect("odd frame", sched.accept(makeFrame(3, 0), 0, false), false);
+    expect("even frame", sched.accept(makeFrame(4, 0), 0, false), true);
+}
+
+/*!
+ * When Process alone takes longer than the deadline, no frame can meet it
+ * and none is skipped for it.
+ */
+static void testUnreachableDeadline()
+{
+    ARXFrameScheduler sched;
+    sched.setDeadlineMs(10);
+    sched.computed(20*MS);
+    uint64_t now = 1000*MS;
+    expect("unreachable deadline", sched.accept(makeFrame(1, now - 40*MS), now, true), true);
+}
+
+/*!
+ * Runs the loop of the compute thread of ARXEngine over a real queue, with a
+ * Process taking no time but for which the scheduler estimates 20 ms. The
+ * frames computed and superseded are recorded in the order the thread sees
+ * them.
+ */
+class ComputeStage
+{
+public:
+    static const uint32_t MAX_FRAMES = ARXFrameQueue::MAX_DEPTH;
+
+    ComputeStage(bool latestOnly, uint32_t deadlineMs)
+    {
+        mLatestOnly = latestOnly;
+        mSched.setDeadlineMs(deadlineMs);
+        mSched.computed(20*MS);
+        mNumSeen = 0;
+        pthread_mutex_init(&mLock, NULL);
+        pthread_cond_init(&mSeen, NULL);
+    }
+
+    ~ComputeStage()
+    {
+        pthread_cond_destroy(&mSeen);
+        pthread_mutex_destroy(&mLock);
+    }
+
+    /** Queues the frames before the thread starts, then waits for all of them */
+    void run(const ARXFrame *frames, uint32_t count)
+    {
+        for (uint32_t i = 0; i < count; i++) {
+            ARXFrame dropped;
+            mQueue.push(frames[i], &dropped);
+        }
+        pthread_t thread;
+        pthread_create(&thread, NULL, computeThread, this);
+        pthread_mutex_lock(&mLock);
+        while (mNumSeen < count) {
+            pthread_cond_wait(&mSeen, &mLock);
+        }
+        pthread_mutex_unlock(&mLock);
+        mQueue.stop();
+        pthread_join(thread, NULL);
+    }
+
+    /** Whether the frame of seq was computed, rather than superseded */
+    bool computed(uint32_t seq)
+    {
+        for (uint32_t i = 0; i < mNumSeen; i++) {
+            if (mSeenSeq[i] == seq) {
+                return mComputed[i];
+            }
+        }
+        return false;
+    }
+
+private:
+    static void *computeThread(void *arg)
+    {
+        ComputeStage *stage = reinterpret_cast<ComputeStage *>(arg);
+        ARXFrame frame;
+        bool superseded = false;
+        while (stage->mSched.next(&stage->mQueue, stage->mLatestOnly, &frame, &superseded)) {
+            bool computed = !superseded && stage->mSched.accept(frame, arx_monotonic_ns(), stage->mQueue.size() > 0);
+            if (computed) {
+                stage->mSched.computed(20*MS);
+            }
+            pthread_mutex_lock(&stage->mLock);
+            stage->mSeenSeq[stage->mNumSeen] = frame.seq;
+            stage->mComputed[stage->mNumSeen] = computed;
+            stage->mNumSeen++;
+            pthread_cond_signal(&stage->mSeen);
+            pthread_mutex_unlock(&stage->mLock);
+        }
+        return NULL;
+    }
+
+    ARXFrameQueue mQueue;
+    ARXFrameScheduler mSched;
+    bool mLatestOnly;
+    pthread_mutex_t mLock;
+    pthread_cond_t mSeen;
+    uint32_t mSeenSeq[MAX_FRAMES];
+    bool mComputed[MAX_FRAMES];
+    uint32_t mNumSeen;
+};
+
+/*!
+ * Two frames received 100 ms ago are queued before two fresh ones, then
+ * two more late ones, against a 50 ms deadline. The late frames are
+ * superseded while a newer frame waits, the last one is computed anyway.
+ */
+static void testComputeThreadDeadline()
+{
+    uint64_t now = arx_monotonic_ns();
+    ARXFrame frames[] = {
+        makeFrame(1, now - 100*MS),
+        makeFrame(2, now - 100*MS),
+        makeFrame(3, now),
+        makeFrame(4, now),
+    };
+    ComputeStage stage(false, 50);
+    stage.run(frames, 4);
+    expect("compute thread, late frame 1", stage.computed(1), false);
+    expect("compute thread, late frame 2", stage.computed(2), false);
+    expect("compute thread, fresh frame 3", stage.computed(3), true);
+    expect("compute thread, fresh frame 4", stage.computed(4), true);
+
+    now = arx_monotonic_ns();
+    ARXFrame late[] = {
+        makeFrame(5, now - 100*MS),
+        makeFrame(6, now - 100*MS),
+    };
+    ComputeStage lateStage(false, 50);
+    lateStage.run(late, 2);
+    expect("compute thread, late frame 5", lateStage.computed(5), false);
+    expect("compute thread, newest late frame 6", lateStage.computed(6), true);
+}
+
+/*!
+ * With only the latest frame computed, each queued frame is superseded by
+ * the next one whatever its age.
+ */
+static void testComputeThreadLatestOnly()
+{
+    uint64_t now = arx_monotonic_ns();
+    ARXFrame frames[] = {
+        makeFrame(1, now),
+        makeFrame(2, now),
+        makeFrame(3, now),
+    };
+    ComputeStage stage(true, 0);
+    stage.run(frames, 3);
+    expect("latest only, frame 1", stage.computed(1), false);
+    expect("latest only, frame 2", stage.computed(2), false);
+    expect("latest only, frame 3", stage.computed(3), true);
+}
+
+int main()
+{
+    testDeadline();
+    testSingleLateFrames();
+    testEveryNth();
+    testUnreachableDeadline();
+    testComputeThreadDeadline();
+    testComputeThreadLatestOnly();
+
+    printf("%s\n", sFailures == 0 ? "PASSED" : "FAILED");
+    return sFailures == 0 ? 0 : 1;
+}
@@ -0,0 +1,33 @@
+# Copyright (C) 2012 Texas Instruments, Inc.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#   http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+
+LOCAL_PATH := $(call my-dir)
+
+# Torn read stress test for ARXSeqLock, runs on the device and on the host
+include $(CLEAR_VARS)
+LOCAL_MODULE_TAGS := tests
+LOCAL_C_INCLUDES := $(ARX_INC)
+LOCAL_CPPFLAGS := $(ARX_CPPFLAGS)
+LOCAL_SRC_FILES := arx_seqlock_test.cpp
+LOCAL_MODULE := arx_seqlock_test
+include $(BUILD_EXECUTABLE)
+
+include $(CLEAR_VARS)
+LOCAL_MODULE_TAGS := tests
+LOCAL_C_INCLUDES := $(ARX_INC)
+LOCAL_CPPFLAGS := $(ARX_CPPFLAGS)
+LOCAL_SRC_FILES := arx_seqlock_test.cpp
+LOCAL_LDLIBS := -lpthread -lrt
+LOCAL_MODULE := arx_seqlock_test
+include $(BUILD_HOST_EXECUTABLE)
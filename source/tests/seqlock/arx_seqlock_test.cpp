@@ -0,0 +1,166 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <pthread.h>
+#include <time.h>
+
+#include <utils/ARXSeqLock.h>
+
+using namespace tiarx;
+
+/*!
+ * Same layout as the pose slot used by ARCowboid. Every field of a pose
+ * written by the test is derived from the same counter, so a pose mixing
+ * two writes is easy to spot.
+ */
+struct Pose {
+    float matrix[12];
+    uint64_t timestamp;
+    int32_t status;
+    int32_t reserved;
+};
+
+static void makePose(Pose *p, uint32_t n)
+{
+    for (uint32_t i = 0; i < 12; i++) {
+        p->matrix[i] = (float)(n + i);
+    }
+    p->timestamp = n;
+    p->status = (int32_t)(n & 0xFF);
+    p->reserved = -(int32_t)n;
+}
+
+static bool isConsistent(const Pose *p)
+{
+    uint32_t n = (uint32_t)p->timestamp;
+    for (uint32_t i = 0; i < 12; i++) {
+        if (p->matrix[i] != (float)(n + i)) {
+            return false;
+        }
+    }
+    return p->status == (int32_t)(n & 0xFF) && p->reserved == -(int32_t)n;
+}
+
+struct Shared {
+    ARXSeqLock<Pose> slot;
+    volatile Pose unprotected;
+    volatile bool stop;
+    bool useSeqLock;
+};
+
+struct ReaderStats {
+    Shared *shared;
+    uint32_t reads;
+    uint32_t torn;
+    uint32_t backwards;
+};
+
+static void *writer(void *arg)
+{
+    Shared *s = reinterpret_cast<Shared *>(arg);
+    Pose p;
+    // Float counters are only exact below 2^24
+    for (uint32_t n = 1; !s->stop && n < (1 << 24) - 16; n++) {
+        makePose(&p, n);
+        if (s->useSeqLock) {
+            s->slot.write(p);
+        } else {
+            memcpy((void *)&s->unprotected, &p, sizeof(p));
+        }
+    }
+    return NULL;
+}
+
+static void *reader(void *arg)
+{
+    ReaderStats *r = reinterpret_cast<ReaderStats *>(arg);
+    Shared *s = r->shared;
+    uint64_t last = 0;
+    Pose p;
+    while (!s->stop) {
+        if (s->useSeqLock) {
+            if (s->slot.read(&p) == 0) {
+                continue;
+            }
+        } else {
+            memcpy(&p, (const void *)&s->unprotected, sizeof(p));
+            if (p.timestamp == 0) {
+                continue;
+            }
+        }
+        r->reads++;
+        if (!isConsistent(&p)) {
+            r->torn++;
+        } else if (p.timestamp < last) {
+            r->backwards++;
+        }
+        last = p.timestamp;
+    }
+    return NULL;
+}
+
+static uint32_t run(bool useSeqLock, uint32_t numReaders, uint32_t ms)
+{
+    Shared *s = new Shared();
+    memset((void *)&s->unprotected, 0, sizeof(s->unprotected));
+    s->stop = false;
+    s->useSeqLock = useSeqLock;
+
+    ReaderStats stats[8];
+    pthread_t readers[8];
+    pthread_t w;
+    memset(stats, 0, sizeof(stats));
+    for (uint32_t i = 0; i < numReaders; i++) {
+        stats[i].shared = s;
+        pthread_create(&readers[i], NULL, reader, &stats[i]);
+    }
+    pthread_create(&w, NULL, writer, s);
+
+    struct timespec t = { ms/1000, (long)(ms%1000)*1000000 };
+    nanosleep(&t, NULL);
+    s->stop = true;
+    pthread_join(w, NULL);
+
+    uint32_t reads = 0, torn = 0, backwards = 0;
+    for (uint32_t i = 0; i < numReaders; i++) {
+        pthread_join(readers[i], NULL);
+        reads += stats[i].reads;
+        torn += stats[i].torn;
+        backwards += stats[i].backwards;
+    }
+    printf("%-10s %u readers: %u reads, %u torn, %u out of order\n",
+           useSeqLock ? "seqlock" : "unlocked", numReaders, reads, torn, backwards);
+    delete s;
+    return torn + backwards;
+}
+
+int main(int argc, char *argv[])
+{
+    uint32_t ms = (argc > 1) ? atoi(argv[1]) : 2000;
+
+    // Shows what the test catches without protection, not a failure
+    run(false, 2, ms/4);
+
+    uint32_t errors = 0;
+    errors += run(true, 1, ms);
+    errors += run(true, 2, ms);
+    errors += run(true, 4, ms);
+    printf("%s\n", errors == 0 ? "PASSED" : "FAILED");
+    return errors == 0 ? 0 : 1;
+}
@@ -0,0 +1,316 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include <utils/ARXConvert.h>
+
+#if defined(__ARM_NEON__)
+#include <arm_neon.h>
+#elif defined(__SSE2__)
+#include <emmintrin.h>
+#endif
+
+namespace tiarx {
+
+// Pixels are stored as one 32-bit word, R in the lowest byte (little endian RGBA8888)
+#define RGBA_GRAY(g)    (0xFF000000u | ((uint32_t)(g) * 0x00010101u))
+
+static void gray8_row(const uint8_t *pSrc, uint32_t *pDst, uint32_t width)
+{
+    uint32_t x = 0;
+#if defined(__ARM_NEON__)
+    uint8x8x4_t px;
+    px.val[3] = vdup_n_u8(0xFF);
+    for (; x + 8 <= width; x += 8) {
+        uint8x8_t g = vld1_u8(pSrc + x);
+        px.val[0] = g;
+        px.val[1] = g;
+        px.val[2] = g;
+        vst4_u8((uint8_t *)(pDst + x), px);
+    }
+#elif defined(__SSE2__)
+    const __m128i alpha = _mm_set1_epi8((char)0xFF);
+    for (; x + 16 <= width; x += 16) {
+        __m128i g = _mm_loadu_si128((const __m128i *)(pSrc + x));
+        __m128i gg = _mm_unpacklo_epi8(g, g);
+        __m128i ga = _mm_unpacklo_epi8(g, alpha);
+        _mm_storeu_si128((__m128i *)(pDst + x), _mm_unpacklo_epi16(gg, ga));
+        _mm_storeu_si128((__m128i *)(pDst + x + 4), _mm_unpackhi_epi16(gg, ga));
+        gg = _mm_unpackhi_epi8(g, g);
+        ga = _mm_unpackhi_epi8(g, alpha);
+        _mm_storeu_si128((__m128i *)(pDst + x + 8), _mm_unpacklo_epi16(gg, ga));
+        _mm_storeu_si128((__m128i *)(pDst + x + 12), _mm_unpackhi_epi16(gg, ga));
+    }
+#endif
+    for (; x + 4 <= width; x += 4) {
+        pDst[x] = RGBA_GRAY(pSrc[x]);
+        pDst[x+1] = RGBA_GRAY(pSrc[x+1]);
+        pDst[x+2] = RGBA_GRAY(pSrc[x+2]);
+        pDst[x+3] = RGBA_GRAY(pSrc[x+3]);
+    }
+    for (; x < width; x++) {
+        pDst[x] = RGBA_GRAY(pSrc[x]);
+    }
+}
+
+void convert_gray8_to_rgba(const uint8_t *pSrc, uint32_t srcStride,
+                           uint8_t *pDst, uint32_t dstStride,
+                           uint32_t width, uint32_t height)
+{
+    for (uint32_t y = 0; y < height; y++) {
+        gray8_row(pSrc, (uint32_t *)pDst, width);
+        pSrc += srcStride;
+        pDst += dstStride;
+    }
+}
+
+/*!
+ * Signed and unsigned samples get their own instantiation so that the inner
+ * loops stay free of branches on the sample type.
+ */
+template <typename T>
+static void minmax16(const uint8_t *pRow, uint32_t srcStride,
+                     uint32_t width, uint32_t height, int32_t *pMin, int32_t *pMax)
+{
+    T lo = (T)~0;
+    T hi = 0;
+    if (lo < 0) {
+        lo = 0x7FFF;
+        hi = (T)0x8000;
+    }
+    for (uint32_t y = 0; y < height; y++) {
+        const T *p = (const T *)pRow;
+        for (uint32_t x = 0; x < width; x++) {
+            lo = (p[x] < lo) ? p[x] : lo;
+            hi = (p[x] > hi) ? p[x] : hi;
+        }
+        pRow += srcStride;
+    }
+    *pMin = lo;
+    *pMax = hi;
+}
+
+/*!
+ * Resolves NORM_AUTO into a NORM_RANGE over the given image.
+ */
+static ARXNormalization resolve_norm(const uint16_t *pSrc, uint32_t srcStride,
+                                     uint32_t width, uint32_t height,
+                                     const ARXNormalization& norm)
+{
+    ARXNormalization n = norm;
+    if (norm.mode != NORM_AUTO) {
+        return n;
+    }
+    if (norm.isSigned) {
+        minmax16<int16_t>((const uint8_t *)pSrc, srcStride, width, height, &n.min, &n.max);
+    } else {
+        minmax16<uint16_t>((const uint8_t *)pSrc, srcStride, width, height, &n.min, &n.max);
+    }
+    n.mode = NORM_RANGE;
+    return n;
+}
+
+template <typename T>
+static void gray16_row(const T *pSrc, uint32_t *pDst, uint32_t width,
+                       const ARXNormalization& norm)
+{
+    if (norm.mode == NORM_SHIFT) {
+        for (uint32_t x = 0; x < width; x++) {
+            int32_t v = pSrc[x];
+            v = (v < 0) ? 0 : (v >> norm.shift);
+            pDst[x] = RGBA_GRAY(v > 255 ? 255 : v);
+        }
+        return;
+    }
+
+    // Q16 fixed point scale from [min, max] to [0, 255]. Samples are clamped
+    // to the range first so the product always fits in 32 bits.
+    int32_t range = norm.max - norm.min;
+    uint32_t scale = (range > 0) ? (255u << 16) / (uint32_t)range : 0;
+    if (range < 0) range = 0;
+    for (uint32_t x = 0; x < width; x++) {
+        int32_t v = (int32_t)pSrc[x] - norm.min;
+        v = (v < 0) ? 0 : ((v > range) ? range : v);
+        pDst[x] = RGBA_GRAY(((uint32_t)v * scale) >> 16);
+    }
+}
+
+void convert_gray16_to_rgba(const uint16_t *pSrc, uint32_t srcStride,
+                            uint8_t *pDst, uint32_t dstStride,
+                            uint32_t width, uint32_t height,
+                            const ARXNormalization& norm)
+{
+    ARXNormalization n = resolve_norm(pSrc, srcStride, width, height, norm);
+    const uint8_t *pRow = (const uint8_t *)pSrc;
+    for (uint32_t y = 0; y < height; y++) {
+        if (n.isSigned) {
+            gray16_row((const int16_t *)pRow, (uint32_t *)pDst, width, n);
+        } else {
+            gray16_row((const uint16_t *)pRow, (uint32_t *)pDst, width, n);
+        }
+        pRow += srcStride;
+        pDst += dstStride;
+    }
+}
+
+ARXConverter::ARXConverter(uint32_t numThreads, uint32_t minBandPixels)
+{
+    mNumThreads = (numThreads > (uint32_t)MAX_THREADS) ? (uint32_t)MAX_THREADS : numThreads;
+    mMinBandPixels = (minBandPixels == 0) ? 1 : minBandPixels;
+    mNumBands = 0;
+    mNextBand = 0;
+    mBandsDone = 0;
+    mGeneration = 0;
+    mExit = false;
+    pthread_mutex_init(&mLock, NULL);
+    pthread_cond_init(&mStart, NULL);
+    pthread_cond_init(&mDone, NULL);
+    for (uint32_t i = 0; i < mNumThreads; i++) {
+        if (pthread_create(&mThreads[i], NULL, workerThread, this) != 0) {
+            mNumThreads = i;
+            break;
+        }
+    }
+}
+
+ARXConverter::~ARXConverter()
+{
+    pthread_mutex_lock(&mLock);
+    mExit = true;
+    pthread_cond_broadcast(&mStart);
+    pthread_mutex_unlock(&mLock);
+    for (uint32_t i = 0; i < mNumThreads; i++) {
+        pthread_join(mThreads[i], NULL);
+    }
+    pthread_cond_destroy(&mDone);
+    pthread_cond_destroy(&mStart);
+    pthread_mutex_destroy(&mLock);
+}
+
+void ARXConverter::gray8ToRGBA(const uint8_t *pSrc, uint32_t srcStride,
+                               uint8_t *pDst, uint32_t dstStride,
+                               uint32_t width, uint32_t height)
+{
+    Job job;
+    job.is16 = false;
+    job.pSrc = pSrc;
+    job.srcStride = srcStride;
+    job.pDst = pDst;
+    job.dstStride = dstStride;
+    job.width = width;
+    job.height = height;
+    run(job);
+}
+
+void ARXConverter::gray16ToRGBA(const uint16_t *pSrc, uint32_t srcStride,
+                                uint8_t *pDst, uint32_t dstStride,
+                                uint32_t width, uint32_t height,
+                                const ARXNormalization& norm)
+{
+    Job job;
+    job.is16 = true;
+    job.pSrc = (const uint8_t *)pSrc;
+    job.srcStride = srcStride;
+    job.pDst = pDst;
+    job.dstStride = dstStride;
+    job.width = width;
+    job.height = height;
+    // Every band must use the same range
+    job.norm = resolve_norm(pSrc, srcStride, width, height, norm);
+    run(job);
+}
+
+void ARXConverter::run(const Job& job)
+{
+    uint32_t bands = (job.width * job.height) / mMinBandPixels;
+    if (bands > mNumThreads + 1) bands = mNumThreads + 1;
+    if (bands > job.height) bands = job.height;
+
+    if (bands <= 1) {
+        if (job.is16) {
+            convert_gray16_to_rgba((const uint16_t *)job.pSrc, job.srcStride, job.pDst, job.dstStride,
+                                   job.width, job.height, job.norm);
+        } else {
+            convert_gray8_to_rgba(job.pSrc, job.srcStride, job.pDst, job.dstStride,
+                                  job.width, job.height);
+        }
+        return;
+    }
+
+    pthread_mutex_lock(&mLock);
+    mJob = job;
+    mNumBands = bands;
+    mNextBand = 0;
+    mBandsDone = 0;
+    mGeneration++;
+    pthread_cond_broadcast(&mStart);
+
+    // The caller converts bands too
+    while (mNextBand < mNumBands) {
+        uint32_t band = mNextBand++;
+        pthread_mutex_unlock(&mLock);
+        convertBand(band);
+        pthread_mutex_lock(&mLock);
+        mBandsDone++;
+    }
+    while (mBandsDone < mNumBands) {
+        pthread_cond_wait(&mDone, &mLock);
+    }
+    pthread_mutex_unlock(&mLock);
+}
+
+void ARXConverter::convertBand(uint32_t band)
+{
+    uint32_t y0 = (mJob.height * band) / mNumBands;
+    uint32_t y1 = (mJob.height * (band + 1)) / mNumBands;
+    const uint8_t *pSrc = mJob.pSrc + y0 * mJob.srcStride;
+    uint8_t *pDst = mJob.pDst + y0 * mJob.dstStride;
+
+    if (mJob.is16) {
+        convert_gray16_to_rgba((const uint16_t *)pSrc, mJob.srcStride, pDst, mJob.dstStride,
+                               mJob.width, y1 - y0, mJob.norm);
+    } else {
+        convert_gray8_to_rgba(pSrc, mJob.srcStride, pDst, mJob.dstStride, mJob.width, y1 - y0);
+    }
+}
+
+void *ARXConverter::workerThread(void *arg)
+{
+    ARXConverter *self = reinterpret_cast<ARXConverter *>(arg);
+    uint32_t generation = 0;
+
+    pthread_mutex_lock(&self->mLock);
+    while (!self->mExit) {
+        if (generation == self->mGeneration) {
+            pthread_cond_wait(&self->mStart, &self->mLock);
+            continue;
+        }
+        generation = self->mGeneration;
+        while (self->mNextBand < self->mNumBands) {
+            uint32_t band = self->mNextBand++;
+            pthread_mutex_unlock(&self->mLock);
+            self->convertBand(band);
+            pthread_mutex_lock(&self->mLock);
+            self->mBandsDone++;
+            if (self->mBandsDone == self->mNumBands) {
+                pthread_cond_signal(&self->mDone);
+            }
+        }
+    }
+    pthread_mutex_unlock(&self->mLock);
+    return NULL;
+}
+
+}
@@ -0,0 +1,33 @@
+# Copyright (C) 2012 Texas Instruments, Inc.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#   http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+
+
+LOCAL_PATH:=$(call my-dir)
+include $(CLEAR_VARS)
+LOCAL_MODULE_TAGS := optional
+LOCAL_C_INCLUDES := $(ARX_INC)
+LOCAL_CPPFLAGS := $(ARX_DEBUGGING) $(ARX_CPPFLAGS)
+LOCAL_ARM_NEON := true
+LOCAL_MODULE := libarxconvert
+LOCAL_SRC_FILES := ARXConvert.cpp
+include $(BUILD_STATIC_LIBRARY)
+
+# Host build for the conversion benchmark
+include $(CLEAR_VARS)
+LOCAL_MODULE_TAGS := optional
+LOCAL_C_INCLUDES := $(ARX_INC)
+LOCAL_CPPFLAGS := $(ARX_CPPFLAGS) -msse2
+LOCAL_MODULE := libarxconvert
+LOCAL_SRC_FILES := ARXConvert.cpp
+include $(BUILD_HOST_STATIC_LIBRARY)
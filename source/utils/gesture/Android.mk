@@ -0,0 +1,32 @@
+# Copyright (C) 2012 Texas Instruments, Inc.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#   http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+
+LOCAL_PATH:=$(call my-dir)
+
+# Pointer filtering and dwell gestures, linked statically into ProjectorGallery
+include $(CLEAR_VARS)
+LOCAL_MODULE_TAGS := optional
+LOCAL_SRC_FILES := $(call all-java-files-under, src)
+LOCAL_MODULE := arxgesture
+include $(BUILD_STATIC_JAVA_LIBRARY)
+
+# Host build, checks the gestures on synthetic pointer traces:
+#   java -jar arxgesture-host.jar
+# The check uses JVM management APIs missing on Android, so it lives under host
+include $(CLEAR_VARS)
+LOCAL_MODULE_TAGS := optional
+LOCAL_SRC_FILES := $(call all-java-files-under, src) $(call all-java-files-under, host)
+LOCAL_JAR_MANIFEST := manifest.txt
+LOCAL_MODULE := arxgesture-host
+include $(BUILD_HOST_JAVA_LIBRARY)
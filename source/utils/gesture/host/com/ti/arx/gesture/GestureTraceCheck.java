@@ -0,0 +1,264 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ti.arx.gesture;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Drives the gesture engine with synthetic pointer traces on a plain JVM
+ * and checks its behavior: dwell times independent of the pointer rate,
+ * stable selection under jitter on the edge of a target, time based filter
+ * responses, debounced retriggering, and no allocations per event.
+ *
+ * Usage: java -jar arxgesture-host.jar
+ *
+ * Exits with status 1 if any check fails, including when the JVM cannot
+ * count the bytes allocated by a thread. Host only, not part of the
+ * library linked into the applications.
+ */
+public class GestureTraceCheck {
+
+    public static void main(String[] args) {
+        GestureTraceCheck c = new GestureTraceCheck();
+        c.checkDwellRate();
+        c.checkEdgeJitter();
+        c.checkExponentialStep();
+        c.checkOneEuroJitter();
+        c.checkDebounce();
+        c.checkAllocations();
+        System.out.println(c.mFailures == 0 ? "PASSED" : "FAILED");
+        System.exit(c.mFailures == 0 ? 0 : 1);
+    }
+
+    GestureTraceCheck() {
+        mRandom = new Random(42);
+    }
+
+    /**
+     * A pointer resting in a target selects it after the dwell time,
+     * whatever the rate of pointer samples.
+     */
+    private void checkDwellRate() {
+        for (int rate : new int[] { 10, 15, 30, 60, 120 }) {
+            GestureEngine e = new GestureEngine();
+            e.setDwellMs(800);
+            DwellTimer t = e.createTimer();
+            long period = 1000000000L/rate;
+            long selected = -1;
+            for (long time = 0; time < 2000000000L && selected < 0; time += period) {
+                e.onPointer(0.0f, 0.0f, time);
+                if ((update(e, t, 0.0f, 0.0f) & DwellTimer.SELECT) != 0) {
+                    selected = time;
+                }
+            }
+            expect(String.format("dwell at %3d Hz: selected after %.0f ms", rate, selected/1e6),
+                   selected >= 800000000L && selected < 800000000L + period);
+        }
+    }
+
+    /**
+     * A noisy pointer resting just inside the edge of a target keeps
+     * leaving it. Unfiltered and without hysteresis the dwell restarts every
+     * time, filtered and with hysteresis the target is entered once and
+     * selected.
+     */
+    private void checkEdgeJitter() {
+        int[] enters = new int[2];
+        boolean[] selected = new boolean[2];
+        for (int pass = 0; pass < 2; pass++) {
+            GestureEngine e = new GestureEngine();
+            e.setDwellMs(1000);
+            if (pass == 1) {
+                e.getFilter().setOneEuro(1.0f, 1.0f, 1.0f);
+                e.setHysteresis(0.2f);
+            }
+            DwellTimer t = e.createTimer();
+            mRandom.setSeed(1);
+            for (long time = 0; time < 3000000000L; time += 16666667L) {
+                float x = 0.95f*RADIUS + 0.01f*(float)mRandom.nextGaussian();
+                float y = 0.01f*(float)mRandom.nextGaussian();
+                e.onPointer(x, y, time);
+                int events = update(e, t, e.getX(), e.getY());
+                if ((events & DwellTimer.ENTER) != 0) enters[pass]++;
+                if ((events & DwellTimer.SELECT) != 0) selected[pass] = true;
+            }
+        }
+        expect(String.format("edge jitter unfiltered: %d enters, %s", enters[0],
+                             selected[0] ? "selected" : "not selected"), enters[0] > 10);
+        expect(String.format("edge jitter filtered:   %d enters, %s", enters[1],
+                             selected[1] ? "selected" : "not selected"), enters[1] == 1 && selected[1]);
+    }
+
+    /**
+     * After one time constant the exponential filter covers 63% of a step,
+     * at any rate.
+     */
+    private void checkExponentialStep() {
+        for (int rate : new int[] { 30, 120 }) {
+            PointerFilter f = new PointerFilter();
+            f.setExponential(100);
+            long period = 1000000000L/rate;
+            f.filter(0.0f, 0.0f, 0);
+            long time = 0;
+            while (time < 100000000L) {
+                time += period;
+                f.filter(1.0f, 0.0f, time);
+            }
+            // Interpolate to exactly one time constant
+            float expected = 1.0f - (float)Math.exp(-time/1e8);
+            expect(String.format("exponential step at %3d Hz: %.3f after %.0f ms, expected %.3f",
+                                 rate, f.getX(), time/1e6, expected),
+                   Math.abs(f.getX() - expected) < 0.01f);
+        }
+    }
+
+    /**
+     * The 1 euro filter removes most jitter from a resting pointer and
+     * follows a moving one closely.
+     */
+    private void checkOneEuroJitter() {
+        PointerFilter f = new PointerFilter();
+        f.setOneEuro(1.0f, 1.0f, 1.0f);
+        mRandom.setSeed(2);
+        double rawVar = 0, filteredVar = 0;
+        int count = 0;
+        for (long time = 0; time < 5000000000L; time += 16666667L) {
+            float n = 0.01f*(float)mRandom.nextGaussian();
+            f.filter(n, 0.0f, time);
+            if (time > 1000000000L) {
+                rawVar += n*n;
+                filteredVar += f.getX()*f.getX();
+                count++;
+            }
+        }
+        double ratio = Math.sqrt(filteredVar/rawVar);
+        expect(String.format("1 euro jitter at rest: %.2f of the raw deviation", ratio), ratio < 0.3);
+
+        f.reset();
+        float lag = 0;
+        for (long time = 0; time < 1000000000L; time += 16666667L) {
+            float x = time/1e9f;
+            f.filter(x, 0.0f, time);
+            lag = x - f.getX();
+        }
+        expect(String.format("1 euro lag at 1 unit/s: %.3f", lag), lag < 0.1f);
+    }
+
+    /**
+     * Retriggering selections are spaced by the debounce time, and leaving
+     * and entering again right after a selection does not select again.
+     */
+    private void checkDebounce() {
+        GestureEngine e = new GestureEngine();
+        e.setDwellMs(200);
+        e.setDebounceMs(500);
+        e.setRetrigger(true);
+        DwellTimer t = e.createTimer();
+        int selections = 0;
+        long last = -1, minSpacing = Long.MAX_VALUE;
+        for (long time = 0; time < 2000000000L; time += 10000000L) {
+            e.onPointer(0.0f, 0.0f, time);
+            if ((update(e, t, 0.0f, 0.0f) & DwellTimer.SELECT) != 0) {
+                if (last >= 0) minSpacing = Math.min(minSpacing, time - last);
+                last = time;
+                selections++;
+            }
+        }
+        expect(String.format("retrigger: %d selections in 2 s, spaced %.0f ms or more",
+                             selections, minSpacing/1e6),
+               selections == 4 && minSpacing >= 500000000L);
+
+        e.setRetrigger(false);
+        t = e.createTimer();
+        int early = 0;
+        selections = 0;
+        for (long time = 0; time < 1000000000L; time += 10000000L) {
+            // In for 300 ms, out for 50 ms, in again
+            float x = (time >= 300000000L && time < 350000000L) ? 1.0f : 0.0f;
+            e.onPointer(x, 0.0f, time);
+            if ((update(e, t, x, 0.0f) & DwellTimer.SELECT) != 0) {
+                selections++;
+                if (time < 700000000L && selections > 1) early++;
+            }
+        }
+        expect(String.format("re-entering: %d selections, %d within the debounce time", selections, early),
+               selections == 2 && early == 0);
+    }
+
+    /**
+     * Filtering and dwell updates must not allocate.
+     */
+    private void checkAllocations() {
+        java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        if (!(mx instanceof com.sun.management.ThreadMXBean)) {
+            expect("allocations: no com.sun.management.ThreadMXBean on this JVM", false);
+            return;
+        }
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean)mx;
+        if (!bean.isThreadAllocatedMemorySupported()) {
+            expect("allocations: thread allocation counting not supported", false);
+            return;
+        }
+        bean.setThreadAllocatedMemoryEnabled(true);
+
+        GestureEngine e = new GestureEngine();
+        e.getFilter().setOneEuro(1.0f, 1.0f, 1.0f);
+        e.setHysteresis(0.2f);
+        e.setRetrigger(true);
+        e.setDwellMs(100);
+        DwellTimer[] timers = new DwellTimer[16];
+        for (int i = 0; i < timers.length; i++) {
+            timers[i] = e.createTimer();
+        }
+        long bytes = 0;
+        long id = Thread.currentThread().getId();
+        for (int pass = 0; pass < 2; pass++) {
+            // The first pass warms up the JIT
+            long start = bean.getThreadAllocatedBytes(id);
+            long time = 0;
+            for (int i = 0; i < 200000; i++) {
+                time += 16666667L;
+                float x = 0.2f*(float)Math.sin(i*0.01);
+                e.onPointer(x, 0.0f, time);
+                update(e, timers[i & 15], e.getX(), e.getY());
+            }
+            bytes = bean.getThreadAllocatedBytes(id) - start;
+        }
+        // Allow for the measurement itself
+        expect(String.format("allocations: %d bytes for 200000 events", bytes), bytes < 1024);
+    }
+
+    /**
+     * Updates a circular target of radius RADIUS at the origin.
+     */
+    private static int update(GestureEngine e, DwellTimer t, float x, float y) {
+        float d2 = x*x + y*y;
+        float exit = RADIUS*(1.0f + e.getHysteresis());
+        return t.update(d2 < RADIUS*RADIUS, d2 < exit*exit, e.getTimeNs());
+    }
+
+    private void expect(String name, boolean ok) {
+        System.out.println(String.format("%-64s %s", name, ok ? "ok" : "FAILED"));
+        if (!ok) mFailures++;
+    }
+
+    private Random mRandom;
+    private int mFailures;
+
+    private static final float RADIUS = 0.1f;
+}
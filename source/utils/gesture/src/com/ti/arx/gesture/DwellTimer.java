@@ -0,0 +1,102 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ti.arx.gesture;
+
+/**
+ * Dwell selection state of one target, created by GestureEngine whose
+ * settings it follows. The pointer enters the target when it is inside it
+ * and only exits once it leaves a larger region around it, so jitter on the
+ * edge does not restart the dwell. The target is selected after the pointer
+ * stayed in for the dwell time, measured in wall clock time.
+ */
+public class DwellTimer {
+
+    DwellTimer(GestureEngine engine) {
+        mEngine = engine;
+    }
+
+    /**
+     * Advances the state to timeNs.
+     * @param inside whether the pointer is inside the target.
+     * @param held whether the pointer is inside the larger exit region.
+     * @return a combination of ENTER, EXIT and SELECT, or NONE.
+     */
+    public int update(boolean inside, boolean held, long timeNs) {
+        int events = NONE;
+        if (!mHovering) {
+            if (!inside) return NONE;
+            mHovering = true;
+            mStartNs = timeNs;
+            mSelected = false;
+            events |= ENTER;
+        } else if (!inside && !held) {
+            mHovering = false;
+            mProgress = 0.0f;
+            return EXIT;
+        }
+
+        long dwell = mEngine.getDwellNs();
+        long elapsed = timeNs - mStartNs;
+        mProgress = dwell > 0 ? (float)elapsed/dwell : 1.0f;
+        if (elapsed >= dwell && !mSelected &&
+            (!mHasSelected || timeNs - mLastSelectNs >= mEngine.getDebounceNs())) {
+            events |= SELECT;
+            mLastSelectNs = timeNs;
+            mHasSelected = true;
+            if (mEngine.getRetrigger()) {
+                // Dwell again for the next selection
+                mStartNs = timeNs;
+            } else {
+                mSelected = true;
+            }
+        }
+        return events;
+    }
+
+    /**
+     * Exits the target if the pointer was in it, e.g. when tracking is lost.
+     */
+    public void reset() {
+        mHovering = false;
+        mProgress = 0.0f;
+    }
+
+    public boolean isHovering() {
+        return mHovering;
+    }
+
+    /**
+     * Fraction of the dwell time spent in the target as of the last update,
+     * above 1 once selected until the pointer exits.
+     */
+    public float getProgress() {
+        return mProgress;
+    }
+
+    private GestureEngine mEngine;
+    private boolean mHovering;
+    private boolean mSelected;
+    private long mStartNs;
+    private long mLastSelectNs;
+    private boolean mHasSelected;
+    private float mProgress;
+
+    public static final int NONE = 0;
+    public static final int ENTER = 1;
+    public static final int EXIT = 2;
+    public static final int SELECT = 4;
+}
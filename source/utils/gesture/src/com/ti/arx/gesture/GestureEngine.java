@@ -0,0 +1,127 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ti.arx.gesture;
+
+/**
+ * Turns raw pointer samples into dwell gestures on targets: the pointer is
+ * smoothed by a PointerFilter, and each target tracks the pointer with a
+ * DwellTimer created here and following the settings below, which can be
+ * changed at any time.
+ *
+ * Nothing is allocated per pointer event, only when creating timers.
+ */
+public class GestureEngine {
+
+    public GestureEngine() {
+        mFilter = new PointerFilter();
+        mDwellNs = 1000000000L;
+        mDebounceNs = 0;
+        mHysteresis = 0.0f;
+        mRetrigger = false;
+    }
+
+    public PointerFilter getFilter() {
+        return mFilter;
+    }
+
+    /**
+     * Filters a raw pointer sample, the result is read with getX and getY.
+     */
+    public void onPointer(float x, float y, long timeNs) {
+        mFilter.filter(x, y, timeNs);
+        mTimeNs = timeNs;
+    }
+
+    /**
+     * Forgets the pointer history, e.g. when tracking was lost.
+     */
+    public void resetPointer() {
+        mFilter.reset();
+    }
+
+    public float getX() {
+        return mFilter.getX();
+    }
+
+    public float getY() {
+        return mFilter.getY();
+    }
+
+    /**
+     * Time of the last pointer sample.
+     */
+    public long getTimeNs() {
+        return mTimeNs;
+    }
+
+    public DwellTimer createTimer() {
+        return new DwellTimer(this);
+    }
+
+    /**
+     * Time the pointer must stay in a target to select it.
+     */
+    public void setDwellMs(float ms) {
+        mDwellNs = (long)(ms*1e6);
+    }
+
+    public long getDwellNs() {
+        return mDwellNs;
+    }
+
+    /**
+     * Minimum time between two selections of the same target.
+     */
+    public void setDebounceMs(float ms) {
+        mDebounceNs = (long)(ms*1e6);
+    }
+
+    public long getDebounceNs() {
+        return mDebounceNs;
+    }
+
+    /**
+     * How far, relative to its size, the pointer must leave a target to
+     * exit it once entered.
+     */
+    public void setHysteresis(float fraction) {
+        mHysteresis = fraction;
+    }
+
+    public float getHysteresis() {
+        return mHysteresis;
+    }
+
+    /**
+     * Whether staying in a target selects it repeatedly, every dwell time,
+     * instead of once until the pointer exits.
+     */
+    public void setRetrigger(boolean retrigger) {
+        mRetrigger = retrigger;
+    }
+
+    public boolean getRetrigger() {
+        return mRetrigger;
+    }
+
+    private PointerFilter mFilter;
+    private long mTimeNs;
+    private volatile long mDwellNs;
+    private volatile long mDebounceNs;
+    private volatile float mHysteresis;
+    private volatile boolean mRetrigger;
+}
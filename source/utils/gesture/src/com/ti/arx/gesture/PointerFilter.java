@@ -0,0 +1,170 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ti.arx.gesture;
+
+/**
+ * Smooths a 2D pointer sampled at irregular times. All filters are defined
+ * in time rather than samples, so they behave the same at any pose rate.
+ *
+ * MODE_EXPONENTIAL is a first order low pass with a fixed time constant.
+ * MODE_ONE_EURO is the 1 euro filter (Casiez et al., CHI 2012): a low pass
+ * whose cutoff rises with the pointer speed, removing jitter at rest
+ * without lagging behind fast moves.
+ *
+ * The settings may be changed from any thread while another one filters.
+ * Each change publishes a new immutable set of parameters, which the
+ * filtering thread picks up with its next sample, starting over from it.
+ */
+public class PointerFilter {
+
+    public PointerFilter() {
+        mParams = new Params(MODE_NONE, 0.1f, 1.0f, 1.0f, 1.0f);
+        mApplied = mParams;
+    }
+
+    public void setNone() {
+        Params p = mParams;
+        mParams = new Params(MODE_NONE, p.timeConstant, p.minCutoff, p.beta, p.derivativeCutoff);
+    }
+
+    /**
+     * @param timeConstantMs time for the output to cover 63% of a step.
+     */
+    public void setExponential(float timeConstantMs) {
+        Params p = mParams;
+        mParams = new Params(MODE_EXPONENTIAL, timeConstantMs/1000.0f, p.minCutoff, p.beta,
+                             p.derivativeCutoff);
+    }
+
+    /**
+     * @param minCutoffHz cutoff at rest, lower removes more jitter.
+     * @param beta cutoff increase per unit/s of pointer speed, higher
+     * reduces lag.
+     * @param derivativeCutoffHz cutoff used to estimate the speed.
+     */
+    public void setOneEuro(float minCutoffHz, float beta, float derivativeCutoffHz) {
+        Params p = mParams;
+        mParams = new Params(MODE_ONE_EURO, p.timeConstant, minCutoffHz, beta, derivativeCutoffHz);
+    }
+
+    public int getMode() {
+        return mParams.mode;
+    }
+
+    /**
+     * Forgets the pointer history, the next sample is passed through.
+     * Called from the filtering thread.
+     */
+    public void reset() {
+        mHasSample = false;
+        mDx = 0.0f;
+        mDy = 0.0f;
+    }
+
+    /**
+     * Filters the sample (x, y) taken at timeNs, the result is read with
+     * getX and getY. Samples not newer than the previous one are ignored.
+     */
+    public void filter(float x, float y, long timeNs) {
+        Params p = mParams;
+        if (p != mApplied) {
+            mApplied = p;
+            reset();
+        }
+        if (!mHasSample || p.mode == MODE_NONE) {
+            mX = x;
+            mY = y;
+            mRawX = x;
+            mRawY = y;
+            mTimeNs = timeNs;
+            mHasSample = true;
+            return;
+        }
+
+        long elapsed = timeNs - mTimeNs;
+        if (elapsed <= 0) return;
+        float dt = elapsed/1e9f;
+
+        float a;
+        if (p.mode == MODE_EXPONENTIAL) {
+            a = 1.0f - (float)Math.exp(-dt/p.timeConstant);
+        } else {
+            // Speed from the raw samples, itself low passed
+            float ad = alpha(p.derivativeCutoff, dt);
+            mDx += ad*((x - mRawX)/dt - mDx);
+            mDy += ad*((y - mRawY)/dt - mDy);
+            float speed = (float)Math.sqrt(mDx*mDx + mDy*mDy);
+            a = alpha(p.minCutoff + p.beta*speed, dt);
+        }
+
+        mX += a*(x - mX);
+        mY += a*(y - mY);
+        mRawX = x;
+        mRawY = y;
+        mTimeNs = timeNs;
+    }
+
+    public float getX() {
+        return mX;
+    }
+
+    public float getY() {
+        return mY;
+    }
+
+    /**
+     * Smoothing factor of a first order low pass with the given cutoff.
+     */
+    private static float alpha(float cutoffHz, float dt) {
+        float tau = 1.0f/(2.0f*(float)Math.PI*cutoffHz);
+        return 1.0f/(1.0f + tau/dt);
+    }
+
+    private static class Params {
+        public Params(int mode, float timeConstant, float minCutoff, float beta, float derivativeCutoff) {
+            this.mode = mode;
+            this.timeConstant = timeConstant;
+            this.minCutoff = minCutoff;
+            this.beta = beta;
+            this.derivativeCutoff = derivativeCutoff;
+        }
+
+        public final int mode;
+        public final float timeConstant;
+        public final float minCutoff;
+        public final float beta;
+        public final float derivativeCutoff;
+    }
+
+    // Written by the thread changing the settings
+    private volatile Params mParams;
+
+    // Filtering thread only
+    private Params mApplied;
+    private boolean mHasSample;
+    private long mTimeNs;
+    private float mX;
+    private float mY;
+    private float mRawX;
+    private float mRawY;
+    private float mDx;
+    private float mDy;
+
+    public static final int MODE_NONE = 0;
+    public static final int MODE_EXPONENTIAL = 1;
+    public static final int MODE_ONE_EURO = 2;
+}
@@ -0,0 +1,96 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ti.arx.math;
+
+/**
+ * Rigid transforms [R|t] stored row major in 12 consecutive floats, the
+ * layout of ARXCameraPoseMatrix. Operations work in place on caller
+ * provided storage and never allocate. Results may alias inputs.
+ */
+public final class Mat3x4 {
+
+    private Mat3x4() {}
+
+    public static void setIdentity(float[] m, int mo) {
+        for (int i = 0; i < 12; i++) {
+            m[mo + i] = 0;
+        }
+        m[mo] = m[mo + 5] = m[mo + 10] = 1;
+    }
+
+    /**
+     * r = a * b, i.e. applies b then a.
+     */
+    public static void multiply(float[] r, int ro, float[] a, int ao, float[] b, int bo) {
+        float b00 = b[bo],     b01 = b[bo + 1], b02 = b[bo + 2],  b03 = b[bo + 3];
+        float b10 = b[bo + 4], b11 = b[bo + 5], b12 = b[bo + 6],  b13 = b[bo + 7];
+        float b20 = b[bo + 8], b21 = b[bo + 9], b22 = b[bo + 10], b23 = b[bo + 11];
+        for (int i = 0; i < 3; i++) {
+            int ar = ao + 4*i;
+            float a0 = a[ar], a1 = a[ar + 1], a2 = a[ar + 2], a3 = a[ar + 3];
+            int rr = ro + 4*i;
+            r[rr]     = a0*b00 + a1*b10 + a2*b20;
+            r[rr + 1] = a0*b01 + a1*b11 + a2*b21;
+            r[rr + 2] = a0*b02 + a1*b12 + a2*b22;
+            r[rr + 3] = a0*b03 + a1*b13 + a2*b23 + a3;
+        }
+    }
+
+    /**
+     * [R|t]^-1 = [R^T|-R^T t], R must be a rotation.
+     */
+    public static void invert(float[] r, int ro, float[] m, int mo) {
+        float r00 = m[mo],     r01 = m[mo + 1], r02 = m[mo + 2],  t0 = m[mo + 3];
+        float r10 = m[mo + 4], r11 = m[mo + 5], r12 = m[mo + 6],  t1 = m[mo + 7];
+        float r20 = m[mo + 8], r21 = m[mo + 9], r22 = m[mo + 10], t2 = m[mo + 11];
+        r[ro]     = r00; r[ro + 1] = r10; r[ro + 2]  = r20;
+        r[ro + 4] = r01; r[ro + 5] = r11; r[ro + 6]  = r21;
+        r[ro + 8] = r02; r[ro + 9] = r12; r[ro + 10] = r22;
+        r[ro + 3]  = -(r00*t0 + r10*t1 + r20*t2);
+        r[ro + 7]  = -(r01*t0 + r11*t1 + r21*t2);
+        r[ro + 11] = -(r02*t0 + r12*t1 + r22*t2);
+    }
+
+    /**
+     * r = m * p for the 3D point p.
+     */
+    public static void transformPoint(float[] r, int ro, float[] m, int mo, float[] p, int po) {
+        float x = p[po], y = p[po + 1], z = p[po + 2];
+        r[ro]     = m[mo]*x + m[mo + 1]*y + m[mo + 2]*z + m[mo + 3];
+        r[ro + 1] = m[mo + 4]*x + m[mo + 5]*y + m[mo + 6]*z + m[mo + 7];
+        r[ro + 2] = m[mo + 8]*x + m[mo + 9]*y + m[mo + 10]*z + m[mo + 11];
+    }
+
+    /**
+     * Builds a transform from a unit quaternion (w, x, y, z) and a translation.
+     */
+    public static void fromQuat(float[] m, int mo, float[] q, int qo, float tx, float ty, float tz) {
+        float w = q[qo], x = q[qo + 1], y = q[qo + 2], z = q[qo + 3];
+        m[mo]      = 1 - 2*(y*y + z*z);
+        m[mo + 1]  = 2*(x*y - w*z);
+        m[mo + 2]  = 2*(x*z + w*y);
+        m[mo + 3]  = tx;
+        m[mo + 4]  = 2*(x*y + w*z);
+        m[mo + 5]  = 1 - 2*(x*x + z*z);
+        m[mo + 6]  = 2*(y*z - w*x);
+        m[mo + 7]  = ty;
+        m[mo + 8]  = 2*(x*z - w*y);
+        m[mo + 9]  = 2*(y*z + w*x);
+        m[mo + 10] = 1 - 2*(x*x + y*y);
+        m[mo + 11] = tz;
+    }
+}
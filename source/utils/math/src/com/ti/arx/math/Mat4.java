@@ -0,0 +1,236 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ti.arx.math;
+
+import java.nio.FloatBuffer;
+
+/**
+ * 4x4 matrices stored column major in 16 consecutive floats, as expected by
+ * glLoadMatrixf and glUniformMatrix4fv. All operations work in place on
+ * caller provided storage and never allocate. Results may alias inputs.
+ */
+public final class Mat4 {
+
+    private Mat4() {}
+
+    public static void setIdentity(float[] m, int mo) {
+        for (int i = 0; i < 16; i++) {
+            m[mo + i] = 0;
+        }
+        m[mo] = m[mo + 5] = m[mo + 10] = m[mo + 15] = 1;
+    }
+
+    /**
+     * Builds the projection of a pinhole camera.
+     * @param k row major 3x3 intrinsics, for images of width x height
+     * @param scale factor from the calibration resolution to the viewport,
+     * applied to the whole matrix except the depth terms
+     */
+    public static void frustumFromIntrinsics(float[] m, int mo, float[] k, int ko, float scale,
+                                             float width, float height, float near, float far) {
+        m[mo]      = scale*2*k[ko]/width;
+        m[mo + 4]  = scale*k[ko + 1];
+        m[mo + 8]  = scale*2*(k[ko + 2]/width) - 1;
+        m[mo + 12] = 0;
+        m[mo + 1]  = scale*k[ko + 3];
+        m[mo + 5]  = scale*2*k[ko + 4]/height;
+        m[mo + 9]  = scale*2*(k[ko + 5]/height) - 1;
+        m[mo + 13] = 0;
+        m[mo + 2]  = scale*k[ko + 6];
+        m[mo + 6]  = scale*k[ko + 7];
+        m[mo + 10] = -(near + far)/(far - near);
+        m[mo + 14] = -(2*near*far)/(far - near);
+        m[mo + 3]  = 0;
+        m[mo + 7]  = 0;
+        m[mo + 11] = -1;
+        m[mo + 15] = 0;
+    }
+
+    /**
+     * Builds a parallel projection, like glOrtho.
+     */
+    public static void ortho(float[] m, int mo, float left, float right, float bottom, float top,
+                             float near, float far) {
+        for (int i = 0; i < 16; i++) {
+            m[mo + i] = 0;
+        }
+        m[mo]      = 2/(right - left);
+        m[mo + 5]  = 2/(top - bottom);
+        m[mo + 10] = -2/(far - near);
+        m[mo + 12] = -(right + left)/(right - left);
+        m[mo + 13] = -(top + bottom)/(top - bottom);
+        m[mo + 14] = -(far + near)/(far - near);
+        m[mo + 15] = 1;
+    }
+
+    /**
+     * Converts a row major 3x4 [R|t] pose, as computed by ARX, to a column
+     * major 4x4 matrix.
+     */
+    public static void fromPose(float[] m, int mo, float[] pose, int po) {
+        float r00 = pose[po],     r01 = pose[po + 1], r02 = pose[po + 2],  t0 = pose[po + 3];
+        float r10 = pose[po + 4], r11 = pose[po + 5], r12 = pose[po + 6],  t1 = pose[po + 7];
+        float r20 = pose[po + 8], r21 = pose[po + 9], r22 = pose[po + 10], t2 = pose[po + 11];
+        m[mo]      = r00; m[mo + 1]  = r10; m[mo + 2]  = r20; m[mo + 3]  = 0;
+        m[mo + 4]  = r01; m[mo + 5]  = r11; m[mo + 6]  = r21; m[mo + 7]  = 0;
+        m[mo + 8]  = r02; m[mo + 9]  = r12; m[mo + 10] = r22; m[mo + 11] = 0;
+        m[mo + 12] = t0;  m[mo + 13] = t1;  m[mo + 14] = t2;  m[mo + 15] = 1;
+    }
+
+    public static void transpose(float[] r, int ro, float[] m, int mo) {
+        float t;
+        r[ro] = m[mo]; r[ro + 5] = m[mo + 5]; r[ro + 10] = m[mo + 10]; r[ro + 15] = m[mo + 15];
+        t = m[mo + 1];  r[ro + 1]  = m[mo + 4];  r[ro + 4]  = t;
+        t = m[mo + 2];  r[ro + 2]  = m[mo + 8];  r[ro + 8]  = t;
+        t = m[mo + 3];  r[ro + 3]  = m[mo + 12]; r[ro + 12] = t;
+        t = m[mo + 6];  r[ro + 6]  = m[mo + 9];  r[ro + 9]  = t;
+        t = m[mo + 7];  r[ro + 7]  = m[mo + 13]; r[ro + 13] = t;
+        t = m[mo + 11]; r[ro + 11] = m[mo + 14]; r[ro + 14] = t;
+    }
+
+    /**
+     * r = a * b
+     */
+    public static void multiply(float[] r, int ro, float[] a, int ao, float[] b, int bo) {
+        float a00 = a[ao],     a01 = a[ao + 4], a02 = a[ao + 8],  a03 = a[ao + 12];
+        float a10 = a[ao + 1], a11 = a[ao + 5], a12 = a[ao + 9],  a13 = a[ao + 13];
+        float a20 = a[ao + 2], a21 = a[ao + 6], a22 = a[ao + 10], a23 = a[ao + 14];
+        float a30 = a[ao + 3], a31 = a[ao + 7], a32 = a[ao + 11], a33 = a[ao + 15];
+        for (int c = 0; c < 4; c++) {
+            int bc = bo + 4*c;
+            float b0 = b[bc], b1 = b[bc + 1], b2 = b[bc + 2], b3 = b[bc + 3];
+            int rc = ro + 4*c;
+            r[rc]     = a00*b0 + a01*b1 + a02*b2 + a03*b3;
+            r[rc + 1] = a10*b0 + a11*b1 + a12*b2 + a13*b3;
+            r[rc + 2] = a20*b0 + a21*b1 + a22*b2 + a23*b3;
+            r[rc + 3] = a30*b0 + a31*b1 + a32*b2 + a33*b3;
+        }
+    }
+
+    /**
+     * General inverse by cofactors.
+     * @return false, leaving r untouched, if m is singular.
+     */
+    public static boolean invert(float[] r, int ro, float[] m, int mo) {
+        float m00 = m[mo],     m01 = m[mo + 4], m02 = m[mo + 8],  m03 = m[mo + 12];
+        float m10 = m[mo + 1], m11 = m[mo + 5], m12 = m[mo + 9],  m13 = m[mo + 13];
+        float m20 = m[mo + 2], m21 = m[mo + 6], m22 = m[mo + 10], m23 = m[mo + 14];
+        float m30 = m[mo + 3], m31 = m[mo + 7], m32 = m[mo + 11], m33 = m[mo + 15];
+
+        // 2x2 minors of the two bottom and the two top rows
+        float s0 = m00*m11 - m10*m01;
+        float s1 = m00*m12 - m10*m02;
+        float s2 = m00*m13 - m10*m03;
+        float s3 = m01*m12 - m11*m02;
+        float s4 = m01*m13 - m11*m03;
+        float s5 = m02*m13 - m12*m03;
+        float c5 = m22*m33 - m32*m23;
+        float c4 = m21*m33 - m31*m23;
+        float c3 = m21*m32 - m31*m22;
+        float c2 = m20*m33 - m30*m23;
+        float c1 = m20*m32 - m30*m22;
+        float c0 = m20*m31 - m30*m21;
+
+        float det = s0*c5 - s1*c4 + s2*c3 + s3*c2 - s4*c1 + s5*c0;
+        if (det == 0 || Float.isNaN(det) || Float.isInfinite(det)) {
+            return false;
+        }
+        float inv = 1.0f/det;
+
+        r[ro]      = ( m11*c5 - m12*c4 + m13*c3)*inv;
+        r[ro + 4]  = (-m01*c5 + m02*c4 - m03*c3)*inv;
+        r[ro + 8]  = ( m31*s5 - m32*s4 + m33*s3)*inv;
+        r[ro + 12] = (-m21*s5 + m22*s4 - m23*s3)*inv;
+        r[ro + 1]  = (-m10*c5 + m12*c2 - m13*c1)*inv;
+        r[ro + 5]  = ( m00*c5 - m02*c2 + m03*c1)*inv;
+        r[ro + 9]  = (-m30*s5 + m32*s2 - m33*s1)*inv;
+        r[ro + 13] = ( m20*s5 - m22*s2 + m23*s1)*inv;
+        r[ro + 2]  = ( m10*c4 - m11*c2 + m13*c0)*inv;
+        r[ro + 6]  = (-m00*c4 + m01*c2 - m03*c0)*inv;
+        r[ro + 10] = ( m30*s4 - m31*s2 + m33*s0)*inv;
+        r[ro + 14] = (-m20*s4 + m21*s2 - m23*s0)*inv;
+        r[ro + 3]  = (-m10*c3 + m11*c1 - m12*c0)*inv;
+        r[ro + 7]  = ( m00*c3 - m01*c1 + m02*c0)*inv;
+        r[ro + 11] = (-m30*s3 + m31*s1 - m32*s0)*inv;
+        r[ro + 15] = ( m20*s3 - m21*s1 + m22*s0)*inv;
+        return true;
+    }
+
+    /**
+     * Inverse of a rigid transform (rotation and translation only), much
+     * cheaper than invert: [R|t]^-1 = [R^T|-R^T t].
+     */
+    public static void invertRigid(float[] r, int ro, float[] m, int mo) {
+        float r00 = m[mo],     r01 = m[mo + 4], r02 = m[mo + 8];
+        float r10 = m[mo + 1], r11 = m[mo + 5], r12 = m[mo + 9];
+        float r20 = m[mo + 2], r21 = m[mo + 6], r22 = m[mo + 10];
+        float t0 = m[mo + 12], t1 = m[mo + 13], t2 = m[mo + 14];
+        r[ro]      = r00; r[ro + 4]  = r10; r[ro + 8]  = r20;
+        r[ro + 1]  = r01; r[ro + 5]  = r11; r[ro + 9]  = r21;
+        r[ro + 2]  = r02; r[ro + 6]  = r12; r[ro + 10] = r22;
+        r[ro + 12] = -(r00*t0 + r10*t1 + r20*t2);
+        r[ro + 13] = -(r01*t0 + r11*t1 + r21*t2);
+        r[ro + 14] = -(r02*t0 + r12*t1 + r22*t2);
+        r[ro + 3] = r[ro + 7] = r[ro + 11] = 0;
+        r[ro + 15] = 1;
+    }
+
+    /**
+     * m = m * T(x, y, z), like glTranslatef.
+     */
+    public static void translate(float[] m, int mo, float x, float y, float z) {
+        for (int i = 0; i < 4; i++) {
+            m[mo + 12 + i] += m[mo + i]*x + m[mo + 4 + i]*y + m[mo + 8 + i]*z;
+        }
+    }
+
+    /**
+     * m = m * S(x, y, z), like glScalef.
+     */
+    public static void scale(float[] m, int mo, float x, float y, float z) {
+        for (int i = 0; i < 4; i++) {
+            m[mo + i] *= x;
+            m[mo + 4 + i] *= y;
+            m[mo + 8 + i] *= z;
+        }
+    }
+
+    /**
+     * m = S(x, y, z) * m, i.e. scales the rows.
+     */
+    public static void preScale(float[] m, int mo, float x, float y, float z) {
+        for (int c = 0; c < 4; c++) {
+            m[mo + 4*c] *= x;
+            m[mo + 4*c + 1] *= y;
+            m[mo + 4*c + 2] *= z;
+        }
+    }
+
+    /**
+     * Writes m at the current position of dst, which is advanced by 16.
+     */
+    public static void put(FloatBuffer dst, float[] m, int mo) {
+        dst.put(m, mo, 16);
+    }
+
+    /**
+     * Reads 16 floats from the current position of src, which is advanced.
+     */
+    public static void get(FloatBuffer src, float[] m, int mo) {
+        src.get(m, mo, 16);
+    }
+}
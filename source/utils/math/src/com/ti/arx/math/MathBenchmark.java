@@ -0,0 +1,435 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ti.arx.math;
+
+import java.util.Random;
+
+/**
+ * Checks Mat4, Mat3x4 and Quat against a straightforward double precision
+ * implementation on random inputs, then measures the time per operation.
+ *
+ * Usage: java -jar arxmath-host.jar [iterations]
+ *
+ * Exits with status 1 if any result is off by more than the tolerance.
+ */
+public class MathBenchmark {
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        MathBenchmark b = new MathBenchmark(iterations);
+        b.check();
+        b.benchmark();
+        System.out.println(b.mFailures == 0 ? "PASSED" : "FAILED");
+        System.exit(b.mFailures == 0 ? 0 : 1);
+    }
+
+    MathBenchmark(int iterations) {
+        mIterations = iterations;
+        mRandom = new Random(42);
+    }
+
+    /////////////////////////////////////////////////////////////////////////
+    // Correctness
+
+    private void check() {
+        float[] a = new float[16], b = new float[16], r = new float[16], s = new float[16];
+        double[] da = new double[16], db = new double[16], dr = new double[16];
+        float[] p = new float[12], p2 = new float[12], pr = new float[12];
+        float[] q = new float[4], q2 = new float[4], qr = new float[4];
+        float[] v = new float[3], vr = new float[3];
+        float[] k = new float[9];
+
+        double errMul = 0, errInv = 0, errRigid = 0, errPose = 0, errFrustum = 0, errOrtho = 0;
+        double errTranspose = 0, errTranslate = 0, err34Mul = 0, err34Inv = 0;
+        double errPoint = 0, errQuat = 0, errQuatMul = 0, errSlerp = 0, errAlias = 0;
+
+        for (int n = 0; n < mIterations; n++) {
+            // Mat4.multiply
+            randomMatrix(a, 10);
+            randomMatrix(b, 10);
+            Mat4.multiply(r, 0, a, 0, b, 0);
+            multiply(dr, toDouble(a, da), toDouble(b, db));
+            errMul = Math.max(errMul, relError(r, dr, 16));
+
+            // In place, r = r * b
+            System.arraycopy(a, 0, s, 0, 16);
+            Mat4.multiply(s, 0, s, 0, b, 0);
+            errAlias = Math.max(errAlias, relError(s, dr, 16));
+
+            // Mat4.invert on well conditioned matrices
+            randomMatrix(a, 1);
+            for (int i = 0; i < 4; i++) a[5*i] += 4;
+            if (!Mat4.invert(r, 0, a, 0) || !invert(dr, toDouble(a, da))) {
+                fail("invert: singular matrix");
+            }
+            errInv = Math.max(errInv, relError(r, dr, 16));
+            System.arraycopy(a, 0, s, 0, 16);
+            Mat4.invert(s, 0, s, 0);
+            errAlias = Math.max(errAlias, relError(s, dr, 16));
+
+            // Mat4.transpose
+            randomMatrix(a, 10);
+            Mat4.transpose(r, 0, a, 0);
+            for (int c = 0; c < 4; c++) {
+                for (int i = 0; i < 4; i++) {
+                    dr[c*4 + i] = a[i*4 + c];
+                }
+            }
+            errTranspose = Math.max(errTranspose, relError(r, dr, 16));
+            Mat4.transpose(a, 0, a, 0);
+            errAlias = Math.max(errAlias, relError(a, dr, 16));
+
+            // Poses: Mat4.fromPose, Mat4.invertRigid, Mat3x4
+            randomPose(p, q);
+            Mat4.fromPose(r, 0, p, 0);
+            poseToDouble(p, da);
+            errPose = Math.max(errPose, relError(r, da, 16));
+            Mat4.invertRigid(s, 0, r, 0);
+            invert(dr, da);
+            errRigid = Math.max(errRigid, relError(s, dr, 16));
+
+            randomPose(p2, q2);
+            Mat3x4.multiply(pr, 0, p, 0, p2, 0);
+            multiply(dr, da, poseToDouble(p2, db));
+            err34Mul = Math.max(err34Mul, relError(pr, dr, 12, true));
+            Mat3x4.multiply(p2, 0, p, 0, p2, 0);
+            errAlias = Math.max(errAlias, relError(p2, dr, 12, true));
+
+            Mat3x4.invert(pr, 0, p, 0);
+            invert(dr, da);
+            err34Inv = Math.max(err34Inv, relError(pr, dr, 12, true));
+
+            v[0] = rnd(10); v[1] = rnd(10); v[2] = rnd(10);
+            Mat3x4.transformPoint(vr, 0, p, 0, v, 0);
+            for (int i = 0; i < 3; i++) {
+                double e = da[i]*v[0] + da[4 + i]*v[1] + da[8 + i]*v[2] + da[12 + i];
+                errPoint = Math.max(errPoint, Math.abs(vr[i] - e)/Math.max(1, Math.abs(e)));
+            }
+
+            // Mat4.translate and Mat4.scale against explicit products
+            randomMatrix(a, 10);
+            float tx = rnd(10), ty = rnd(10), tz = rnd(10);
+            System.arraycopy(a, 0, r, 0, 16);
+            Mat4.translate(r, 0, tx, ty, tz);
+            Mat4.scale(r, 0, ty, tz, tx);
+            Mat4.preScale(r, 0, tz, tx, ty);
+            java.util.Arrays.fill(db, 0);
+            db[0] = db[5] = db[10] = db[15] = 1;
+            db[12] = tx; db[13] = ty; db[14] = tz;
+            multiply(dr, toDouble(a, da), db);
+            java.util.Arrays.fill(db, 0);
+            db[0] = ty; db[5] = tz; db[10] = tx; db[15] = 1;
+            multiply(da, dr, db);
+            java.util.Arrays.fill(db, 0);
+            db[0] = tz; db[5] = tx; db[10] = ty; db[15] = 1;
+            multiply(dr, db, da);
+            errTranslate = Math.max(errTranslate, relError(r, dr, 16));
+
+            // Mat4.frustumFromIntrinsics
+            for (int i = 0; i < 9; i++) k[i] = 100 + rnd(100);
+            float w = 320 + rnd(300), h = 240 + rnd(200), scale = 1 + rnd(0.9f);
+            Mat4.frustumFromIntrinsics(r, 0, k, 0, scale, w, h, 0.01f, 500.0f);
+            frustum(dr, k, scale, w, h, 0.01, 500.0);
+            errFrustum = Math.max(errFrustum, relError(r, dr, 16));
+
+            // Mat4.ortho
+            float l = rnd(10), b2 = rnd(10), n2 = rnd(1);
+            float rt = l + 1 + rnd(10), t2 = b2 + 1 + rnd(10), f2 = n2 + 1 + rnd(100);
+            Mat4.ortho(r, 0, l, rt, b2, t2, n2, f2);
+            java.util.Arrays.fill(dr, 0);
+            dr[0] = 2.0/((double)rt - l);
+            dr[5] = 2.0/((double)t2 - b2);
+            dr[10] = -2.0/((double)f2 - n2);
+            dr[12] = -((double)rt + l)/((double)rt - l);
+            dr[13] = -((double)t2 + b2)/((double)t2 - b2);
+            dr[14] = -((double)f2 + n2)/((double)f2 - n2);
+            dr[15] = 1;
+            errOrtho = Math.max(errOrtho, relError(r, dr, 16));
+
+            // Quat.fromMat3x4 round trip, up to the sign of q
+            Quat.fromMat3x4(qr, 0, p, 0);
+            double same = 0, opposite = 0;
+            for (int i = 0; i < 4; i++) {
+                same = Math.max(same, Math.abs(qr[i] - q[i]));
+                opposite = Math.max(opposite, Math.abs(qr[i] + q[i]));
+            }
+            errQuat = Math.max(errQuat, Math.min(same, opposite));
+
+            // Quat.multiply composes like the rotation matrices
+            Quat.multiply(qr, 0, q, 0, q2, 0);
+            Mat3x4.fromQuat(pr, 0, qr, 0, 0, 0, 0);
+            Mat3x4.fromQuat(p, 0, q, 0, 0, 0, 0);
+            Mat3x4.fromQuat(p2, 0, q2, 0, 0, 0, 0);
+            multiply(dr, poseToDouble(p, da), poseToDouble(p2, db));
+            errQuatMul = Math.max(errQuatMul, relError(pr, dr, 12, true));
+
+            // Quat.slerp against a double precision slerp of the same ends,
+            // every other time between nearly parallel ends (normalized lerp)
+            if ((n & 1) != 0) {
+                for (int i = 0; i < 4; i++) {
+                    q2[i] = q[i] + rnd(0.02f);
+                }
+                Quat.normalize(q2, 0);
+            }
+            float t = mRandom.nextFloat();
+            Quat.slerp(qr, 0, q, 0, q2, 0, t);
+            slerp(dr, q, q2, t);
+            double slerpErr = 0;
+            for (int i = 0; i < 4; i++) {
+                slerpErr = Math.max(slerpErr, Math.abs(qr[i] - dr[i]));
+            }
+            errSlerp = Math.max(errSlerp, slerpErr);
+        }
+
+        expect("Mat4.multiply", errMul, 1e-6);
+        expect("Mat4.invert", errInv, 1e-5);
+        expect("Mat4.transpose", errTranspose, 0);
+        expect("Mat4.fromPose", errPose, 0);
+        expect("Mat4.invertRigid", errRigid, 1e-5);
+        expect("Mat4.translate/scale", errTranslate, 1e-5);
+        expect("Mat4.frustumFromIntrinsics", errFrustum, 1e-6);
+        expect("Mat4.ortho", errOrtho, 1e-6);
+        expect("Mat3x4.multiply", err34Mul, 1e-5);
+        expect("Mat3x4.invert", err34Inv, 1e-5);
+        expect("Mat3x4.transformPoint", errPoint, 1e-5);
+        expect("Quat.fromMat3x4", errQuat, 1e-5);
+        expect("Quat.multiply", errQuatMul, 1e-5);
+        // Float rounding of the cosine is amplified by up to 1/sin(angle), about
+        // 32 at the normalized lerp threshold, so a few float epsilons give at
+        // most a few 1e-6. Below the threshold the normalized lerp is within
+        // 1e-6 of the slerp. Measured around 4e-7, 1e-5 leaves a margin.
+        expect("Quat.slerp", errSlerp, 1e-5);
+        expect("aliased results", errAlias, 1e-5);
+    }
+
+    private void expect(String name, double error, double tolerance) {
+        boolean ok = error <= tolerance;
+        System.out.println(String.format("%-28s max error %.3g %s", name, error, ok ? "ok" : "FAILED"));
+        if (!ok) mFailures++;
+    }
+
+    private void fail(String message) {
+        System.out.println(message);
+        mFailures++;
+    }
+
+    private float rnd(float range) {
+        return (2*mRandom.nextFloat() - 1)*range;
+    }
+
+    private void randomMatrix(float[] m, float range) {
+        for (int i = 0; i < 16; i++) {
+            m[i] = rnd(range);
+        }
+    }
+
+    /**
+     * Random rotation (from the unit quaternion q, also filled) and
+     * translation, as a row major 3x4 pose.
+     */
+    private void randomPose(float[] p, float[] q) {
+        Quat.fromAxisAngle(q, 0, 0, 0, 1, 0);
+        double x = mRandom.nextGaussian(), y = mRandom.nextGaussian();
+        double z = mRandom.nextGaussian(), w = mRandom.nextGaussian();
+        double n = Math.sqrt(x*x + y*y + z*z + w*w);
+        q[0] = (float)(w/n);
+        q[1] = (float)(x/n);
+        q[2] = (float)(y/n);
+        q[3] = (float)(z/n);
+        Mat3x4.fromQuat(p, 0, q, 0, rnd(10), rnd(10), rnd(10));
+    }
+
+    /**
+     * Slerp of the unit quaternions a and b along the shorter arc, without
+     * the normalized lerp fallback of Quat.slerp.
+     */
+    private static void slerp(double[] r, float[] a, float[] b, double t) {
+        double cos = 0;
+        for (int i = 0; i < 4; i++) {
+            cos += (double)a[i]*b[i];
+        }
+        double sign = cos < 0 ? -1 : 1;
+        cos = Math.min(1.0, Math.abs(cos));
+        double angle = Math.acos(cos);
+        double ka = 1 - t, kb = t;
+        if (angle > 1e-12) {
+            ka = Math.sin((1 - t)*angle)/Math.sin(angle);
+            kb = Math.sin(t*angle)/Math.sin(angle);
+        }
+        double n = 0;
+        for (int i = 0; i < 4; i++) {
+            r[i] = ka*a[i] + kb*sign*b[i];
+            n += r[i]*r[i];
+        }
+        n = Math.sqrt(n);
+        for (int i = 0; i < 4; i++) {
+            r[i] /= n;
+        }
+    }
+
+    private static double relError(float[] f, double[] d, int count) {
+        return relError(f, d, count, false);
+    }
+
+    /**
+     * Largest difference relative to the largest reference value (at least
+     * 1), so cancellation in a single element is not mistaken for an error.
+     * @param pose compare the row major 3x4 f to the column major 4x4 d
+     */
+    private static double relError(float[] f, double[] d, int count, boolean pose) {
+        double max = 0;
+        double scale = 1.0;
+        for (int i = 0; i < count; i++) {
+            double e = pose ? d[(i%4)*4 + i/4] : d[i];
+            max = Math.max(max, Math.abs(f[i] - e));
+            scale = Math.max(scale, Math.abs(e));
+        }
+        return max/scale;
+    }
+
+    /////////////////////////////////////////////////////////////////////////
+    // Double precision reference, column major 4x4
+
+    private static double[] toDouble(float[] m, double[] d) {
+        for (int i = 0; i < 16; i++) d[i] = m[i];
+        return d;
+    }
+
+    private static double[] poseToDouble(float[] p, double[] d) {
+        for (int r = 0; r < 3; r++) {
+            for (int c = 0; c < 4; c++) {
+                d[c*4 + r] = p[r*4 + c];
+            }
+        }
+        d[3] = d[7] = d[11] = 0;
+        d[15] = 1;
+        return d;
+    }
+
+    private static void multiply(double[] r, double[] a, double[] b) {
+        for (int c = 0; c < 4; c++) {
+            for (int i = 0; i < 4; i++) {
+                double s = 0;
+                for (int j = 0; j < 4; j++) {
+                    s += a[j*4 + i]*b[c*4 + j];
+                }
+                r[c*4 + i] = s;
+            }
+        }
+    }
+
+    /**
+     * Gauss-Jordan elimination with partial pivoting.
+     */
+    private static boolean invert(double[] r, double[] m) {
+        double[][] t = new double[4][8];
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                t[i][j] = m[j*4 + i];
+            }
+            t[i][4 + i] = 1;
+        }
+        for (int c = 0; c < 4; c++) {
+            int pivot = c;
+            for (int i = c + 1; i < 4; i++) {
+                if (Math.abs(t[i][c]) > Math.abs(t[pivot][c])) pivot = i;
+            }
+            if (t[pivot][c] == 0) return false;
+            double[] tmp = t[c]; t[c] = t[pivot]; t[pivot] = tmp;
+            double inv = 1/t[c][c];
+            for (int j = 0; j < 8; j++) t[c][j] *= inv;
+            for (int i = 0; i < 4; i++) {
+                if (i == c) continue;
+                double f = t[i][c];
+                for (int j = 0; j < 8; j++) t[i][j] -= f*t[c][j];
+            }
+        }
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                r[j*4 + i] = t[i][4 + j];
+            }
+        }
+        return true;
+    }
+
+    private static void frustum(double[] m, float[] k, double s, double w, double h, double n, double f) {
+        java.util.Arrays.fill(m, 0);
+        m[0] = s*2*k[0]/w;  m[4] = s*k[1];       m[8] = s*2*k[2]/w - 1;
+        m[1] = s*k[3];      m[5] = s*2*k[4]/h;   m[9] = s*2*k[5]/h - 1;
+        m[2] = s*k[6];      m[6] = s*k[7];       m[10] = -(n + f)/(f - n);  m[14] = -2*n*f/(f - n);
+        m[11] = -1;
+    }
+
+    /////////////////////////////////////////////////////////////////////////
+    // Timing
+
+    private interface Op {
+        void run(int i);
+    }
+
+    private void benchmark() {
+        final int count = 64;
+        final float[] a = new float[16*count];
+        final float[] b = new float[16*count];
+        final float[] r = new float[16*count];
+        final float[] q = new float[4*count];
+        for (int i = 0; i < count; i++) {
+            float[] m = new float[16], p = new float[12], qq = new float[4];
+            randomPose(p, qq);
+            Mat4.fromPose(m, 0, p, 0);
+            System.arraycopy(m, 0, a, 16*i, 16);
+            System.arraycopy(p, 0, b, 16*i, 12);
+            System.arraycopy(qq, 0, q, 4*i, 4);
+        }
+        final float[] k = { 267.27434f, 0, 158.823f, 0, 269.2575423f, 122.68925f, 0, 0, 1 };
+
+        time("Mat4.multiply", new Op() { public void run(int i) {
+            Mat4.multiply(r, 16*(i & 63), a, 16*(i & 63), a, 16*((i + 1) & 63)); } });
+        time("Mat4.invert", new Op() { public void run(int i) {
+            Mat4.invert(r, 16*(i & 63), a, 16*(i & 63)); } });
+        time("Mat4.invertRigid", new Op() { public void run(int i) {
+            Mat4.invertRigid(r, 16*(i & 63), a, 16*(i & 63)); } });
+        time("Mat4.fromPose", new Op() { public void run(int i) {
+            Mat4.fromPose(r, 16*(i & 63), b, 16*(i & 63)); } });
+        time("Mat4.frustumFromIntrinsics", new Op() { public void run(int i) {
+            Mat4.frustumFromIntrinsics(r, 16*(i & 63), k, 0, 4.0f, 1280, 960, 0.01f, 200.0f); } });
+        time("Mat4.translate+scale", new Op() { public void run(int i) {
+            int o = 16*(i & 63);
+            Mat4.translate(r, o, 0, 0, 1);
+            Mat4.scale(r, o, 0.5f, 0.5f, 0.5f); } });
+        time("Mat3x4.multiply", new Op() { public void run(int i) {
+            Mat3x4.multiply(r, 16*(i & 63), b, 16*(i & 63), b, 16*((i + 1) & 63)); } });
+        time("Quat.fromMat3x4", new Op() { public void run(int i) {
+            Quat.fromMat3x4(r, 16*(i & 63), b, 16*(i & 63)); } });
+        time("Quat.slerp", new Op() { public void run(int i) {
+            Quat.slerp(r, 16*(i & 63), q, 4*(i & 63), q, 4*((i + 1) & 63), 0.3f); } });
+    }
+
+    private void time(String name, Op op) {
+        int n = Math.max(mIterations*10, 1000);
+        // Warm up so the JIT compiles the operation first
+        for (int i = 0; i < n; i++) op.run(i);
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i++) op.run(i);
+        long ns = System.nanoTime() - start;
+        System.out.println(String.format("%-28s %7.1f ns/op", name, (double)ns/n));
+    }
+
+    private int mIterations;
+    private Random mRandom;
+    private int mFailures;
+}
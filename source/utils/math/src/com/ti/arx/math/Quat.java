@@ -0,0 +1,145 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ti.arx.math;
+
+/**
+ * Quaternions stored as (w, x, y, z) in 4 consecutive floats. Operations
+ * work in place on caller provided storage and never allocate. Results may
+ * alias inputs.
+ */
+public final class Quat {
+
+    private Quat() {}
+
+    public static void setIdentity(float[] q, int qo) {
+        q[qo] = 1;
+        q[qo + 1] = q[qo + 2] = q[qo + 3] = 0;
+    }
+
+    public static float dot(float[] a, int ao, float[] b, int bo) {
+        return a[ao]*b[bo] + a[ao + 1]*b[bo + 1] + a[ao + 2]*b[bo + 2] + a[ao + 3]*b[bo + 3];
+    }
+
+    /**
+     * r = a * b, i.e. rotates by b then a.
+     */
+    public static void multiply(float[] r, int ro, float[] a, int ao, float[] b, int bo) {
+        float aw = a[ao], ax = a[ao + 1], ay = a[ao + 2], az = a[ao + 3];
+        float bw = b[bo], bx = b[bo + 1], by = b[bo + 2], bz = b[bo + 3];
+        r[ro]     = aw*bw - ax*bx - ay*by - az*bz;
+        r[ro + 1] = aw*bx + ax*bw + ay*bz - az*by;
+        r[ro + 2] = aw*by - ax*bz + ay*bw + az*bx;
+        r[ro + 3] = aw*bz + ax*by - ay*bx + az*bw;
+    }
+
+    public static void conjugate(float[] r, int ro, float[] q, int qo) {
+        r[ro] = q[qo];
+        r[ro + 1] = -q[qo + 1];
+        r[ro + 2] = -q[qo + 2];
+        r[ro + 3] = -q[qo + 3];
+    }
+
+    public static void normalize(float[] q, int qo) {
+        float n = (float)Math.sqrt(dot(q, qo, q, qo));
+        if (n > 0) {
+            float inv = 1.0f/n;
+            for (int i = 0; i < 4; i++) {
+                q[qo + i] *= inv;
+            }
+        }
+    }
+
+    /**
+     * Rotation of angle radians around the unit axis (x, y, z).
+     */
+    public static void fromAxisAngle(float[] q, int qo, float x, float y, float z, float angle) {
+        float s = (float)Math.sin(angle/2);
+        q[qo] = (float)Math.cos(angle/2);
+        q[qo + 1] = x*s;
+        q[qo + 2] = y*s;
+        q[qo + 3] = z*s;
+    }
+
+    /**
+     * Rotation part of a row major 3x4 (Mat3x4) matrix to a unit quaternion.
+     */
+    public static void fromMat3x4(float[] q, int qo, float[] m, int mo) {
+        float r00 = m[mo],     r01 = m[mo + 1], r02 = m[mo + 2];
+        float r10 = m[mo + 4], r11 = m[mo + 5], r12 = m[mo + 6];
+        float r20 = m[mo + 8], r21 = m[mo + 9], r22 = m[mo + 10];
+        float trace = r00 + r11 + r22;
+        float w, x, y, z;
+        if (trace > 0) {
+            float s = (float)Math.sqrt(trace + 1.0f)*2;
+            w = s/4;
+            x = (r21 - r12)/s;
+            y = (r02 - r20)/s;
+            z = (r10 - r01)/s;
+        } else if (r00 > r11 && r00 > r22) {
+            float s = (float)Math.sqrt(1.0f + r00 - r11 - r22)*2;
+            w = (r21 - r12)/s;
+            x = s/4;
+            y = (r01 + r10)/s;
+            z = (r02 + r20)/s;
+        } else if (r11 > r22) {
+            float s = (float)Math.sqrt(1.0f + r11 - r00 - r22)*2;
+            w = (r02 - r20)/s;
+            x = (r01 + r10)/s;
+            y = s/4;
+            z = (r12 + r21)/s;
+        } else {
+            float s = (float)Math.sqrt(1.0f + r22 - r00 - r11)*2;
+            w = (r10 - r01)/s;
+            x = (r02 + r20)/s;
+            y = (r12 + r21)/s;
+            z = s/4;
+        }
+        q[qo] = w;
+        q[qo + 1] = x;
+        q[qo + 2] = y;
+        q[qo + 3] = z;
+        normalize(q, qo);
+    }
+
+    /**
+     * Spherical interpolation from a (t = 0) to b (t = 1) along the
+     * shortest arc.
+     */
+    public static void slerp(float[] r, int ro, float[] a, int ao, float[] b, int bo, float t) {
+        float cos = dot(a, ao, b, bo);
+        float sign = 1.0f;
+        if (cos < 0) {
+            cos = -cos;
+            sign = -1.0f;
+        }
+        float ka, kb;
+        if (cos > 0.9995f) {
+            // Nearly parallel, fall back to a normalized lerp
+            ka = 1 - t;
+            kb = t*sign;
+        } else {
+            float angle = (float)Math.acos(cos);
+            float inv = 1.0f/(float)Math.sin(angle);
+            ka = (float)Math.sin((1 - t)*angle)*inv;
+            kb = (float)Math.sin(t*angle)*inv*sign;
+        }
+        for (int i = 0; i < 4; i++) {
+            r[ro + i] = ka*a[ao + i] + kb*b[bo + i];
+        }
+        normalize(r, ro);
+    }
+}
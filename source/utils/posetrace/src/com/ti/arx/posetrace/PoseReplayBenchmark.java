@@ -0,0 +1,139 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ti.arx.posetrace;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Replays a pose trace on a plain JVM, without ARX or a display, and reports
+ * the throughput and delivery lateness of the replayer itself. The listener
+ * only converts each pose to a view matrix, it does not run the renderers.
+ *
+ * ARCamera.onCamPoseUpdate and ProjectorPoseRenderer.onProjPoseUpdate need
+ * the Android framework. To measure them, replay the trace in the app with
+ * startReplay (speed 0 for throughput); stopReplay logs the same figures,
+ * then including the renderer work done on the replay thread.
+ *
+ * Usage: java -jar arxposetrace-host.jar [trace] [speed]
+ *
+ * Without a trace, a synthetic 30 fps camera and projector trace is used.
+ * Speed 0 (the default) measures throughput, other values replay at that
+ * multiple of the recorded rate and measure lateness.
+ */
+public class PoseReplayBenchmark implements PoseReplayer.Listener {
+
+    public static void main(String[] args) throws Exception {
+        File file;
+        if (args.length > 0) {
+            file = new File(args[0]);
+        } else {
+            file = File.createTempFile("poses", ".trace");
+            file.deleteOnExit();
+            synthesize(file, 30*60);
+        }
+        float speed = args.length > 1 ? Float.parseFloat(args[1]) : 0.0f;
+
+        PoseTrace trace = new PoseTrace(file);
+        System.out.println(file + ": " + trace.size() + " poses");
+
+        // Warm up the JIT before measuring
+        run(trace, 0.0f);
+        PoseReplayBenchmark b = run(trace, speed);
+        System.out.println((speed > 0 ? "speed " + speed : "back to back") + ": " + b.mResult +
+                           String.format(", checksum %.3f", b.mChecksum));
+    }
+
+    private static PoseReplayBenchmark run(PoseTrace trace, float speed) throws InterruptedException {
+        PoseReplayBenchmark b = new PoseReplayBenchmark();
+        PoseReplayer r = new PoseReplayer(trace, b);
+        r.setSpeed(speed);
+        synchronized (b) {
+            r.start();
+            while (b.mResult == null) {
+                b.wait();
+            }
+        }
+        r.stop();
+        return b;
+    }
+
+    /**
+     * A camera circling the marker, with the projector pose following it.
+     */
+    private static void synthesize(File file, int count) throws IOException {
+        PoseTraceWriter w = new PoseTraceWriter(file, 0);
+        float[] m = new float[16];
+        long time = 0;
+        for (int i = 0; i < count; i++) {
+            double a = 0.5*Math.sin(i*0.05);
+            float c = (float)Math.cos(a);
+            float s = (float)Math.sin(a);
+            m[0] = c;  m[1] = 0; m[2] = s;  m[3] = 0.1f*s;
+            m[4] = 0;  m[5] = 1; m[6] = 0;  m[7] = 0;
+            m[8] = -s; m[9] = 0; m[10] = c; m[11] = 3.0f;
+            w.writeCameraPose(time, time, 1, m);
+            toViewMatrix(m, m);
+            w.writeProjectorPose(time + 1000000, 1, m, s, c);
+            time += 33333333;
+        }
+        w.close();
+    }
+
+    /** Row major 3x4 pose to column major 4x4, as ARCamera does */
+    private static void toViewMatrix(float[] pose, float[] view) {
+        float[] t = new float[12];
+        System.arraycopy(pose, 0, t, 0, 12);
+        for (int r = 0; r < 3; r++) {
+            for (int c = 0; c < 4; c++) {
+                view[c*4 + r] = t[r*4 + c];
+            }
+        }
+        view[3] = 0;
+        view[7] = 0;
+        view[11] = 0;
+        view[15] = 1;
+    }
+
+    @Override
+    public void onCameraPose(long timestamp, int status, float[] matrix) {
+        if (status == 0) return;
+        for (int r = 0; r < 3; r++) {
+            for (int c = 0; c < 4; c++) {
+                mView[c*4 + r] = matrix[r*4 + c];
+            }
+        }
+        mView[15] = 1;
+        mChecksum += mView[12] + mView[14];
+    }
+
+    @Override
+    public void onProjectorPose(int status, float[] viewMatrix, float x, float y) {
+        System.arraycopy(viewMatrix, 0, mView, 0, 16);
+        mChecksum += mView[0] + x + y;
+    }
+
+    @Override
+    public synchronized void onReplayDone(PoseReplayer replayer) {
+        mResult = replayer.toString();
+        notifyAll();
+    }
+
+    private float[] mView = new float[16];
+    private double mChecksum;
+    private String mResult;
+}
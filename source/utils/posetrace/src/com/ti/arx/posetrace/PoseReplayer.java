@@ -0,0 +1,192 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ti.arx.posetrace;
+
+/**
+ * Plays a pose trace back on its own thread, in place of the ARX callback
+ * thread, at the recorded rate or faster. Records how late each pose was
+ * delivered compared to its schedule.
+ */
+public class PoseReplayer implements Runnable {
+
+    public interface Listener {
+        /**
+         * @param matrix row major 3x4 pose in the first 12 floats. Reused
+         * for the next pose, copy it to keep it.
+         */
+        public void onCameraPose(long timestamp, int status, float[] matrix);
+        /**
+         * @param viewMatrix column major view matrix. Reused for the next
+         * pose, copy it to keep it.
+         */
+        public void onProjectorPose(int status, float[] viewMatrix, float x, float y);
+        /** Called on the replay thread once the trace is over or stopped */
+        public void onReplayDone(PoseReplayer replayer);
+    }
+
+    public PoseReplayer(PoseTrace trace, Listener listener) {
+        mTrace = trace;
+        mListener = listener;
+        mMatrix = new float[16];
+        mSpeed = 1.0f;
+    }
+
+    /**
+     * @param speed 1 replays at the recorded rate, 2 twice as fast, etc. 0
+     * delivers the poses back to back.
+     */
+    public void setSpeed(float speed) {
+        mSpeed = speed;
+    }
+
+    /** Starts over from the first pose at the end of the trace, until stopped */
+    public void setLoop(boolean loop) {
+        mLoop = loop;
+    }
+
+    public synchronized void start() {
+        if (mThread != null) return;
+        mStop = false;
+        mThread = new Thread(this, "PoseReplayer");
+        mThread.start();
+    }
+
+    public void stop() {
+        Thread t;
+        synchronized (this) {
+            t = mThread;
+            mThread = null;
+            mStop = true;
+        }
+        if (t == null || t == Thread.currentThread()) return;
+        t.interrupt();
+        try {
+            t.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        int size = mTrace.size();
+        mDelivered = 0;
+        mLatenessSumNs = 0;
+        mMaxLatenessNs = 0;
+        long start = System.nanoTime();
+        long base = start;
+
+        if (size > 0) {
+            long first = mTrace.getTime(0);
+            // Keep the typical interval between the last and first pose when looping
+            long span = mTrace.getTime(size - 1) - first;
+            long wrap = size > 1 ? span/(size - 1) : 0;
+            do {
+                for (int i = 0; i < size && !mStop; i++) {
+                    long due = base + (mSpeed > 0 ? (long)((mTrace.getTime(i) - first)/mSpeed) : 0);
+                    if (mSpeed > 0 && !waitUntil(due)) break;
+                    long now = System.nanoTime();
+                    if (mSpeed > 0) {
+                        long late = now - due;
+                        mLatenessSumNs += late;
+                        if (late > mMaxLatenessNs) mMaxLatenessNs = late;
+                    }
+                    deliver(i);
+                    mDelivered++;
+                }
+                base += mSpeed > 0 ? (long)((span + wrap)/mSpeed) : 0;
+            } while (mLoop && !mStop);
+        }
+
+        mElapsedNs = System.nanoTime() - start;
+        mListener.onReplayDone(this);
+    }
+
+    /** Poses delivered by the last or current run */
+    public int getPosesDelivered() {
+        return mDelivered;
+    }
+
+    /** Wall time of the last run in ns */
+    public long getElapsedNs() {
+        return mElapsedNs;
+    }
+
+    public long getMeanLatenessNs() {
+        return mDelivered > 0 ? mLatenessSumNs/mDelivered : 0;
+    }
+
+    public long getMaxLatenessNs() {
+        return mMaxLatenessNs;
+    }
+
+    @Override
+    public String toString() {
+        double seconds = mElapsedNs/1e9;
+        return String.format("%d poses in %.2f s (%.0f poses/s), lateness mean %.3f ms max %.3f ms",
+                mDelivered, seconds, seconds > 0 ? mDelivered/seconds : 0.0,
+                getMeanLatenessNs()/1e6, getMaxLatenessNs()/1e6);
+    }
+
+    private void deliver(int i) {
+        mTrace.getMatrix(i, mMatrix);
+        if (mTrace.getType(i) == PoseTrace.TYPE_CAMERA) {
+            mListener.onCameraPose(mTrace.getTimestamp(i), mTrace.getStatus(i), mMatrix);
+        } else {
+            mListener.onProjectorPose(mTrace.getStatus(i), mMatrix,
+                                      mTrace.getPointerX(i), mTrace.getPointerY(i));
+        }
+    }
+
+    /**
+     * Sleeps until about a millisecond before due, then yields the rest so
+     * the poses keep their recorded spacing.
+     * @return false if stopped while waiting.
+     */
+    private boolean waitUntil(long due) {
+        long remaining;
+        while ((remaining = due - System.nanoTime()) > 0) {
+            if (mStop) return false;
+            if (remaining > SPIN_NS) {
+                try {
+                    Thread.sleep((remaining - SPIN_NS)/1000000);
+                } catch (InterruptedException e) {
+                    return false;
+                }
+            } else {
+                Thread.yield();
+            }
+        }
+        return !mStop;
+    }
+
+    private PoseTrace mTrace;
+    private Listener mListener;
+    private float[] mMatrix;
+    private float mSpeed;
+    private boolean mLoop;
+    private Thread mThread;
+    private volatile boolean mStop;
+
+    // Written by the replay thread
+    private volatile int mDelivered;
+    private long mLatenessSumNs;
+    private long mMaxLatenessNs;
+    private long mElapsedNs;
+
+    private static final long SPIN_NS = 1000000;
+}
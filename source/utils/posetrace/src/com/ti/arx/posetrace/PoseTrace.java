@@ -0,0 +1,132 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ti.arx.posetrace;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only, memory mapped view of a pose trace recorded by the sample apps
+ * (see utils/ARXPoseTrace.h for the layout). Records are read in place, the
+ * accessors never allocate.
+ */
+public class PoseTrace {
+
+    public static final int TYPE_CAMERA = 1;
+    public static final int TYPE_PROJECTOR = 2;
+
+    public static final int MAGIC = 0x50585241;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 32;
+    public static final int RECORD_SIZE = 96;
+
+    // Record field offsets
+    static final int TIME = 0;
+    static final int TIMESTAMP = 8;
+    static final int TYPE = 16;
+    static final int STATUS = 20;
+    static final int MATRIX = 24;
+    static final int POINTER_X = 88;
+    static final int POINTER_Y = 92;
+
+    public PoseTrace(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mBuffer = map.order(ByteOrder.LITTLE_ENDIAN);
+        } finally {
+            // The mapping stays valid after the file is closed
+            raf.close();
+        }
+
+        if (mBuffer.capacity() < HEADER_SIZE || mBuffer.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a pose trace");
+        }
+        int version = mBuffer.getShort(4);
+        int recordSize = mBuffer.getShort(6);
+        if (version != VERSION || recordSize != RECORD_SIZE) {
+            throw new IOException(file + ": unsupported pose trace version " + version +
+                                  ", record size " + recordSize);
+        }
+        mStartTime = mBuffer.getLong(8);
+        // A truncated last record, e.g. when the app was killed, is ignored
+        mSize = (mBuffer.capacity() - HEADER_SIZE)/RECORD_SIZE;
+    }
+
+    /** Number of poses in the trace */
+    public int size() {
+        return mSize;
+    }
+
+    /** CLOCK_MONOTONIC time in ns at which the recording started */
+    public long getStartTime() {
+        return mStartTime;
+    }
+
+    /** CLOCK_MONOTONIC time in ns at which pose i was delivered to the app */
+    public long getTime(int i) {
+        return mBuffer.getLong(offset(i) + TIME);
+    }
+
+    /** Buffer timestamp of pose i, as passed to onCamPoseUpdate */
+    public long getTimestamp(int i) {
+        return mBuffer.getLong(offset(i) + TIMESTAMP);
+    }
+
+    /** TYPE_CAMERA or TYPE_PROJECTOR */
+    public int getType(int i) {
+        return mBuffer.getInt(offset(i) + TYPE);
+    }
+
+    public int getStatus(int i) {
+        return mBuffer.getInt(offset(i) + STATUS);
+    }
+
+    /**
+     * Copies the 16 floats of the pose matrix into dst. Camera poses hold
+     * the row major 3x4 matrix in the first 12, projector poses the column
+     * major 4x4 view matrix.
+     */
+    public void getMatrix(int i, float[] dst) {
+        int base = offset(i) + MATRIX;
+        for (int k = 0; k < 16; k++) {
+            dst[k] = mBuffer.getFloat(base + 4*k);
+        }
+    }
+
+    public float getPointerX(int i) {
+        return mBuffer.getFloat(offset(i) + POINTER_X);
+    }
+
+    public float getPointerY(int i) {
+        return mBuffer.getFloat(offset(i) + POINTER_Y);
+    }
+
+    private static int offset(int i) {
+        return HEADER_SIZE + i*RECORD_SIZE;
+    }
+
+    private ByteBuffer mBuffer;
+    private long mStartTime;
+    private int mSize;
+}
@@ -0,0 +1,91 @@
+/*
+ *  Copyright (C) 2012 Texas Instruments, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ti.arx.posetrace;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes pose traces from Java, e.g. to generate synthetic ones. The apps
+ * record theirs natively with ARXPoseTraceWriter.
+ */
+public class PoseTraceWriter {
+
+    public PoseTraceWriter(File file, long startTime) throws IOException {
+        mStream = new FileOutputStream(file);
+        mChannel = mStream.getChannel();
+        mRecord = ByteBuffer.allocate(PoseTrace.RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        ByteBuffer header = ByteBuffer.allocate(PoseTrace.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(PoseTrace.MAGIC);
+        header.putShort((short)PoseTrace.VERSION);
+        header.putShort((short)PoseTrace.RECORD_SIZE);
+        header.putLong(startTime);
+        header.rewind();
+        write(header);
+    }
+
+    /**
+     * @param time CLOCK_MONOTONIC delivery time in ns, drives the replay rate
+     * @param matrix row major 3x4 camera pose
+     */
+    public void writeCameraPose(long time, long timestamp, int status, float[] matrix) throws IOException {
+        append(time, timestamp, PoseTrace.TYPE_CAMERA, status, matrix, 12, 0, 0);
+    }
+
+    /**
+     * @param time CLOCK_MONOTONIC delivery time in ns, drives the replay rate
+     * @param viewMatrix column major projector view matrix
+     */
+    public void writeProjectorPose(long time, int status, float[] viewMatrix, float x, float y) throws IOException {
+        append(time, 0, PoseTrace.TYPE_PROJECTOR, status, viewMatrix, 16, x, y);
+    }
+
+    public void close() throws IOException {
+        mStream.close();
+    }
+
+    private void append(long time, long timestamp, int type, int status,
+                        float[] matrix, int count, float x, float y) throws IOException {
+        mRecord.clear();
+        mRecord.putLong(time);
+        mRecord.putLong(timestamp);
+        mRecord.putInt(type);
+        mRecord.putInt(status);
+        for (int i = 0; i < 16; i++) {
+            mRecord.putFloat(i < count ? matrix[i] : 0.0f);
+        }
+        mRecord.putFloat(x);
+        mRecord.putFloat(y);
+        mRecord.rewind();
+        write(mRecord);
+    }
+
+    private void write(ByteBuffer b) throws IOException {
+        while (b.hasRemaining()) {
+            mChannel.write(b);
+        }
+    }
+
+    private FileOutputStream mStream;
+    private FileChannel mChannel;
+    private ByteBuffer mRecord;
+}